@@ -1,73 +1,701 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.management.JMException;
+
+import org.binghamton.comparch.systems.Cache;
+import org.binghamton.comparch.systems.FunctionalSimulator;
 import org.binghamton.comparch.systems.Processor;
+import org.binghamton.comparch.systems.ProcessorConfig;
+import org.binghamton.comparch.systems.ProcessorMetrics;
+import org.binghamton.comparch.systems.ProcessorReport;
+import org.binghamton.comparch.systems.Program;
+import org.binghamton.comparch.systems.StallCause;
+import org.binghamton.comparch.util.AssemblyException;
+import org.binghamton.comparch.util.FileIOEvent;
 import org.binghamton.comparch.util.InstructionParser;
+import org.binghamton.comparch.util.ObjectFile;
+import org.binghamton.comparch.util.ProgramCache;
+import org.binghamton.comparch.util.SampledSimulation;
+import org.binghamton.comparch.util.SimulationRunner;
+import org.binghamton.comparch.util.SimulationServer;
 
 public class Driver {
+	/* Exit codes of batch mode */
+	private static final int EXIT_HALTED = 0;
+	private static final int EXIT_CYCLE_LIMIT = 1;
+	private static final int EXIT_USAGE = 2;
+	private static final int EXIT_ERROR = 3;
+	private static final int EXIT_SIMULATION_FAILED = 4;
+
+	private static final long DEFAULT_MAX_CYCLES = 100000000;
+	private static final long DEFAULT_MAX_INSTRUCTIONS = 1000000000;
+	private static final int CYCLES_PER_STEP = 1 << 20;
+
 	private static final Pattern SIMULATE_PATTERN = Pattern.compile("Simulate (\\d+)");
 	private static final Pattern INITIALIZE_PATTERN = Pattern.compile("Initialize (.+)");
 	private static final Pattern MEMORY_PATTERN = Pattern.compile("Print_Memory (?<start>\\d+) (?<end>\\d+)");
 	private static final Pattern URF_SIZE_PATTERN = Pattern.compile("Set_URF_size (?<size>\\d+)");
+	private static final Pattern ASSEMBLE_PATTERN = Pattern.compile("Assemble (?<source>\\S+) (?<object>\\S+)");
+	private static final Pattern EXPORT_METRICS_PATTERN = Pattern.compile("Export_Metrics (.+)");
+	private static final Pattern EXPORT_CPI_PATTERN = Pattern.compile("Export_CPI_Stack (.+)");
+	private static final Pattern RECORD_INTERVALS_PATTERN = Pattern
+			.compile("Record_Intervals (?<size>\\d+) (?<unit>cycles|instructions) (?<file>.+)");
+	private static final Pattern FUNCTIONAL_PATTERN = Pattern.compile("Functional_Simulate (\\d+)");
+	private static final Pattern BREAK_PATTERN = Pattern.compile("Break (\\d+)");
+	private static final Pattern WATCH_PATTERN = Pattern.compile("Watch (\\d+)");
+	private static final Pattern BREAK_REGISTER_PATTERN = Pattern.compile("Break_Register R(\\d+) (-?\\d+)");
+	private static final Pattern BREAK_INSTRUCTIONS_PATTERN = Pattern.compile("Break_Instructions (\\d+)");
+	private static final Pattern RECORD_HISTORY_PATTERN = Pattern.compile("Record_History (\\d+) (\\d+)");
+	private static final Pattern REWIND_PATTERN = Pattern.compile("Rewind (\\d+)");
+	private static final Pattern FORK_PATTERN = Pattern.compile("Fork (?<cycles>\\d+) (?<whatIfs>.+)");
+	private static final Pattern BREAK_IPC_PATTERN = Pattern
+			.compile("Break_IPC (?<window>\\d+) (?<direction>below|above) (?<threshold>\\d+(\\.\\d+)?)");
 
 	public static void main(String args[]) {
+		/* Run without the prompt when there are arguments */
+		if (args.length > 0) {
+			System.exit(batch(args));
+		}
+
 		Processor p = new Processor();
+		FunctionalSimulator f = new FunctionalSimulator();
+		ProgramCache programs = new ProgramCache();
 		Scanner reader = new Scanner(System.in);
 
+		try {
+			p.registerMonitor();
+		} catch (JMException e) {
+			System.out.println("Can not register the JMX monitor: " + e.getMessage());
+		}
+
+		SimulationRunner runner = new SimulationRunner(p, System.out::println);
+
 		while (true) {
 			System.out.print("> ");
+			if (!reader.hasNextLine()) {
+				System.out.println();
+				break;
+			}
 			String input = reader.nextLine();
 			Matcher simMatcher = SIMULATE_PATTERN.matcher(input);
-			Matcher initMatcher = INITIALIZE_PATTERN.matcher(input);
-			Matcher memoryMatcher = MEMORY_PATTERN.matcher(input);
-			Matcher urfSizeMatcher = URF_SIZE_PATTERN.matcher(input);
+			Matcher forkMatcher = FORK_PATTERN.matcher(input);
 
-			if (simMatcher.matches()) {
+			if ("Exit".equals(input)) {
+				runner.stop();
+				break;
+			} else if (simMatcher.matches()) {
 				int cycles = Integer.valueOf(simMatcher.group(1));
-				boolean halt = p.cycle(cycles);
-				
-				if (halt) {
-					System.out.println("HALT instruction encountered. Simulation halted");
+				if (!runner.start(cycles)) {
+					System.out.println("A simulation is running. Use Stop or Wait first");
+				}
+			} else if ("Stop".equals(input)) {
+				if (!runner.stop()) {
+					System.out.println("No simulation is running");
+				}
+			} else if ("Wait".equals(input)) {
+				runner.await();
+			} else if ("Progress".equals(input)) {
+				System.out.println(runner.getProgress());
+			} else if (forkMatcher.matches()) {
+				fork(Long.valueOf(forkMatcher.group("cycles")), forkMatcher.group("whatIfs").split(" +"), p, runner);
+			} else if (runner.isRunning() && (INITIALIZE_PATTERN.matcher(input).matches()
+					|| URF_SIZE_PATTERN.matcher(input).matches() || REWIND_PATTERN.matcher(input).matches())) {
+				System.out.println("A simulation is running. Use Stop or Wait first");
+			} else {
+				/* Everything else uses the processor between two cycles */
+				runner.execute(() -> execute(input, p, f, programs));
+			}
+		}
+
+		/* Let a run started at the end of the input finish */
+		runner.await();
+		runner.shutdown();
+	}
+
+	/**
+	 * Forks the processor once for every what-if, changes each fork as its
+	 * what-if says and simulates the forks in parallel, one thread for every
+	 * CPU. The processor itself is left as it was.
+	 *
+	 * @param cycles
+	 *            the amount of cycles to simulate every fork
+	 * @param whatIfs
+	 *            "base" for no change, or settings separated by commas such
+	 *            as urfSize=64,memoryLatency=200,dependencePrediction=false
+	 * @param p
+	 *            the processor
+	 * @param runner
+	 *            the runner the processor is used through
+	 */
+	private static void fork(long cycles, String[] whatIfs, Processor p, SimulationRunner runner) {
+		Processor[] forks = new Processor[whatIfs.length];
+
+		try {
+			runner.execute(() -> {
+				for (int i = 0; i < forks.length; i += 1) {
+					forks[i] = p.fork();
+					try {
+						applyWhatIf(forks[i], whatIfs[i]);
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException(whatIfs[i] + ": " + e.getMessage());
+					}
+				}
+			});
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Math.min(forks.length, Runtime.getRuntime().availableProcessors()), runnable -> {
+					Thread thread = new Thread(runnable, "fork");
+					thread.setDaemon(true);
+					return thread;
+				});
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (Processor fork : forks) {
+			results.add(pool.submit(() -> simulateFork(fork, cycles)));
+		}
+		pool.shutdown();
+
+		for (int i = 0; i < forks.length; i += 1) {
+			String result;
+			try {
+				result = results.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				result = "failed: " + e.getCause();
+			}
+			System.out.println("Fork " + i + " (" + whatIfs[i] + "): " + result);
+		}
+	}
+
+	private static void applyWhatIf(Processor fork, String whatIf) {
+		if ("base".equals(whatIf)) {
+			return;
+		}
+
+		for (String setting : whatIf.split(",")) {
+			String[] pair = setting.split("=", 2);
+			try {
+				if (pair.length == 2 && "urfSize".equalsIgnoreCase(pair[0])) {
+					fork.resizeURF(Integer.parseInt(pair[1]));
+				} else if (pair.length == 2 && "memoryLatency".equalsIgnoreCase(pair[0])) {
+					fork.setMemoryLatency(Integer.parseInt(pair[1]));
+				} else if (pair.length == 2 && "dependencePrediction".equalsIgnoreCase(pair[0])) {
+					fork.setMemoryDependencePrediction(Boolean.parseBoolean(pair[1]));
 				} else {
-					System.out.println("Simulation ran for " + cycles + " cycles");
+					throw new IllegalArgumentException("Unknown what-if " + setting
+							+ ". Use base, urfSize=N, memoryLatency=N or dependencePrediction=true|false");
 				}
-			} else if (urfSizeMatcher.matches()) {
-				int size = Integer.valueOf(urfSizeMatcher.group("size"));
-				p.setURFSize(size);
-				System.out.println("URF size updated to " + size + ". Please reintialize processor!");
-			} else if ("Display".equals(input)) {
-				System.out.println(p.toString());
-			} else if ("Print_map_tables".equals(input)) {
-				System.out.println("- RAT");
-				System.out.println(p.getURF().stringRAT());
-				System.out.println("- RRAT");
-				System.out.println(p.getURF().stringRRAT());
-			} else if ("Print_IQ".equals(input)) {
-				System.out.println(p.getIQ().toString());
-			} else if ("Print_ROB".equals(input)) {
-				System.out.println(p.getROB().toString());
-			} else if ("Print_URF".equals(input)) {
-				System.out.println(p.getURF().stringRegisters());
-			} else if (memoryMatcher.matches()) {
-				int start = Integer.valueOf(memoryMatcher.group("start"));
-				int end = Integer.valueOf(memoryMatcher.group("end"));
-				
-				System.out.println(p.getMemory().stringMemory(start, end));
-			} else if ("Print_Stats".equals(input)) {
-				double ipc = ((double) p.getInstructionsCommited() / (double) p.getTotalCycles());
-				System.out.println("IPC: " + String.valueOf(ipc));
-				System.out.println("Dispatched Stalled Cycles: " + p.getDispatchedStalledCycles());
-				System.out.println("No Issue Cycles: " + p.getNoIssuesCycles());
-				System.out.println("LOADs Committed: " + p.getLoadsCommitted());
-				System.out.println("STOREs Committed: " + p.getStoresCommitted());
-			} else if (initMatcher.matches()) {
-				InstructionParser parser = new InstructionParser(initMatcher.group(1));
-				p.initialize(parser.parserFile());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("What-if " + setting + " needs a number");
+			}
+		}
+	}
+
+	private static String simulateFork(Processor fork, long cycles) {
+		long startCycles = fork.getTotalCycles();
+		long startInstructions = fork.getInstructionsCommited();
+		boolean halt = false;
+
+		while (!halt && fork.getTotalCycles() - startCycles < cycles) {
+			halt = fork.cycle((int) Math.min(CYCLES_PER_STEP, cycles - (fork.getTotalCycles() - startCycles)));
+		}
+
+		long simulated = fork.getTotalCycles() - startCycles;
+		long committed = fork.getInstructionsCommited() - startInstructions;
+		return String.format(Locale.ROOT, "%d cycles, %d instructions committed, IPC %.4f%s", simulated, committed,
+				(simulated == 0) ? 0 : (double) committed / simulated, halt ? ", halted" : "");
+	}
+
+	/**
+	 * Runs a command that uses the processor. Called on the simulation
+	 * thread, between two cycles.
+	 *
+	 * @param input
+	 *            the command
+	 * @param p
+	 *            the processor
+	 * @param f
+	 *            the functional simulator
+	 * @param programs
+	 *            the cache programs are loaded through
+	 */
+	private static void execute(String input, Processor p, FunctionalSimulator f, ProgramCache programs) {
+		Matcher initMatcher = INITIALIZE_PATTERN.matcher(input);
+		Matcher memoryMatcher = MEMORY_PATTERN.matcher(input);
+		Matcher urfSizeMatcher = URF_SIZE_PATTERN.matcher(input);
+		Matcher functionalMatcher = FUNCTIONAL_PATTERN.matcher(input);
+		Matcher assembleMatcher = ASSEMBLE_PATTERN.matcher(input);
+		Matcher exportMetricsMatcher = EXPORT_METRICS_PATTERN.matcher(input);
+		Matcher exportCPIMatcher = EXPORT_CPI_PATTERN.matcher(input);
+		Matcher recordIntervalsMatcher = RECORD_INTERVALS_PATTERN.matcher(input);
+		Matcher breakMatcher = BREAK_PATTERN.matcher(input);
+		Matcher watchMatcher = WATCH_PATTERN.matcher(input);
+		Matcher breakRegisterMatcher = BREAK_REGISTER_PATTERN.matcher(input);
+		Matcher breakInstructionsMatcher = BREAK_INSTRUCTIONS_PATTERN.matcher(input);
+		Matcher breakIPCMatcher = BREAK_IPC_PATTERN.matcher(input);
+		Matcher recordHistoryMatcher = RECORD_HISTORY_PATTERN.matcher(input);
+		Matcher rewindMatcher = REWIND_PATTERN.matcher(input);
+
+		if (functionalMatcher.matches()) {
+			long instructions = Long.valueOf(functionalMatcher.group(1));
+			long start = f.getInstructionsExecuted();
+			boolean halt = f.run(instructions);
+
+			if (halt) {
+				System.out.println("HALT instruction encountered. Functional simulation halted");
+			} else {
+				System.out.println("Functional simulation ran for " + (f.getInstructionsExecuted() - start)
+						+ " instructions");
+			}
+			System.out.println(f.toString());
+		} else if (urfSizeMatcher.matches()) {
+			int size = Integer.valueOf(urfSizeMatcher.group("size"));
+			p.setURFSize(size);
+			System.out.println("URF size updated to " + size + ". Please reintialize processor!");
+		} else if ("Display".equals(input)) {
+			System.out.println(p.toString());
+		} else if ("Print_map_tables".equals(input)) {
+			System.out.println("- RAT");
+			System.out.println(p.getURF().stringRAT());
+			System.out.println("- RRAT");
+			System.out.println(p.getURF().stringRRAT());
+		} else if ("Print_IQ".equals(input)) {
+			System.out.println(p.getIQ().toString());
+		} else if ("Print_ROB".equals(input)) {
+			System.out.println(p.getROB().toString());
+		} else if ("Print_URF".equals(input)) {
+			System.out.println(p.getURF().stringRegisters());
+		} else if (memoryMatcher.matches()) {
+			int start = Integer.valueOf(memoryMatcher.group("start"));
+			int end = Integer.valueOf(memoryMatcher.group("end"));
+			
+			System.out.println(p.getMemory().stringMemory(start, end));
+		} else if ("Print_Stats".equals(input)) {
+			double ipc = ((double) p.getInstructionsCommited() / (double) p.getTotalCycles());
+			System.out.println("IPC: " + String.valueOf(ipc));
+			System.out.println("Dispatched Stalled Cycles: " + p.getDispatchedStalledCycles());
+			for (StallCause cause : StallCause.values()) {
+				System.out.println("  " + cause + " Stall Cycles: " + p.getMetrics().getStallCycles(cause));
+			}
+			System.out.println("No Issue Cycles: " + p.getNoIssuesCycles());
+			System.out.println("LOADs Committed: " + p.getLoadsCommitted());
+			System.out.println("STOREs Committed: " + p.getStoresCommitted());
+			System.out.println("Branches Committed: " + p.getBranchesCommitted());
+			System.out.println("Taken Branches: " + p.getTakenBranches());
+			System.out.println("Speculative LOADs Issued: " + p.getSpeculativeLoadsIssued());
+			System.out.println("LOADs Held By Predictor: " + p.getLoadsHeldByPredictor());
+			System.out.println("Memory Order Violations: " + p.getMemoryOrderViolations());
+			System.out.println("Store Sets: " + p.getStoreSetPredictor().getStoreSetCount());
+			for (Cache cache = p.getDataCache(); cache != null; cache = cache.getNext()) {
+				System.out.println(String.format("%s Hit Rate: %.4f (%d/%d)", cache.getName(), cache.getHitRate(),
+						cache.getHits(), cache.getAccesses()));
+				System.out.println(String.format("%s MPKI: %.4f", cache.getName(),
+						cache.getMPKI(p.getInstructionsCommited())));
+				if (cache.getMSHRCount() > 0) {
+					System.out.println(String.format("%s MSHR Merges: %d", cache.getName(), cache.getMSHRMerges()));
+					System.out.println(String.format("%s Memory Level Parallelism: %.4f (Max %d)", cache.getName(),
+							cache.getMemoryLevelParallelism(), cache.getMaxOutstandingMisses()));
+				}
+				if (cache.getPrefetchesIssued() > 0) {
+					System.out.println(String.format("%s Prefetches Issued: %d", cache.getName(),
+							cache.getPrefetchesIssued()));
+					System.out.println(String.format("%s Prefetch Coverage: %.4f", cache.getName(),
+							cache.getPrefetchCoverage()));
+					System.out.println(String.format("%s Prefetch Accuracy: %.4f", cache.getName(),
+							cache.getPrefetchAccuracy()));
+					System.out.println(String.format("%s Prefetch Timeliness: %.4f", cache.getName(),
+							cache.getPrefetchTimeliness()));
+				}
+			}
+			System.out.println("MSHR Stalled Cycles: " + p.getMSHRStalledCycles());
+			System.out.println("Idle Cycles Skipped: " + p.getSkippedCycles());
+		} else if ("Print_Metrics".equals(input)) {
+			ProcessorMetrics metrics = p.getMetrics();
+			System.out.println(String.format("Average IQ Occupancy: %.2f", metrics.getIQOccupancy().getMean()));
+			System.out.println(String.format("Average ROB Occupancy: %.2f", metrics.getROBOccupancy().getMean()));
+			System.out.println(String.format("Average URF Occupancy: %.2f", metrics.getURFOccupancy().getMean()));
+			System.out.println(String.format("Average Issue Width: %.2f", metrics.getIssueWidth().getMean()));
+			for (int i = 0; i < metrics.getUnitCount(); i += 1) {
+				System.out.println(String.format("%s Utilization: %.4f", metrics.getUnitName(i),
+						metrics.getUnitUtilization(i)));
+			}
+		} else if ("Print_Profile".equals(input)) {
+			System.out.println(p.getProfiler().toString());
+		} else if ("Print_CPI_Stack".equals(input)) {
+			System.out.println(p.getCPIStack().toString());
+		} else if (exportCPIMatcher.matches()) {
+			String file = exportCPIMatcher.group(1);
+			try {
+				export("Export CPI stack", file, p.getCPIStack().toCSV());
+				System.out.println("CPI stack written to " + file);
+			} catch (IOException e) {
+				System.out.println("Can not write " + file + ": " + e.getMessage());
+			}
+		} else if (exportMetricsMatcher.matches()) {
+			String file = exportMetricsMatcher.group(1);
+			String content = file.endsWith(".csv") ? p.getMetrics().toCSV() : p.getMetrics().toJSON();
+			try {
+				export("Export metrics", file, content);
+				System.out.println("Metrics written to " + file);
+			} catch (IOException e) {
+				System.out.println("Can not write " + file + ": " + e.getMessage());
+			}
+		} else if (recordIntervalsMatcher.matches()) {
+			String file = recordIntervalsMatcher.group("file");
+			try {
+				p.startIntervalRecording(file, Integer.valueOf(recordIntervalsMatcher.group("size")),
+						"instructions".equals(recordIntervalsMatcher.group("unit")));
+				System.out.println("Recording the statistics of every " + recordIntervalsMatcher.group("size")
+						+ " " + recordIntervalsMatcher.group("unit") + " to " + file);
+			} catch (IOException e) {
+				System.out.println("Can not write " + file + ": " + e.getMessage());
+			}
+		} else if ("Stop_Recording".equals(input)) {
+			try {
+				p.stopIntervalRecording();
+				System.out.println("Recording stopped");
+			} catch (IOException e) {
+				System.out.println("Can not write the recording: " + e.getMessage());
+			}
+		} else if (breakMatcher.matches()) {
+			try {
+				p.getBreakpoints().addBreakpoint(Integer.valueOf(breakMatcher.group(1)));
+				System.out.println("Breakpoint set at " + breakMatcher.group(1));
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		} else if (watchMatcher.matches()) {
+			try {
+				p.getBreakpoints().addWatchpoint(Integer.valueOf(watchMatcher.group(1)));
+				System.out.println("Watching writes to " + watchMatcher.group(1));
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		} else if (breakRegisterMatcher.matches()) {
+			try {
+				p.getBreakpoints().setRegisterCondition(Integer.valueOf(breakRegisterMatcher.group(1)),
+						Integer.valueOf(breakRegisterMatcher.group(2)));
+				System.out.println("Breaking when R" + breakRegisterMatcher.group(1) + " is committed with "
+						+ breakRegisterMatcher.group(2));
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		} else if (breakInstructionsMatcher.matches()) {
+			long limit = p.getInstructionsCommited() + Long.valueOf(breakInstructionsMatcher.group(1));
+			p.getBreakpoints().setInstructionLimit(limit);
+			System.out.println("Breaking after " + limit + " instructions");
+		} else if (breakIPCMatcher.matches()) {
+			try {
+				p.getBreakpoints().setIPCCondition(Integer.valueOf(breakIPCMatcher.group("window")),
+						Double.valueOf(breakIPCMatcher.group("threshold")),
+						"below".equals(breakIPCMatcher.group("direction")));
+				System.out.println("Breaking when the IPC of " + breakIPCMatcher.group("window") + " cycles is "
+						+ breakIPCMatcher.group("direction") + " " + breakIPCMatcher.group("threshold"));
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		} else if ("Print_Breakpoints".equals(input)) {
+			System.out.println(p.hasBreakpoints() ? p.getBreakpoints().toString() : "No breakpoints");
+		} else if ("Clear_Breakpoints".equals(input)) {
+			p.clearBreakpoints();
+			System.out.println("Breakpoints cleared");
+		} else if (recordHistoryMatcher.matches()) {
+			try {
+				p.startHistory(Integer.valueOf(recordHistoryMatcher.group(1)),
+						Integer.valueOf(recordHistoryMatcher.group(2)));
+				System.out.println("Taking a snapshot every " + recordHistoryMatcher.group(1) + " cycles, keeping "
+						+ recordHistoryMatcher.group(2));
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		} else if ("Stop_History".equals(input)) {
+			p.stopHistory();
+			System.out.println("History dropped");
+		} else if (rewindMatcher.matches()) {
+			try {
+				p.rewind(Long.valueOf(rewindMatcher.group(1)));
+				System.out.println("Went back to cycle " + p.getTotalCycles());
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+		} else if ("Print_History".equals(input)) {
+			System.out.println((p.getHistory() == null) ? "No history is being taken" : p.getHistory().toString());
+		} else if (assembleMatcher.matches()) {
+			InstructionParser parser = new InstructionParser(assembleMatcher.group("source"));
+			try {
+				Program program = parser.parse();
+				ObjectFile.write(program, assembleMatcher.group("object"));
+				System.out.println("Assembled " + program.size() + " instructions into "
+						+ assembleMatcher.group("object"));
+			} catch (AssemblyException e) {
+				System.out.println(e.getMessage());
+			} catch (IOException e) {
+				System.out.println("Can not assemble: " + e.getMessage());
+			}
+		} else if (initMatcher.matches()) {
+			try {
+				Program program = programs.load(initMatcher.group(1));
+				p.initialize(program);
+				f.initialize(program);
 				System.out.println("Processor Initialized");
+			} catch (AssemblyException e) {
+				System.out.println(e.getMessage());
+			} catch (IOException e) {
+				System.out.println("Can not read " + initMatcher.group(1) + ": " + e.getMessage());
+			}
+		} else {
+			System.out.println("Unrecognized Command");
+		}
+	}
+
+	/**
+	 * Runs one program without the prompt and writes its statistics. The exit
+	 * code is 0 if the program halted, 1 if it reached the cycle limit first,
+	 * 2 if the arguments are wrong, 3 if the program, the configuration or
+	 * the output can not be read or written and 4 if the simulated program
+	 * fails, such as by jumping to an address that is not an instruction.
+	 * 
+	 * @param args
+	 *            the command line options and the program
+	 * @return the exit code
+	 */
+	private static int batch(String args[]) {
+		String program = null;
+		String config = null;
+		String output = null;
+		String format = "json";
+		long maxCycles = DEFAULT_MAX_CYCLES;
+		int urfSize = 0;
+		int port = -1;
+		int workers = Runtime.getRuntime().availableProcessors();
+		long[] sample = null;
+		long maxInstructions = DEFAULT_MAX_INSTRUCTIONS;
+
+		try {
+			for (int i = 0; i < args.length; i += 1) {
+				if ("--help".equals(args[i])) {
+					System.out.println(usage());
+					return EXIT_HALTED;
+				} else if ("--config".equals(args[i]) && i + 1 < args.length) {
+					config = args[++i];
+				} else if ("--output".equals(args[i]) && i + 1 < args.length) {
+					output = args[++i];
+				} else if ("--format".equals(args[i]) && i + 1 < args.length) {
+					format = args[++i];
+				} else if ("--max-cycles".equals(args[i]) && i + 1 < args.length) {
+					maxCycles = Long.parseLong(args[++i]);
+				} else if ("--urf-size".equals(args[i]) && i + 1 < args.length) {
+					urfSize = Integer.parseInt(args[++i]);
+				} else if ("--serve".equals(args[i]) && i + 1 < args.length) {
+					port = Integer.parseInt(args[++i]);
+				} else if ("--workers".equals(args[i]) && i + 1 < args.length) {
+					workers = Integer.parseInt(args[++i]);
+				} else if ("--sample".equals(args[i]) && i + 1 < args.length) {
+					String[] parts = args[++i].split(",");
+					if (parts.length != 3) {
+						throw new IllegalArgumentException("--sample takes <period>,<warm-up>,<measure>");
+					}
+					sample = new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+							Long.parseLong(parts[2]) };
+				} else if ("--max-instructions".equals(args[i]) && i + 1 < args.length) {
+					maxInstructions = Long.parseLong(args[++i]);
+				} else if (!args[i].startsWith("--") && program == null) {
+					program = args[i];
+				} else {
+					throw new IllegalArgumentException("Unexpected argument " + args[i]);
+				}
+			}
+
+			if (port >= 0) {
+				return serve(port, workers);
+			} else if (program == null) {
+				throw new IllegalArgumentException("No program given");
+			} else if (!"json".equals(format) && !"csv".equals(format)) {
+				throw new IllegalArgumentException("Format must be json or csv, not " + format);
+			} else if (maxCycles < 1) {
+				throw new IllegalArgumentException("The cycle limit must be at least one cycle");
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(usage());
+			return EXIT_USAGE;
+		}
+
+		ProcessorConfig processorConfig = new ProcessorConfig();
+		try {
+			if (config != null) {
+				Properties properties = new Properties();
+				try (InputStream in = Files.newInputStream(Paths.get(config))) {
+					properties.load(in);
+				}
+				processorConfig.setProperties(properties);
+			}
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			return EXIT_ERROR;
+		} catch (IllegalArgumentException e) {
+			System.err.println("Invalid configuration: " + e.getMessage());
+			return EXIT_ERROR;
+		}
+
+		Program loaded;
+		try {
+			loaded = ObjectFile.load(program);
+		} catch (AssemblyException e) {
+			System.err.println(e.getMessage());
+			return EXIT_ERROR;
+		} catch (IOException | UncheckedIOException e) {
+			System.err.println(e.toString());
+			return EXIT_ERROR;
+		}
+
+		String report;
+		boolean halted = false;
+		if (sample != null) {
+			SampledSimulation sampled;
+			try {
+				sampled = new SampledSimulation(loaded, processorConfig, sample[0], sample[1], sample[2], workers);
+				sampled.setURFSize(urfSize);
+			} catch (IllegalArgumentException e) {
+				System.err.println("Invalid configuration: " + e.getMessage());
+				return EXIT_ERROR;
+			}
+
+			try {
+				sampled.run(maxInstructions, maxCycles);
+			} catch (RuntimeException e) {
+				System.err.println("simulation failed: " + e.getMessage());
+				return EXIT_SIMULATION_FAILED;
+			}
+
+			report = sampled.toString() + "\n";
+			halted = sampled.isHalted();
+		} else {
+			Processor p;
+			try {
+				p = new Processor(processorConfig);
+				if (urfSize > 0) {
+					p.setURFSize(urfSize);
+				}
+				p.initialize(loaded);
+			} catch (IllegalArgumentException e) {
+				System.err.println("Invalid configuration: " + e.getMessage());
+				return EXIT_ERROR;
+			}
+
+			try {
+				while (!halted && p.getTotalCycles() < maxCycles) {
+					halted = p.cycle((int) Math.min(CYCLES_PER_STEP, maxCycles - p.getTotalCycles()));
+				}
+			} catch (RuntimeException e) {
+				System.err.println("simulation failed at cycle " + p.getTotalCycles() + ": " + e.getMessage());
+				return EXIT_SIMULATION_FAILED;
+			}
+
+			report = "csv".equals(format) ? ProcessorReport.toCSV(p, program, halted)
+					: ProcessorReport.toJSON(p, program, halted);
+		}
+
+		try {
+			if (output == null) {
+				System.out.print(report);
+				System.out.flush();
 			} else {
-				System.out.println("Unrecognized Command");
+				export(sample != null ? "Export sampled estimate" : "Export batch statistics", output, report);
 			}
+		} catch (IOException | UncheckedIOException e) {
+			System.err.println(e.toString());
+			return EXIT_ERROR;
 		}
+
+		return halted ? EXIT_HALTED : EXIT_CYCLE_LIMIT;
+	}
+
+	/**
+	 * Runs the simulation server until the JVM is shut down
+	 * 
+	 * @param port
+	 *            the port of localhost to listen on
+	 * @param workers
+	 *            the most jobs simulated at the same time
+	 * @return the exit code
+	 */
+	private static int serve(int port, int workers) {
+		try {
+			SimulationServer server = new SimulationServer(port, workers);
+			Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+			server.start();
+			System.out.println("Simulation server listening on http://127.0.0.1:" + server.getPort());
+
+			server.awaitStop();
+			return EXIT_HALTED;
+		} catch (IOException e) {
+			System.err.println("Can not start the server: " + e.toString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return EXIT_ERROR;
+	}
+
+	private static String usage() {
+		return "Usage: java -jar cs520-assignemnt2.jar [options] <program>\n"
+				+ "  --config <file>      processor configuration, as properties named after its setters\n"
+				+ "  --max-cycles <n>     stop if the program has not halted after n cycles (default "
+				+ DEFAULT_MAX_CYCLES + ")\n"
+				+ "  --urf-size <n>       physical registers in the URF\n"
+				+ "  --format json|csv    format of the statistics (default json)\n"
+				+ "  --output <file>      write the statistics to the file instead of stdout\n"
+				+ "  --serve <port>       run a simulation server on the port of localhost instead\n"
+				+ "  --workers <n>        jobs the server simulates at the same time (default: CPUs)\n"
+				+ "  --sample <p>,<w>,<m> estimate the IPC from samples of m instructions every p,\n"
+				+ "                       after w of warm-up, on --workers threads; --max-cycles\n"
+				+ "                       then limits every sample\n"
+				+ "  --max-instructions <n> stop sampling if the program has not halted after n\n"
+				+ "                       instructions (default " + DEFAULT_MAX_INSTRUCTIONS + ")\n"
+				+ "Exit code: 0 halted, 1 cycle or instruction limit reached, 2 bad arguments, 3 error,\n"
+				+ "           4 simulation failed";
+	}
+
+	/**
+	 * Writes exported statistics to a file
+	 * 
+	 * @param operation
+	 *            what is exported, for the file I/O event
+	 * @param file
+	 *            the file
+	 * @param content
+	 *            the statistics
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	private static void export(String operation, String file, String content) throws IOException {
+		FileIOEvent event = new FileIOEvent(operation, file);
+		byte[] bytes = content.getBytes("UTF-8");
+
+		Files.write(Paths.get(file), bytes);
+
+		event.setBytes(bytes.length);
+		event.commit();
 	}
 }
@@ -0,0 +1,151 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * A run of instructions that is always executed from the first to the last.
+ * A block ends with a BZ, BNZ, JUMP, BAL or HALT, or at the end of the program.
+ * Besides where it is in the program, a block keeps track of how often it ran,
+ * its translated code (if any), and the blocks that ran right after it. The
+ * functional simulator follows those links from one block to the next without
+ * going back to the translation cache.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class BasicBlock {
+	private final int start;
+	private final int length;
+
+	/* Translated code and the size of its class file (null and 0 if not translated) */
+	private CompiledBlock code;
+	private int codeSize;
+	private boolean translatable;
+
+	/* Times the block ran since it was last translated or evicted, and when it last ran */
+	private int executions;
+	private long lastUsed;
+
+	/* The block after the last instruction and the last block branched to */
+	private BasicBlock fallThrough;
+	private int branchAddress;
+	private BasicBlock branch;
+
+	/**
+	 * Constructs a block
+	 *
+	 * @param start
+	 *            the index of the first instruction in the program
+	 * @param length
+	 *            the amount of instructions in the block
+	 */
+	public BasicBlock(int start, int length) {
+		this.start = start;
+		this.length = length;
+		this.code = null;
+		this.codeSize = 0;
+		this.translatable = true;
+		this.executions = 0;
+		this.lastUsed = 0;
+		this.fallThrough = null;
+		this.branchAddress = 0;
+		this.branch = null;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the address of the first instruction of the block
+	 *
+	 * @return the address of the first instruction of the block
+	 */
+	public int getStartAddress() {
+		return Processor.SIZE_OF_DATA_MEMORY + (start * 4);
+	}
+
+	/**
+	 * Returns the address of the instruction right after the block
+	 *
+	 * @return the address of the instruction right after the block
+	 */
+	public int getFallThroughAddress() {
+		return Processor.SIZE_OF_DATA_MEMORY + ((start + length) * 4);
+	}
+
+	public CompiledBlock getCode() {
+		return code;
+	}
+
+	public int getCodeSize() {
+		return codeSize;
+	}
+
+	public void setCode(CompiledBlock code, int codeSize) {
+		this.code = code;
+		this.codeSize = codeSize;
+	}
+
+	public boolean isTranslatable() {
+		return translatable;
+	}
+
+	public void setTranslatable(boolean translatable) {
+		this.translatable = translatable;
+	}
+
+	public int getExecutions() {
+		return executions;
+	}
+
+	public void setExecutions(int executions) {
+		this.executions = executions;
+	}
+
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+	public void setLastUsed(long lastUsed) {
+		this.lastUsed = lastUsed;
+	}
+
+	/**
+	 * Returns the block that was linked to the address
+	 *
+	 * @param address
+	 *            the address of the instruction executed after this block
+	 * @return the linked block; null if no block is linked to the address
+	 */
+	public BasicBlock getSuccessor(int address) {
+		if (address == getFallThroughAddress()) {
+			return fallThrough;
+		} else if (branch != null && address == branchAddress) {
+			return branch;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Links the block that starts at the address to this block. Only the
+	 * fall through block and the last block branched to are remembered.
+	 *
+	 * @param address
+	 *            the address of the instruction executed after this block
+	 * @param successor
+	 *            the block that starts at the address
+	 */
+	public void link(int address, BasicBlock successor) {
+		if (address == getFallThroughAddress()) {
+			this.fallThrough = successor;
+		} else {
+			this.branchAddress = address;
+			this.branch = successor;
+		}
+	}
+}
@@ -0,0 +1,429 @@
+package org.binghamton.comparch.systems;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Translates a basic block into the class file of a class that implements
+ * CompiledBlock. Every instruction becomes a few bytecodes working directly on
+ * the register array, LOADs and STOREs call into Memory, and the block returns
+ * the address of the next instruction.
+ *
+ * The class file targets version 49. The verifier then infers the types on its
+ * own and no stack map frames have to be written for the conditional return at
+ * the end of a BZ or BNZ block. It is defined as a hidden class that is not
+ * strongly held by its class loader, so it is unloaded once the translation
+ * cache lets go of it.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class BlockCompiler {
+	private static final String PACKAGE = "org/binghamton/comparch/systems/";
+	private static final String MEMORY = PACKAGE + "Memory";
+
+	/* Class file constants */
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int MAJOR_VERSION = 49;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int MAX_STACK = 8;
+	private static final int MAX_LOCALS = 3;
+
+	/* Opcodes */
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC = 0x12;
+	private static final int LDC_W = 0x13;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ALOAD_2 = 0x2c;
+	private static final int IALOAD = 0x2e;
+	private static final int IASTORE = 0x4f;
+	private static final int IADD = 0x60;
+	private static final int ISUB = 0x64;
+	private static final int IMUL = 0x68;
+	private static final int IAND = 0x7e;
+	private static final int IOR = 0x80;
+	private static final int IXOR = 0x82;
+	private static final int IFEQ = 0x99;
+	private static final int IFNE = 0x9a;
+	private static final int IRETURN = 0xac;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+
+	/* Constant pool */
+	private final ByteArrayOutputStream constantBytes;
+	private final DataOutputStream constants;
+	private final Map<String, Integer> constantIndices;
+	private int constantCount;
+
+	/* Body of the execute method */
+	private final ByteArrayOutputStream codeBytes;
+	private final DataOutputStream code;
+
+	private BlockCompiler() {
+		this.constantBytes = new ByteArrayOutputStream();
+		this.constants = new DataOutputStream(constantBytes);
+		this.constantIndices = new HashMap<String, Integer>();
+		this.constantCount = 1;
+		this.codeBytes = new ByteArrayOutputStream();
+		this.code = new DataOutputStream(codeBytes);
+	}
+
+	/**
+	 * Translates the block into a class file
+	 *
+	 * @param program
+	 *            the program the block is part of
+	 * @param block
+	 *            the block to translate
+	 * @return the class file of a class implementing CompiledBlock
+	 */
+	public static byte[] translate(Program program, BasicBlock block) {
+		try {
+			return new BlockCompiler().writeClass(program, block);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not translate block", e);
+		}
+	}
+
+	/**
+	 * Defines the translated class and creates an instance of it
+	 *
+	 * @param classFile
+	 *            a class file returned by translate
+	 * @return the compiled block
+	 */
+	public static CompiledBlock define(byte[] classFile) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			return (CompiledBlock) lookup.lookupClass().getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Could not define translated block", e);
+		}
+	}
+
+	private byte[] writeClass(Program program, BasicBlock block) throws IOException {
+		int thisClass = classConstant(PACKAGE + "TranslatedBlock" + block.getStartAddress());
+		int superClass = classConstant("java/lang/Object");
+		int blockInterface = classConstant(PACKAGE + "CompiledBlock");
+		int codeName = utf8Constant("Code");
+
+		/* Constructor */
+		int initName = utf8Constant("<init>");
+		int initType = utf8Constant("()V");
+		int objectInit = methodConstant("java/lang/Object", "<init>", "()V");
+		byte[] initCode = { (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+				(byte) RETURN };
+
+		/* execute(int[] registers, Memory memory) */
+		int executeName = utf8Constant("execute");
+		int executeType = utf8Constant("([IL" + MEMORY + ";)I");
+		for (int i = block.getStart(); i < block.getStart() + block.getLength(); i += 1) {
+			writeInstruction(program.getInstruction(i), Processor.SIZE_OF_DATA_MEMORY + (i * 4), program.getRdest(i),
+					program.getRsrc1(i), program.getRsrc2(i));
+		}
+		if (!endsBlock(program.getInstruction(block.getStart() + block.getLength() - 1))) {
+			pushInt(block.getFallThroughAddress());
+			code.writeByte(IRETURN);
+		}
+
+		ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(classBytes);
+
+		out.writeInt(MAGIC);
+		out.writeShort(0);
+		out.writeShort(MAJOR_VERSION);
+		out.writeShort(constantCount);
+		constants.flush();
+		constantBytes.writeTo(out);
+
+		out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(blockInterface);
+		out.writeShort(0);
+
+		out.writeShort(2);
+		writeMethod(out, initName, initType, codeName, 1, 1, initCode);
+		code.flush();
+		writeMethod(out, executeName, executeType, codeName, MAX_STACK, MAX_LOCALS, codeBytes.toByteArray());
+
+		out.writeShort(0);
+		out.flush();
+
+		return classBytes.toByteArray();
+	}
+
+	private static void writeMethod(DataOutputStream out, int name, int type, int codeName, int maxStack,
+			int maxLocals, byte[] body) throws IOException {
+		out.writeShort(ACC_PUBLIC);
+		out.writeShort(name);
+		out.writeShort(type);
+		out.writeShort(1);
+
+		out.writeShort(codeName);
+		out.writeInt(12 + body.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(body.length);
+		out.write(body);
+		out.writeShort(0);
+		out.writeShort(0);
+	}
+
+	/**
+	 * Returns if the instruction ends a basic block
+	 *
+	 * @param instruction
+	 *            the instruction
+	 * @return true if the instruction is a branch or a HALT; false otherwise
+	 */
+	public static boolean endsBlock(Instruction instruction) {
+		return instruction.isBranch() || instruction.getOpCode() == InstructionType.HALT;
+	}
+
+	private void writeInstruction(Instruction instruction, int address, int rdest, int rsrc1, int rsrc2)
+			throws IOException {
+		int literal = instruction.getLiteral();
+
+		switch (instruction.getOpCode()) {
+		case ADD:
+			writeArithmetic(IADD, rdest, rsrc1, rsrc2);
+			break;
+		case SUB:
+			writeArithmetic(ISUB, rdest, rsrc1, rsrc2);
+			break;
+		case MUL:
+			writeArithmetic(IMUL, rdest, rsrc1, rsrc2);
+			break;
+		case AND:
+			writeArithmetic(IAND, rdest, rsrc1, rsrc2);
+			break;
+		case OR:
+			writeArithmetic(IOR, rdest, rsrc1, rsrc2);
+			break;
+		case XOR:
+			writeArithmetic(IXOR, rdest, rsrc1, rsrc2);
+			break;
+		case MOVC:
+			/* registers[rdest] = literal; registers[FLAG] = literal */
+			code.writeByte(ALOAD_1);
+			pushInt(rdest);
+			pushInt(literal);
+			code.writeByte(IASTORE);
+			code.writeByte(ALOAD_1);
+			pushInt(FunctionalSimulator.REGISTER_FLAG);
+			pushInt(literal);
+			code.writeByte(IASTORE);
+			break;
+		case LOAD:
+			/* registers[rdest] = memory.getValue(registers[rsrc1] + literal) */
+			code.writeByte(ALOAD_1);
+			pushInt(rdest);
+			code.writeByte(ALOAD_2);
+			pushRegister(rsrc1);
+			pushInt(literal);
+			code.writeByte(IADD);
+			code.writeByte(INVOKEVIRTUAL);
+			code.writeShort(methodConstant(MEMORY, "getValue", "(I)I"));
+			code.writeByte(IASTORE);
+			break;
+		case STORE:
+			/* memory.setValue(registers[rsrc2] + literal, registers[rsrc1]) */
+			code.writeByte(ALOAD_2);
+			pushRegister(rsrc2);
+			pushInt(literal);
+			code.writeByte(IADD);
+			pushRegister(rsrc1);
+			code.writeByte(INVOKEVIRTUAL);
+			code.writeShort(methodConstant(MEMORY, "setValue", "(II)V"));
+			break;
+		case BZ:
+			writeConditionalReturn(IFNE, address + literal, address + 4);
+			break;
+		case BNZ:
+			writeConditionalReturn(IFEQ, address + literal, address + 4);
+			break;
+		case JUMP:
+			/* return registers[rsrc1] + literal */
+			pushRegister(rsrc1);
+			pushInt(literal);
+			code.writeByte(IADD);
+			code.writeByte(IRETURN);
+			break;
+		case BAL:
+			/* The target is read before X is written, X may be the source */
+			pushRegister(rsrc1);
+			pushInt(literal);
+			code.writeByte(IADD);
+			code.writeByte(ALOAD_1);
+			pushInt(FunctionalSimulator.REGISTER_X);
+			pushInt(address + 4);
+			code.writeByte(IASTORE);
+			code.writeByte(IRETURN);
+			break;
+		case HALT:
+			pushInt(CompiledBlock.HALTED);
+			code.writeByte(IRETURN);
+			break;
+		default:
+			throw new RuntimeException("Can not translate unknown instruction");
+		}
+	}
+
+	private void writeArithmetic(int opcode, int rdest, int rsrc1, int rsrc2) throws IOException {
+		/* registers[rdest] = registers[rsrc1] op registers[rsrc2] */
+		code.writeByte(ALOAD_1);
+		pushInt(rdest);
+		pushRegister(rsrc1);
+		pushRegister(rsrc2);
+		code.writeByte(opcode);
+		code.writeByte(IASTORE);
+
+		/* registers[FLAG] = registers[rdest] */
+		code.writeByte(ALOAD_1);
+		pushInt(FunctionalSimulator.REGISTER_FLAG);
+		pushRegister(rdest);
+		code.writeByte(IASTORE);
+	}
+
+	private void writeConditionalReturn(int opcode, int target, int fallThrough) throws IOException {
+		/* if (registers[FLAG] <op> 0) return fallThrough; return target */
+		pushRegister(FunctionalSimulator.REGISTER_FLAG);
+		code.writeByte(opcode);
+		code.writeShort(3 + pushIntLength(target) + 1);
+		pushInt(target);
+		code.writeByte(IRETURN);
+		pushInt(fallThrough);
+		code.writeByte(IRETURN);
+	}
+
+	private void pushRegister(int register) throws IOException {
+		code.writeByte(ALOAD_1);
+		pushInt(register);
+		code.writeByte(IALOAD);
+	}
+
+	private void pushInt(int value) throws IOException {
+		if (value >= -1 && value <= 5) {
+			code.writeByte(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			code.writeByte(BIPUSH);
+			code.writeByte(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			code.writeByte(SIPUSH);
+			code.writeShort(value);
+		} else {
+			int index = integerConstant(value);
+
+			if (index < 256) {
+				code.writeByte(LDC);
+				code.writeByte(index);
+			} else {
+				code.writeByte(LDC_W);
+				code.writeShort(index);
+			}
+		}
+	}
+
+	private int pushIntLength(int value) {
+		if (value >= -1 && value <= 5) {
+			return 1;
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			return 2;
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			return 3;
+		}
+
+		return (integerConstant(value) < 256) ? 2 : 3;
+	}
+
+	private int utf8Constant(String value) throws IOException {
+		Integer index = constantIndices.get("Utf8 " + value);
+
+		if (index == null) {
+			constants.writeByte(CONSTANT_UTF8);
+			constants.writeUTF(value);
+			index = addConstant("Utf8 " + value);
+		}
+
+		return index;
+	}
+
+	private int classConstant(String name) throws IOException {
+		Integer index = constantIndices.get("Class " + name);
+
+		if (index == null) {
+			int nameIndex = utf8Constant(name);
+			constants.writeByte(CONSTANT_CLASS);
+			constants.writeShort(nameIndex);
+			index = addConstant("Class " + name);
+		}
+
+		return index;
+	}
+
+	private int methodConstant(String owner, String name, String type) throws IOException {
+		String key = "Method " + owner + "." + name + type;
+		Integer index = constantIndices.get(key);
+
+		if (index == null) {
+			int ownerIndex = classConstant(owner);
+			int nameIndex = utf8Constant(name);
+			int typeIndex = utf8Constant(type);
+
+			constants.writeByte(CONSTANT_NAME_AND_TYPE);
+			constants.writeShort(nameIndex);
+			constants.writeShort(typeIndex);
+			int nameAndType = addConstant("NameAndType " + name + type);
+
+			constants.writeByte(CONSTANT_METHODREF);
+			constants.writeShort(ownerIndex);
+			constants.writeShort(nameAndType);
+			index = addConstant(key);
+		}
+
+		return index;
+	}
+
+	private int integerConstant(int value) {
+		Integer index = constantIndices.get("Integer " + value);
+
+		if (index == null) {
+			try {
+				constants.writeByte(CONSTANT_INTEGER);
+				constants.writeInt(value);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not translate block", e);
+			}
+			index = addConstant("Integer " + value);
+		}
+
+		return index;
+	}
+
+	private int addConstant(String key) {
+		int index = constantCount;
+
+		constantIndices.put(key, index);
+		constantCount += 1;
+
+		return index;
+	}
+}
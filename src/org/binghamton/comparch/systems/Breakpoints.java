@@ -0,0 +1,259 @@
+package org.binghamton.comparch.systems;
+
+import java.util.Locale;
+
+/**
+ * Conditions that stop a simulation before the amount of cycles it was asked
+ * for: an instruction address committing, an amount of committed
+ * instructions, a watched memory address being written, an architectural
+ * register being committed with a value, or the IPC of a window of cycles
+ * crossing a threshold.
+ *
+ * Instruction addresses are kept in a bitmap indexed by the position of the
+ * instruction in the program, and watched addresses in a bitmap kept by the
+ * memory, so checking either is a single array load. The processor does not
+ * check anything while it has no breakpoints.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class Breakpoints {
+	private final Memory memory;
+
+	/* Instruction addresses, one bit each, null when there are none */
+	private long[] addresses;
+
+	/* Registers with a value to stop at, one bit each */
+	private int registerMask;
+	private final int[] registerValues;
+
+	/* Committed instructions to stop at, Long.MAX_VALUE when unused */
+	private long instructionLimit;
+
+	/* Windows of cycles whose IPC is checked, 0 when unused */
+	private int ipcWindow;
+	private double ipcThreshold;
+	private boolean ipcBelow;
+
+	/**
+	 * Constructs an empty set of breakpoints
+	 *
+	 * @param memory
+	 *            the memory whose writes are watched
+	 */
+	public Breakpoints(Memory memory) {
+		this.memory = memory;
+		this.registerValues = new int[Processor.NUM_OF_ARC_REGISTERS];
+		this.instructionLimit = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Stops the simulation when the instruction at the address commits
+	 *
+	 * @param address
+	 *            the address of the instruction
+	 * @throws IllegalArgumentException
+	 *             if the address is not in instruction memory or not divisible
+	 *             by four
+	 */
+	public void addBreakpoint(int address) {
+		int index = addressToIndex(address);
+
+		if (this.addresses == null || (index >> 6) >= this.addresses.length) {
+			long[] grown = new long[(index >> 6) + 1];
+			if (this.addresses != null) {
+				System.arraycopy(this.addresses, 0, grown, 0, this.addresses.length);
+			}
+			this.addresses = grown;
+		}
+		this.addresses[index >> 6] |= 1L << index;
+	}
+
+	public void removeBreakpoint(int address) {
+		int index = addressToIndex(address);
+
+		if (this.addresses != null && (index >> 6) < this.addresses.length) {
+			this.addresses[index >> 6] &= ~(1L << index);
+		}
+	}
+
+	/**
+	 * Returns if the instruction at the address has a breakpoint
+	 *
+	 * @param address
+	 *            the address of the instruction
+	 * @return true if it has a breakpoint; false otherwise
+	 */
+	public boolean isBreakpoint(int address) {
+		int index = (address - Processor.SIZE_OF_DATA_MEMORY) >> 2;
+		long[] bits = this.addresses;
+
+		return bits != null && (index >> 6) < bits.length && (bits[index >> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Stops the simulation when the address of data memory is written
+	 *
+	 * @param address
+	 *            the address
+	 * @throws IllegalArgumentException
+	 *             if the address is not in data memory or not divisible by four
+	 */
+	public void addWatchpoint(int address) {
+		memory.setWatchpoint(address, true);
+	}
+
+	public void removeWatchpoint(int address) {
+		memory.setWatchpoint(address, false);
+	}
+
+	/**
+	 * Stops the simulation when an instruction commits the value to the
+	 * architectural register
+	 *
+	 * @param register
+	 *            the architectural register
+	 * @param value
+	 *            the value
+	 * @throws IllegalArgumentException
+	 *             if there is no such register
+	 */
+	public void setRegisterCondition(int register, int value) {
+		if (register < 0 || register >= registerValues.length) {
+			throw new IllegalArgumentException("There is no register R" + register);
+		}
+
+		this.registerMask |= 1 << register;
+		this.registerValues[register] = value;
+	}
+
+	public void removeRegisterCondition(int register) {
+		if (register >= 0 && register < registerValues.length) {
+			this.registerMask &= ~(1 << register);
+		}
+	}
+
+	/**
+	 * Returns if committing the value to the register stops the simulation
+	 *
+	 * @param register
+	 *            the architectural register
+	 * @param value
+	 *            the committed value
+	 * @return true if the register has a condition on that value; false
+	 *         otherwise
+	 */
+	public boolean isRegisterCondition(int register, int value) {
+		return (registerMask & (1 << register)) != 0 && registerValues[register] == value;
+	}
+
+	/**
+	 * Stops the simulation once the processor has committed the amount of
+	 * instructions. The limit is removed when it is reached.
+	 *
+	 * @param instructions
+	 *            the total amount of committed instructions; Long.MAX_VALUE
+	 *            for no limit
+	 */
+	public void setInstructionLimit(long instructions) {
+		this.instructionLimit = instructions;
+	}
+
+	public long getInstructionLimit() {
+		return instructionLimit;
+	}
+
+	/**
+	 * Stops the simulation at the end of a window of cycles whose IPC is below
+	 * or above the threshold
+	 *
+	 * @param window
+	 *            the cycles in every window; 0 to remove the condition
+	 * @param threshold
+	 *            the IPC
+	 * @param below
+	 *            true to stop when the IPC is below the threshold; false to
+	 *            stop when it is above
+	 * @throws IllegalArgumentException
+	 *             if the window is negative
+	 */
+	public void setIPCCondition(int window, double threshold, boolean below) {
+		if (window < 0) {
+			throw new IllegalArgumentException("IPC window must not be negative");
+		}
+
+		this.ipcWindow = window;
+		this.ipcThreshold = threshold;
+		this.ipcBelow = below;
+	}
+
+	public int getIPCWindow() {
+		return ipcWindow;
+	}
+
+	/**
+	 * Returns if the IPC of a window stops the simulation
+	 *
+	 * @param ipc
+	 *            the IPC of the window
+	 * @return true if it crosses the threshold; false otherwise
+	 */
+	public boolean isIPCCondition(double ipc) {
+		return ipcBelow ? ipc < ipcThreshold : ipc > ipcThreshold;
+	}
+
+	/**
+	 * Removes every condition
+	 */
+	public void clear() {
+		this.addresses = null;
+		this.registerMask = 0;
+		this.instructionLimit = Long.MAX_VALUE;
+		this.ipcWindow = 0;
+		memory.clearWatchpoints();
+	}
+
+	private static int addressToIndex(int address) {
+		if (address < Processor.SIZE_OF_DATA_MEMORY) {
+			throw new IllegalArgumentException("Instruction address must be at least "
+					+ Processor.SIZE_OF_DATA_MEMORY);
+		} else if ((address % 4) != 0) {
+			throw new IllegalArgumentException("Instruction address must be divisible by 4");
+		}
+
+		return (address - Processor.SIZE_OF_DATA_MEMORY) / 4;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		if (addresses != null) {
+			for (int i = 0; i < addresses.length * 64; i += 1) {
+				if ((addresses[i >> 6] & (1L << i)) != 0) {
+					str.append("Break at ").append(Processor.SIZE_OF_DATA_MEMORY + (i * 4)).append('\n');
+				}
+			}
+		}
+		for (int address = 0; address < Processor.SIZE_OF_DATA_MEMORY; address += 4) {
+			if (memory.isWatched(address)) {
+				str.append("Watch ").append(address).append('\n');
+			}
+		}
+		for (int i = 0; i < registerValues.length; i += 1) {
+			if ((registerMask & (1 << i)) != 0) {
+				str.append("Break when R").append(i).append(" = ").append(registerValues[i]).append('\n');
+			}
+		}
+		if (instructionLimit != Long.MAX_VALUE) {
+			str.append("Break after ").append(instructionLimit).append(" instructions\n");
+		}
+		if (ipcWindow > 0) {
+			str.append(String.format(Locale.ROOT, "Break when the IPC of %d cycles is %s %.4f\n", ipcWindow,
+					ipcBelow ? "below" : "above", ipcThreshold));
+		}
+
+		return (str.length() == 0) ? "No breakpoints" : str.substring(0, str.length() - 1);
+	}
+}
@@ -0,0 +1,44 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * What a cycle of the CPI stack is spent on, decided by the state of the
+ * instruction at the head of the ROB.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public enum CPIComponent {
+	/* An instruction committed */
+	BASE,
+
+	/* The ROB is empty because the front end has not delivered an instruction */
+	FRONT_END,
+
+	/* The ROB is empty because it was flushed and is being refilled */
+	BRANCH_RECOVERY,
+
+	/* The head is a LOAD that read memory too early and is being replayed */
+	MEMORY_ORDER,
+
+	/* The head is in the IQ, waiting for its operands or a functional unit */
+	ISSUE_WAIT,
+
+	/* The head is executing in an ALU */
+	ALU,
+
+	/* The head is executing in a MUL unit */
+	MUL,
+
+	/* The head is executing in a branch unit */
+	BRANCH,
+
+	/* The head is computing its address or hitting in the L1 data cache */
+	LOAD_STORE,
+
+	/* The head is waiting on a cache miss or on main memory */
+	MEMORY,
+
+	/* The head could not be found in the pipeline */
+	OTHER;
+}
@@ -0,0 +1,269 @@
+package org.binghamton.comparch.systems;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Splits the cycles of a simulation into what they were spent on. Every cycle
+ * is put down to one CPIComponent: BASE if an instruction committed, else
+ * whatever kept the head of the ROB from committing. The processor commits at
+ * most one instruction a cycle, so the BASE cycles are also the amount of
+ * committed instructions, and every component divided by them is its part of
+ * the CPI.
+ *
+ * Besides the totals, the cycles are kept for every interval of a fixed
+ * amount of cycles, to show how the stack changes over the run. Only the
+ * latest MAX_INTERVALS intervals are kept, in a ring, which bounds the memory
+ * a long run takes.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class CPIStack {
+	private static final CPIComponent[] COMPONENTS = CPIComponent.values();
+
+	/** The most finished intervals kept */
+	public static final int MAX_INTERVALS = 1024;
+
+	/* Finished intervals the ring starts with, it doubles up to MAX_INTERVALS */
+	private static final int INITIAL_INTERVALS = 16;
+
+	private final int interval;
+	private final long[] cycles;
+	private long totalCycles;
+
+	/*
+	 * Ring of the finished intervals, the cycles of every component one after
+	 * another; interval i is at i % MAX_INTERVALS. Then the one being counted.
+	 */
+	private long[] intervals;
+	private int finished;
+	private final long[] current;
+	private int currentCycles;
+
+	/* The component of the last recorded cycle */
+	private CPIComponent last;
+
+	/**
+	 * Constructs a CPI stack
+	 *
+	 * @param interval
+	 *            the cycles in every interval
+	 * @throws IllegalArgumentException
+	 *             if the interval is less than one cycle
+	 */
+	public CPIStack(int interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("CPI interval must be at least one cycle");
+		}
+
+		this.interval = interval;
+		this.cycles = new long[COMPONENTS.length];
+		this.intervals = new long[INITIAL_INTERVALS * COMPONENTS.length];
+		this.current = new long[COMPONENTS.length];
+		clear();
+	}
+
+	/**
+	 * Throws away every recorded cycle
+	 */
+	public void clear() {
+		for (int i = 0; i < cycles.length; i += 1) {
+			this.cycles[i] = 0;
+		}
+		this.totalCycles = 0;
+		this.finished = 0;
+		Arrays.fill(current, 0);
+		this.currentCycles = 0;
+		this.last = CPIComponent.FRONT_END;
+	}
+
+	/**
+	 * Takes over every recorded cycle of a CPI stack with the same interval
+	 *
+	 * @param other
+	 *            the CPI stack
+	 */
+	void copyFrom(CPIStack other) {
+		System.arraycopy(other.cycles, 0, cycles, 0, cycles.length);
+		this.totalCycles = other.totalCycles;
+		if (this.intervals.length < other.intervals.length) {
+			this.intervals = new long[other.intervals.length];
+		}
+		System.arraycopy(other.intervals, 0, intervals, 0,
+				Math.min(other.finished, MAX_INTERVALS) * COMPONENTS.length);
+		this.finished = other.finished;
+		System.arraycopy(other.current, 0, current, 0, current.length);
+		this.currentCycles = other.currentCycles;
+		this.last = other.last;
+	}
+
+	/**
+	 * Records one cycle
+	 *
+	 * @param component
+	 *            what the cycle was spent on
+	 */
+	public void record(CPIComponent component) {
+		this.last = component;
+		repeat(1);
+	}
+
+	/**
+	 * Records the component of the last cycle again
+	 *
+	 * @param count
+	 *            the amount of cycles
+	 */
+	public void repeat(long count) {
+		int index = last.ordinal();
+		this.cycles[index] += count;
+		this.totalCycles += count;
+
+		/* Spread the cycles over the intervals they fall in */
+		while (count > 0) {
+			int step = (int) Math.min(count, interval - currentCycles);
+
+			this.current[index] += step;
+			this.currentCycles += step;
+			count -= step;
+
+			if (currentCycles == interval) {
+				finishInterval();
+			}
+		}
+	}
+
+	/**
+	 * Moves the current interval into the ring, over the oldest one once it
+	 * is full
+	 */
+	private void finishInterval() {
+		int slot = finished % MAX_INTERVALS;
+		if (slot * COMPONENTS.length == intervals.length) {
+			this.intervals = Arrays.copyOf(intervals, 2 * intervals.length);
+		}
+
+		System.arraycopy(current, 0, intervals, slot * COMPONENTS.length, current.length);
+		Arrays.fill(current, 0);
+		this.finished += 1;
+		this.currentCycles = 0;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	public long getTotalCycles() {
+		return totalCycles;
+	}
+
+	public long getCycles(CPIComponent component) {
+		return cycles[component.ordinal()];
+	}
+
+	/**
+	 * Returns the part of all cycles spent on the component
+	 *
+	 * @param component
+	 *            the component
+	 * @return the percentage of cycles, between 0 and 100
+	 */
+	public double getPercentage(CPIComponent component) {
+		return (totalCycles == 0) ? 0 : (100.0 * cycles[component.ordinal()]) / totalCycles;
+	}
+
+	/**
+	 * Returns the part of the CPI that comes from the component
+	 *
+	 * @param component
+	 *            the component
+	 * @return the cycles spent on the component for every committed
+	 *         instruction; 0 if nothing committed
+	 */
+	public double getCPI(CPIComponent component) {
+		long committed = cycles[CPIComponent.BASE.ordinal()];
+		return (committed == 0) ? 0 : (double) cycles[component.ordinal()] / committed;
+	}
+
+	/**
+	 * Returns the amount of intervals since the start, including those no
+	 * longer kept and the one that is not finished yet if it has any cycles
+	 *
+	 * @return the amount of intervals
+	 */
+	public int getIntervalCount() {
+		return finished + ((currentCycles > 0) ? 1 : 0);
+	}
+
+	/**
+	 * Returns the index of the oldest interval that is still kept
+	 *
+	 * @return the index of the interval, 0 until more than MAX_INTERVALS
+	 *         intervals have finished
+	 */
+	public int getFirstInterval() {
+		return Math.max(0, finished - MAX_INTERVALS);
+	}
+
+	/**
+	 * Returns the cycles spent on the component in an interval
+	 *
+	 * @param index
+	 *            the index of the interval, the first one is 0
+	 * @param component
+	 *            the component
+	 * @return the cycles in that interval
+	 * @throws IndexOutOfBoundsException
+	 *             if the interval is no longer kept or has not started
+	 */
+	public long getIntervalCycles(int index, CPIComponent component) {
+		if (index < getFirstInterval() || index >= getIntervalCount()) {
+			throw new IndexOutOfBoundsException("Interval " + index + " is not kept");
+		} else if (index == finished) {
+			return current[component.ordinal()];
+		}
+		return intervals[(index % MAX_INTERVALS) * COMPONENTS.length + component.ordinal()];
+	}
+
+	/**
+	 * Returns the stack of every interval that is kept as CSV, with a row for
+	 * every interval and a column for the cycles of every component
+	 *
+	 * @return the intervals in CSV
+	 */
+	public String toCSV() {
+		StringBuilder csv = new StringBuilder("interval,start_cycle");
+		for (CPIComponent component : COMPONENTS) {
+			csv.append(',').append(component.name());
+		}
+		csv.append('\n');
+
+		for (int i = getFirstInterval(); i < getIntervalCount(); i += 1) {
+			csv.append(i).append(',').append((long) i * interval);
+			for (CPIComponent component : COMPONENTS) {
+				csv.append(',').append(getIntervalCycles(i, component));
+			}
+			csv.append('\n');
+		}
+
+		return csv.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append(String.format(Locale.ROOT, "%-16s %12s %8s %8s\n", "Component", "Cycles", "Percent", "CPI"));
+		for (CPIComponent component : COMPONENTS) {
+			str.append(String.format(Locale.ROOT, "%-16s %12d %7.2f%% %8.4f\n", component.name(),
+					getCycles(component), getPercentage(component), getCPI(component)));
+		}
+		str.append(String.format(Locale.ROOT, "%-16s %12d %7.2f%% %8.4f", "TOTAL", totalCycles,
+				(totalCycles == 0) ? 0.0 : 100.0, (getCycles(CPIComponent.BASE) == 0) ? 0.0
+						: (double) totalCycles / getCycles(CPIComponent.BASE)));
+
+		return str.toString();
+	}
+}
@@ -0,0 +1,816 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * Models the timing of one level of a set associative cache. The cache does not
+ * hold any data, the values are always read from and written to the memory
+ * object. Instead the cache keeps track of which lines are present, which are
+ * dirty and in what order they were used so that the latency of every access
+ * can be computed. Tags are stored in primitive arrays, one slot per way, so
+ * even large caches are cheap to simulate.
+ *
+ * A miss is passed on to the next level of the hierarchy, or to memory if this
+ * is the last level. Lines are allocated on write misses if the cache is write
+ * allocate and dirty lines are written to the next level when evicted if the
+ * cache is write back.
+ *
+ * A cache with miss status holding registers (MSHRs) is non-blocking. Every
+ * outstanding miss holds an MSHR until its line is filled, so misses to
+ * different lines overlap, a later miss to a line that is already being filled
+ * merges into the existing MSHR and hits are serviced while misses are
+ * pending.
+ *
+ * Lines can also be brought in by a prefetcher. The cache tracks whether a
+ * prefetched line was used by a demand access before it was evicted, and
+ * whether the demand access had to wait for the prefetch to finish, so the
+ * usefulness of the prefetcher can be measured.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class Cache {
+	private static final int INVALID_TAG = -1;
+
+	/* Geometry */
+	private final String name;
+	private final int sets;
+	private final int associativity;
+	private final int lineSize;
+
+	/* Policies */
+	private final ReplacementPolicy policy;
+	private final boolean writeBack;
+	private final boolean writeAllocate;
+
+	/* Latencies */
+	private final int hitLatency;
+	private int memoryLatency;
+
+	/* Next level of the hierarchy, null if this level is backed by memory */
+	private final Cache next;
+
+	/* Tag store, indexed by set * associativity + way */
+	private final int[] tags;
+	private final boolean[] dirty;
+	private final boolean[] prefetched;
+
+	/* Miss status holding registers, an MSHR is busy until its fill cycle */
+	private final int[] mshrLines;
+	private final long[] mshrFillCycles;
+	private final boolean[] mshrPrefetches;
+
+	/* Replacement state */
+	private final long[] lastUsed;
+	private final int[] plruBits;
+	private long useCounter;
+
+	/* Statistics */
+	private long reads;
+	private long writes;
+	private long readMisses;
+	private long writeMisses;
+	private long writebacks;
+	private long mshrMerges;
+	private long mshrFullEvents;
+	private long missCycles;
+	private long outstandingMissSum;
+	private int maxOutstandingMisses;
+	private long prefetchesIssued;
+	private long prefetchHits;
+	private long latePrefetches;
+
+	/**
+	 * Constructs a level of the cache hierarchy
+	 *
+	 * @param name
+	 *            the name of the cache, used when printing statistics
+	 * @param size
+	 *            the capacity of the cache in bytes
+	 * @param associativity
+	 *            the amount of ways in each set
+	 * @param lineSize
+	 *            the size of a line in bytes
+	 * @param policy
+	 *            the replacement policy
+	 * @param writeBack
+	 *            true if writes are kept in the cache until the line is
+	 *            evicted; false if they are written through to the next level
+	 * @param writeAllocate
+	 *            true if a line is allocated on a write miss; false otherwise
+	 * @param hitLatency
+	 *            the amount of cycles it takes for a hit
+	 * @param next
+	 *            the next level of the hierarchy, or null if the cache is
+	 *            backed by memory
+	 * @param memoryLatency
+	 *            the amount of cycles it takes to access memory, only used if
+	 *            next is null
+	 * @param mshrs
+	 *            the amount of miss status holding registers, zero if the
+	 *            cache is blocking
+	 * @throws IllegalArgumentException
+	 *             if the geometry of the cache is not valid
+	 */
+	public Cache(String name, int size, int associativity, int lineSize, ReplacementPolicy policy, boolean writeBack,
+			boolean writeAllocate, int hitLatency, Cache next, int memoryLatency, int mshrs) {
+		if (lineSize < 4 || Integer.bitCount(lineSize) != 1) {
+			throw new IllegalArgumentException("Line size must be a power of two of at least 4 bytes");
+		} else if (associativity < 1 || associativity > 32 || Integer.bitCount(associativity) != 1) {
+			throw new IllegalArgumentException("Associativity must be a power of two no greater than 32");
+		} else if (size < lineSize * associativity || size % (lineSize * associativity) != 0) {
+			throw new IllegalArgumentException("Size must be a multiple of line size times associativity");
+		} else if (hitLatency < 1) {
+			throw new IllegalArgumentException("Hit latency must be at least one cycle");
+		} else if (mshrs < 0) {
+			throw new IllegalArgumentException("MSHR count can not be negative");
+		}
+
+		this.name = name;
+		this.sets = size / (lineSize * associativity);
+		this.associativity = associativity;
+		this.lineSize = lineSize;
+		this.policy = policy;
+		this.writeBack = writeBack;
+		this.writeAllocate = writeAllocate;
+		this.hitLatency = hitLatency;
+		this.next = next;
+		this.memoryLatency = memoryLatency;
+
+		this.tags = new int[sets * associativity];
+		this.dirty = new boolean[sets * associativity];
+		this.prefetched = new boolean[sets * associativity];
+		this.lastUsed = new long[sets * associativity];
+		this.plruBits = new int[sets];
+		this.mshrLines = new int[mshrs];
+		this.mshrFillCycles = new long[mshrs];
+		this.mshrPrefetches = new boolean[mshrs];
+
+		clear();
+	}
+
+	/**
+	 * Invalidates every line and resets the statistics
+	 */
+	public void clear() {
+		for (int i = 0; i < tags.length; i += 1) {
+			tags[i] = INVALID_TAG;
+			dirty[i] = false;
+			prefetched[i] = false;
+			lastUsed[i] = 0;
+		}
+
+		for (int i = 0; i < plruBits.length; i += 1) {
+			plruBits[i] = 0;
+		}
+
+		for (int i = 0; i < mshrLines.length; i += 1) {
+			mshrLines[i] = INVALID_TAG;
+			mshrFillCycles[i] = 0;
+			mshrPrefetches[i] = false;
+		}
+
+		this.useCounter = 0;
+		this.reads = 0;
+		this.writes = 0;
+		this.readMisses = 0;
+		this.writeMisses = 0;
+		this.writebacks = 0;
+		this.mshrMerges = 0;
+		this.mshrFullEvents = 0;
+		this.missCycles = 0;
+		this.outstandingMissSum = 0;
+		this.maxOutstandingMisses = 0;
+		this.prefetchesIssued = 0;
+		this.prefetchHits = 0;
+		this.latePrefetches = 0;
+	}
+
+	/**
+	 * Takes over the lines, MSHRs, replacement state, memory latency and
+	 * statistics of a cache with the same geometry, and those of every level
+	 * below it
+	 *
+	 * @param other
+	 *            the cache
+	 */
+	void copyFrom(Cache other) {
+		System.arraycopy(other.tags, 0, tags, 0, tags.length);
+		System.arraycopy(other.dirty, 0, dirty, 0, dirty.length);
+		System.arraycopy(other.prefetched, 0, prefetched, 0, prefetched.length);
+		System.arraycopy(other.lastUsed, 0, lastUsed, 0, lastUsed.length);
+		System.arraycopy(other.plruBits, 0, plruBits, 0, plruBits.length);
+		System.arraycopy(other.mshrLines, 0, mshrLines, 0, mshrLines.length);
+		System.arraycopy(other.mshrFillCycles, 0, mshrFillCycles, 0, mshrFillCycles.length);
+		System.arraycopy(other.mshrPrefetches, 0, mshrPrefetches, 0, mshrPrefetches.length);
+
+		this.memoryLatency = other.memoryLatency;
+		this.useCounter = other.useCounter;
+		this.reads = other.reads;
+		this.writes = other.writes;
+		this.readMisses = other.readMisses;
+		this.writeMisses = other.writeMisses;
+		this.writebacks = other.writebacks;
+		this.mshrMerges = other.mshrMerges;
+		this.mshrFullEvents = other.mshrFullEvents;
+		this.missCycles = other.missCycles;
+		this.outstandingMissSum = other.outstandingMissSum;
+		this.maxOutstandingMisses = other.maxOutstandingMisses;
+		this.prefetchesIssued = other.prefetchesIssued;
+		this.prefetchHits = other.prefetchHits;
+		this.latePrefetches = other.latePrefetches;
+
+		if (this.next != null) {
+			this.next.copyFrom(other.next);
+		}
+	}
+
+	/**
+	 * Accesses a non-blocking cache at the provided cycle. A miss allocates an
+	 * MSHR that stays busy until the line is filled, and an access to a line
+	 * that is still being filled is merged into the MSHR of that line.
+	 *
+	 * @param address
+	 *            the byte address that is accessed
+	 * @param write
+	 *            true if the access is a write; false if it is a read
+	 * @param now
+	 *            the current cycle
+	 * @return the cycle the access completes in, or -1 if the access misses
+	 *         and every MSHR is busy. In that case the cache is not changed
+	 *         and the access has to be retried.
+	 */
+	public long access(int address, boolean write, long now) {
+		int line = address / lineSize;
+
+		/* Merge into the MSHR if the line is already being filled */
+		for (int i = 0; i < mshrLines.length; i += 1) {
+			if (mshrLines[i] == line && mshrFillCycles[i] > now) {
+				/* The demand access caught up with a prefetch */
+				if (mshrPrefetches[i]) {
+					this.latePrefetches += 1;
+					mshrPrefetches[i] = false;
+					clearPrefetched(line);
+				}
+
+				if (isPresent(line)) {
+					access(address, write);
+				} else {
+					/* The line was evicted before it arrived, wait for the fill without fetching it again */
+					if (write) {
+						this.writes += 1;
+						if (!writeBack) {
+							writeThrough(address);
+						}
+					} else {
+						this.reads += 1;
+					}
+				}
+
+				/* The line is not there yet, count the access as a miss */
+				this.mshrMerges += 1;
+				if (write) {
+					this.writeMisses += 1;
+				} else {
+					this.readMisses += 1;
+				}
+
+				return Math.max(mshrFillCycles[i], now + hitLatency);
+			}
+		}
+
+		/* A miss needs a free MSHR */
+		int free = -1;
+		if (!isPresent(line)) {
+			for (int i = 0; i < mshrLines.length && free == -1; i += 1) {
+				if (mshrFillCycles[i] <= now) {
+					free = i;
+				}
+			}
+
+			if (free == -1) {
+				this.mshrFullEvents += 1;
+				return -1;
+			}
+		}
+
+		int latency = access(address, write);
+
+		/* Hold the MSHR until the line arrives */
+		if (free != -1 && isPresent(line)) {
+			mshrLines[free] = line;
+			mshrFillCycles[free] = now + latency;
+			mshrPrefetches[free] = false;
+		}
+
+		return now + latency;
+	}
+
+	/**
+	 * Brings the line holding the address into the cache on behalf of a
+	 * prefetcher. The prefetch is dropped if the line is already present or
+	 * being filled, or if every MSHR is busy. A cache without MSHRs fills the
+	 * line right away.
+	 *
+	 * @param address
+	 *            the byte address to prefetch
+	 * @param now
+	 *            the current cycle
+	 * @return true if the prefetch was issued; false if it was dropped
+	 */
+	public boolean prefetch(int address, long now) {
+		if (address < 0) {
+			return false;
+		}
+
+		int line = address / lineSize;
+		if (isPresent(line)) {
+			return false;
+		}
+
+		int free = -1;
+		if (mshrLines.length > 0) {
+			for (int i = 0; i < mshrLines.length && free == -1; i += 1) {
+				if (mshrFillCycles[i] <= now) {
+					free = i;
+				}
+			}
+
+			if (free == -1) {
+				return false;
+			}
+		}
+
+		int latency = hitLatency + nextLevelLatency(address, false);
+		int set = line % sets;
+		int base = set * associativity;
+		int way = victim(set);
+
+		/* Write the victim back if it holds modified data */
+		if (tags[base + way] != INVALID_TAG && dirty[base + way]) {
+			this.writebacks += 1;
+			writeThrough((tags[base + way] * sets + set) * lineSize);
+		}
+
+		/* Fill the line */
+		tags[base + way] = line / sets;
+		dirty[base + way] = false;
+		prefetched[base + way] = true;
+		touch(set, way);
+
+		if (free != -1) {
+			mshrLines[free] = line;
+			mshrFillCycles[free] = now + latency;
+			mshrPrefetches[free] = true;
+		}
+
+		this.prefetchesIssued += 1;
+		return true;
+	}
+
+	private void clearPrefetched(int line) {
+		int set = line % sets;
+		int tag = line / sets;
+		int base = set * associativity;
+
+		for (int way = 0; way < associativity; way += 1) {
+			if (tags[base + way] == tag) {
+				prefetched[base + way] = false;
+			}
+		}
+	}
+
+	/**
+	 * Records how many misses are outstanding in the provided cycle. This
+	 * should be called once every cycle to measure memory level parallelism.
+	 *
+	 * @param now
+	 *            the current cycle
+	 */
+	public void sample(long now) {
+		int outstanding = getOutstandingMisses(now);
+
+		if (outstanding > 0) {
+			this.missCycles += 1;
+			this.outstandingMissSum += outstanding;
+			this.maxOutstandingMisses = Math.max(this.maxOutstandingMisses, outstanding);
+		}
+	}
+
+	/**
+	 * Records how many misses are outstanding in every cycle of a range of
+	 * cycles in which the cache is not accessed. Gives the same result as
+	 * calling {@link #sample(long)} for every cycle of the range.
+	 *
+	 * @param from
+	 *            the first cycle of the range
+	 * @param to
+	 *            the last cycle of the range
+	 */
+	public void sample(long from, long to) {
+		long lastFill = 0;
+
+		for (int i = 0; i < mshrFillCycles.length; i += 1) {
+			/* The MSHR is outstanding in every cycle before its fill cycle */
+			long cycles = Math.min(to, mshrFillCycles[i] - 1) - from + 1;
+
+			if (cycles > 0) {
+				this.outstandingMissSum += cycles;
+				lastFill = Math.max(lastFill, mshrFillCycles[i]);
+			}
+		}
+
+		if (lastFill > 0) {
+			this.missCycles += Math.min(to, lastFill - 1) - from + 1;
+			this.maxOutstandingMisses = Math.max(this.maxOutstandingMisses, getOutstandingMisses(from));
+		}
+	}
+
+	/**
+	 * Returns the first cycle, after the provided one, in which one of the
+	 * MSHRs is filled and becomes free
+	 *
+	 * @param now
+	 *            the current cycle
+	 * @return the next fill cycle; Long.MAX_VALUE if no miss is outstanding
+	 */
+	public long getNextFillCycle(long now) {
+		long next = Long.MAX_VALUE;
+
+		for (int i = 0; i < mshrFillCycles.length; i += 1) {
+			if (mshrFillCycles[i] > now) {
+				next = Math.min(next, mshrFillCycles[i]);
+			}
+		}
+
+		return next;
+	}
+
+	/**
+	 * Counts accesses that found every MSHR busy in cycles that were not
+	 * simulated one at a time
+	 *
+	 * @param events
+	 *            the amount of accesses that had to be retried
+	 */
+	public void recordMSHRFullEvents(long events) {
+		this.mshrFullEvents += events;
+	}
+
+	/**
+	 * Returns the amount of MSHRs that are waiting on a fill
+	 *
+	 * @param now
+	 *            the current cycle
+	 * @return the amount of outstanding misses
+	 */
+	public int getOutstandingMisses(long now) {
+		int outstanding = 0;
+
+		for (int i = 0; i < mshrFillCycles.length; i += 1) {
+			if (mshrFillCycles[i] > now) {
+				outstanding += 1;
+			}
+		}
+
+		return outstanding;
+	}
+
+	private boolean isPresent(int line) {
+		int set = line % sets;
+		int tag = line / sets;
+		int base = set * associativity;
+
+		for (int way = 0; way < associativity; way += 1) {
+			if (tags[base + way] == tag) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Accesses the cache and returns the amount of cycles the access takes.
+	 * The state of this level and any lower levels is updated as if the access
+	 * had completed.
+	 *
+	 * @param address
+	 *            the byte address that is accessed
+	 * @param write
+	 *            true if the access is a write; false if it is a read
+	 * @return the latency of the access in cycles
+	 */
+	public int access(int address, boolean write) {
+		int line = address / lineSize;
+		int set = line % sets;
+		int tag = line / sets;
+		int base = set * associativity;
+
+		if (write) {
+			this.writes += 1;
+		} else {
+			this.reads += 1;
+		}
+
+		/* Look for the line */
+		for (int way = 0; way < associativity; way += 1) {
+			if (tags[base + way] == tag) {
+				touch(set, way);
+
+				/* First use of a prefetched line */
+				if (prefetched[base + way]) {
+					this.prefetchHits += 1;
+					prefetched[base + way] = false;
+				}
+
+				if (write) {
+					if (writeBack) {
+						dirty[base + way] = true;
+					} else {
+						writeThrough(address);
+					}
+				}
+
+				return hitLatency;
+			}
+		}
+
+		/* Miss */
+		if (write) {
+			this.writeMisses += 1;
+
+			if (!writeAllocate) {
+				return hitLatency + nextLevelLatency(address, true);
+			}
+		} else {
+			this.readMisses += 1;
+		}
+
+		int latency = hitLatency + nextLevelLatency(address, false);
+		int way = victim(set);
+
+		/* Write the victim back if it holds modified data */
+		if (tags[base + way] != INVALID_TAG && dirty[base + way]) {
+			this.writebacks += 1;
+			writeThrough((tags[base + way] * sets + set) * lineSize);
+		}
+
+		/* Fill the line */
+		tags[base + way] = tag;
+		dirty[base + way] = write && writeBack;
+		prefetched[base + way] = false;
+		touch(set, way);
+
+		if (write && !writeBack) {
+			writeThrough(address);
+		}
+
+		return latency;
+	}
+
+	private int nextLevelLatency(int address, boolean write) {
+		if (next == null) {
+			return memoryLatency;
+		} else {
+			return next.access(address, write);
+		}
+	}
+
+	private void writeThrough(int address) {
+		/* Writes to the next level are buffered and do not add latency */
+		if (next != null) {
+			next.access(address, true);
+		}
+	}
+
+	private void touch(int set, int way) {
+		this.useCounter += 1;
+		lastUsed[set * associativity + way] = useCounter;
+
+		/* Point every node on the path away from the used way */
+		int bits = plruBits[set];
+		int node = 1;
+		for (int level = Integer.numberOfTrailingZeros(associativity) - 1; level >= 0; level -= 1) {
+			int direction = (way >> level) & 1;
+
+			if (direction == 0) {
+				bits |= (1 << node);
+			} else {
+				bits &= ~(1 << node);
+			}
+
+			node = node * 2 + direction;
+		}
+		plruBits[set] = bits;
+	}
+
+	private int victim(int set) {
+		int base = set * associativity;
+
+		/* Prefer an invalid way */
+		for (int way = 0; way < associativity; way += 1) {
+			if (tags[base + way] == INVALID_TAG) {
+				return way;
+			}
+		}
+
+		switch (policy) {
+		case LRU:
+			int oldest = 0;
+			for (int way = 1; way < associativity; way += 1) {
+				if (lastUsed[base + way] < lastUsed[base + oldest]) {
+					oldest = way;
+				}
+			}
+			return oldest;
+		case PLRU:
+			/* Follow the tree towards the pseudo least recently used way */
+			int bits = plruBits[set];
+			int node = 1;
+			int way = 0;
+			for (int level = Integer.numberOfTrailingZeros(associativity) - 1; level >= 0; level -= 1) {
+				int direction = (bits >> node) & 1;
+				way = way * 2 + direction;
+				node = node * 2 + direction;
+			}
+			return way;
+		default:
+			throw new RuntimeException("Unknown replacement policy");
+		}
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public Cache getNext() {
+		return this.next;
+	}
+
+	public int getLineSize() {
+		return this.lineSize;
+	}
+
+	public int getHitLatency() {
+		return this.hitLatency;
+	}
+
+	public int getMemoryLatency() {
+		return this.memoryLatency;
+	}
+
+	/**
+	 * Changes the cycles it takes to access memory, for the misses that start
+	 * from now on. Every level of the hierarchy is changed.
+	 *
+	 * @param memoryLatency
+	 *            the amount of cycles
+	 */
+	public void setMemoryLatency(int memoryLatency) {
+		this.memoryLatency = memoryLatency;
+		if (this.next != null) {
+			this.next.setMemoryLatency(memoryLatency);
+		}
+	}
+
+	public int getMSHRCount() {
+		return this.mshrLines.length;
+	}
+
+	public long getMSHRMerges() {
+		return this.mshrMerges;
+	}
+
+	public long getMSHRFullEvents() {
+		return this.mshrFullEvents;
+	}
+
+	public int getMaxOutstandingMisses() {
+		return this.maxOutstandingMisses;
+	}
+
+	/**
+	 * Returns the average amount of outstanding misses over the cycles that
+	 * had at least one outstanding miss
+	 *
+	 * @return the memory level parallelism, or zero if there were no misses
+	 */
+	public double getMemoryLevelParallelism() {
+		if (this.missCycles == 0) {
+			return 0.0;
+		}
+
+		return (double) this.outstandingMissSum / (double) this.missCycles;
+	}
+
+	public long getAccesses() {
+		return this.reads + this.writes;
+	}
+
+	public long getMisses() {
+		return this.readMisses + this.writeMisses;
+	}
+
+	public long getHits() {
+		return getAccesses() - getMisses();
+	}
+
+	public long getReadMisses() {
+		return this.readMisses;
+	}
+
+	public long getWriteMisses() {
+		return this.writeMisses;
+	}
+
+	public long getWritebacks() {
+		return this.writebacks;
+	}
+
+	/**
+	 * Returns the fraction of accesses that hit in this cache
+	 *
+	 * @return the hit rate, or zero if the cache has not been accessed
+	 */
+	public double getHitRate() {
+		if (getAccesses() == 0) {
+			return 0.0;
+		}
+
+		return (double) getHits() / (double) getAccesses();
+	}
+
+	/**
+	 * Returns the misses per thousand committed instructions
+	 *
+	 * @param instructions
+	 *            the amount of instructions that were committed
+	 * @return the misses per thousand instructions
+	 */
+	public double getMPKI(long instructions) {
+		if (instructions == 0) {
+			return 0.0;
+		}
+
+		return (double) getMisses() * 1000.0 / (double) instructions;
+	}
+
+	public long getPrefetchesIssued() {
+		return this.prefetchesIssued;
+	}
+
+	public long getPrefetchHits() {
+		return this.prefetchHits;
+	}
+
+	public long getLatePrefetches() {
+		return this.latePrefetches;
+	}
+
+	/**
+	 * Returns the fraction of misses the prefetcher turned into hits
+	 *
+	 * @return the prefetch coverage, or zero if there were no misses
+	 */
+	public double getPrefetchCoverage() {
+		if (this.prefetchHits + getMisses() == 0) {
+			return 0.0;
+		}
+
+		return (double) this.prefetchHits / (double) (this.prefetchHits + getMisses());
+	}
+
+	/**
+	 * Returns the fraction of prefetches that were used by a demand access,
+	 * whether or not they arrived in time
+	 *
+	 * @return the prefetch accuracy, or zero if nothing was prefetched
+	 */
+	public double getPrefetchAccuracy() {
+		if (this.prefetchesIssued == 0) {
+			return 0.0;
+		}
+
+		return (double) (this.prefetchHits + this.latePrefetches) / (double) this.prefetchesIssued;
+	}
+
+	/**
+	 * Returns the fraction of used prefetches that arrived before the demand
+	 * access needed them
+	 *
+	 * @return the prefetch timeliness, or zero if no prefetch was used
+	 */
+	public double getPrefetchTimeliness() {
+		if (this.prefetchHits + this.latePrefetches == 0) {
+			return 0.0;
+		}
+
+		return (double) this.prefetchHits / (double) (this.prefetchHits + this.latePrefetches);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d sets, %d-way, %dB lines, %s", this.name, this.sets, this.associativity,
+				this.lineSize, this.policy);
+	}
+}
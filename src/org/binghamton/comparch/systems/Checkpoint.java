@@ -0,0 +1,70 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * The architectural state of a program at some instruction: the general
+ * purpose registers, the special register X, the value BZ and BNZ test, the
+ * program counter and an image of data memory. It is taken by the functional
+ * simulator and a processor can start from it instead of from the beginning
+ * of the program, with an empty pipeline, cold caches and an untrained
+ * predictor.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class Checkpoint {
+	private final int[] registers;
+	private final int flag;
+	private final int pc;
+	private final long instructions;
+	private final Memory.Image memory;
+
+	/**
+	 * Constructs a checkpoint
+	 *
+	 * @param registers
+	 *            R0 to R15 followed by X
+	 * @param flag
+	 *            the value BZ and BNZ test
+	 * @param pc
+	 *            the address of the next instruction
+	 * @param instructions
+	 *            the amount of instructions executed before the checkpoint
+	 * @param memory
+	 *            the image of data memory
+	 */
+	Checkpoint(int[] registers, int flag, int pc, long instructions, Memory.Image memory) {
+		this.registers = registers;
+		this.flag = flag;
+		this.pc = pc;
+		this.instructions = instructions;
+		this.memory = memory;
+	}
+
+	/**
+	 * Returns the value of an architectural register
+	 *
+	 * @param register
+	 *            the index of the register, Program.REGISTER_X for X
+	 * @return the value of the register
+	 */
+	public int getRegister(int register) {
+		return registers[register];
+	}
+
+	public int getFlag() {
+		return flag;
+	}
+
+	public int getPc() {
+		return pc;
+	}
+
+	public long getInstructions() {
+		return instructions;
+	}
+
+	Memory.Image getMemory() {
+		return memory;
+	}
+}
@@ -0,0 +1,28 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * A basic block that has been translated into JVM bytecode. Running it has the
+ * same effect on the architectural state as executing every instruction of the
+ * block, one after another, in the functional simulator.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public interface CompiledBlock {
+	/* Returned instead of an address when the block ends with a HALT */
+	public static final int HALTED = -1;
+
+	/**
+	 * Executes every instruction of the block
+	 *
+	 * @param registers
+	 *            the architectural registers, indexed the same way as in the
+	 *            functional simulator
+	 * @param memory
+	 *            the data memory
+	 * @return the address of the next instruction to execute; HALTED if the
+	 *         block ended with a HALT
+	 */
+	public int execute(int[] registers, Memory memory);
+}
@@ -8,6 +8,10 @@ public class DecodedInstruction {
 	private int literal;
 
 	public DecodedInstruction(InstructionType opCode, Register rdest, Register rsrc1, Register rsrc2, int literal) {
+		set(opCode, rdest, rsrc1, rsrc2, literal);
+	}
+
+	public void set(InstructionType opCode, Register rdest, Register rsrc1, Register rsrc2, int literal) {
 		this.opCode = opCode;
 		this.rdest = rdest;
 		this.rsrc1 = rsrc1;
@@ -15,6 +19,19 @@ public class DecodedInstruction {
 		this.literal = literal;
 	}
 
+	/**
+	 * Takes over another decoded instruction, with its registers replaced by
+	 * those that stand for them
+	 * 
+	 * @param other
+	 *            the decoded instruction
+	 * @param map
+	 *            the registers that stand for those of the other instruction
+	 */
+	void copyFrom(DecodedInstruction other, StateMap map) {
+		set(other.opCode, map.map(other.rdest), map.map(other.rsrc1), map.map(other.rsrc2), other.literal);
+	}
+
 	public InstructionType getOpCode() {
 		return opCode;
 	}
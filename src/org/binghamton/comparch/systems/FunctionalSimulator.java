@@ -0,0 +1,336 @@
+package org.binghamton.comparch.systems;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Executes a program without modeling the pipeline. Only the architectural
+ * state is kept: the general purpose registers, the special register X, the
+ * value BZ and BNZ test (the result of the last arithmetic instruction), the
+ * program counter and data memory. Instructions take effect one after another
+ * in program order, so after the same amount of instructions this state matches
+ * the committed state of the Processor.
+ *
+ * The program is run block by block. Blocks that run often are translated into
+ * bytecode by the translation cache, and a block remembers which block ran
+ * after it so the next block is usually found without a lookup.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class FunctionalSimulator {
+	/* Indices into the register array besides R0 to R15 */
+	public static final int REGISTER_X = Program.REGISTER_X;
+	public static final int REGISTER_FLAG = Processor.NUM_OF_ARC_REGISTERS + 1;
+	public static final int NUM_OF_REGISTERS = Processor.NUM_OF_ARC_REGISTERS + 2;
+
+	/* Architectural state */
+	private final int[] registers;
+	private final Memory memory;
+	private int pc;
+	private boolean halted;
+	private long instructionsExecuted;
+
+	/* The program being executed */
+	private Program program;
+
+	/* Translated blocks */
+	private final TranslationCache translationCache;
+	private boolean translationEnabled;
+
+	public FunctionalSimulator() {
+		this(TranslationCache.DEFAULT_CODE_BUDGET, TranslationCache.DEFAULT_HOT_THRESHOLD);
+	}
+
+	/**
+	 * Constructs a functional simulator
+	 *
+	 * @param codeBudget
+	 *            the most bytes of class file the translation cache may hold
+	 * @param hotThreshold
+	 *            the amount of times a block has to run before it is translated
+	 */
+	public FunctionalSimulator(int codeBudget, int hotThreshold) {
+		this.registers = new int[NUM_OF_REGISTERS];
+		this.memory = new Memory(Processor.SIZE_OF_DATA_MEMORY);
+		this.translationCache = new TranslationCache(codeBudget, hotThreshold);
+		this.translationEnabled = true;
+		this.program = new Program(new Instruction[0], new int[0], new int[0], new int[0]);
+	}
+
+	/**
+	 * Loads the list of instructions, sets the program counter to the
+	 * beginning of program memory and clears the registers and data memory.
+	 *
+	 * @param instructions
+	 *            a list of instructions, in program order
+	 */
+	public void initialize(List<Instruction> instructions) {
+		initialize(new Program(instructions));
+	}
+
+	/**
+	 * Loads the program and resets the simulator, the same way as
+	 * initialize(List) does.
+	 *
+	 * @param program
+	 *            the program to execute
+	 */
+	public void initialize(Program program) {
+		this.program = program;
+		this.translationCache.load(program);
+
+		for (int i = 0; i < registers.length; i += 1) {
+			registers[i] = 0;
+		}
+		this.memory.load(program);
+		this.pc = Processor.SIZE_OF_DATA_MEMORY;
+		this.halted = false;
+		this.instructionsExecuted = 0;
+	}
+
+	/**
+	 * Executes instructions until the amount of instructions has been executed,
+	 * a HALT is executed or the program counter leaves the program.
+	 *
+	 * @param instructions
+	 *            the most instructions to execute
+	 * @return true if a HALT was executed; false otherwise
+	 */
+	public boolean run(long instructions) {
+		long end = this.instructionsExecuted + instructions;
+		BasicBlock block = null;
+
+		while (!halted && this.instructionsExecuted < end) {
+			int index = getIndex(this.pc);
+
+			if (index < 0 || index >= program.size()) {
+				break;
+			}
+
+			if (!translationEnabled) {
+				step();
+				continue;
+			}
+
+			if (block == null) {
+				block = translationCache.getBlock(index);
+			}
+
+			/* Don't go past the amount of instructions asked for */
+			if ((end - this.instructionsExecuted) < block.getLength()) {
+				step();
+				block = null;
+				continue;
+			}
+
+			CompiledBlock code = translationCache.enter(block);
+			if (code != null) {
+				int next = code.execute(registers, memory);
+
+				this.instructionsExecuted += block.getLength();
+				if (next == CompiledBlock.HALTED) {
+					this.halted = true;
+					this.pc = block.getFallThroughAddress();
+				} else {
+					this.pc = next;
+				}
+			} else {
+				for (int i = 0; i < block.getLength(); i += 1) {
+					step();
+				}
+			}
+
+			/* Follow the link to the next block, or make one */
+			BasicBlock next = block.getSuccessor(this.pc);
+			if (next == null) {
+				int nextIndex = getIndex(this.pc);
+
+				if (!halted && nextIndex >= 0 && nextIndex < program.size()) {
+					next = translationCache.getBlock(nextIndex);
+					block.link(this.pc, next);
+				}
+			}
+			block = next;
+		}
+
+		return halted;
+	}
+
+	/**
+	 * Executes the instruction the program counter points to
+	 *
+	 * @throws RuntimeException
+	 *             if the program counter is outside the program
+	 */
+	public void step() {
+		int index = getIndex(this.pc);
+
+		if (index < 0 || index >= program.size()) {
+			throw new RuntimeException("Program counter is outside the program");
+		}
+
+		Instruction current = program.getInstruction(index);
+		int rdest = program.getRdest(index);
+		int rsrc1 = program.getRsrc1(index);
+		int rsrc2 = program.getRsrc2(index);
+		int literal = current.getLiteral();
+		int next = this.pc + 4;
+
+		switch (current.getOpCode()) {
+		case ADD:
+			setResult(rdest, registers[rsrc1] + registers[rsrc2]);
+			break;
+		case SUB:
+			setResult(rdest, registers[rsrc1] - registers[rsrc2]);
+			break;
+		case MUL:
+			setResult(rdest, registers[rsrc1] * registers[rsrc2]);
+			break;
+		case AND:
+			setResult(rdest, registers[rsrc1] & registers[rsrc2]);
+			break;
+		case OR:
+			setResult(rdest, registers[rsrc1] | registers[rsrc2]);
+			break;
+		case XOR:
+			setResult(rdest, registers[rsrc1] ^ registers[rsrc2]);
+			break;
+		case MOVC:
+			setResult(rdest, literal);
+			break;
+		case LOAD:
+			registers[rdest] = memory.getValue(registers[rsrc1] + literal);
+			break;
+		case STORE:
+			memory.setValue(registers[rsrc2] + literal, registers[rsrc1]);
+			break;
+		case BZ:
+			if (registers[REGISTER_FLAG] == 0) {
+				next = this.pc + literal;
+			}
+			break;
+		case BNZ:
+			if (registers[REGISTER_FLAG] != 0) {
+				next = this.pc + literal;
+			}
+			break;
+		case JUMP:
+			next = registers[rsrc1] + literal;
+			break;
+		case BAL:
+			/* The target is read before X is written, X may be the source */
+			next = registers[rsrc1] + literal;
+			registers[REGISTER_X] = this.pc + 4;
+			break;
+		case HALT:
+			this.halted = true;
+			break;
+		default:
+			throw new RuntimeException("Can not execute unknown instruction");
+		}
+
+		this.pc = next;
+		this.instructionsExecuted += 1;
+	}
+
+	/* Arithmetic results also become the value BZ and BNZ test */
+	private void setResult(int register, int value) {
+		registers[register] = value;
+		registers[REGISTER_FLAG] = value;
+	}
+
+	private int getIndex(int address) {
+		if (address < Processor.SIZE_OF_DATA_MEMORY || (address % 4) != 0) {
+			return -1;
+		}
+
+		return (address - Processor.SIZE_OF_DATA_MEMORY) / 4;
+	}
+
+	/**
+	 * Returns the value of an architectural register
+	 *
+	 * @param register
+	 *            the index of the register, REGISTER_X for X
+	 * @return the value of the register
+	 */
+	public int getRegister(int register) {
+		return registers[register];
+	}
+
+	/**
+	 * Returns the value BZ and BNZ test, the result of the last arithmetic
+	 * instruction
+	 *
+	 * @return the value BZ and BNZ test
+	 */
+	public int getFlag() {
+		return registers[REGISTER_FLAG];
+	}
+
+	public int getPc() {
+		return pc;
+	}
+
+	public boolean isHalted() {
+		return halted;
+	}
+
+	public long getInstructionsExecuted() {
+		return instructionsExecuted;
+	}
+
+	public Memory getMemory() {
+		return memory;
+	}
+
+	/**
+	 * Takes a checkpoint of the architectural state. The memory pages are
+	 * shared with the checkpoint until they are written.
+	 *
+	 * @return the checkpoint
+	 */
+	public Checkpoint checkpoint() {
+		return new Checkpoint(Arrays.copyOf(registers, REGISTER_X + 1), registers[REGISTER_FLAG], pc,
+				instructionsExecuted, memory.capture());
+	}
+
+	public TranslationCache getTranslationCache() {
+		return translationCache;
+	}
+
+	public boolean isTranslationEnabled() {
+		return translationEnabled;
+	}
+
+	public void setTranslationEnabled(boolean translationEnabled) {
+		this.translationEnabled = translationEnabled;
+	}
+
+	@Override
+	public String toString() {
+		String str = "";
+
+		str += String.format("PC: %d%s\n", this.pc, this.halted ? " (Halted)" : "");
+		str += String.format("Instructions Executed: %d\n", this.instructionsExecuted);
+
+		str += "- Registers\n";
+		for (int i = 0; i < Processor.NUM_OF_ARC_REGISTERS; i += 1) {
+			str += String.format("%3s: %d\n", "R" + i, registers[i]);
+		}
+		str += String.format("%3s: %d\n", "X", registers[REGISTER_X]);
+		str += String.format("%3s: %d\n", "Z", registers[REGISTER_FLAG]);
+
+		str += "- Translation Cache\n";
+		str += String.format("Blocks Translated: %d (%d Evicted)\n", translationCache.getBlocksTranslated(),
+				translationCache.getBlocksEvicted());
+		str += String.format("Translated Code: %d/%d bytes\n", translationCache.getCodeSize(),
+				translationCache.getCodeBudget());
+		str += String.format("Block Executions: %d translated, %d interpreted\n",
+				translationCache.getTranslatedExecutions(), translationCache.getInterpretedExecutions());
+
+		return str;
+	}
+}
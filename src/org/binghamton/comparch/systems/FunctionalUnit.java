@@ -0,0 +1,282 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * A functional unit made out of a fixed amount of execution stages followed by
+ * a writeback latch. Every cycle the entries move one stage forward and the
+ * entry leaving the last execution stage goes into the writeback latch. A
+ * pipelined unit can accept a new entry every cycle, a unit that is not
+ * pipelined only accepts a new entry once all of its stages are empty.
+ *
+ * The last execution stage can take more than one cycle, for example when a
+ * memory access misses in the cache. While it is busy the whole unit holds and
+ * nothing is written back. An entry can also be deferred, which lets it leave
+ * the last stage without going through the writeback latch.
+ *
+ * The unit only keeps track of where entries are. What each stage does is up to
+ * the processor.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class FunctionalUnit {
+	private final String name;
+	private final boolean pipelined;
+
+	/* Execution stages and the values computed in them */
+	private final IQEntry[] stages;
+	private final int[] results;
+
+	/* Writeback latch */
+	private IQEntry wbEntry;
+	private int wbResult;
+
+	/* State of the last execution stage */
+	private int lastStageCycles;
+	private boolean lastStageStarted;
+	private boolean lastStageDeferred;
+	private boolean stalled;
+
+	/**
+	 * Constructs a functional unit
+	 *
+	 * @param name
+	 *            the name of the unit, used as the prefix of the stage names
+	 * @param latency
+	 *            the amount of execution stages
+	 * @param pipelined
+	 *            true if a new entry can be accepted every cycle; false if the
+	 *            unit has to be empty to accept an entry
+	 * @throws IllegalArgumentException
+	 *             if the latency is less than one
+	 */
+	public FunctionalUnit(String name, int latency, boolean pipelined) {
+		if (latency < 1) {
+			throw new IllegalArgumentException("Functional unit latency must be at least one cycle");
+		}
+
+		this.name = name;
+		this.pipelined = pipelined;
+		this.stages = new IQEntry[latency];
+		this.results = new int[latency];
+
+		clear();
+	}
+
+	/**
+	 * Removes every entry from the unit
+	 */
+	public void clear() {
+		for (int i = 0; i < stages.length; i += 1) {
+			stages[i] = null;
+			results[i] = 0;
+		}
+
+		this.wbEntry = null;
+		this.wbResult = 0;
+		this.lastStageCycles = 0;
+		this.lastStageStarted = false;
+		this.lastStageDeferred = false;
+		this.stalled = false;
+	}
+
+	/**
+	 * Takes over the stages and the writeback latch of a unit of the same
+	 * latency
+	 *
+	 * @param other
+	 *            the unit
+	 * @param map
+	 *            the IQ entries that stand for those in the other unit
+	 */
+	void copyFrom(FunctionalUnit other, StateMap map) {
+		for (int i = 0; i < stages.length; i += 1) {
+			stages[i] = map.map(other.stages[i]);
+			results[i] = other.results[i];
+		}
+
+		this.wbEntry = map.map(other.wbEntry);
+		this.wbResult = other.wbResult;
+		this.lastStageCycles = other.lastStageCycles;
+		this.lastStageStarted = other.lastStageStarted;
+		this.lastStageDeferred = other.lastStageDeferred;
+		this.stalled = other.stalled;
+	}
+
+	/**
+	 * Moves every entry one stage forward, unless the last stage is still
+	 * busy. This should be called once at the start of every cycle.
+	 *
+	 * @return true if an entry moved or left the writeback latch; false if
+	 *         the unit did not change
+	 */
+	public boolean advance() {
+		int last = stages.length - 1;
+		boolean moved = (wbEntry != null);
+
+		this.stalled = (stages[last] != null) && (lastStageCycles > 0);
+		if (stalled) {
+			this.wbEntry = null;
+			return moved;
+		}
+
+		moved = moved || !isEmpty();
+
+		this.wbEntry = lastStageDeferred ? null : stages[last];
+		this.wbResult = results[last];
+
+		for (int i = last; i > 0; i -= 1) {
+			stages[i] = stages[i - 1];
+			results[i] = results[i - 1];
+		}
+		stages[0] = null;
+
+		this.lastStageStarted = false;
+		this.lastStageDeferred = false;
+
+		return moved;
+	}
+
+	/**
+	 * Returns if an entry can be issued to the unit this cycle
+	 *
+	 * @return true if the unit can accept an entry; false otherwise
+	 */
+	public boolean canAccept() {
+		if (pipelined) {
+			return stages[0] == null;
+		}
+
+		return isEmpty();
+	}
+
+	/**
+	 * Places the issued entry into the first execution stage
+	 *
+	 * @param entry
+	 *            the issued entry
+	 * @throws RuntimeException
+	 *             if the unit can not accept an entry
+	 */
+	public void accept(IQEntry entry) {
+		if (!canAccept()) {
+			throw new RuntimeException("Functional unit " + name + " is busy");
+		}
+
+		stages[0] = entry;
+	}
+
+	/**
+	 * Returns if there is no entry in any of the execution stages
+	 *
+	 * @return true if the execution stages are empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		for (int i = 0; i < stages.length; i += 1) {
+			if (stages[i] != null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns if the entry is in one of the execution stages or waiting for
+	 * writeback
+	 *
+	 * @param entry
+	 *            the entry to look for
+	 * @return true if the entry is in the unit; false otherwise
+	 */
+	public boolean contains(IQEntry entry) {
+		if (wbEntry == entry) {
+			return true;
+		}
+
+		for (int i = 0; i < stages.length; i += 1) {
+			if (stages[i] == entry) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getLatency() {
+		return stages.length;
+	}
+
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	public IQEntry getStage(int stage) {
+		return stages[stage];
+	}
+
+	public IQEntry getLastStage() {
+		return stages[stages.length - 1];
+	}
+
+	public int getResult(int stage) {
+		return results[stage];
+	}
+
+	public void setResult(int stage, int result) {
+		results[stage] = result;
+	}
+
+	public IQEntry getWBEntry() {
+		return wbEntry;
+	}
+
+	public int getWBResult() {
+		return wbResult;
+	}
+
+	public boolean isStalled() {
+		return stalled;
+	}
+
+	public int getLastStageCycles() {
+		return lastStageCycles;
+	}
+
+	public void setLastStageCycles(int lastStageCycles) {
+		this.lastStageCycles = lastStageCycles;
+	}
+
+	public boolean isLastStageStarted() {
+		return lastStageStarted;
+	}
+
+	public void setLastStageStarted(boolean lastStageStarted) {
+		this.lastStageStarted = lastStageStarted;
+	}
+
+	public boolean isLastStageDeferred() {
+		return lastStageDeferred;
+	}
+
+	public void setLastStageDeferred(boolean lastStageDeferred) {
+		this.lastStageDeferred = lastStageDeferred;
+	}
+
+	@Override
+	public String toString() {
+		String str = "";
+
+		for (int i = 0; i < stages.length; i += 1) {
+			str += String.format("%-6s %s\n", name + (i + 1) + ":",
+					(stages[i] == null) ? "Empty" : stages[i].getInstruction().toString());
+		}
+		str += String.format("%-6s %s\n", name + "WB:", (wbEntry == null) ? "Empty" : wbEntry.getInstruction().toString());
+
+		return str;
+	}
+}
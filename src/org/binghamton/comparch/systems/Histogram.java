@@ -0,0 +1,130 @@
+package org.binghamton.comparch.systems;
+
+import java.util.Arrays;
+
+/**
+ * Counts how many cycles a value had each of the values from zero up to a
+ * maximum. Values above the maximum are counted in the last bucket.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class Histogram {
+	private final String name;
+	private long[] counts;
+	private long total;
+
+	/**
+	 * Constructs a histogram
+	 *
+	 * @param name
+	 *            the name of the histogram
+	 * @param max
+	 *            the largest value with its own bucket
+	 */
+	public Histogram(String name, int max) {
+		this.name = name;
+		this.counts = new long[max + 1];
+		this.total = 0;
+	}
+
+	/**
+	 * Counts a value for some cycles
+	 *
+	 * @param value
+	 *            the value
+	 * @param cycles
+	 *            the amount of cycles the value was seen for
+	 */
+	public void record(int value, long cycles) {
+		int bucket = Math.max(0, Math.min(value, counts.length - 1));
+		this.counts[bucket] += cycles;
+		this.total += cycles;
+	}
+
+	/**
+	 * Throws away every count and sets a new maximum
+	 *
+	 * @param max
+	 *            the largest value with its own bucket
+	 */
+	public void reset(int max) {
+		if (counts.length != max + 1) {
+			this.counts = new long[max + 1];
+		} else {
+			Arrays.fill(this.counts, 0);
+		}
+		this.total = 0;
+	}
+
+	/**
+	 * Sets a new maximum, keeping the counts. The counts of values above a
+	 * smaller maximum are added to its bucket.
+	 *
+	 * @param max
+	 *            the largest value with its own bucket
+	 */
+	public void setMax(int max) {
+		long[] resized = Arrays.copyOf(this.counts, max + 1);
+
+		for (int i = max + 1; i < counts.length; i += 1) {
+			resized[max] += counts[i];
+		}
+		this.counts = resized;
+	}
+
+	/**
+	 * Takes over the counts and the maximum of another histogram
+	 *
+	 * @param other
+	 *            the histogram
+	 */
+	void copyFrom(Histogram other) {
+		if (counts.length != other.counts.length) {
+			this.counts = new long[other.counts.length];
+		}
+		System.arraycopy(other.counts, 0, counts, 0, counts.length);
+		this.total = other.total;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMax() {
+		return counts.length - 1;
+	}
+
+	public long getCount(int value) {
+		return counts[value];
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns the sum of the counted values, each value once for every cycle
+	 * it was seen for
+	 *
+	 * @return the sum
+	 */
+	public long getSum() {
+		long sum = 0;
+		for (int i = 0; i < counts.length; i += 1) {
+			sum += i * counts[i];
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Returns the average of the counted values
+	 *
+	 * @return the mean; 0 if nothing was counted
+	 */
+	public double getMean() {
+		return (total == 0) ? 0 : (double) getSum() / total;
+	}
+}
@@ -1,23 +1,23 @@
 package org.binghamton.comparch.systems;
 
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 public class IQ {
-	private LinkedList<IQEntry> entries;
-	private int capacity;
+	/* Entries in dispatch order, the oldest entry is at index 0 */
+	private final IQEntry[] entries;
+	private int size;
 
 	public IQ(int capacity) {
-		this.entries = new LinkedList<IQEntry>();
-		this.capacity = capacity;
+		this.entries = new IQEntry[capacity];
+		this.size = 0;
 	}
 
 	public void enqueue(IQEntry entry) {
-		if (entries.size() >= capacity) {
+		if (size >= entries.length) {
 			throw new RuntimeException("IQ is full, can not enqueue new instruction");
 		} else {
-			entries.addLast(entry);
+			entries[size] = entry;
+			size += 1;
 		}
 	}
 
@@ -26,51 +26,107 @@ public class IQ {
 			throw new RuntimeException("Can not dequeue an empty IQ");
 		}
 
-		return entries.removeFirst();
+		return removeAt(0);
 	}
 
-	public List<IQEntry> getEntries() {
-		return entries;
+	/**
+	 * Removes the entry at the index and moves every younger entry up by one
+	 * 
+	 * @param index
+	 *            the index of the entry
+	 * @return the removed entry
+	 */
+	private IQEntry removeAt(int index) {
+		IQEntry entry = entries[index];
+
+		System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+		size -= 1;
+		entries[size] = null;
+
+		return entry;
+	}
+
+	/**
+	 * Returns the amount of entries in the IQ
+	 * 
+	 * @return the amount of entries in the IQ
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the entry at the index, the oldest entry is at index 0
+	 * 
+	 * @param index
+	 *            the index of the entry
+	 * @return the entry at the index
+	 */
+	public IQEntry get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("IQ index " + index + " is out of range");
+		}
+
+		return entries[index];
 	}
 
 	public IQEntry peek() {
-		return entries.peek();
+		return (size == 0) ? null : entries[0];
+	}
+
+	public int getCapacity() {
+		return entries.length;
 	}
 
 	public boolean isFull() {
-		return entries.size() == capacity;
+		return size == entries.length;
 	}
 
 	public boolean isEmpty() {
-		return entries.isEmpty();
+		return size == 0;
 	}
 
 	public void clear() {
-		entries.clear();
+		for (int i = 0; i < size; i += 1) {
+			entries[i] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Takes over the entries of an IQ of the same capacity
+	 * 
+	 * @param other
+	 *            the IQ
+	 * @param map
+	 *            the IQ entries that stand for those of the other IQ
+	 */
+	void copyFrom(IQ other, StateMap map) {
+		for (int i = 0; i < entries.length; i += 1) {
+			entries[i] = map.map(other.entries[i]);
+		}
+		size = other.size;
 	}
 
 	public IQEntry issue(List<InstructionType> types) {
-		for (Iterator<IQEntry> itr = entries.iterator(); itr.hasNext();) {
-			IQEntry entry = itr.next();
+		for (int i = 0; i < size; i += 1) {
+			IQEntry entry = entries[i];
 			DecodedInstruction current = entry.getInstruction();
 
 			if (types.contains(current.getOpCode())) {
 				switch (current.getOpCode().getSourceCount()) {
 				case 2:
 					if (entry.isSrc2Valid() && entry.isSrc1Valid()) {
-						itr.remove();
-						return entry;
+						return removeAt(i);
 					}
 					break;
 				case 1:
 					if (entry.isSrc1Valid()) {
-						itr.remove();
-						return entry;
+						return removeAt(i);
 					}
 					break;
 				case 0:
-					itr.remove();
-					return entry;
+					return removeAt(i);
 				}
 			}
 		}
@@ -79,8 +135,8 @@ public class IQ {
 	}
 	
 	public IQEntry dryIssue(List<InstructionType> types) {
-		for (Iterator<IQEntry> itr = entries.iterator(); itr.hasNext();) {
-			IQEntry entry = itr.next();
+		for (int i = 0; i < size; i += 1) {
+			IQEntry entry = entries[i];
 			DecodedInstruction current = entry.getInstruction();
 
 			if (types.contains(current.getOpCode())) {
@@ -105,8 +161,8 @@ public class IQ {
 	}
 
 	public IQEntry getFirstInstance(List<InstructionType> types) {
-		for (Iterator<IQEntry> itr = entries.iterator(); itr.hasNext();) {
-			IQEntry entry = itr.next();
+		for (int i = 0; i < size; i += 1) {
+			IQEntry entry = entries[i];
 			DecodedInstruction current = entry.getInstruction();
 
 			if (types.contains(current.getOpCode())) {
@@ -118,13 +174,12 @@ public class IQ {
 	}
 
 	public IQEntry issueInOrder(List<InstructionType> types) {
-		for (Iterator<IQEntry> itr = entries.iterator(); itr.hasNext();) {
-			IQEntry entry = itr.next();
+		for (int i = 0; i < size; i += 1) {
+			IQEntry entry = entries[i];
 			DecodedInstruction current = entry.getInstruction();
 
 			if (types.contains(current.getOpCode())) {
-				itr.remove();
-				return entry;
+				return removeAt(i);
 			}
 		}
 
@@ -132,8 +187,8 @@ public class IQ {
 	}
 	
 	public IQEntry dryIssueInOrder(List<InstructionType> types) {
-		for (Iterator<IQEntry> itr = entries.iterator(); itr.hasNext();) {
-			IQEntry entry = itr.next();
+		for (int i = 0; i < size; i += 1) {
+			IQEntry entry = entries[i];
 			DecodedInstruction current = entry.getInstruction();
 
 			if (types.contains(current.getOpCode())) {
@@ -145,11 +200,17 @@ public class IQ {
 	}
 	
 	public void remove(IQEntry entry) {
-		entries.remove(entry);
+		for (int i = 0; i < size; i += 1) {
+			if (entries[i] == entry) {
+				removeAt(i);
+				return;
+			}
+		}
 	}
 
 	public boolean canIssue(List<InstructionType> types) {
-		for (IQEntry entry : entries) {
+		for (int i = 0; i < size; i += 1) {
+			IQEntry entry = entries[i];
 			DecodedInstruction current = entry.getInstruction();
 
 			/* Ensure the current instruction is it */
@@ -175,7 +236,8 @@ public class IQ {
 	}
 
 	public boolean contains(List<InstructionType> types) {
-		for (IQEntry entry : entries) {
+		for (int i = 0; i < size; i += 1) {
+			IQEntry entry = entries[i];
 			DecodedInstruction current = entry.getInstruction();
 
 			if (types.contains(current.getOpCode())) {
@@ -187,7 +249,8 @@ public class IQ {
 	}
 
 	public boolean canIssueInOrder(List<InstructionType> types) {
-		for (IQEntry entry : entries) {
+		for (int i = 0; i < size; i += 1) {
+			IQEntry entry = entries[i];
 			DecodedInstruction current = entry.getInstruction();
 
 			/* Ensure the current instruction is it */
@@ -215,7 +278,8 @@ public class IQ {
 	}
 
 	public void forwardData(DecodedInstruction inst, int value) {
-		for (IQEntry iqEntry : entries) {
+		for (int i = 0; i < size; i += 1) {
+			IQEntry iqEntry = entries[i];
 			DecodedInstruction entryInst = iqEntry.getInstruction();
 
 			if (entryInst.isRsrc2FlowDependant(inst)) {
@@ -231,7 +295,8 @@ public class IQ {
 	}
 
 	public void updateEntries() {
-		for (IQEntry iqEntry : entries) {
+		for (int i = 0; i < size; i += 1) {
+			IQEntry iqEntry = entries[i];
 			DecodedInstruction current = iqEntry.getInstruction();
 
 			/* Check for updated physical registers */
@@ -263,9 +328,8 @@ public class IQ {
 		if (isEmpty()) {
 			str = "Empty\n";
 		} else {
-			for (Iterator<IQEntry> itr = entries.iterator(); itr.hasNext();) {
-				IQEntry entry = itr.next();
-				str += entry.toString() + "\n";
+			for (int i = 0; i < size; i += 1) {
+				str += entries[i].toString() + "\n";
 			}
 
 		}
@@ -2,16 +2,54 @@ package org.binghamton.comparch.systems;
 
 public class IQEntry {
 	private final DecodedInstruction instruction;
-	private final int address;
+	private int address;
 	private int src1Value;
 	private boolean src1Valid;
 	private int src2Value;
 	private boolean src2Valid;
 	private ROBEntry robEntry;
+	private long sequence;
+	private long dispatchCycle;
+	private boolean predictorConsulted;
 	
 	public IQEntry(DecodedInstruction instruction, int address) {
 		this.instruction = instruction;
+		reset(address);
+	}
+
+	/**
+	 * Gets the entry ready to hold a newly dispatched instruction
+	 * 
+	 * @param address
+	 *            the address of the dispatched instruction
+	 */
+	public void reset(int address) {
 		this.address = address;
+		this.src1Value = 0;
+		this.src1Valid = false;
+		this.src2Value = 0;
+		this.src2Valid = false;
+		this.sequence = 0;
+		this.dispatchCycle = 0;
+		this.predictorConsulted = false;
+	}
+
+	/**
+	 * Takes over the operands and the dispatch order of another IQ entry. The
+	 * instruction belongs to the ROB entry and is copied with it.
+	 * 
+	 * @param other
+	 *            the IQ entry
+	 */
+	void copyFrom(IQEntry other) {
+		this.address = other.address;
+		this.src1Value = other.src1Value;
+		this.src1Valid = other.src1Valid;
+		this.src2Value = other.src2Value;
+		this.src2Valid = other.src2Valid;
+		this.sequence = other.sequence;
+		this.dispatchCycle = other.dispatchCycle;
+		this.predictorConsulted = other.predictorConsulted;
 	}
 
 	public DecodedInstruction getInstruction() {
@@ -62,6 +100,30 @@ public class IQEntry {
 		return this.robEntry;
 	}
 
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public long getDispatchCycle() {
+		return dispatchCycle;
+	}
+
+	public void setDispatchCycle(long dispatchCycle) {
+		this.dispatchCycle = dispatchCycle;
+	}
+
+	public boolean isPredictorConsulted() {
+		return predictorConsulted;
+	}
+
+	public void setPredictorConsulted(boolean predictorConsulted) {
+		this.predictorConsulted = predictorConsulted;
+	}
+
 	@Override
 	public String toString() {
 		return instruction.toString();
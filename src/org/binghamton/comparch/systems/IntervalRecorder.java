@@ -0,0 +1,289 @@
+package org.binghamton.comparch.systems;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.binghamton.comparch.util.FileIOEvent;
+
+/**
+ * Streams the statistics of a processor to a CSV file, one row for every
+ * window of a fixed amount of cycles or committed instructions. Each row holds
+ * what happened in that window only: IPC, the cycles stalled for each cause,
+ * the average occupancies, branches and the accesses of every cache, which
+ * shows how the phases of a program stress the core.
+ *
+ * Rows are written into a fixed buffer that is flushed to the file channel
+ * when it fills up, and the counters of the last row are kept in primitive
+ * arrays, so the memory used does not grow with the length of the run.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class IntervalRecorder {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/* Positions of the counters */
+	private static final StallCause[] CAUSES = StallCause.values();
+	private static final int CYCLES = 0;
+	private static final int INSTRUCTIONS = 1;
+	private static final int LOADS = 2;
+	private static final int STORES = 3;
+	private static final int BRANCHES = 4;
+	private static final int TAKEN_BRANCHES = 5;
+	private static final int VIOLATIONS = 6;
+	private static final int STALLS = 7;
+	private static final int IQ_SUM = STALLS + CAUSES.length;
+	private static final int ROB_SUM = IQ_SUM + 1;
+	private static final int URF_SUM = IQ_SUM + 2;
+	private static final int ISSUE_SUM = IQ_SUM + 3;
+	private static final int CACHES = IQ_SUM + 4;
+
+	private final String file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final StringBuilder row;
+
+	private final int interval;
+	private final boolean instructions;
+
+	/* Counters at the start of the window, and at its end */
+	private final long[] start;
+	private final long[] end;
+	private long windowEnd;
+	private long window;
+
+	/**
+	 * Creates the file, writes the header and starts the first window
+	 *
+	 * @param file
+	 *            the CSV file
+	 * @param interval
+	 *            the size of every window
+	 * @param instructions
+	 *            true if the windows are counted in committed instructions;
+	 *            false if they are counted in cycles
+	 * @param processor
+	 *            the processor to record
+	 * @throws IOException
+	 *             if the file can not be written
+	 * @throws IllegalArgumentException
+	 *             if the interval is less than one
+	 */
+	public IntervalRecorder(String file, int interval, boolean instructions, Processor processor)
+			throws IOException {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Interval must be at least one");
+		}
+
+		int caches = 0;
+		for (Cache cache = processor.getDataCache(); cache != null; cache = cache.getNext()) {
+			caches += 1;
+		}
+
+		this.file = file;
+		this.interval = interval;
+		this.instructions = instructions;
+		this.start = new long[CACHES + (2 * caches)];
+		this.end = new long[this.start.length];
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		this.row = new StringBuilder(256);
+		this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		row.append("window,start_cycle,cycles,instructions,ipc,loads,stores,branches,taken_branches,"
+				+ "memory_order_violations");
+		for (StallCause cause : CAUSES) {
+			row.append(',').append("stall_").append(cause.name());
+		}
+		row.append(",avg_iq_occupancy,avg_rob_occupancy,avg_urf_occupancy,avg_issue_width");
+		for (Cache cache = processor.getDataCache(); cache != null; cache = cache.getNext()) {
+			row.append(',').append(cache.getName()).append("_accesses");
+			row.append(',').append(cache.getName()).append("_hit_rate");
+			row.append(',').append(cache.getName()).append("_mpki");
+		}
+		writeRow();
+
+		restart(processor);
+	}
+
+	/**
+	 * Starts a new window from the current counters of the processor, after it
+	 * was initialized
+	 *
+	 * @param processor
+	 *            the processor
+	 */
+	public void restart(Processor processor) {
+		read(processor, this.start);
+		this.windowEnd = position(this.start) + this.interval;
+	}
+
+	/**
+	 * Writes a row if the current window is over. Called after every cycle.
+	 *
+	 * @param processor
+	 *            the processor
+	 * @throws UncheckedIOException
+	 *             if the file can not be written
+	 */
+	public void sample(Processor processor) {
+		long position = instructions ? processor.getInstructionsCommited() : processor.getTotalCycles();
+
+		if (position >= this.windowEnd) {
+			record(processor);
+		}
+	}
+
+	/**
+	 * Returns how many cycles may pass before the current window is over
+	 *
+	 * @param totalCycles
+	 *            the cycles simulated so far
+	 * @return the cycles left in the window; Long.MAX_VALUE if the windows are
+	 *         counted in instructions
+	 */
+	public long getCyclesLeft(long totalCycles) {
+		return instructions ? Long.MAX_VALUE : this.windowEnd - totalCycles;
+	}
+
+	/**
+	 * Writes the row of the window that is not over yet, if it has any
+	 * cycles. Called before the processor is initialized again and when the
+	 * recording stops.
+	 *
+	 * @param processor
+	 *            the processor
+	 * @throws UncheckedIOException
+	 *             if the file can not be written
+	 */
+	public void finish(Processor processor) {
+		if (processor.getTotalCycles() > this.start[CYCLES]) {
+			record(processor);
+		}
+	}
+
+	/**
+	 * Writes the last window and closes the file
+	 *
+	 * @param processor
+	 *            the processor
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public void close(Processor processor) throws IOException {
+		try {
+			finish(processor);
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	private void record(Processor processor) {
+		read(processor, this.end);
+
+		long cycles = end[CYCLES] - start[CYCLES];
+		long committed = end[INSTRUCTIONS] - start[INSTRUCTIONS];
+
+		row.append(window).append(',').append(start[CYCLES]).append(',').append(cycles).append(',')
+				.append(committed).append(',').append(ratio(committed, cycles));
+		for (int i = LOADS; i < IQ_SUM; i += 1) {
+			row.append(',').append(end[i] - start[i]);
+		}
+		for (int i = IQ_SUM; i < CACHES; i += 1) {
+			row.append(',').append(ratio(end[i] - start[i], cycles));
+		}
+		for (int i = CACHES; i < end.length; i += 2) {
+			long accesses = end[i] - start[i];
+			long hits = end[i + 1] - start[i + 1];
+
+			row.append(',').append(accesses).append(',').append(ratio(hits, accesses)).append(',')
+					.append(ratio(1000 * (accesses - hits), committed));
+		}
+
+		try {
+			writeRow();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Can not write " + file, e);
+		}
+
+		/* The end of this window is the start of the next */
+		System.arraycopy(this.end, 0, this.start, 0, this.end.length);
+		this.windowEnd = position(this.start) + this.interval;
+		this.window += 1;
+	}
+
+	private long position(long[] counters) {
+		return instructions ? counters[INSTRUCTIONS] : counters[CYCLES];
+	}
+
+	private void read(Processor processor, long[] counters) {
+		ProcessorMetrics metrics = processor.getMetrics();
+
+		counters[CYCLES] = processor.getTotalCycles();
+		counters[INSTRUCTIONS] = processor.getInstructionsCommited();
+		counters[LOADS] = processor.getLoadsCommitted();
+		counters[STORES] = processor.getStoresCommitted();
+		counters[BRANCHES] = processor.getBranchesCommitted();
+		counters[TAKEN_BRANCHES] = processor.getTakenBranches();
+		counters[VIOLATIONS] = processor.getMemoryOrderViolations();
+		for (int i = 0; i < CAUSES.length; i += 1) {
+			counters[STALLS + i] = metrics.getStallCycles(CAUSES[i]);
+		}
+		counters[IQ_SUM] = metrics.getIQOccupancy().getSum();
+		counters[ROB_SUM] = metrics.getROBOccupancy().getSum();
+		counters[URF_SUM] = metrics.getURFOccupancy().getSum();
+		counters[ISSUE_SUM] = metrics.getIssueWidth().getSum();
+
+		int i = CACHES;
+		for (Cache cache = processor.getDataCache(); cache != null && i < counters.length; cache = cache.getNext()) {
+			counters[i] = cache.getAccesses();
+			counters[i + 1] = cache.getHits();
+			i += 2;
+		}
+	}
+
+	private static double ratio(long numerator, long denominator) {
+		return (denominator == 0) ? 0 : (double) numerator / denominator;
+	}
+
+	/**
+	 * Copies the row into the buffer as ASCII, flushing the buffer first if it
+	 * has no room for it
+	 */
+	private void writeRow() throws IOException {
+		row.append('\n');
+
+		if (buffer.remaining() < row.length()) {
+			flush();
+		}
+		for (int i = 0; i < row.length(); i += 1) {
+			buffer.put((byte) row.charAt(i));
+		}
+
+		row.setLength(0);
+	}
+
+	private void flush() throws IOException {
+		FileIOEvent event = new FileIOEvent("Write interval statistics", file);
+		int bytes = buffer.position();
+
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+
+		event.setBytes(bytes);
+		event.commit();
+	}
+}
@@ -1,19 +1,43 @@
 package org.binghamton.comparch.systems;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 
 /**
  * Simulates a memory module with a given size. The memory can only addressable
  * only on 4 byte boundaries.
  * 
+ * The words are kept in pages that can be shared with images of the memory.
+ * A shared page is copied the first time it is written, so taking an image
+ * copies nothing and only the pages written after it take up memory of their
+ * own.
+ * 
  * @author Stefan Bossbaly
  * @author Gerald Brennan
  *
  */
 public class Memory {
-	private int[] contents;
+	/* Amount of recently written addresses shown by stringMemory() */
+	private static final int ACCESS_LOG_SIZE = 100;
+
+	/* Words in a page */
+	private static final int PAGE_BITS = 6;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private int[][] contents;
 	private int byteSize;
-	private LinkedList<Integer> accessLog;
+	private int size;
+
+	/* The write that last touched each word (0 if never), and the amount of writes so far */
+	private long[][] writeStamps;
+	private long writeCount;
+
+	/* Pages that an image also holds, which are copied before they are written */
+	private boolean[] shared;
+
+	/* Watched words, one bit each, null when none are watched; and the last watched address written, -1 if none */
+	private long[] watchpoints;
+	private int watchedWrite;
 
 	/**
 	 * Constructs a memory object
@@ -23,20 +47,89 @@ public class Memory {
 	 */
 	public Memory(int byteSize) {
 		this.byteSize = byteSize;
-		int size = addressToIndex(byteSize);
-		this.contents = new int[size];
-		this.accessLog = new LinkedList<Integer>();
+		this.size = addressToIndex(byteSize);
+		this.watchedWrite = -1;
+		clear();
+	}
+
+	/**
+	 * Constructs a memory with the contents of an image
+	 * 
+	 * @param image
+	 *            the image
+	 */
+	public Memory(Image image) {
+		this.byteSize = image.byteSize;
+		this.size = addressToIndex(byteSize);
+		this.watchedWrite = -1;
+		restore(image);
 	}
 
 	/**
 	 * Clears the contents of the memory. All values are set to zero.
 	 */
 	public void clear() {
-		for (int i = 0; i < this.byteSize; i += 4) {
-			this.setValue(i, 0);
+		int pages = (this.size + PAGE_MASK) >> PAGE_BITS;
+
+		this.contents = new int[pages][PAGE_SIZE];
+		this.writeStamps = new long[pages][PAGE_SIZE];
+		this.shared = new boolean[pages];
+		this.writeCount = 0;
+		this.watchedWrite = -1;
+	}
+
+	/**
+	 * Takes an image of the contents. The pages are shared with the image
+	 * until they are written.
+	 * 
+	 * @return the image
+	 */
+	public Image capture() {
+		Arrays.fill(this.shared, true);
+		return new Image(this.byteSize, this.contents.clone(), this.writeStamps.clone(), this.writeCount);
+	}
+
+	/**
+	 * Sets the contents to those of an image. The pages are shared with the
+	 * image until they are written.
+	 * 
+	 * @param image
+	 *            the image
+	 * @throws IllegalArgumentException
+	 *             if the image is of a memory of another size
+	 */
+	public void restore(Image image) {
+		if (image.byteSize != this.byteSize) {
+			throw new IllegalArgumentException("Image is of a memory of another size");
+		}
+
+		this.contents = image.contents.clone();
+		this.writeStamps = image.writeStamps.clone();
+		this.shared = new boolean[this.contents.length];
+		Arrays.fill(this.shared, true);
+		this.writeCount = image.writeCount;
+		this.watchedWrite = -1;
+	}
+
+	/**
+	 * Clears the memory and fills it with the data image of a program. The
+	 * image is the starting state of the memory, so it does not count as
+	 * writes.
+	 *
+	 * @param program
+	 *            the program with the data image
+	 * @throws IllegalArgumentException
+	 *             if the image is larger than the memory
+	 */
+	public void load(Program program) {
+		if (program.getDataSize() > this.size) {
+			throw new IllegalArgumentException("Data image is larger than the memory");
+		}
+
+		this.clear();
+		for (int i = 0; i < program.getDataSize(); i += 1) {
+			this.contents[i >> PAGE_BITS][i & PAGE_MASK] = program.getData(i);
 		}
-		
-		this.accessLog.clear();
 	}
 
 	/**
@@ -59,19 +152,74 @@ public class Memory {
 		}
 
 		int index = addressToIndex(address);
-		this.contents[index] = value;
-
-		if (this.accessLog.contains(address)) {
-			this.accessLog.remove((Integer) address);
-			this.accessLog.addLast(address);
-		} else {
-			if (this.accessLog.size() >= 100) {
-				this.accessLog.removeFirst();
+		int page = index >> PAGE_BITS;
+		if (this.shared[page]) {
+			copyPage(page);
+		}
+		this.contents[page][index & PAGE_MASK] = value;
+
+		this.writeCount += 1;
+		this.writeStamps[page][index & PAGE_MASK] = this.writeCount;
+
+		if (this.watchpoints != null && (this.watchpoints[index >> 6] & (1L << index)) != 0) {
+			this.watchedWrite = address;
+		}
+	}
+
+	/**
+	 * Watches or stops watching the writes to an address
+	 * 
+	 * @param address
+	 *            the address
+	 * @param watched
+	 *            true to watch the address; false to stop watching it
+	 * @throws IllegalArgumentException
+	 *             if address is not divisible by four
+	 * @throws IllegalArgumentException
+	 *             if the address is not in the valid memory range
+	 */
+	public void setWatchpoint(int address, boolean watched) {
+		if (address < 0) {
+			throw new IllegalArgumentException("Memory address must be positive");
+		} else if (address >= this.byteSize) {
+			throw new IllegalArgumentException("Memory address is greater than the size");
+		}
+
+		int index = addressToIndex(address);
+		if (watched) {
+			if (this.watchpoints == null) {
+				this.watchpoints = new long[(this.size + 63) >> 6];
 			}
-			this.accessLog.addLast(address);
+			this.watchpoints[index >> 6] |= 1L << index;
+		} else if (this.watchpoints != null) {
+			this.watchpoints[index >> 6] &= ~(1L << index);
 		}
 	}
 
+	public boolean isWatched(int address) {
+		int index = addressToIndex(address);
+		return this.watchpoints != null && (this.watchpoints[index >> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Stops watching every address
+	 */
+	public void clearWatchpoints() {
+		this.watchpoints = null;
+		this.watchedWrite = -1;
+	}
+
+	/**
+	 * Returns the last watched address that was written and forgets it
+	 * 
+	 * @return the address; -1 if no watched address was written
+	 */
+	public int takeWatchedWrite() {
+		int address = this.watchedWrite;
+		this.watchedWrite = -1;
+		return address;
+	}
+
 	/**
 	 * Gets the value at the provided address
 	 * 
@@ -91,7 +239,17 @@ public class Memory {
 		}
 
 		int index = addressToIndex(address);
-		return this.contents[index];
+		return this.contents[index >> PAGE_BITS][index & PAGE_MASK];
+	}
+
+	/**
+	 * Gives the page a copy of its own, so that writing it does not change an
+	 * image
+	 */
+	private void copyPage(int page) {
+		this.contents[page] = this.contents[page].clone();
+		this.writeStamps[page] = this.writeStamps[page].clone();
+		this.shared[page] = false;
 	}
 
 	private int addressToIndex(int address) {
@@ -114,9 +272,10 @@ public class Memory {
 	 */
 	public String stringMemory() {
 		String s = "";
+		long oldest = oldestLoggedWrite();
 
-		for (int i = 0; i <= this.byteSize; i += 4) {
-			if (this.accessLog.contains(i)) {
+		for (int i = 0; i < this.byteSize; i += 4) {
+			if (stamp(addressToIndex(i)) >= oldest) {
 				int value = this.getValue(i);
 				s += String.format("%4d: %d\n", i, value);
 			}
@@ -124,6 +283,36 @@ public class Memory {
 
 		return s;
 	}
+
+	/**
+	 * Returns the stamp of the oldest write that is still part of the access
+	 * log. The log holds the last ACCESS_LOG_SIZE different addresses that
+	 * were written.
+	 * 
+	 * @return the stamp of the oldest logged write
+	 */
+	private long oldestLoggedWrite() {
+		long[] stamps = new long[this.size];
+		int count = 0;
+
+		for (int i = 0; i < this.size; i += 1) {
+			if (stamp(i) != 0) {
+				stamps[count] = stamp(i);
+				count += 1;
+			}
+		}
+
+		if (count <= ACCESS_LOG_SIZE) {
+			return 1;
+		}
+
+		Arrays.sort(stamps, 0, count);
+		return stamps[count - ACCESS_LOG_SIZE];
+	}
+
+	private long stamp(int index) {
+		return this.writeStamps[index >> PAGE_BITS][index & PAGE_MASK];
+	}
 	
 	public String stringMemory(int start, int end) {
 		String s = "";
@@ -135,4 +324,46 @@ public class Memory {
 
 		return s;
 	}
+
+	/**
+	 * The contents of a memory at one moment. The pages of an image are never
+	 * written, so images and memories can share them.
+	 */
+	public static final class Image {
+		private final int byteSize;
+		private final int[][] contents;
+		private final long[][] writeStamps;
+		private final long writeCount;
+
+		private Image(int byteSize, int[][] contents, long[][] writeStamps, long writeCount) {
+			this.byteSize = byteSize;
+			this.contents = contents;
+			this.writeStamps = writeStamps;
+			this.writeCount = writeCount;
+		}
+
+		/**
+		 * Counts the pages this image does not share with another, which are
+		 * the pages written between the two
+		 * 
+		 * @param other
+		 *            the other image; null to count every page
+		 * @return the amount of pages
+		 */
+		public int getPagesNotIn(Image other) {
+			int pages = 0;
+
+			for (int i = 0; i < contents.length; i += 1) {
+				if (other == null || contents[i] != other.contents[i]) {
+					pages += 1;
+				}
+			}
+
+			return pages;
+		}
+
+		public int getPageBytes() {
+			return PAGE_SIZE * 4;
+		}
+	}
 }
@@ -0,0 +1,50 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * A stream prefetcher that, on every miss, prefetches the lines that follow the
+ * missing line. Sweeping an array upwards therefore only misses on the first
+ * line of each stream.
+ * 
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class NextLinePrefetcher implements Prefetcher {
+	private final Cache cache;
+	private final int degree;
+
+	/**
+	 * Constructs a next line prefetcher
+	 * 
+	 * @param cache
+	 *            the cache the lines are prefetched into
+	 * @param degree
+	 *            the amount of lines prefetched after every miss
+	 */
+	public NextLinePrefetcher(Cache cache, int degree) {
+		this.cache = cache;
+		this.degree = degree;
+	}
+
+	@Override
+	public void train(int pc, int address, boolean miss, long now) {
+		if (!miss) {
+			return;
+		}
+
+		int line = address - (address % cache.getLineSize());
+		for (int i = 1; i <= degree; i += 1) {
+			cache.prefetch(line + i * cache.getLineSize(), now);
+		}
+	}
+
+	@Override
+	public void clear() {
+		/* No state */
+	}
+
+	@Override
+	public void copyFrom(Prefetcher other) {
+		/* No state */
+	}
+}
@@ -0,0 +1,45 @@
+package org.binghamton.comparch.systems;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a flush of the pipeline, either by a taken branch
+ * or by a LOAD that is replayed after a memory order violation.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+@Name("org.binghamton.comparch.PipelineFlush")
+@Label("Pipeline Flush")
+@Description("The ROB and IQ were flushed and fetch restarted at a new address")
+@Category({ "CPU Emulator", "Processor" })
+@Enabled(false)
+@StackTrace(false)
+class PipelineFlushEvent extends jdk.jfr.Event {
+	@Label("Cycle")
+	long cycle;
+
+	@Label("Cause")
+	String cause;
+
+	@Label("Address")
+	@Description("Address of the instruction that flushed the pipeline")
+	int address;
+
+	@Label("Target")
+	@Description("Address fetch restarts at")
+	int target;
+
+	@Label("ROB Occupancy")
+	@Description("Entries in the ROB that were thrown away")
+	int robOccupancy;
+
+	@Label("IQ Occupancy")
+	int iqOccupancy;
+}
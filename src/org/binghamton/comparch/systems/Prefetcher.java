@@ -0,0 +1,40 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * A hardware prefetcher that watches the data accesses of the LOAD/STORE FU
+ * and brings lines it expects to be used soon into a cache. Prefetches are
+ * issued through {@link Cache#prefetch(int, long)} so they compete with demand
+ * misses for the MSHRs of the cache.
+ * 
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public interface Prefetcher {
+	/**
+	 * Trains the prefetcher with an access and lets it issue prefetches.
+	 * 
+	 * @param pc
+	 *            the address of the LOAD or STORE instruction
+	 * @param address
+	 *            the memory address that was accessed
+	 * @param miss
+	 *            true if the access missed in the cache; false otherwise
+	 * @param now
+	 *            the current cycle
+	 */
+	public void train(int pc, int address, boolean miss, long now);
+
+	/**
+	 * Forgets everything the prefetcher has learned
+	 */
+	public void clear();
+
+	/**
+	 * Takes over what a prefetcher of the same kind and size has learned
+	 * 
+	 * @param other
+	 *            the prefetcher
+	 */
+	public void copyFrom(Prefetcher other);
+}
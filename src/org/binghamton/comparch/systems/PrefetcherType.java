@@ -0,0 +1,19 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * The kinds of prefetcher that can be attached to the L1 data cache.
+ * 
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public enum PrefetcherType {
+	/* No prefetching */
+	NONE,
+
+	/* Prefetch the lines following a miss */
+	NEXT_LINE,
+
+	/* Prefetch along the stride of each LOAD/STORE instruction */
+	STRIDE;
+}
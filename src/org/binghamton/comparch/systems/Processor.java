@@ -1,11 +1,14 @@
 package org.binghamton.comparch.systems;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.EventType;
 
 /**
  * Implements an inorder, pipelined, two FU (one for branch and the other for
@@ -23,6 +26,7 @@ public class Processor {
 	public static final int SIZE_OF_DATA_MEMORY = 4000;
 	public static final int CAPACITY_OF_IQ = 12;
 	public static final int CAPACITY_OF_ROB = 40;
+	public static final int SIZE_OF_SSIT = 64;
 
 	/* FU Definitions */
 	private static final List<InstructionType> AR_INSTR = Arrays.asList(InstructionType.ADD, InstructionType.SUB,
@@ -35,17 +39,27 @@ public class Processor {
 			InstructionType.MOVC, InstructionType.AND, InstructionType.OR, InstructionType.XOR, InstructionType.HALT,
 			InstructionType.MUL);
 
-	/* Register Regex Pattern */
-	private static final Pattern GP_REG_PATTERN = Pattern.compile("R(\\d+)");
-	private static final Pattern SPEC_REG_PATTERN = Pattern.compile("X");
+	/* Flight recorder events, checked before any is made */
+	private static final EventType THROUGHPUT_EVENT = EventType.getEventType(ThroughputEvent.class);
+	private static final EventType FLUSH_EVENT = EventType.getEventType(PipelineFlushEvent.class);
+	private static final EventType STALL_EPISODE_EVENT = EventType.getEventType(StallEpisodeEvent.class);
+
+	/* Configuration the processor was built from */
+	private final ProcessorConfig config;
 
-	/* List of instructions to be executed */
-	private List<Instruction> instructions;
+	/* Program to be executed */
+	private Program program;
 	private int pc;
 
+	/* Fetch entry of every instruction, made once when the program is loaded */
+	private Entry[] programEntries;
+
 	/* List of entries for each stage */
 	private boolean stallDRFTakenBranch;
+	private long takenBranchSequence;
 	private boolean stallDRFDispatchBranch;
+	private boolean stallDRFResourceFull;
+	private boolean stallDRFNoRegister;
 	private Entry fetchEntry;
 	private Entry drf1Entry;
 	private Entry drf2Entry;
@@ -56,33 +70,25 @@ public class Processor {
 	private Register phyRsrc2;
 	private Register phyRdest;
 
-	/* ALU FU */
-	private IQEntry alu1Entry;
-	private IQEntry alu2Entry;
-	private IQEntry aluWBEntry;
-	private int alu1Result;
-	private int alu2Result;
-	private int aluWBResult;
+	/* Functional Units */
+	private FunctionalUnit[] aluUnits;
+	private FunctionalUnit[] mulUnits;
+	private FunctionalUnit[] branchUnits;
+	private FunctionalUnit[] lsUnits;
+	private FunctionalUnit[] units;
+	private final int issueWidth;
 
-	/* MULT FU */
-	private int multCycle;
-	private int multResult;
-	private IQEntry multEntry;
-	private IQEntry multWBEntry;
+	/* LOAD/STORE units sorted by the age of the entry in their memory stage */
+	private FunctionalUnit[] lsMemoryOrder;
 
-	/* Branch FU */
-	private IQEntry branchEntry;
-	private IQEntry branchMEMEntry;
+	/* Sequence number handed to the next dispatched instruction */
+	private long dispatchSequence;
 
-	/* LOAD/STORE FU */
-	private IQEntry ls1Entry;
-	private IQEntry ls2Entry;
-	private IQEntry lsMEMEntry;
-	private IQEntry lsWBEntry;
-	private int ls1Result;
-	private int ls2Result;
-	private int lsMEMResult;
-	private int lsWBResult;
+	/* LOADs that left the LS FU and are waiting on a cache miss */
+	private IQEntry[] missEntries;
+	private long[] missCompleteCycles;
+	private int[] missResults;
+	private int missCount;
 
 	/* Instruction Queue */
 	private IQ iq;
@@ -93,11 +99,30 @@ public class Processor {
 	/* Unified register file */
 	private URF urf;
 
-	/* Data Memory */
-	private final Memory memory;
+	/* Cycles the LS FU waited because every MSHR was busy */
+	private int mshrStalledCycles;
+
+	/* Data Memory, copied in pages by snapshots instead of with the rest of the state */
+	private Memory memory;
+
+	/* Data Cache Hierarchy (null if every access takes a single cycle) */
+	private Cache dataCache;
+	private Prefetcher prefetcher;
+
+	/* Value of the last committed arithmetic instruction */
+	private Register committedFlag;
+
+	/* Memory dependence predictor */
+	private StoreSetPredictor storeSetPredictor;
+	private boolean memoryDependencePrediction;
 
 	/* Halt Status */
 	private boolean isHalted;
+
+	/* Set when a cycle changes anything besides the counters and countdowns */
+	private boolean cycleActive;
+	private int cycleMSHRRetries;
+	private final boolean idleCycleSkipping;
 	
 	/* Processor Statics */
 	private int totalCycles;
@@ -106,11 +131,97 @@ public class Processor {
 	private int noIssuesCycles;
 	private int loadsCommitted;
 	private int storesCommitted;
+	private int branchesCommitted;
+	private int takenBranches;
+	private int speculativeLoadsIssued;
+	private int loadsHeldByPredictor;
+	private int memoryOrderViolations;
+	private int skippedCycles;
+
+	/* Detailed statistics, and what happened in the current cycle */
+	private ProcessorMetrics metrics;
+	private StallCause cycleStallCause;
+	private int cycleIssued;
+
+	/* What every cycle is spent on, and if the ROB is being refilled after a flush */
+	private CPIStack cpiStack;
+	private boolean recovering;
+
+	/* Costs of every static instruction */
+	private Profiler profiler;
+
+	/* Flight recorder events in progress, null when they are not recorded */
+	private final int eventInterval;
+	private long eventIntervalStart;
+	private long eventIntervalEnd;
+	private long eventIntervalCommitted;
+	private long eventIntervalNanos;
+	private ThroughputEvent throughputEvent;
+	private StallCause stallEpisodeCause;
+	private StallEpisodeEvent stallEpisode;
+
+	/* JMX monitor, null when the processor is not registered */
+	private final int snapshotInterval;
+	private long snapshotEnd;
+	private ProcessorMonitor monitor;
+
+	/* Statistics streamed for every window of the run, null when not recording */
+	private IntervalRecorder intervalRecorder;
+
+	/* Conditions that stop a run, null when there are none; and why the last run stopped */
+	private Breakpoints breakpoints;
+	private String breakReason;
+	private int ipcWindow;
+	private long ipcWindowEnd;
+	private long ipcWindowCommitted;
+
+	/* Snapshots of earlier cycles, null when they are not taken */
+	private ProcessorHistory history;
+	private long historyEnd;
 
 	public Processor() {
+		this(new ProcessorConfig());
+	}
+
+	public Processor(ProcessorConfig config) {
+		/* Keep the configuration for building forks and snapshots */
+		this.config = config.copy();
+
 		/* Setup memory object */
 		this.memory = new Memory(SIZE_OF_DATA_MEMORY);
 
+		/* Setup the data cache hierarchy */
+		this.dataCache = config.buildDataCache();
+		this.prefetcher = config.buildPrefetcher(this.dataCache);
+		this.missEntries = new IQEntry[CAPACITY_OF_ROB];
+		this.missCompleteCycles = new long[CAPACITY_OF_ROB];
+		this.missResults = new int[CAPACITY_OF_ROB];
+
+		/* Setup the functional units */
+		this.aluUnits = config.buildALUs();
+		this.mulUnits = config.buildMULs();
+		this.branchUnits = config.buildBranchUnits();
+		this.lsUnits = config.buildLSUnits();
+		this.units = new FunctionalUnit[aluUnits.length + mulUnits.length + branchUnits.length + lsUnits.length];
+		int unit = 0;
+		for (FunctionalUnit[] group : Arrays.asList(aluUnits, mulUnits, branchUnits, lsUnits)) {
+			for (FunctionalUnit current : group) {
+				this.units[unit] = current;
+				unit += 1;
+			}
+		}
+		this.lsMemoryOrder = new FunctionalUnit[lsUnits.length];
+
+		if (config.getIssueWidth() < 1) {
+			throw new IllegalArgumentException("Issue width must be at least one");
+		}
+		this.issueWidth = config.getIssueWidth();
+		this.idleCycleSkipping = config.isIdleCycleSkipping();
+
+		/* Setup the register BZ and BNZ read when no arithmetic instruction is in flight */
+		this.committedFlag = new Register("Z");
+		this.committedFlag.setValid(true);
+
 		/* Setup the instruction queue */
 		this.iq = new IQ(CAPACITY_OF_IQ);
 
@@ -119,6 +230,29 @@ public class Processor {
 
 		/* Setup the unified register file */
 		this.urf = new URF(NUM_OF_ARC_REGISTERS, NUM_OF_PHY_REGISTERS);
+
+		/* Setup the detailed statistics */
+		this.metrics = new ProcessorMetrics(this.units, CAPACITY_OF_IQ, CAPACITY_OF_ROB, NUM_OF_PHY_REGISTERS,
+				this.issueWidth);
+		this.cpiStack = new CPIStack(config.getCPIInterval());
+		this.profiler = new Profiler();
+
+		if (config.getEventInterval() < 1) {
+			throw new IllegalArgumentException("Event interval must be at least one cycle");
+		}
+		this.eventInterval = config.getEventInterval();
+
+		if (config.getSnapshotInterval() < 1) {
+			throw new IllegalArgumentException("Snapshot interval must be at least one cycle");
+		}
+		this.snapshotInterval = config.getSnapshotInterval();
+		this.snapshotEnd = Long.MAX_VALUE;
+		this.ipcWindowEnd = Long.MAX_VALUE;
+		this.historyEnd = Long.MAX_VALUE;
+
+		/* Setup the memory dependence predictor */
+		this.storeSetPredictor = new StoreSetPredictor(SIZE_OF_SSIT);
+		this.memoryDependencePrediction = true;
 	}
 
 	/**
@@ -134,9 +268,51 @@ public class Processor {
 	 *            into instruction memory and simulated on the processor
 	 */
 	public void initialize(List<Instruction> instructions) {
-		/* Copy the list of instructions */
-		this.instructions = new ArrayList<Instruction>(instructions);
+		initialize(new Program(instructions));
+	}
+
+	/**
+	 * Loads the program into program memory and resets the processor, the same
+	 * way as initialize(List) does.
+	 * 
+	 * @param program
+	 *            the program that will be loaded into instruction memory and
+	 *            simulated on the processor
+	 */
+	public void initialize(Program program) {
+		initialize(program, null);
+	}
+
+	/**
+	 * Loads the program into program memory and resets the processor, then
+	 * starts it from the architectural state of a checkpoint of the program
+	 * instead of from its beginning. The pipeline starts out empty, the caches
+	 * cold and the predictors untrained. Every architectural register is
+	 * mapped to a physical register holding its value.
+	 * 
+	 * @param program
+	 *            the program the checkpoint was taken of
+	 * @param checkpoint
+	 *            the checkpoint; null to start from the beginning
+	 * @throws IllegalArgumentException
+	 *             if the URF has too few physical registers to hold the
+	 *             architectural registers
+	 */
+	public void initialize(Program program, Checkpoint checkpoint) {
+		/* The window of the last run ends here */
+		if (this.intervalRecorder != null) {
+			this.intervalRecorder.finish(this);
+		}
+
+		this.program = program;
 		this.pc = 4000;
+
+		/* Make the fetch entries up front */
+		this.programEntries = new Entry[program.size()];
+		for (int i = 0; i < program.size(); i += 1) {
+			this.programEntries[i] = new Entry(program.getInstruction(i));
+			this.programEntries[i].setPcValue(SIZE_OF_DATA_MEMORY + (i * 4));
+		}
 		
 		/* Reset stats */
 		this.totalCycles = 0;
@@ -145,12 +321,69 @@ public class Processor {
 		this.noIssuesCycles = 0;
 		this.loadsCommitted = 0;
 		this.storesCommitted = 0;
+		this.branchesCommitted = 0;
+		this.takenBranches = 0;
+		this.speculativeLoadsIssued = 0;
+		this.loadsHeldByPredictor = 0;
+		this.memoryOrderViolations = 0;
+		this.mshrStalledCycles = 0;
+		this.skippedCycles = 0;
+		this.metrics.reset(this.urf.getPhysicalRegisterSize());
+		this.cpiStack.clear();
+		this.recovering = false;
+		this.profiler.reset(program);
+		this.throughputEvent = null;
+		this.stallEpisode = null;
+		this.stallEpisodeCause = null;
+		nextEventInterval();
+		if (this.monitor != null) {
+			publishSnapshot();
+		}
+		this.breakReason = null;
+		this.ipcWindowEnd = Long.MAX_VALUE;
+		this.dispatchSequence = 0;
+		this.takenBranchSequence = Long.MAX_VALUE;
+
+		/* Forget any learned store sets */
+		this.storeSetPredictor.clear();
 
 		/* Clear out the pipeline */
 		clearPipeline();
 
-		/* Clear memory */
-		this.memory.clear();
+		/* Clear memory and load the data image */
+		this.memory.load(program);
+
+		/* Invalidate the caches */
+		for (Cache cache = this.dataCache; cache != null; cache = cache.getNext()) {
+			cache.clear();
+		}
+		if (this.prefetcher != null) {
+			this.prefetcher.clear();
+		}
+
+		this.committedFlag.setValue(0);
+
+		/* Start from the architectural state of the checkpoint */
+		if (checkpoint != null) {
+			this.pc = checkpoint.getPc();
+			this.memory.restore(checkpoint.getMemory());
+			this.committedFlag.setValue(checkpoint.getFlag());
+			this.urf.clear();
+			for (int i = 0; i <= Program.REGISTER_X; i += 1) {
+				this.urf.setArchitecturalRegister(i, checkpoint.getRegister(i));
+			}
+		}
+
+		/* The statistics start over, and so does the recorded window */
+		if (this.intervalRecorder != null) {
+			this.intervalRecorder.restart(this);
+		}
+
+		/* Earlier cycles were of another run */
+		if (this.history != null) {
+			this.history.clear();
+			takeSnapshot();
+		}
 	}
 
 	private void clearPipeline() {
@@ -164,29 +397,16 @@ public class Processor {
 		this.phyRsrc2 = null;
 		this.phyRdest = null;
 
-		/* ALU FU */
-		this.alu1Entry = null;
-		this.alu2Entry = null;
-		this.aluWBEntry = null;
-		this.alu1Result = 0;
-		this.alu2Result = 0;
-		this.aluWBResult = 0;
-
-		/* MULT FU */
-		this.multCycle = 0;
-		this.multEntry = null;
-		this.multWBEntry = null;
-
-		/* Branch FU */
-		this.branchEntry = null;
-		this.branchEntry = null;
-		this.branchMEMEntry = null;
+		/* Functional Units */
+		for (FunctionalUnit unit : this.units) {
+			unit.clear();
+		}
 
-		/* LOAD/STORE FU */
-		this.ls1Entry = null;
-		this.ls2Entry = null;
-		this.lsMEMEntry = null;
-		this.lsWBEntry = null;
+		/* LOADs waiting on a cache miss */
+		for (int i = 0; i < this.missCount; i += 1) {
+			this.missEntries[i] = null;
+		}
+		this.missCount = 0;
 	}
 
 	/**
@@ -194,7 +414,7 @@ public class Processor {
 	 * HALT instruction is encountered, the simulation end when it executes the
 	 * writeback stage and this method will return true. If a HALT instruction
 	 * is not encountered, the method will return false once all the cycles have
-	 * been executed.
+	 * been executed, or at the end of the cycle a breakpoint was hit in.
 	 * 
 	 * @param cycles
 	 *            the amount of clock cycles the simulation will run for
@@ -203,40 +423,185 @@ public class Processor {
 	 */
 	public boolean cycle(int cycles) {
 		isHalted = false;
+		breakReason = null;
+
+		/* Start the IPC windows once they have a condition */
+		if (this.breakpoints != null) {
+			startIPCWindow();
+		}
 
-		for (int i = 0; (i < cycles) && !isHalted; i += 1) {
+		for (int i = 0; (i < cycles) && !isHalted && breakReason == null; i += 1) {
 			this.clockCyle();
+
+			/* Nothing changed, so nothing will until the next timed event */
+			if (this.idleCycleSkipping && !this.cycleActive && !isHalted && breakReason == null) {
+				i += skipIdleCycles(cycles - i - 1);
+			}
+		}
+
+		/* Record the throughput of the last interval */
+		if (isHalted) {
+			nextEventInterval();
+		}
+
+		/* Show monitoring tools where the run stopped */
+		if (this.monitor != null) {
+			publishSnapshot();
 		}
 
 		return isHalted;
 	}
+
+	/**
+	 * Jumps over the cycles that follow a cycle in which nothing changed. Every
+	 * one of those cycles would be the same as the idle cycle until a LOAD/STORE
+	 * countdown runs out, a cache miss completes or an MSHR is filled. The
+	 * counters are credited as if every skipped cycle had been simulated.
+	 * 
+	 * @param limit
+	 *            the most cycles that may be skipped
+	 * @return the amount of cycles skipped
+	 */
+	private int skipIdleCycles(int limit) {
+		/* Find the next cycle something happens in */
+		long nextEvent = Long.MAX_VALUE;
+
+		for (FunctionalUnit unit : this.lsUnits) {
+			if (unit.getLastStage() != null && unit.isLastStageStarted() && unit.getLastStageCycles() > 0) {
+				nextEvent = Math.min(nextEvent, this.totalCycles + unit.getLastStageCycles());
+			}
+		}
+
+		for (int i = 0; i < this.missCount; i += 1) {
+			nextEvent = Math.min(nextEvent, this.missCompleteCycles[i]);
+		}
+
+		/* Accesses waiting on a free MSHR go ahead once one is filled */
+		if (this.cycleMSHRRetries > 0) {
+			nextEvent = Math.min(nextEvent, this.dataCache.getNextFillCycle(this.totalCycles));
+		}
+
+		int skip = (int) Math.min(limit, nextEvent - this.totalCycles - 1);
+
+		/* Stop at the end of the window being recorded */
+		if (this.intervalRecorder != null) {
+			skip = (int) Math.min(skip, this.intervalRecorder.getCyclesLeft(this.totalCycles));
+		}
+
+		/* Stop at the end of the IPC window */
+		skip = (int) Math.min(skip, this.ipcWindowEnd - this.totalCycles);
+
+		if (skip <= 0) {
+			return 0;
+		}
+
+		/* Count down the memory accesses */
+		for (FunctionalUnit unit : this.lsUnits) {
+			if (unit.getLastStage() != null && unit.isLastStageStarted() && unit.getLastStageCycles() > 0) {
+				unit.setLastStageCycles(unit.getLastStageCycles() - skip);
+			}
+		}
+
+		/* Credit the counters of the skipped cycles */
+		if (this.dataCache != null) {
+			this.dataCache.sample(this.totalCycles + 1, this.totalCycles + skip);
+			this.dataCache.recordMSHRFullEvents((long) this.cycleMSHRRetries * skip);
+		}
+		this.mshrStalledCycles += this.cycleMSHRRetries * skip;
+		if (stallDRFTakenBranch || stallDRFDispatchBranch || stallDRFResourceFull || stallDRFNoRegister) {
+			this.dispatchedStalledCycles += skip;
+		}
+		this.noIssuesCycles += skip;
+		this.totalCycles += skip;
+		this.skippedCycles += skip;
+		this.metrics.repeat(skip);
+		this.cpiStack.repeat(skip);
+		this.profiler.repeatHead(skip);
+		if (this.totalCycles >= this.eventIntervalEnd) {
+			nextEventInterval();
+		}
+		if (this.totalCycles >= this.snapshotEnd) {
+			publishSnapshot();
+		}
+		if (this.intervalRecorder != null) {
+			this.intervalRecorder.sample(this);
+		}
+		if (this.totalCycles >= this.ipcWindowEnd) {
+			checkIPCWindow();
+		}
+		if (this.totalCycles >= this.historyEnd) {
+			takeSnapshot();
+		}
+
+		return skip;
+	}
 	
 	public void setURFSize(int physicalRegisters) {
 		urf.setPhysicalRegisterSize(physicalRegisters);
 	}
 
 	/**
-	 * Takes a string representation of a register and converts that into the
-	 * correct register reference.
+	 * Changes the amount of physical registers without initializing the
+	 * processor again, for trying another URF size on a fork
 	 * 
-	 * @param str
-	 *            the string representation of a register
-	 * @return the register object that matches the string representation
+	 * @param physicalRegisters
+	 *            the amount of physical registers
 	 * @throws IllegalArgumentException
-	 *             if the string representation is invalid
+	 *             if a register that would be removed is in use
 	 */
-	private int decodeRegister(String str) {
-		Matcher gpMatcher = GP_REG_PATTERN.matcher(str);
-		Matcher specMatcher = SPEC_REG_PATTERN.matcher(str);
-
-		if (gpMatcher.matches()) {
-			int index = Integer.valueOf(gpMatcher.group(1));
-			return index;
-		} else if (specMatcher.matches()) {
-			return NUM_OF_ARC_REGISTERS;
-		} else {
-			throw new IllegalArgumentException("Register can not be decoded");
+	public void resizeURF(int physicalRegisters) {
+		urf.resizePhysicalRegisters(physicalRegisters);
+		metrics.setPhysicalRegisters(physicalRegisters);
+	}
+
+	/**
+	 * Changes the cycles it takes to access memory, for the misses that start
+	 * from now on
+	 * 
+	 * @param cycles
+	 *            the amount of cycles
+	 * @throws IllegalArgumentException
+	 *             if the processor has no data cache or the latency is less
+	 *             than one cycle
+	 */
+	public void setMemoryLatency(int cycles) {
+		if (this.dataCache == null) {
+			throw new IllegalArgumentException("Memory latency can only be changed with a data cache");
+		} else if (cycles < 1) {
+			throw new IllegalArgumentException("Memory latency must be at least one cycle");
 		}
+
+		this.dataCache.setMemoryLatency(cycles);
+	}
+
+	/**
+	 * Makes an independent copy of the processor in its current state, which
+	 * can be changed and simulated on another thread. The fork shares the
+	 * program and every memory page until one of the two writes it, so a fork
+	 * costs little more than the state of the pipeline. It has no breakpoints,
+	 * history, monitor or recording of its own.
+	 * 
+	 * Forking changes this processor, so it must not run while it is forked.
+	 * 
+	 * @return the fork
+	 */
+	public Processor fork() {
+		Processor fork = new Processor(this.config);
+		fork.copyState(this);
+		fork.memory = new Memory(this.memory.capture());
+
+		return fork;
+	}
+
+	/**
+	 * Enables or disables speculative issue of LOADs ahead of older STOREs.
+	 * When disabled, LOADs and STOREs are issued strictly in program order.
+	 * 
+	 * @param enabled
+	 *            true if LOADs may be issued speculatively; false otherwise
+	 */
+	public void setMemoryDependencePrediction(boolean enabled) {
+		this.memoryDependencePrediction = enabled;
 	}
 
 	/**
@@ -244,53 +609,73 @@ public class Processor {
 	 */
 	public void clockCyle() {
 		this.totalCycles += 1;
+		this.cycleActive = false;
+		this.cycleMSHRRetries = 0;
+		this.cycleStallCause = null;
+		this.cycleIssued = 0;
 		
 		/* DR/F COPY */
-		if (!stallDRFTakenBranch && !stallDRFDispatchBranch) {
+		if (!stallDRFTakenBranch && !stallDRFDispatchBranch && !stallDRFResourceFull && !stallDRFNoRegister) {
+			if (this.fetchEntry != null || this.drf1Entry != null || this.drf2Entry != null) {
+				this.cycleActive = true;
+			}
+
 			this.drf2Entry = this.drf1Entry;
 			this.drf1Entry = this.fetchEntry;
 		}
 
-		/* ARTH FU Copy */
-		this.aluWBEntry = this.alu2Entry;
-		this.alu2Entry = this.alu1Entry;
-		this.aluWBResult = this.alu2Result;
-		this.alu2Result = this.alu1Result;
-
-		/* LOAD/STORE FU Copy */
-		this.lsWBEntry = this.lsMEMEntry;
-		this.lsMEMEntry = this.ls2Entry;
-		this.ls2Entry = this.ls1Entry;
-		this.lsWBResult = this.lsMEMResult;
-		this.lsMEMResult = this.ls2Result;
-		this.ls2Result = this.ls1Result;
-
-		/* Branch Copy */
-		this.branchMEMEntry = this.branchEntry;
-
-		/* MULT FU Copy */
-		if (multCycle == 3) {
-			this.multWBEntry = this.multEntry;
-			this.multEntry = null;
-			multCycle = 0;
-		} else {
-			this.multWBEntry = null;
+		/* Move every entry one stage forward in its functional unit */
+		for (FunctionalUnit unit : this.units) {
+			if (unit.advance()) {
+				this.cycleActive = true;
+			}
 		}
 
-		/* Retire an rob entry if you can */
-		if (rob.canRetire()) {
+		this.profiler.recordHead(rob.isEmpty() ? -1 : programIndex(rob.peek().getInstructionAddress()));
+
+		/* Replay a LOAD that read memory before an older STORE wrote it */
+		if (rob.canRetire() && rob.peek().isMemoryViolation()) {
+			this.cycleActive = true;
+			this.cpiStack.record(CPIComponent.MEMORY_ORDER);
+			this.profiler.recordFlush(programIndex(rob.peek().getInstructionAddress()));
+			recordFlushEvent("Memory order violation", rob.peek().getInstructionAddress(),
+					rob.peek().getInstructionAddress());
+			squash(rob.peek().getInstructionAddress());
+		} else if (rob.canRetire()) {
+			this.cycleActive = true;
+			this.cpiStack.record(CPIComponent.BASE);
+
+			/* Retire an rob entry if you can */
 			ROBEntry entry = rob.retire();
 
 			if (entry.getDestRegister() != null) {
 				urf.commitRegister(entry.getArchRegister(), entry.getDestRegister());
+
+				if (ARTH_INSTR.contains(entry.getInstruction().getOpCode())) {
+					committedFlag.setValue(entry.getDestRegister().getValue());
+				}
 			}
 			
 			/* Stats */
 			this.instructionsCommited += 1;
+			this.profiler.recordCommit(programIndex(entry.getInstructionAddress()));
 			if (entry.getInstruction().getOpCode() == InstructionType.LOAD) {
 				this.loadsCommitted += 1;
 			} else if (entry.getInstruction().getOpCode() == InstructionType.STORE) {
 				this.storesCommitted += 1;
+
+				/* The STORE is no longer speculative, write memory */
+				this.memory.setValue(entry.getMemoryAddress(), entry.getStoreValue());
+				if (this.breakpoints != null && this.memory.takeWatchedWrite() >= 0) {
+					breakAt("Watchpoint at " + entry.getMemoryAddress() + " written with " + entry.getStoreValue());
+				}
+			} else if (BR_INSTR.contains(entry.getInstruction().getOpCode())) {
+				this.branchesCommitted += 1;
+			}
+
+			/* Breakpoints */
+			if (this.breakpoints != null) {
+				checkBreakpoints(entry);
 			}
 			
 			/* See if the instruction was a HALT instruction */
@@ -300,167 +685,787 @@ public class Processor {
 
 			/* See if the entry was a taken branch */
 			if (entry.isTakenBranch()) {
+				this.takenBranches += 1;
+				this.profiler.recordFlush(programIndex(entry.getInstructionAddress()));
+				recordFlushEvent("Taken branch", entry.getInstructionAddress(), entry.getTakenAddress());
+				squash(entry.getTakenAddress());
+			}
+		} else {
+			this.cpiStack.record(classifyROBHead());
+		}
+
+		/* ISSUE */
+		issue();
+
+		/* Execute ALU FUs */
+		for (FunctionalUnit unit : this.aluUnits) {
+			aluWBStage(unit);
+			aluStage(unit);
+		}
+
+		/* Execute LOAD/STORE FUs */
+		lsMissWBStage();
+		for (FunctionalUnit unit : this.lsUnits) {
+			lsWBStage(unit);
+		}
+		lsMEMStages();
+		for (FunctionalUnit unit : this.lsUnits) {
+			lsAddressStage(unit);
+		}
+
+		/* Execute MULT FUs */
+		for (FunctionalUnit unit : this.mulUnits) {
+			multWBStage(unit);
+			multStage(unit);
+		}
+
+		/* Execute Branch FUs */
+		for (FunctionalUnit unit : this.branchUnits) {
+			branchWBStage(unit);
+			branchStage(unit);
+		}
+		
+		/* Stall if we have a branch in the IQ and in the DRF2 */
+		if (iq.contains(BR_INSTR)) {
+			InstructionType opCode1 = (this.drf1Entry == null) ? null : this.drf1Entry.getInstruction().getOpCode();
+			InstructionType opCode2 = (this.drf2Entry == null) ? null : this.drf2Entry.getInstruction().getOpCode();
+			if (BR_INSTR.contains(opCode1) || BR_INSTR.contains(opCode2)) {
+				stallDRFDispatchBranch = true;
+			} else {
+				stallDRFDispatchBranch = false;
+			}
+		} else {
+			stallDRFDispatchBranch = false;
+		}
+
+		/* Stall if the IQ or ROB has no room for the instruction in DRF2 */
+		stallDRFResourceFull = (this.drf2Entry != null) && (iq.isFull() || rob.isFull());
+
+		/* Stall if the instruction in DRF1 needs a physical register and none is free */
+		stallDRFNoRegister = (this.drf1Entry != null)
+				&& this.drf1Entry.getInstruction().getOpCode().getDestinationCount() > 0
+				&& !urf.hasPhysicalRegisterAvailable();
+
+		if (!stallDRFTakenBranch && !stallDRFDispatchBranch && !stallDRFResourceFull && !stallDRFNoRegister) {
+			drf2Stage();
+			drf1Stage();
+			fetchStage();
+
+			if (this.fetchEntry != null || this.drf1Entry != null || this.drf2Entry != null) {
+				this.cycleActive = true;
+			}
+		} else {
+			this.dispatchedStalledCycles += 1;
+
+			if (stallDRFTakenBranch) {
+				this.cycleStallCause = StallCause.TAKEN_BRANCH;
+			} else if (stallDRFDispatchBranch) {
+				this.cycleStallCause = StallCause.BRANCH_DISPATCH;
+			} else if (stallDRFResourceFull && iq.isFull()) {
+				this.cycleStallCause = StallCause.IQ_FULL;
+			} else if (stallDRFResourceFull) {
+				this.cycleStallCause = StallCause.ROB_FULL;
+			} else {
+				this.cycleStallCause = StallCause.NO_PHYSICAL_REGISTER;
+			}
+		}
+
+		/* Data forwarding */
+		/* Forward out of the last ALU stages */
+		for (FunctionalUnit unit : this.aluUnits) {
+			if (unit.getLastStage() != null) {
+				iq.forwardData(unit.getLastStage().getInstruction(), unit.getResult(unit.getLatency() - 1));
+			}
+		}
+
+		/* Forward out of mul on the completed cycle */
+		for (FunctionalUnit unit : this.mulUnits) {
+			if (unit.getLastStage() != null) {
+				iq.forwardData(unit.getLastStage().getInstruction(), unit.getResult(unit.getLatency() - 1));
+			}
+		}
+
+		/* Forward out of LOADs whose cache miss completes this cycle */
+		for (int i = 0; i < this.missCount; i += 1) {
+			if (this.missCompleteCycles[i] == this.totalCycles) {
+				this.cycleActive = true;
+				iq.forwardData(this.missEntries[i].getInstruction(), this.missResults[i]);
+			}
+		}
+
+		/* Sample the outstanding misses */
+		if (this.dataCache != null) {
+			this.dataCache.sample(this.totalCycles);
+		}
+
+		/* Forward out of LSMEM if instruction is a load that has completed */
+		for (FunctionalUnit unit : this.lsUnits) {
+			IQEntry memEntry = unit.getLastStage();
+
+			if (memEntry != null && unit.getLastStageCycles() == 0 && !unit.isLastStageDeferred()
+					&& memEntry.getInstruction().getOpCode().equals(InstructionType.LOAD)) {
+				iq.forwardData(memEntry.getInstruction(), unit.getResult(unit.getLatency() - 1));
+			}
+		}
+
+		/* Forward into the LOAD/STOREs that have not accessed memory yet */
+		for (FunctionalUnit lsUnit : this.lsUnits) {
+			for (int i = 0; i < lsUnit.getLatency() - 1; i += 1) {
+				IQEntry lsEntry = lsUnit.getStage(i);
+
+				if (lsEntry != null) {
+					forwardIntoLS(lsUnit, i);
+				}
+			}
+
+			/* Forward out of LSMEM into the STORE right behind it */
+			IQEntry memEntry = lsUnit.getLastStage();
+			IQEntry lsEntry = lsUnit.getStage(0);
+			if (memEntry != null && lsUnit.getLastStageCycles() == 0 && !lsUnit.isLastStageDeferred()
+					&& lsEntry != null) {
+				DecodedInstruction ls1Intr = lsEntry.getInstruction();
+				DecodedInstruction lsMem = memEntry.getInstruction();
+
+				if (ls1Intr.isRsrc1FlowDependant(lsMem)) {
+					lsEntry.setSrc1Valid(true);
+					lsEntry.setSrc1Value(lsUnit.getResult(lsUnit.getLatency() - 1));
+				}
+			}
+		}
+
+		/* Stats */
+		this.metrics.sample(iq.size(), rob.size(), urf.getAllocatedCount(), this.cycleIssued, this.cycleStallCause);
+
+		/* Flight recorder events */
+		if (this.cycleStallCause != this.stallEpisodeCause) {
+			nextStallEpisode();
+		}
+		if (this.totalCycles >= this.eventIntervalEnd) {
+			nextEventInterval();
+		}
+
+		/* JMX snapshot */
+		if (this.totalCycles >= this.snapshotEnd) {
+			publishSnapshot();
+		}
+
+		/* Interval statistics */
+		if (this.intervalRecorder != null) {
+			this.intervalRecorder.sample(this);
+		}
+
+		/* IPC breakpoint */
+		if (this.totalCycles >= this.ipcWindowEnd) {
+			checkIPCWindow();
+		}
+
+		/* Snapshot for going back */
+		if (this.totalCycles >= this.historyEnd) {
+			takeSnapshot();
+		}
+	}
+
+	/**
+	 * Starts streaming the statistics of every window of cycles or committed
+	 * instructions to a CSV file. A recording that is already running is
+	 * stopped first.
+	 * 
+	 * @param file
+	 *            the CSV file
+	 * @param interval
+	 *            the size of every window
+	 * @param instructions
+	 *            true if the windows are counted in committed instructions;
+	 *            false if they are counted in cycles
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public void startIntervalRecording(String file, int interval, boolean instructions) throws IOException {
+		stopIntervalRecording();
+		this.intervalRecorder = new IntervalRecorder(file, interval, instructions, this);
+	}
+
+	/**
+	 * Writes the last window of the interval recording and closes its file,
+	 * if one is running
+	 * 
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public void stopIntervalRecording() throws IOException {
+		if (this.intervalRecorder != null) {
+			IntervalRecorder recorder = this.intervalRecorder;
+			this.intervalRecorder = null;
+			recorder.close(this);
+		}
+	}
+
+	/**
+	 * Returns the conditions that stop a run, making an empty set if there are
+	 * none. The processor checks them until clearBreakpoints is called.
+	 * 
+	 * @return the breakpoints
+	 */
+	public Breakpoints getBreakpoints() {
+		if (this.breakpoints == null) {
+			this.breakpoints = new Breakpoints(this.memory);
+		}
+
+		return this.breakpoints;
+	}
+
+	public boolean hasBreakpoints() {
+		return this.breakpoints != null;
+	}
+
+	/**
+	 * Removes every breakpoint, so that none are checked any more
+	 */
+	public void clearBreakpoints() {
+		if (this.breakpoints != null) {
+			this.breakpoints.clear();
+			this.breakpoints = null;
+		}
+		this.ipcWindowEnd = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns why the last call to cycle stopped before all its cycles were
+	 * simulated
+	 * 
+	 * @return the breakpoint that was hit; null if none was hit
+	 */
+	public String getBreakReason() {
+		return breakReason;
+	}
+
+	private void breakAt(String reason) {
+		if (this.breakReason == null) {
+			this.breakReason = reason;
+		}
+	}
+
+	/**
+	 * Checks the breakpoints on an instruction that just committed
+	 */
+	private void checkBreakpoints(ROBEntry entry) {
+		if (this.breakpoints.isBreakpoint(entry.getInstructionAddress())) {
+			breakAt("Breakpoint at " + entry.getInstructionAddress());
+		}
+		if (entry.getDestRegister() != null
+				&& this.breakpoints.isRegisterCondition(entry.getArchRegister(), entry.getDestRegister().getValue())) {
+			breakAt("R" + entry.getArchRegister() + " = " + entry.getDestRegister().getValue() + " committed at "
+					+ entry.getInstructionAddress());
+		}
+		if (this.instructionsCommited >= this.breakpoints.getInstructionLimit()) {
+			this.breakpoints.setInstructionLimit(Long.MAX_VALUE);
+			breakAt(this.instructionsCommited + " instructions committed");
+		}
+	}
+
+	/**
+	 * Starts a window of the IPC condition, unless one of the same size is
+	 * running
+	 */
+	private void startIPCWindow() {
+		int window = this.breakpoints.getIPCWindow();
+
+		if (window == 0) {
+			this.ipcWindowEnd = Long.MAX_VALUE;
+		} else if (window != this.ipcWindow || this.ipcWindowEnd == Long.MAX_VALUE) {
+			this.ipcWindow = window;
+			this.ipcWindowEnd = this.totalCycles + window;
+			this.ipcWindowCommitted = this.instructionsCommited;
+		}
+	}
+
+	/**
+	 * Ends a window of the IPC condition and starts the next one
+	 */
+	private void checkIPCWindow() {
+		double ipc = (double) (this.instructionsCommited - this.ipcWindowCommitted) / this.ipcWindow;
+
+		if (this.breakpoints.isIPCCondition(ipc)) {
+			breakAt(String.format(Locale.ROOT, "IPC %.4f in cycles %d to %d", ipc,
+					this.ipcWindowEnd - this.ipcWindow + 1, this.ipcWindowEnd));
+		}
+		this.ipcWindowEnd = this.totalCycles + this.ipcWindow;
+		this.ipcWindowCommitted = this.instructionsCommited;
+	}
+
+	/**
+	 * Starts taking a snapshot every interval of cycles, beginning with the
+	 * current cycle, so that the simulation can go back to any cycle after the
+	 * oldest snapshot kept. A history that is already taken is dropped.
+	 * 
+	 * @param interval
+	 *            the cycles between two snapshots
+	 * @param retention
+	 *            the most snapshots kept
+	 * @throws IllegalArgumentException
+	 *             if the interval or the retention is less than one
+	 */
+	public void startHistory(int interval, int retention) {
+		this.history = new ProcessorHistory(interval, retention);
+		takeSnapshot();
+	}
+
+	/**
+	 * Stops taking snapshots and drops those that were taken
+	 */
+	public void stopHistory() {
+		this.history = null;
+		this.historyEnd = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the snapshots taken for going back
+	 * 
+	 * @return the history; null if none is taken
+	 */
+	public ProcessorHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * Goes back to the end of an earlier cycle. The latest snapshot before it
+	 * is restored and simulated up to the cycle, without stopping at
+	 * breakpoints or recording intervals. The snapshots after the cycle are
+	 * dropped, and are taken again as the simulation goes on.
+	 * 
+	 * @param cycle
+	 *            the cycle
+	 * @throws IllegalArgumentException
+	 *             if there is no history, or the cycle is not between its
+	 *             oldest snapshot and the current cycle
+	 */
+	public void rewind(long cycle) {
+		if (this.history == null) {
+			throw new IllegalArgumentException("No history is being taken");
+		} else if (cycle > this.totalCycles) {
+			throw new IllegalArgumentException("Cycle " + cycle + " has not been simulated yet");
+		} else if (cycle < this.history.getOldestCycle()) {
+			throw new IllegalArgumentException("Cycle " + cycle + " is older than the history, which starts at cycle "
+					+ this.history.getOldestCycle());
+		}
+
+		ProcessorHistory.Snapshot snapshot = this.history.rewind(cycle);
+		copyState(snapshot.state);
+		this.memory.restore(snapshot.memory);
+		this.historyEnd = this.totalCycles + this.history.getInterval();
+		this.ipcWindowEnd = Long.MAX_VALUE;
+
+		/* Replay, the same way as the first time */
+		Breakpoints breakpoints = this.breakpoints;
+		IntervalRecorder recorder = this.intervalRecorder;
+		this.breakpoints = null;
+		this.intervalRecorder = null;
+		try {
+			while (this.totalCycles < cycle) {
+				cycle((int) (cycle - this.totalCycles));
+			}
+		} finally {
+			this.breakpoints = breakpoints;
+			this.intervalRecorder = recorder;
+		}
+
+		/* The recorded windows start over from here */
+		if (this.intervalRecorder != null) {
+			this.intervalRecorder.restart(this);
+		}
+		if (this.monitor != null) {
+			publishSnapshot();
+		}
+	}
+
+	private void takeSnapshot() {
+		Processor state = new Processor(this.config);
+		state.copyState(this);
+
+		this.history.add(new ProcessorHistory.Snapshot(this.totalCycles, state, this.memory.capture()));
+		this.historyEnd = this.totalCycles + this.history.getInterval();
+	}
+
+	/**
+	 * Takes over the simulated state of a processor built from the same
+	 * configuration: the latches, the functional units, the IQ, the ROB, the
+	 * URF, the caches, the predictors and the statistics. The registers and IQ
+	 * entries the other processor points to are replaced by those in the same
+	 * places of this processor. Memory, breakpoints, history, the monitor and
+	 * the recording are left alone.
+	 * 
+	 * @param other
+	 *            the processor
+	 */
+	private void copyState(Processor other) {
+		/* The URF first, so that registers can be mapped to it */
+		this.urf.copyFrom(other.urf);
+		StateMap map = new StateMap(other.urf, other.committedFlag, other.rob, this.urf, this.committedFlag,
+				this.rob);
+
+		/* Fetch and the DRF latches, the entries are never changed so they are shared */
+		this.program = other.program;
+		this.pc = other.pc;
+		this.programEntries = other.programEntries;
+		this.stallDRFTakenBranch = other.stallDRFTakenBranch;
+		this.takenBranchSequence = other.takenBranchSequence;
+		this.stallDRFDispatchBranch = other.stallDRFDispatchBranch;
+		this.stallDRFResourceFull = other.stallDRFResourceFull;
+		this.stallDRFNoRegister = other.stallDRFNoRegister;
+		this.fetchEntry = other.fetchEntry;
+		this.drf1Entry = other.drf1Entry;
+		this.drf2Entry = other.drf2Entry;
+		this.archRsrc1 = other.archRsrc1;
+		this.archRsrc2 = other.archRsrc2;
+		this.archRdest = other.archRdest;
+		this.phyRsrc1 = map.map(other.phyRsrc1);
+		this.phyRsrc2 = map.map(other.phyRsrc2);
+		this.phyRdest = map.map(other.phyRdest);
+
+		/* The ROB owns the instructions the IQ and the functional units point to */
+		this.rob.copyFrom(other.rob, map);
+		this.iq.copyFrom(other.iq, map);
+		for (int i = 0; i < this.units.length; i += 1) {
+			this.units[i].copyFrom(other.units[i], map);
+		}
+		this.dispatchSequence = other.dispatchSequence;
+
+		/* LOADs waiting on a cache miss */
+		for (int i = 0; i < this.missEntries.length; i += 1) {
+			this.missEntries[i] = map.map(other.missEntries[i]);
+			this.missCompleteCycles[i] = other.missCompleteCycles[i];
+			this.missResults[i] = other.missResults[i];
+		}
+		this.missCount = other.missCount;
+		this.mshrStalledCycles = other.mshrStalledCycles;
+
+		if (this.dataCache != null) {
+			this.dataCache.copyFrom(other.dataCache);
+		}
+		if (this.prefetcher != null) {
+			this.prefetcher.copyFrom(other.prefetcher);
+		}
+		this.committedFlag.copyFrom(other.committedFlag);
+		this.storeSetPredictor.copyFrom(other.storeSetPredictor);
+		this.memoryDependencePrediction = other.memoryDependencePrediction;
+
+		this.isHalted = other.isHalted;
+		this.cycleActive = other.cycleActive;
+		this.cycleMSHRRetries = other.cycleMSHRRetries;
+
+		/* Statistics */
+		this.totalCycles = other.totalCycles;
+		this.instructionsCommited = other.instructionsCommited;
+		this.dispatchedStalledCycles = other.dispatchedStalledCycles;
+		this.noIssuesCycles = other.noIssuesCycles;
+		this.loadsCommitted = other.loadsCommitted;
+		this.storesCommitted = other.storesCommitted;
+		this.branchesCommitted = other.branchesCommitted;
+		this.takenBranches = other.takenBranches;
+		this.speculativeLoadsIssued = other.speculativeLoadsIssued;
+		this.loadsHeldByPredictor = other.loadsHeldByPredictor;
+		this.memoryOrderViolations = other.memoryOrderViolations;
+		this.skippedCycles = other.skippedCycles;
+		this.metrics.copyFrom(other.metrics);
+		this.cycleStallCause = other.cycleStallCause;
+		this.cycleIssued = other.cycleIssued;
+		this.cpiStack.copyFrom(other.cpiStack);
+		this.recovering = other.recovering;
+		this.profiler.copyFrom(other.profiler);
+		this.eventIntervalStart = other.eventIntervalStart;
+		this.eventIntervalEnd = other.eventIntervalEnd;
+		this.eventIntervalCommitted = other.eventIntervalCommitted;
+	}
+
+	/**
+	 * Registers a JMX monitor for the processor in the platform MBean server.
+	 * The monitor shows a snapshot of the statistics that is published every
+	 * snapshot interval and whenever a call to cycle returns.
+	 * 
+	 * @return the name the monitor is registered under
+	 * @throws JMException
+	 *             if the monitor can not be registered
+	 */
+	public ObjectName registerMonitor() throws JMException {
+		if (this.monitor == null) {
+			this.monitor = new ProcessorMonitor();
+			publishSnapshot();
+		}
+
+		return this.monitor.getName();
+	}
+
+	/**
+	 * Removes the JMX monitor of the processor, if it has one
+	 * 
+	 * @throws JMException
+	 *             if the monitor can not be unregistered
+	 */
+	public void unregisterMonitor() throws JMException {
+		if (this.monitor != null) {
+			this.monitor.unregister();
+			this.monitor = null;
+			this.snapshotEnd = Long.MAX_VALUE;
+		}
+	}
 
-				/* Deallocate any physical registers */
-				List<ROBEntry> rollbacked = rob.getEntries();
-				for (ROBEntry rollbackEntry : rollbacked) {
-					if (rollbackEntry.getDestRegister() != null) {
-						urf.deallocatePhysicalRegister(rollbackEntry.getDestRegister());
-					}
-				}
-				rob.clear();
-				
-				/* Deallocate register for the entry that we decoded (but have not added) */
-				if (phyRdest != null) {
-					urf.deallocatePhysicalRegister(phyRdest);
-				}
+	private void publishSnapshot() {
+		this.monitor.publish(this);
+		this.snapshotEnd = this.totalCycles + this.snapshotInterval;
+	}
+
+	/**
+	 * Ends the current throughput interval and starts the next one. The event
+	 * of the interval is only made if it is enabled in a flight recording.
+	 */
+	private void nextEventInterval() {
+		long cycles = this.totalCycles - this.eventIntervalStart;
+
+		if (this.throughputEvent != null && cycles > 0) {
+			long instructions = this.instructionsCommited - this.eventIntervalCommitted;
+			long nanos = System.nanoTime() - this.eventIntervalNanos;
+
+			this.throughputEvent.startCycle = this.eventIntervalStart;
+			this.throughputEvent.cycles = cycles;
+			this.throughputEvent.instructions = instructions;
+			this.throughputEvent.ipc = (double) instructions / cycles;
+			this.throughputEvent.cyclesPerSecond = (nanos == 0) ? 0 : (cycles * 1e9) / nanos;
+			this.throughputEvent.commit();
+		}
 
-				/* Restore from the retirement R-RAT */
-				urf.rollback();
+		this.eventIntervalStart = this.totalCycles;
+		this.eventIntervalEnd = this.totalCycles + this.eventInterval;
+		this.eventIntervalCommitted = this.instructionsCommited;
 
-				/* Clear out the iq */
-				iq.clear();
+		if (THROUGHPUT_EVENT.isEnabled()) {
+			this.throughputEvent = new ThroughputEvent();
+			this.throughputEvent.begin();
+			this.eventIntervalNanos = System.nanoTime();
+		} else {
+			this.throughputEvent = null;
+		}
+	}
 
-				/* Clear out the pipeline */
-				clearPipeline();
+	/**
+	 * Ends the current stall episode and starts one for the stall cause of
+	 * this cycle, if it is an IQ full or URF exhausted stall and the event is
+	 * enabled in a flight recording.
+	 */
+	private void nextStallEpisode() {
+		if (this.stallEpisode != null) {
+			this.stallEpisode.cycles = this.totalCycles - this.stallEpisode.startCycle;
+			this.stallEpisode.commit();
+			this.stallEpisode = null;
+		}
 
-				/* Update the program counter */
-				this.pc = entry.getTakenAddress();
+		this.stallEpisodeCause = this.cycleStallCause;
 
-				/* Don't stall any more */
-				this.stallDRFTakenBranch = false;
-			}
+		if ((this.cycleStallCause == StallCause.IQ_FULL || this.cycleStallCause == StallCause.NO_PHYSICAL_REGISTER)
+				&& STALL_EPISODE_EVENT.isEnabled()) {
+			this.stallEpisode = new StallEpisodeEvent();
+			this.stallEpisode.begin();
+			this.stallEpisode.cause = this.cycleStallCause.name();
+			this.stallEpisode.startCycle = this.totalCycles;
 		}
+	}
 
-		/* ISSUE */
-		this.alu1Entry = null;
-		this.branchEntry = null;
-		this.ls1Entry = null;
-		if (!stallDRFTakenBranch) {
-			issue();
-		} else {
-			this.noIssuesCycles += 1;
+	/**
+	 * Makes a flight recorder event for a flush of the pipeline, if it is
+	 * enabled in a flight recording. Must be called before the pipeline is
+	 * squashed.
+	 * 
+	 * @param cause
+	 *            what flushed the pipeline
+	 * @param address
+	 *            the address of the instruction that flushed the pipeline
+	 * @param target
+	 *            the address fetch restarts at
+	 */
+	private void recordFlushEvent(String cause, int address, int target) {
+		if (FLUSH_EVENT.isEnabled()) {
+			PipelineFlushEvent event = new PipelineFlushEvent();
+			event.cycle = this.totalCycles;
+			event.cause = cause;
+			event.address = address;
+			event.target = target;
+			event.robOccupancy = rob.size();
+			event.iqOccupancy = iq.size();
+			event.commit();
 		}
+	}
 
-		/* Execute ALU FU */
-		aluWBStage();
-		alu2Stage();
-		alu1Stage();
+	/**
+	 * Forwards the results leaving the ALUs and MULs this cycle into a
+	 * LOAD/STORE entry that has not accessed memory yet. The address is
+	 * computed again if one of its registers was forwarded.
+	 * 
+	 * @param lsUnit
+	 *            the LOAD/STORE unit
+	 * @param stage
+	 *            the stage of the unit holding the entry
+	 */
+	private void forwardIntoLS(FunctionalUnit lsUnit, int stage) {
+		IQEntry lsEntry = lsUnit.getStage(stage);
+		DecodedInstruction lsIntr = lsEntry.getInstruction();
+		boolean store = (lsIntr.getOpCode() == InstructionType.STORE);
+		boolean addressForwarded = false;
+
+		/* Forward out of ALU 2 */
+		for (FunctionalUnit unit : this.aluUnits) {
+			IQEntry aluEntry = unit.getLastStage();
+
+			if (aluEntry == null) {
+				continue;
+			}
 
-		/* Execute LOAD/STORE FU */
-		lsWBStage();
-		lsMEMStage();
-		ls2Stage();
-		ls1Stage();
+			DecodedInstruction aluIntr = aluEntry.getInstruction();
+			int aluResult = unit.getResult(unit.getLatency() - 1);
 
-		/* Execute MULT FU */
-		multWBStage();
-		multStage();
+			if (lsIntr.isRsrc1FlowDependant(aluIntr)) {
+				lsEntry.setSrc1Valid(true);
+				lsEntry.setSrc1Value(aluResult);
+				addressForwarded |= !store;
+			}
 
-		/* Execute Branch FU */
-		branchMEMStage();
-		branchStage();
-		
-		/* Stall if we have a branch in the IQ and in the DRF2 */
-		if (iq.contains(BR_INSTR)) {
-			InstructionType opCode1 = (this.drf1Entry == null) ? null : this.drf1Entry.getInstruction().getOpCode();
-			InstructionType opCode2 = (this.drf2Entry == null) ? null : this.drf2Entry.getInstruction().getOpCode();
-			if (BR_INSTR.contains(opCode1) || BR_INSTR.contains(opCode2)) {
-				stallDRFDispatchBranch = true;
-			} else {
-				stallDRFDispatchBranch = false;
+			if (lsIntr.isRsrc2FlowDependant(aluIntr)) {
+				lsEntry.setSrc2Valid(true);
+				lsEntry.setSrc2Value(aluResult);
+				addressForwarded |= store;
 			}
-		} else {
-			stallDRFDispatchBranch = false;
 		}
 
-		if (!stallDRFTakenBranch && !stallDRFDispatchBranch) {
-			drf2Stage();
-			drf1Stage();
-			fetchStage();
-		} else {
-			this.dispatchedStalledCycles += 1;
-		}
+		/* Forward out of mult */
+		for (FunctionalUnit unit : this.mulUnits) {
+			IQEntry mulEntry = unit.getLastStage();
 
-		/* Data forwarding */
-		/* Forward out of alu2 entry */
-		if (this.alu2Entry != null) {
-			iq.forwardData(this.alu2Entry.getInstruction(), this.alu2Result);
-		}
+			if (mulEntry == null) {
+				continue;
+			}
 
-		/* Forward out of mul on the completed cycle */
-		if (this.multEntry != null && multCycle == 3) {
-			iq.forwardData(this.multEntry.getInstruction(), this.multResult);
+			DecodedInstruction mulIntr = mulEntry.getInstruction();
+			int multResult = unit.getResult(unit.getLatency() - 1);
+
+			if (lsIntr.isRsrc1FlowDependant(mulIntr)) {
+				lsEntry.setSrc1Valid(true);
+				lsEntry.setSrc1Value(multResult);
+				addressForwarded |= !store;
+			}
+
+			if (lsIntr.isRsrc2FlowDependant(mulIntr)) {
+				lsEntry.setSrc2Valid(true);
+				lsEntry.setSrc2Value(multResult);
+				addressForwarded |= store;
+			}
 		}
 
-		/* Forward out of LSMEM if instruction is a load */
-		if (this.lsMEMEntry != null && this.lsMEMEntry.getInstruction().getOpCode().equals(InstructionType.LOAD)) {
-			iq.forwardData(this.lsMEMEntry.getInstruction(), this.lsMEMResult);
+		if (addressForwarded) {
+			lsUnit.setResult(stage, getMemoryAddress(lsEntry));
 		}
+	}
 
-		/* Forward out of ALU 2 into ls1 */
-		if (this.ls1Entry != null && this.alu2Entry != null) {
-			DecodedInstruction ls1Intr = this.ls1Entry.getInstruction();
-			DecodedInstruction aluIntr = this.alu2Entry.getInstruction();
+	/**
+	 * Converts an address in program memory to the index of the instruction
+	 * in the program
+	 */
+	private static int programIndex(int address) {
+		return (address - SIZE_OF_DATA_MEMORY) / 4;
+	}
 
-			if (ls1Intr.isRsrc1FlowDependant(aluIntr)) {
-				this.ls1Entry.setSrc1Valid(true);
-				this.ls1Entry.setSrc1Value(alu2Result);
-			}
+	/**
+	 * Finds what keeps the head of the ROB from committing in a cycle nothing
+	 * commits
+	 * 
+	 * @return the component of the CPI stack the cycle is put down to
+	 */
+	private CPIComponent classifyROBHead() {
+		if (rob.isEmpty()) {
+			return this.recovering ? CPIComponent.BRANCH_RECOVERY : CPIComponent.FRONT_END;
 		}
 
-		/* Forward out of ALU 2 into ls2 */
-		if (this.ls2Entry != null && this.alu2Entry != null) {
-			DecodedInstruction ls2Intr = this.ls2Entry.getInstruction();
-			DecodedInstruction aluIntr = this.alu2Entry.getInstruction();
+		IQEntry head = rob.peek().getIQEntry();
 
-			if (ls2Intr.isRsrc1FlowDependant(aluIntr)) {
-				this.ls2Entry.setSrc1Valid(true);
-				this.ls2Entry.setSrc1Value(alu2Result);
+		for (int i = 0; i < iq.size(); i += 1) {
+			if (iq.get(i) == head) {
+				return CPIComponent.ISSUE_WAIT;
 			}
 		}
 
-		/* Forward out of mult */
-		if (this.ls1Entry != null && this.multEntry != null && multCycle == 3) {
-			DecodedInstruction ls1Intr = this.ls1Entry.getInstruction();
-			DecodedInstruction mulIntr = this.multEntry.getInstruction();
-
-			if (ls1Intr.isRsrc1FlowDependant(mulIntr)) {
-				this.ls1Entry.setSrc1Valid(true);
-				this.ls1Entry.setSrc1Value(multResult);
+		for (int i = 0; i < this.missCount; i += 1) {
+			if (this.missEntries[i] == head) {
+				return CPIComponent.MEMORY;
 			}
+		}
 
-			if (ls1Intr.isRsrc2FlowDependant(mulIntr)) {
-				this.ls1Entry.setSrc2Valid(true);
-				this.ls1Entry.setSrc2Value(multResult);
+		for (FunctionalUnit unit : this.lsUnits) {
+			/* Waiting in the memory stage on the cache, memory or older accesses */
+			if (unit.getLastStage() == head && unit.getLastStageCycles() > 0) {
+				return CPIComponent.MEMORY;
+			} else if (unit.contains(head)) {
+				return CPIComponent.LOAD_STORE;
 			}
 		}
 
-		/* Forward out of mult */
-		if (this.ls2Entry != null && this.multEntry != null && multCycle == 3) {
-			DecodedInstruction ls2Intr = this.ls2Entry.getInstruction();
-			DecodedInstruction mulIntr = this.multEntry.getInstruction();
+		for (FunctionalUnit unit : this.aluUnits) {
+			if (unit.contains(head)) {
+				return CPIComponent.ALU;
+			}
+		}
 
-			if (ls2Intr.isRsrc1FlowDependant(mulIntr)) {
-				this.ls2Entry.setSrc1Valid(true);
-				this.ls2Entry.setSrc1Value(multResult);
+		for (FunctionalUnit unit : this.mulUnits) {
+			if (unit.contains(head)) {
+				return CPIComponent.MUL;
 			}
+		}
 
-			if (ls2Intr.isRsrc2FlowDependant(mulIntr)) {
-				this.ls2Entry.setSrc2Valid(true);
-				this.ls2Entry.setSrc2Value(multResult);
+		for (FunctionalUnit unit : this.branchUnits) {
+			if (unit.contains(head)) {
+				return CPIComponent.BRANCH;
 			}
 		}
 
-		if (this.lsMEMEntry != null && this.ls1Entry != null) {
-			DecodedInstruction ls1Intr = this.ls1Entry.getInstruction();
-			DecodedInstruction lsMem = this.lsMEMEntry.getInstruction();
+		return CPIComponent.OTHER;
+	}
+
+	/**
+	 * Throws away every instruction that has not been committed and restarts
+	 * fetching at the provided address.
+	 * 
+	 * @param address
+	 *            the address of the next instruction to fetch
+	 */
+	private void squash(int address) {
+		this.recovering = true;
+
+		/* Deallocate any physical registers */
+		for (int i = 0; i < rob.size(); i += 1) {
+			ROBEntry rollbackEntry = rob.get(i);
 
-			if (ls1Intr.isRsrc1FlowDependant(lsMem)) {
-				this.ls1Entry.setSrc1Valid(true);
-				this.ls1Entry.setSrc1Value(lsMEMResult);
+			if (rollbackEntry.getDestRegister() != null) {
+				urf.deallocatePhysicalRegister(rollbackEntry.getDestRegister());
 			}
 		}
+		rob.clear();
+
+		/* Deallocate register for the entry that we decoded (but have not added) */
+		if (phyRdest != null) {
+			urf.deallocatePhysicalRegister(phyRdest);
+		}
+
+		/* Restore from the retirement R-RAT */
+		urf.rollback();
+
+		/* Clear out the iq */
+		iq.clear();
+
+		/* Clear out the pipeline */
+		clearPipeline();
+
+		/* Update the program counter */
+		this.pc = address;
+
+		/* Don't stall any more */
+		this.stallDRFTakenBranch = false;
+		this.takenBranchSequence = Long.MAX_VALUE;
 	}
 
 	private void fetchStage() {
@@ -478,13 +1483,11 @@ public class Processor {
 		}
 
 		/* Get the index of the next instruction base of the PC */
-		int index = ((this.pc - SIZE_OF_DATA_MEMORY) / 4);
+		int index = programIndex(this.pc);
 
 		/* Ensure that we do not go outside the list of instructions */
-		if (index < this.instructions.size()) {
-			Instruction next = this.instructions.get(index);
-			this.fetchEntry = new Entry(next);
-			this.fetchEntry.setPcValue(this.pc);
+		if (index < this.program.size()) {
+			this.fetchEntry = this.programEntries[index];
 			this.pc += 4;
 		} else {
 			this.fetchEntry = null;
@@ -498,16 +1501,7 @@ public class Processor {
 		}
 
 		Instruction current = this.drf1Entry.getInstruction();
-
-		/*
-		 * If we have a destination, make sure that there is a physical register
-		 * available
-		 */
-		if (current.getOpCode().getDestinationCount() > 0 && !urf.hasPhysicalRegisterAvailable()) {
-			/* Stall */
-			System.out.println("Pipelined stalled. No Physical register available.");
-			return;
-		}
+		int index = programIndex(this.drf1Entry.getPcValue());
 
 		/* Architectural Register Indices */
 		archRsrc1 = -1;
@@ -528,17 +1522,17 @@ public class Processor {
 		case OR:
 		case XOR:
 			/* Decode and get a new physical register */
-			archRdest = decodeRegister(current.getRdest());
+			archRdest = this.program.getRdest(index);
 			phyRdest = urf.allocatePhysicalRegister();
 			break;
 		case MOVC:
 			/* Decode and get a new physical register */
-			archRdest = decodeRegister(current.getRdest());
+			archRdest = this.program.getRdest(index);
 			phyRdest = urf.allocatePhysicalRegister();
 			break;
 		case LOAD:
 			/* Decode and get a new physical register */
-			archRdest = decodeRegister(current.getRdest());
+			archRdest = this.program.getRdest(index);
 			phyRdest = urf.allocatePhysicalRegister();
 			break;
 		case STORE:
@@ -567,8 +1561,8 @@ public class Processor {
 		case OR:
 		case XOR:
 			/* Decode the architectural register */
-			archRsrc1 = decodeRegister(current.getRsrc1());
-			archRsrc2 = decodeRegister(current.getRsrc2());
+			archRsrc1 = this.program.getRsrc1(index);
+			archRsrc2 = this.program.getRsrc2(index);
 
 			/* Read out the renamed registers */
 			phyRsrc1 = urf.getRenamedRegister(archRsrc1);
@@ -581,7 +1575,7 @@ public class Processor {
 		/* Decode Rsrc1 and Rdest */
 		case LOAD:
 			/* Decode the architectural register */
-			archRsrc1 = decodeRegister(current.getRsrc1());
+			archRsrc1 = this.program.getRsrc1(index);
 
 			/* Read out the renamed registers */
 			phyRsrc1 = urf.getRenamedRegister(archRsrc1);
@@ -589,8 +1583,8 @@ public class Processor {
 		/* Decode Rsrc1 and Rsrc2 */
 		case STORE:
 			/* Decode the architectural register */
-			archRsrc1 = decodeRegister(current.getRsrc1());
-			archRsrc2 = decodeRegister(current.getRsrc2());
+			archRsrc1 = this.program.getRsrc1(index);
+			archRsrc2 = this.program.getRsrc2(index);
 
 			/* Read out the renamed registers */
 			phyRsrc1 = urf.getRenamedRegister(archRsrc1);
@@ -599,19 +1593,19 @@ public class Processor {
 		case BZ:
 		case BNZ:
 			/* Read out the renamed registers */
-			phyRsrc1 = rob.getLatestDestReg(ARTH_INSTR);
+			phyRsrc1 = rob.containsDestReg(ARTH_INSTR) ? rob.getLatestDestReg(ARTH_INSTR) : committedFlag;
 			break;
 		/* Decode Rsrc1 */
 		case JUMP:
 			/* Decode the architectural register */
-			archRsrc1 = decodeRegister(current.getRsrc1());
+			archRsrc1 = this.program.getRsrc1(index);
 
 			/* Read out the renamed registers */
 			phyRsrc1 = urf.getRenamedRegister(archRsrc1);
 			break;
 		case BAL:
 			/* Decode the architectural register */
-			archRsrc1 = decodeRegister(current.getRsrc1());
+			archRsrc1 = this.program.getRsrc1(index);
 
 			/* Read out the renamed registers */
 			phyRsrc1 = urf.getRenamedRegister(archRsrc1);
@@ -636,11 +1630,22 @@ public class Processor {
 
 		Instruction current = this.drf2Entry.getInstruction();
 
+		/* Take the next ROB entry, its decoded instruction and IQ entry are recycled with it */
+		ROBEntry robEntry = rob.add(this.drf2Entry.getPcValue());
+		this.recovering = false;
+		robEntry.setDestRegister(phyRdest);
+		robEntry.setArchRegister(archRdest);
+
 		/* Replace the Instruction with the */
-		DecodedInstruction renamed = new DecodedInstruction(current.getOpCode(), phyRdest, phyRsrc1, phyRsrc2,
-				current.getLiteral());
+		DecodedInstruction renamed = robEntry.getInstruction();
+		renamed.set(current.getOpCode(), phyRdest, phyRsrc1, phyRsrc2, current.getLiteral());
 
-		IQEntry iqEntry = new IQEntry(renamed, this.drf2Entry.getPcValue());
+		IQEntry iqEntry = robEntry.getIQEntry();
+		iqEntry.reset(this.drf2Entry.getPcValue());
+		iqEntry.setSequence(this.dispatchSequence);
+		iqEntry.setDispatchCycle(this.totalCycles);
+		this.dispatchSequence += 1;
+		this.profiler.recordDispatch(programIndex(iqEntry.getAddress()));
 
 		/* Processing for Register src1 */
 		if (phyRsrc1 != null) {
@@ -664,48 +1669,90 @@ public class Processor {
 
 		/* Enqueue the iq entry */
 		iq.enqueue(iqEntry);
+	}
 
-		/* Create the ROB entry */
-		ROBEntry robEntry = new ROBEntry(renamed, this.drf2Entry.getPcValue());
-		robEntry.setDestRegister(phyRdest);
-		robEntry.setArchRegister(archRdest);
-
-		/* Add ROB entry to ROB */
-		rob.add(robEntry);
+	/**
+	 * Returns the first unit of the class that can accept an entry this cycle
+	 * 
+	 * @param group
+	 *            the functional units of one class
+	 * @return the free functional unit; null if every unit is busy
+	 */
+	private FunctionalUnit getFreeUnit(FunctionalUnit[] group) {
+		for (FunctionalUnit unit : group) {
+			if (unit.canAccept()) {
+				return unit;
+			}
+		}
 
-		/* Yeah no */
-		iqEntry.setROBEntry(robEntry);
+		return null;
 	}
 
-	private boolean canForward() {
+	/**
+	 * Checks if the first LOAD/STORE in the IQ is a STORE whose value is being
+	 * produced this cycle and can be forwarded to it once it is issued. A value
+	 * produced by a LOAD can only be forwarded to the STORE right behind it, so
+	 * the STORE has to be issued into the unit of that LOAD.
+	 * 
+	 * @return the LOAD/STORE unit the STORE has to be issued into; null if the
+	 *         value can not be forwarded
+	 */
+	private FunctionalUnit getForwardingUnit() {
 		IQEntry entry = iq.getFirstInstance(LS_INSTR);
 
 		if (entry == null) {
-			return false;
+			return null;
 		}
 
 		DecodedInstruction current = entry.getInstruction();
 
 		if (current.getOpCode() != InstructionType.STORE) {
-			return false;
+			return null;
+		}
+
+		/* Check ALUs and Mults */
+		boolean src1Forwarded = false;
+		boolean src2Forwarded = false;
+		for (int i = 0; i < this.aluUnits.length + this.mulUnits.length; i += 1) {
+			FunctionalUnit unit = (i < this.aluUnits.length) ? this.aluUnits[i] : this.mulUnits[i - this.aluUnits.length];
+
+			if (unit.getLastStage() != null) {
+				src1Forwarded |= current.isRsrc1FlowDependant(unit.getLastStage().getInstruction());
+				src2Forwarded |= current.isRsrc2FlowDependant(unit.getLastStage().getInstruction());
+			}
 		}
 
-		/* Check ALU1 */
-		if (this.alu2Entry != null && current.isRsrc1FlowDependant(alu2Entry.getInstruction())) {
-			return true;
+		/* The address has to be known by the time the STORE computes it */
+		if (!entry.isSrc2Valid() && !src2Forwarded) {
+			return null;
 		}
 
-		/* Check Mult */
-		if (this.multEntry != null && multCycle == 2 && current.isRsrc1FlowDependant(multEntry.getInstruction())) {
-			return true;
+		if (src1Forwarded) {
+			return getFreeUnit(this.lsUnits);
 		}
 
 		/* Check LOAD to STORE */
-		if (this.lsMEMEntry != null && current.isRsrc1FlowDependant(lsMEMEntry.getInstruction())) {
-			return true;
+		for (FunctionalUnit unit : this.lsUnits) {
+			if (unit.getLastStage() != null && current.isRsrc1FlowDependant(unit.getLastStage().getInstruction())) {
+				return unit.canAccept() ? unit : null;
+			}
 		}
 
-		return false;
+		return null;
+	}
+
+	/**
+	 * Returns if the entry was dispatched before a branch that is known to be
+	 * taken. Everything after a taken branch is thrown away once the branch
+	 * commits, so it is not issued.
+	 * 
+	 * @param entry
+	 *            the entry to be issued
+	 * @return true if the entry is older than every taken branch; false
+	 *         otherwise
+	 */
+	private boolean isBeforeTakenBranch(IQEntry entry) {
+		return entry.getSequence() < this.takenBranchSequence;
 	}
 
 	private void issue() {
@@ -717,61 +1764,171 @@ public class Processor {
 		/* Update the source validates */
 		iq.updateEntries();
 
-		LinkedList<IQEntry> tempEntries = new LinkedList<IQEntry>();
+		int issued = 0;
+		while (issued < this.issueWidth && !iq.isEmpty()) {
+			IQEntry selectedEntry = null;
+			FunctionalUnit selectedUnit = null;
 
-		/* Run wakeup logic */
-		if (iq.canIssue(AR_INSTR)) {
-			tempEntries.add(iq.dryIssue(AR_INSTR));
-		}
-		
-		if (iq.canIssue(MU_INSTR) && multCycle == 0) {
-			tempEntries.add(iq.dryIssue(MU_INSTR));
-		}
-		
-		if (iq.canIssue(BR_INSTR)) {
-			tempEntries.add(iq.dryIssue(BR_INSTR));
-		}
-		
-		if (iq.canIssueInOrder(LS_INSTR) || canForward()) {
-			tempEntries.add(iq.dryIssueInOrder(LS_INSTR));
+			/* Run wakeup logic, the candidate with the lowest address wins */
+			FunctionalUnit alu = getFreeUnit(this.aluUnits);
+			if (alu != null && iq.canIssue(AR_INSTR) && isBeforeTakenBranch(iq.dryIssue(AR_INSTR))) {
+				selectedEntry = iq.dryIssue(AR_INSTR);
+				selectedUnit = alu;
+			}
+
+			FunctionalUnit mul = getFreeUnit(this.mulUnits);
+			if (mul != null && iq.canIssue(MU_INSTR) && isBeforeTakenBranch(iq.dryIssue(MU_INSTR))) {
+				IQEntry candidate = iq.dryIssue(MU_INSTR);
+
+				if (selectedEntry == null || candidate.getAddress() < selectedEntry.getAddress()) {
+					selectedEntry = candidate;
+					selectedUnit = mul;
+				}
+			}
+
+			FunctionalUnit branch = getFreeUnit(this.branchUnits);
+			if (branch != null && iq.canIssue(BR_INSTR) && isBeforeTakenBranch(iq.dryIssue(BR_INSTR))) {
+				IQEntry candidate = iq.dryIssue(BR_INSTR);
+
+				if (selectedEntry == null || candidate.getAddress() < selectedEntry.getAddress()) {
+					selectedEntry = candidate;
+					selectedUnit = branch;
+				}
+			}
+
+			FunctionalUnit ls = getFreeUnit(this.lsUnits);
+			if (ls != null) {
+				IQEntry candidate = null;
+				FunctionalUnit forwardingUnit = null;
+
+				if (iq.canIssueInOrder(LS_INSTR)) {
+					candidate = iq.dryIssueInOrder(LS_INSTR);
+				} else if ((forwardingUnit = getForwardingUnit()) != null) {
+					candidate = iq.dryIssueInOrder(LS_INSTR);
+					ls = forwardingUnit;
+				} else if (memoryDependencePrediction) {
+					candidate = getSpeculativeLoad();
+				}
+
+				if (candidate != null && isBeforeTakenBranch(candidate)
+						&& (selectedEntry == null || candidate.getAddress() < selectedEntry.getAddress())) {
+					selectedEntry = candidate;
+					selectedUnit = ls;
+				}
+			}
+
+			if (selectedEntry == null) {
+				break;
+			}
+
+			/* Issue the entry with lowest address */
+			if (LS_INSTR.contains(selectedEntry.getInstruction().getOpCode())
+					&& selectedEntry != iq.getFirstInstance(LS_INSTR)) {
+				this.speculativeLoadsIssued += 1;
+			}
+			selectedUnit.accept(selectedEntry);
+			this.profiler.recordIssue(programIndex(selectedEntry.getAddress()),
+					this.totalCycles - selectedEntry.getDispatchCycle());
+
+			iq.remove(selectedEntry);
+			issued += 1;
+			this.cycleActive = true;
 		}
 
-		if (tempEntries.isEmpty()) {
+		if (issued == 0) {
 			this.noIssuesCycles += 1;
-			return;
 		}
+		this.cycleIssued = issued;
+	}
 
-		/* Find the entry with the lowest address */
-		int minAddress = Integer.MAX_VALUE;
-		IQEntry selectedEntry = null;
-		for (IQEntry iqEntry : tempEntries) {
-			if (iqEntry.getAddress() < minAddress) {
-				minAddress = iqEntry.getAddress();
-				selectedEntry = iqEntry;
+	/**
+	 * Finds the oldest LOAD in the IQ that can be issued ahead of the older
+	 * STOREs still waiting in the IQ. The LOAD must have its source ready and
+	 * the store set predictor must not predict a dependence on any of those
+	 * STOREs.
+	 * 
+	 * @return the LOAD that can be issued speculatively; null if there is none
+	 */
+	private IQEntry getSpeculativeLoad() {
+		boolean olderStore = false;
+
+		for (int i = 0; i < iq.size(); i += 1) {
+			IQEntry entry = iq.get(i);
+			DecodedInstruction current = entry.getInstruction();
+
+			if (current.getOpCode() == InstructionType.STORE) {
+				olderStore = true;
+			} else if (current.getOpCode() == InstructionType.LOAD) {
+				/* Only the oldest LOAD may pass the STOREs */
+				if (!olderStore || !entry.isSrc1Valid()) {
+					return null;
+				}
+
+				/* Ask the predictor about every older STORE */
+				this.cycleActive = true;
+				boolean held = false;
+				for (int j = 0; j < i && !held; j += 1) {
+					IQEntry store = iq.get(j);
+
+					held = store.getInstruction().getOpCode() == InstructionType.STORE
+							&& storeSetPredictor.predictsDependence(entry.getAddress(), store.getAddress());
+				}
+
+				/*
+				 * Count every LOAD once, the first time it is asked about. Older
+				 * STOREs only leave the IQ, so a LOAD that is not held then never is.
+				 */
+				if (!entry.isPredictorConsulted()) {
+					entry.setPredictorConsulted(true);
+					storeSetPredictor.recordLookup(held);
+					if (held) {
+						this.loadsHeldByPredictor += 1;
+					}
+				}
+
+				return held ? null : entry;
 			}
 		}
-		
-		/* Issue the entry with lowest address */
-		if (AR_INSTR.contains(selectedEntry.getInstruction().getOpCode())) {
-			this.alu1Entry = selectedEntry;
-		} else if (MU_INSTR.contains(selectedEntry.getInstruction().getOpCode())) {
-			this.multEntry = selectedEntry;
-		} else if (BR_INSTR.contains(selectedEntry.getInstruction().getOpCode())) {
-			this.branchEntry = selectedEntry;
-		} else if (LS_INSTR.contains(selectedEntry.getInstruction().getOpCode())) {
-			this.ls1Entry = selectedEntry;
-		} else {
-			throw new RuntimeException("Programming error");
+
+		return null;
+	}
+
+	/**
+	 * Looks for a LOAD, younger than the STORE, that has already read the
+	 * memory location the STORE is writing. The oldest such LOAD is marked so
+	 * that it and everything after it is replayed once it reaches the head of
+	 * the ROB.
+	 * 
+	 * @param store
+	 *            the STORE that is writing memory
+	 * @param address
+	 *            the memory address written by the STORE
+	 */
+	private void checkMemoryOrder(IQEntry store, int address) {
+		boolean younger = false;
+
+		for (int i = 0; i < rob.size(); i += 1) {
+			ROBEntry entry = rob.get(i);
+
+			if (entry == store.getROBEntry()) {
+				younger = true;
+			} else if (younger && entry.getInstruction().getOpCode() == InstructionType.LOAD
+					&& entry.isMemoryAccessed() && entry.getMemoryAddress() == address) {
+				entry.setMemoryViolation(true);
+				storeSetPredictor.recordViolation(store.getAddress(), entry.getInstructionAddress());
+				this.memoryOrderViolations += 1;
+				return;
+			}
 		}
-		
-		iq.remove(selectedEntry);
 	}
 
 	/* ALU Stage */
-	private void alu1Stage() {
+	private void aluStage(FunctionalUnit unit) {
+		IQEntry alu1Entry = unit.getStage(0);
+
 		/* Make sure we have the entry for this stage */
-		if (this.alu1Entry != null) {
-			DecodedInstruction current = this.alu1Entry.getInstruction();
+		if (alu1Entry != null) {
+			DecodedInstruction current = alu1Entry.getInstruction();
 
 			int result = 0;
 			int rsrc1 = 0;
@@ -827,69 +1984,66 @@ public class Processor {
 			}
 
 			/* Update the ALU entry */
-			alu1Result = result;
+			unit.setResult(0, result);
 		}
 	}
 
-	private void alu2Stage() {
-		/* No operation */
-	}
-
-	private void aluWBStage() {
-		if (this.aluWBEntry == null) {
+	private void aluWBStage(FunctionalUnit unit) {
+		if (unit.getWBEntry() == null) {
 			return;
 		}
 
-		ROBEntry robEntry = this.aluWBEntry.getROBEntry();
+		ROBEntry robEntry = unit.getWBEntry().getROBEntry();
 
 		robEntry.setStatus(true);
 		if (robEntry.getDestRegister() != null) {
-			robEntry.getDestRegister().setValue(aluWBResult);
+			robEntry.getDestRegister().setValue(unit.getWBResult());
 		}
 	}
 
 	/* MULT FU */
-	private void multStage() {
-		if (this.multEntry == null) {
+	private void multStage(FunctionalUnit unit) {
+		IQEntry multEntry = unit.getLastStage();
+
+		/* The product is ready in the last stage */
+		if (multEntry == null) {
 			return;
 		}
 
-		multCycle += 1;
-
-		if (multCycle == 3) {
-			multResult = multEntry.getSrc1Value() * multEntry.getSrc2Value();
-		}
+		unit.setResult(unit.getLatency() - 1, multEntry.getSrc1Value() * multEntry.getSrc2Value());
 	}
 
-	private void multWBStage() {
-		if (this.multWBEntry == null) {
+	private void multWBStage(FunctionalUnit unit) {
+		if (unit.getWBEntry() == null) {
 			return;
 		}
 
-		ROBEntry robEntry = this.multWBEntry.getROBEntry();
+		ROBEntry robEntry = unit.getWBEntry().getROBEntry();
 		robEntry.setStatus(true);
-		robEntry.getDestRegister().setValue(multResult);
+		robEntry.getDestRegister().setValue(unit.getWBResult());
 	}
 
 	/* Branch FU */
-	private void branchStage() {
+	private void branchStage(FunctionalUnit unit) {
+		IQEntry branchEntry = unit.getStage(0);
+
 		/* Make sure we have the entry for this stage */
-		if (this.branchEntry == null) {
+		if (branchEntry == null) {
 			return;
 		}
 
-		DecodedInstruction current = this.branchEntry.getInstruction();
+		DecodedInstruction current = branchEntry.getInstruction();
 
 		boolean taken = false;
 		int targetAddress = 0;
 
 		switch (current.getOpCode()) {
 		case BNZ:
-			taken = (this.branchEntry.getSrc1Value() != 0);
+			taken = (branchEntry.getSrc1Value() != 0);
 			targetAddress = branchEntry.getAddress() + current.getLiteral();
 			break;
 		case BZ:
-			taken = (this.branchEntry.getSrc1Value() == 0);
+			taken = (branchEntry.getSrc1Value() == 0);
 			targetAddress = branchEntry.getAddress() + current.getLiteral();
 			break;
 		case JUMP:
@@ -899,7 +2053,7 @@ public class Processor {
 		case BAL:
 			taken = true;
 			targetAddress = branchEntry.getSrc1Value() + current.getLiteral();
-			this.branchEntry.getROBEntry().getDestRegister().setValue(branchEntry.getAddress() + 4);
+			branchEntry.getROBEntry().getDestRegister().setValue(branchEntry.getAddress() + 4);
 			break;
 		default:
 			throw new RuntimeException("Unreconized branch");
@@ -907,89 +2061,244 @@ public class Processor {
 
 		/* See if the branch is taken */
 		if (taken) {
-			/* Stall */
+			/* Stall, nothing after the branch can be issued any more */
 			this.stallDRFTakenBranch = true;
+			this.takenBranchSequence = Math.min(this.takenBranchSequence, branchEntry.getSequence());
 
 			/* Update the ROB */
-			ROBEntry entry = this.branchEntry.getROBEntry();
+			ROBEntry entry = branchEntry.getROBEntry();
 			entry.setTakenAddress(targetAddress);
 			entry.setTakenBranch(true);
 		}
 	}
 
-	private void branchMEMStage() {
-		if (this.branchMEMEntry == null) {
+	private void branchWBStage(FunctionalUnit unit) {
+		if (unit.getWBEntry() == null) {
 			return;
 		}
 
-		ROBEntry robEntry = this.branchMEMEntry.getROBEntry();
+		ROBEntry robEntry = unit.getWBEntry().getROBEntry();
 		robEntry.setStatus(true);
 	}
 
 	/* LOAD/STORE FU */
-	private void ls1Stage() {
-		if (this.ls1Entry == null) {
+	private void lsAddressStage(FunctionalUnit unit) {
+		IQEntry ls1Entry = unit.getStage(0);
+
+		if (ls1Entry == null) {
 			return;
 		}
 
-		DecodedInstruction current = this.ls1Entry.getInstruction();
+		unit.setResult(0, getMemoryAddress(ls1Entry));
+	}
 
-		int result;
+	/**
+	 * Computes the memory address accessed by a LOAD/STORE
+	 * 
+	 * @param entry
+	 *            the LOAD/STORE entry
+	 * @return the memory address
+	 */
+	private int getMemoryAddress(IQEntry entry) {
+		DecodedInstruction current = entry.getInstruction();
 
 		switch (current.getOpCode()) {
 		case LOAD:
-			result = ls1Entry.getSrc1Value() + current.getLiteral();
-			break;
+			return entry.getSrc1Value() + current.getLiteral();
 		case STORE:
-			result = ls1Entry.getSrc2Value() + current.getLiteral();
-			break;
+			return entry.getSrc2Value() + current.getLiteral();
 		default:
 			throw new RuntimeException("Programming Error: This should never happen");
 		}
+	}
+
+	/**
+	 * Runs the memory stage of every LOAD/STORE unit, oldest access first, so
+	 * that accesses reach memory in the order they were dispatched in.
+	 */
+	private void lsMEMStages() {
+		int count = 0;
+
+		for (FunctionalUnit unit : this.lsUnits) {
+			if (unit.getLastStage() != null) {
+				/* Insert the unit by the age of its access */
+				int i = count;
+				while (i > 0 && this.lsMemoryOrder[i - 1].getLastStage().getSequence() > unit.getLastStage()
+						.getSequence()) {
+					this.lsMemoryOrder[i] = this.lsMemoryOrder[i - 1];
+					i -= 1;
+				}
+				this.lsMemoryOrder[i] = unit;
+				count += 1;
+			}
+		}
 
-		ls1Result = result;
+		for (int i = 0; i < count; i += 1) {
+			lsMEMStage(this.lsMemoryOrder[i]);
+			this.lsMemoryOrder[i] = null;
+		}
 	}
 
-	private void ls2Stage() {
-		/* LOL */
+	/**
+	 * Reads the value a LOAD gets from memory. STOREs only write memory when
+	 * they commit, so the value of the youngest older STORE to the same
+	 * address that has already accessed memory is forwarded instead, if
+	 * there is one.
+	 * 
+	 * @param load
+	 *            the LOAD that is reading memory
+	 * @param address
+	 *            the memory address read by the LOAD
+	 * @return the value read
+	 */
+	private int readMemory(IQEntry load, int address) {
+		int value = this.memory.getValue(address);
+
+		for (int i = 0; i < rob.size(); i += 1) {
+			ROBEntry entry = rob.get(i);
+
+			if (entry == load.getROBEntry()) {
+				break;
+			}
+
+			if (entry.getInstruction().getOpCode() == InstructionType.STORE && entry.isMemoryAccessed()
+					&& entry.getMemoryAddress() == address) {
+				value = entry.getStoreValue();
+			}
+		}
+
+		return value;
 	}
 
-	private void lsMEMStage() {
-		if (this.lsMEMEntry == null) {
+	private void lsMEMStage(FunctionalUnit unit) {
+		IQEntry lsMEMEntry = unit.getLastStage();
+		int lsMEMResult = unit.getResult(unit.getLatency() - 1);
+
+		/* Wait for an access that has already been started */
+		if (unit.isLastStageStarted()) {
+			if (unit.getLastStageCycles() > 0) {
+				unit.setLastStageCycles(unit.getLastStageCycles() - 1);
+
+				/* The access completes this cycle */
+				if (unit.getLastStageCycles() == 0) {
+					this.cycleActive = true;
+				}
+			}
 			return;
 		}
 
-		DecodedInstruction current = this.lsMEMEntry.getInstruction();
+		DecodedInstruction current = lsMEMEntry.getInstruction();
 
 		int result = -1;
+		boolean write = (current.getOpCode() == InstructionType.STORE);
+		int latency = 1;
+		boolean miss = false;
+
+		/* Find out how long the access takes */
+		if (this.dataCache != null && this.dataCache.getMSHRCount() == 0) {
+			latency = this.dataCache.access(lsMEMResult, write);
+			miss = latency > this.dataCache.getHitLatency();
+		} else if (this.dataCache != null) {
+			long completeCycle = this.dataCache.access(lsMEMResult, write, this.totalCycles);
+
+			/* Every MSHR is busy, try again next cycle */
+			if (completeCycle < 0) {
+				this.cycleMSHRRetries += 1;
+				this.mshrStalledCycles += 1;
+				unit.setLastStageCycles(1);
+				return;
+			}
+
+			latency = (int) (completeCycle - this.totalCycles);
+			miss = latency > this.dataCache.getHitLatency();
+
+			/* A STORE miss is handed to its MSHR */
+			if (write) {
+				latency = Math.min(latency, this.dataCache.getHitLatency());
+			}
+		}
+
+		this.cycleActive = true;
+		unit.setLastStageStarted(true);
+		unit.setLastStageCycles(latency - 1);
+
+		/* Let the prefetcher see the access */
+		if (this.prefetcher != null) {
+			this.prefetcher.train(lsMEMEntry.getAddress(), lsMEMResult, miss, this.totalCycles);
+		}
+
+		/*
+		 * A LOAD miss leaves the LS FU so that younger accesses can go ahead.
+		 * It has to stay if the STORE behind it is waiting on its value.
+		 */
+		IQEntry ls1Entry = unit.getStage(0);
+		if (this.dataCache != null && this.dataCache.getMSHRCount() > 0 && !write && miss
+				&& (ls1Entry == null || !ls1Entry.getInstruction().isRsrc1FlowDependant(current))) {
+			unit.setLastStageDeferred(true);
+			unit.setLastStageCycles(0);
+			this.missEntries[missCount] = lsMEMEntry;
+			this.missCompleteCycles[missCount] = this.totalCycles + latency - 1;
+			this.missResults[missCount] = readMemory(lsMEMEntry, lsMEMResult);
+			this.missCount += 1;
+		}
 
 		switch (current.getOpCode()) {
 		case LOAD:
-			result = this.memory.getValue(ls2Result);
+			result = readMemory(lsMEMEntry, lsMEMResult);
+			lsMEMEntry.getROBEntry().setMemoryAccess(lsMEMResult);
 			break;
 		case STORE:
-			this.memory.setValue(ls2Result, this.lsMEMEntry.getSrc1Value());
+			/* Memory is only written once the STORE commits */
+			lsMEMEntry.getROBEntry().setMemoryAccess(lsMEMResult);
+			lsMEMEntry.getROBEntry().setStoreValue(lsMEMEntry.getSrc1Value());
+			checkMemoryOrder(lsMEMEntry, lsMEMResult);
 			break;
 		default:
 			throw new RuntimeException("Programming Error: This should never happen");
 		}
 
-		lsMEMResult = result;
+		unit.setResult(unit.getLatency() - 1, result);
+	}
+
+	private void lsMissWBStage() {
+		int remaining = 0;
+
+		for (int i = 0; i < this.missCount; i += 1) {
+			if (this.missCompleteCycles[i] < this.totalCycles) {
+				/* The miss completed last cycle, write back the LOAD */
+				this.cycleActive = true;
+				ROBEntry robEntry = this.missEntries[i].getROBEntry();
+				robEntry.getDestRegister().setValue(this.missResults[i]);
+				robEntry.setStatus(true);
+			} else {
+				this.missEntries[remaining] = this.missEntries[i];
+				this.missCompleteCycles[remaining] = this.missCompleteCycles[i];
+				this.missResults[remaining] = this.missResults[i];
+				remaining += 1;
+			}
+		}
+
+		for (int i = remaining; i < this.missCount; i += 1) {
+			this.missEntries[i] = null;
+		}
+		this.missCount = remaining;
 	}
 
-	private void lsWBStage() {
-		if (this.lsWBEntry == null) {
+	private void lsWBStage(FunctionalUnit unit) {
+		IQEntry lsWBEntry = unit.getWBEntry();
+
+		if (lsWBEntry == null) {
 			return;
 		}
 
-		DecodedInstruction current = this.lsWBEntry.getInstruction();
-		ROBEntry robEntry = this.lsWBEntry.getROBEntry();
+		DecodedInstruction current = lsWBEntry.getInstruction();
+		ROBEntry robEntry = lsWBEntry.getROBEntry();
 
 		switch (current.getOpCode()) {
 		case STORE:
 			break;
 		case LOAD:
-			robEntry.getDestRegister().setValue(lsWBResult);
+			robEntry.getDestRegister().setValue(unit.getWBResult());
 			break;
 		default:
 			throw new RuntimeException("Programming Error: This should never happen");
@@ -1020,31 +2329,37 @@ public class Processor {
 
 		str += "--- Stages\n";
 
-		str += String.format("- Fetch (Taken Branch Stalled? %b, IQ Branch Stall: %b)\n", this.stallDRFTakenBranch,
-				this.stallDRFDispatchBranch);
+		str += String.format(
+				"- Fetch (Taken Branch Stalled? %b, IQ Branch Stall: %b, IQ/ROB Full Stall: %b, No Register Stall: %b)\n",
+				this.stallDRFTakenBranch, this.stallDRFDispatchBranch, this.stallDRFResourceFull,
+				this.stallDRFNoRegister);
 		str += "FETCH: " + ((this.fetchEntry == null) ? "Empty" : this.fetchEntry.getInstruction().toString()) + "\n";
 		str += "D/RF1: " + ((this.drf1Entry == null) ? "Empty" : this.drf1Entry.getInstruction().toString()) + "\n";
 		str += "D/RF2: " + ((this.drf2Entry == null) ? "Empty" : this.drf2Entry.getInstruction().toString()) + "\n";
 
-		str += "- ALU FU\n";
-		str += "ALU1:  " + ((this.alu1Entry == null) ? "Empty" : this.alu1Entry.getInstruction().toString()) + "\n";
-		str += "ALU2:  " + ((this.alu2Entry == null) ? "Empty" : this.alu2Entry.getInstruction().toString()) + "\n";
-		str += "ALUWB: " + ((this.aluWBEntry == null) ? "Empty" : this.aluWBEntry.getInstruction().toString()) + "\n";
+		for (FunctionalUnit unit : this.aluUnits) {
+			str += "- ALU FU\n";
+			str += unit.toString();
+		}
 
-		str += "BR FU\n";
-		str += "BR:    " + ((this.branchEntry == null) ? "Empty" : this.branchEntry.getInstruction().toString()) + "\n";
-		str += "BRMEM: " + ((this.branchMEMEntry == null) ? "Empty" : this.branchMEMEntry.getInstruction().toString())
-				+ "\n";
+		for (FunctionalUnit unit : this.branchUnits) {
+			str += "- BR FU\n";
+			str += unit.toString();
+		}
 
-		str += "- LS FU\n";
-		str += "LS1:   " + ((this.ls1Entry == null) ? "Empty" : this.ls1Entry.getInstruction().toString()) + "\n";
-		str += "LS2:   " + ((this.ls2Entry == null) ? "Empty" : this.ls2Entry.getInstruction().toString()) + "\n";
-		str += "LSMEM: " + ((this.lsMEMEntry == null) ? "Empty" : this.lsMEMEntry.getInstruction().toString()) + "\n";
-		str += "LSWB:  " + ((this.lsWBEntry == null) ? "Empty" : this.lsWBEntry.getInstruction().toString()) + "\n";
+		for (FunctionalUnit unit : this.lsUnits) {
+			str += String.format("- LS FU (Memory Cycles Left %d)\n", unit.getLastStageCycles());
+			str += unit.toString();
+		}
+		for (int i = 0; i < this.missCount; i += 1) {
+			str += String.format("MISS:  %s (Completes Cycle %d)\n", this.missEntries[i].getInstruction().toString(),
+					this.missCompleteCycles[i]);
+		}
 
-		str += String.format("- MUL FU (Cycle %d)\n", multCycle);
-		str += "MUL:   " + ((this.multEntry == null) ? "Empty" : this.multEntry.getInstruction().toString()) + "\n";
-		str += "MULWB: " + ((this.multWBEntry == null) ? "Empty" : this.multWBEntry.getInstruction().toString()) + "\n";
+		for (FunctionalUnit unit : this.mulUnits) {
+			str += "- MUL FU\n";
+			str += unit.toString();
+		}
 
 		str += "--- Registers\n";
 		str += String.format("%3s: %d\n", "PC", this.pc);
@@ -1086,5 +2401,57 @@ public class Processor {
 
 	public int getStoresCommitted() {
 		return this.storesCommitted;
-	}	
+	}
+
+	public int getBranchesCommitted() {
+		return branchesCommitted;
+	}
+
+	public int getTakenBranches() {
+		return takenBranches;
+	}
+
+	public int getSpeculativeLoadsIssued() {
+		return this.speculativeLoadsIssued;
+	}
+
+	public int getLoadsHeldByPredictor() {
+		return this.loadsHeldByPredictor;
+	}
+
+	public int getMemoryOrderViolations() {
+		return this.memoryOrderViolations;
+	}
+
+	public StoreSetPredictor getStoreSetPredictor() {
+		return this.storeSetPredictor;
+	}
+
+	public Cache getDataCache() {
+		return this.dataCache;
+	}
+
+	public int getMSHRStalledCycles() {
+		return this.mshrStalledCycles;
+	}
+
+	public ProcessorMonitor getMonitor() {
+		return monitor;
+	}
+
+	public Profiler getProfiler() {
+		return this.profiler;
+	}
+
+	public CPIStack getCPIStack() {
+		return this.cpiStack;
+	}
+
+	public ProcessorMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	public int getSkippedCycles() {
+		return this.skippedCycles;
+	}
 }
@@ -0,0 +1,624 @@
+package org.binghamton.comparch.systems;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+/**
+ * Holds the configurable parameters of the processor. A processor reads the
+ * configuration when it is constructed, so changing a configuration afterwards
+ * does not affect processors that have already been built from it.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class ProcessorConfig implements Cloneable {
+	/* Default Constants */
+	public static final int DEFAULT_L1D_SIZE = 512;
+	public static final int DEFAULT_L1D_ASSOCIATIVITY = 2;
+	public static final int DEFAULT_L1D_LINE_SIZE = 16;
+	public static final int DEFAULT_L1D_HIT_LATENCY = 1;
+	public static final int DEFAULT_L1D_MSHRS = 4;
+	public static final int DEFAULT_L2_SIZE = 2048;
+	public static final int DEFAULT_L2_ASSOCIATIVITY = 4;
+	public static final int DEFAULT_L2_LINE_SIZE = 32;
+	public static final int DEFAULT_L2_HIT_LATENCY = 6;
+	public static final int DEFAULT_MEMORY_LATENCY = 30;
+	public static final int DEFAULT_PREFETCH_DEGREE = 2;
+	public static final int DEFAULT_PREFETCH_TABLE_SIZE = 16;
+	public static final int DEFAULT_ISSUE_WIDTH = 1;
+	public static final int DEFAULT_ALU_LATENCY = 2;
+	public static final int DEFAULT_MUL_LATENCY = 3;
+	public static final int DEFAULT_BRANCH_LATENCY = 1;
+	public static final int DEFAULT_LS_LATENCY = 3;
+	public static final int DEFAULT_CPI_INTERVAL = 10000;
+	public static final int DEFAULT_EVENT_INTERVAL = 1000000;
+	public static final int DEFAULT_SNAPSHOT_INTERVAL = 100000;
+
+	/* L1 Data Cache */
+	private int l1dSize;
+	private int l1dAssociativity;
+	private int l1dLineSize;
+	private int l1dHitLatency;
+	private ReplacementPolicy l1dPolicy;
+	private int l1dMSHRs;
+
+	/* L2 Cache */
+	private boolean l2Enabled;
+	private int l2Size;
+	private int l2Associativity;
+	private int l2LineSize;
+	private int l2HitLatency;
+	private ReplacementPolicy l2Policy;
+
+	/* Shared cache policies */
+	private boolean cachesEnabled;
+	private boolean writeBack;
+	private boolean writeAllocate;
+
+	/* Main memory */
+	private int memoryLatency;
+
+	/* L1 data prefetcher */
+	private PrefetcherType prefetcherType;
+	private int prefetchDegree;
+	private int prefetchTableSize;
+
+	/* Issue */
+	private int issueWidth;
+
+	/* Jump over cycles in which nothing can change */
+	private boolean idleCycleSkipping;
+
+	/* Cycles in every interval of the CPI stack */
+	private int cpiInterval;
+
+	/* Cycles in every throughput event of the flight recorder */
+	private int eventInterval;
+
+	/* Cycles between the snapshots published to JMX */
+	private int snapshotInterval;
+
+	/* Functional units, the amount, latency and pipelining of each class */
+	private int aluCount;
+	private int aluLatency;
+	private boolean aluPipelined;
+	private int mulCount;
+	private int mulLatency;
+	private boolean mulPipelined;
+	private int branchCount;
+	private int branchLatency;
+	private boolean branchPipelined;
+	private int lsCount;
+	private int lsLatency;
+	private boolean lsPipelined;
+
+	/**
+	 * Constructs a configuration with the default parameters
+	 */
+	public ProcessorConfig() {
+		this.cachesEnabled = false;
+		this.writeBack = true;
+		this.writeAllocate = true;
+
+		this.l1dSize = DEFAULT_L1D_SIZE;
+		this.l1dAssociativity = DEFAULT_L1D_ASSOCIATIVITY;
+		this.l1dLineSize = DEFAULT_L1D_LINE_SIZE;
+		this.l1dHitLatency = DEFAULT_L1D_HIT_LATENCY;
+		this.l1dPolicy = ReplacementPolicy.LRU;
+		this.l1dMSHRs = DEFAULT_L1D_MSHRS;
+
+		this.l2Enabled = true;
+		this.l2Size = DEFAULT_L2_SIZE;
+		this.l2Associativity = DEFAULT_L2_ASSOCIATIVITY;
+		this.l2LineSize = DEFAULT_L2_LINE_SIZE;
+		this.l2HitLatency = DEFAULT_L2_HIT_LATENCY;
+		this.l2Policy = ReplacementPolicy.LRU;
+
+		this.memoryLatency = DEFAULT_MEMORY_LATENCY;
+
+		this.prefetcherType = PrefetcherType.NONE;
+		this.prefetchDegree = DEFAULT_PREFETCH_DEGREE;
+		this.prefetchTableSize = DEFAULT_PREFETCH_TABLE_SIZE;
+
+		this.issueWidth = DEFAULT_ISSUE_WIDTH;
+		this.idleCycleSkipping = true;
+
+		this.aluCount = 1;
+		this.aluLatency = DEFAULT_ALU_LATENCY;
+		this.aluPipelined = true;
+		this.mulCount = 1;
+		this.mulLatency = DEFAULT_MUL_LATENCY;
+		this.mulPipelined = false;
+		this.branchCount = 1;
+		this.branchLatency = DEFAULT_BRANCH_LATENCY;
+		this.branchPipelined = true;
+		this.lsCount = 1;
+		this.lsLatency = DEFAULT_LS_LATENCY;
+		this.lsPipelined = true;
+
+		this.cpiInterval = DEFAULT_CPI_INTERVAL;
+		this.eventInterval = DEFAULT_EVENT_INTERVAL;
+		this.snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+	}
+
+	/**
+	 * Returns a configuration with the same parameters, which changes
+	 * independently of this one
+	 *
+	 * @return the copy
+	 */
+	public ProcessorConfig copy() {
+		try {
+			return (ProcessorConfig) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException("Programming Error: This should never happen", e);
+		}
+	}
+
+	/**
+	 * Sets the parameters named in the properties. Every key is the name of a
+	 * setter of this class without "set", in any case, such as memoryLatency,
+	 * l1dSize or prefetcherType. Values are numbers, true or false, or the
+	 * name of a constant of the enum the setter takes.
+	 *
+	 * @param properties
+	 *            the parameters to set
+	 * @throws IllegalArgumentException
+	 *             if a key is not a parameter or its value is not valid
+	 */
+	public void setProperties(Properties properties) {
+		for (String key : properties.stringPropertyNames()) {
+			String value = properties.getProperty(key).trim();
+			Method setter = null;
+
+			for (Method method : ProcessorConfig.class.getMethods()) {
+				if (method.getName().equalsIgnoreCase("set" + key) && method.getParameterCount() == 1) {
+					setter = method;
+				}
+			}
+			if (setter == null) {
+				throw new IllegalArgumentException("Unknown configuration parameter " + key);
+			}
+
+			try {
+				setter.invoke(this, parseValue(key, value, setter.getParameterTypes()[0]));
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new RuntimeException("Can not set " + key, e);
+			}
+		}
+	}
+
+	private static Object parseValue(String key, String value, Class<?> type) {
+		if (type == int.class) {
+			try {
+				return Integer.valueOf(value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(key + " must be a number, not " + value);
+			}
+		} else if (type == boolean.class) {
+			if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+				throw new IllegalArgumentException(key + " must be true or false, not " + value);
+			}
+			return Boolean.valueOf(value);
+		} else if (type.isEnum()) {
+			for (Object constant : type.getEnumConstants()) {
+				if (((Enum<?>) constant).name().equalsIgnoreCase(value)) {
+					return constant;
+				}
+			}
+			throw new IllegalArgumentException(key + " can not be " + value);
+		}
+
+		throw new IllegalArgumentException(key + " can not be set from a configuration file");
+	}
+
+	/**
+	 * Builds the data cache hierarchy described by this configuration.
+	 *
+	 * @return the L1 data cache, or null if caches are disabled and every
+	 *         access goes straight to memory in a single cycle
+	 */
+	public Cache buildDataCache() {
+		if (!cachesEnabled) {
+			return null;
+		}
+
+		Cache l2 = null;
+		if (l2Enabled) {
+			l2 = new Cache("L2", l2Size, l2Associativity, l2LineSize, l2Policy, writeBack, writeAllocate,
+					l2HitLatency, null, memoryLatency, 0);
+		}
+
+		return new Cache("L1D", l1dSize, l1dAssociativity, l1dLineSize, l1dPolicy, writeBack, writeAllocate,
+				l1dHitLatency, l2, memoryLatency, l1dMSHRs);
+	}
+
+	/**
+	 * Builds the prefetcher described by this configuration.
+	 *
+	 * @param cache
+	 *            the cache the prefetcher fills
+	 * @return the prefetcher, or null if there is no cache or prefetching is
+	 *         disabled
+	 */
+	public Prefetcher buildPrefetcher(Cache cache) {
+		if (cache == null) {
+			return null;
+		}
+
+		switch (prefetcherType) {
+		case NEXT_LINE:
+			return new NextLinePrefetcher(cache, prefetchDegree);
+		case STRIDE:
+			return new StridePrefetcher(cache, prefetchTableSize, prefetchDegree);
+		case NONE:
+			return null;
+		default:
+			throw new RuntimeException("Unknown prefetcher");
+		}
+	}
+
+	/**
+	 * Builds the functional units of one class described by this
+	 * configuration.
+	 *
+	 * @param name
+	 *            the name of the class, used to name the units
+	 * @param count
+	 *            the amount of units
+	 * @param latency
+	 *            the amount of execution stages of every unit
+	 * @param pipelined
+	 *            true if the units accept a new entry every cycle
+	 * @return the functional units
+	 * @throws IllegalArgumentException
+	 *             if there is not at least one unit
+	 */
+	private static FunctionalUnit[] buildFunctionalUnits(String name, int count, int latency,
+			boolean pipelined) {
+		if (count < 1) {
+			throw new IllegalArgumentException("There must be at least one " + name + " functional unit");
+		}
+
+		FunctionalUnit[] units = new FunctionalUnit[count];
+		for (int i = 0; i < count; i += 1) {
+			units[i] = new FunctionalUnit(name, latency, pipelined);
+		}
+
+		return units;
+	}
+
+	/**
+	 * Builds the arithmetic units described by this configuration.
+	 *
+	 * @return the arithmetic units
+	 */
+	public FunctionalUnit[] buildALUs() {
+		return buildFunctionalUnits("ALU", aluCount, aluLatency, aluPipelined);
+	}
+
+	/**
+	 * Builds the multiply units described by this configuration.
+	 *
+	 * @return the multiply units
+	 */
+	public FunctionalUnit[] buildMULs() {
+		return buildFunctionalUnits("MUL", mulCount, mulLatency, mulPipelined);
+	}
+
+	/**
+	 * Builds the branch units described by this configuration.
+	 *
+	 * @return the branch units
+	 */
+	public FunctionalUnit[] buildBranchUnits() {
+		return buildFunctionalUnits("BR", branchCount, branchLatency, branchPipelined);
+	}
+
+	/**
+	 * Builds the LOAD/STORE units. The first stage of a LOAD/STORE unit
+	 * computes the address and the last stage accesses memory, so there must be
+	 * at least two stages.
+	 *
+	 * @return the LOAD/STORE units
+	 * @throws IllegalArgumentException
+	 *             if the latency is less than two cycles
+	 */
+	public FunctionalUnit[] buildLSUnits() {
+		if (lsLatency < 2) {
+			throw new IllegalArgumentException("LOAD/STORE latency must be at least two cycles");
+		}
+
+		return buildFunctionalUnits("LS", lsCount, lsLatency, lsPipelined);
+	}
+
+	public boolean isCachesEnabled() {
+		return cachesEnabled;
+	}
+
+	public void setCachesEnabled(boolean cachesEnabled) {
+		this.cachesEnabled = cachesEnabled;
+	}
+
+	public boolean isWriteBack() {
+		return writeBack;
+	}
+
+	public void setWriteBack(boolean writeBack) {
+		this.writeBack = writeBack;
+	}
+
+	public boolean isWriteAllocate() {
+		return writeAllocate;
+	}
+
+	public void setWriteAllocate(boolean writeAllocate) {
+		this.writeAllocate = writeAllocate;
+	}
+
+	public int getL1DSize() {
+		return l1dSize;
+	}
+
+	public void setL1DSize(int l1dSize) {
+		this.l1dSize = l1dSize;
+	}
+
+	public int getL1DAssociativity() {
+		return l1dAssociativity;
+	}
+
+	public void setL1DAssociativity(int l1dAssociativity) {
+		this.l1dAssociativity = l1dAssociativity;
+	}
+
+	public int getL1DLineSize() {
+		return l1dLineSize;
+	}
+
+	public void setL1DLineSize(int l1dLineSize) {
+		this.l1dLineSize = l1dLineSize;
+	}
+
+	public int getL1DHitLatency() {
+		return l1dHitLatency;
+	}
+
+	public void setL1DHitLatency(int l1dHitLatency) {
+		this.l1dHitLatency = l1dHitLatency;
+	}
+
+	public ReplacementPolicy getL1DPolicy() {
+		return l1dPolicy;
+	}
+
+	public void setL1DPolicy(ReplacementPolicy l1dPolicy) {
+		this.l1dPolicy = l1dPolicy;
+	}
+
+	public int getL1DMSHRs() {
+		return l1dMSHRs;
+	}
+
+	public void setL1DMSHRs(int l1dMSHRs) {
+		this.l1dMSHRs = l1dMSHRs;
+	}
+
+	public boolean isL2Enabled() {
+		return l2Enabled;
+	}
+
+	public void setL2Enabled(boolean l2Enabled) {
+		this.l2Enabled = l2Enabled;
+	}
+
+	public int getL2Size() {
+		return l2Size;
+	}
+
+	public void setL2Size(int l2Size) {
+		this.l2Size = l2Size;
+	}
+
+	public int getL2Associativity() {
+		return l2Associativity;
+	}
+
+	public void setL2Associativity(int l2Associativity) {
+		this.l2Associativity = l2Associativity;
+	}
+
+	public int getL2LineSize() {
+		return l2LineSize;
+	}
+
+	public void setL2LineSize(int l2LineSize) {
+		this.l2LineSize = l2LineSize;
+	}
+
+	public int getL2HitLatency() {
+		return l2HitLatency;
+	}
+
+	public void setL2HitLatency(int l2HitLatency) {
+		this.l2HitLatency = l2HitLatency;
+	}
+
+	public ReplacementPolicy getL2Policy() {
+		return l2Policy;
+	}
+
+	public void setL2Policy(ReplacementPolicy l2Policy) {
+		this.l2Policy = l2Policy;
+	}
+
+	public int getMemoryLatency() {
+		return memoryLatency;
+	}
+
+	public void setMemoryLatency(int memoryLatency) {
+		this.memoryLatency = memoryLatency;
+	}
+
+	public PrefetcherType getPrefetcherType() {
+		return prefetcherType;
+	}
+
+	public void setPrefetcherType(PrefetcherType prefetcherType) {
+		this.prefetcherType = prefetcherType;
+	}
+
+	public int getPrefetchDegree() {
+		return prefetchDegree;
+	}
+
+	public void setPrefetchDegree(int prefetchDegree) {
+		this.prefetchDegree = prefetchDegree;
+	}
+
+	public int getPrefetchTableSize() {
+		return prefetchTableSize;
+	}
+
+	public void setPrefetchTableSize(int prefetchTableSize) {
+		this.prefetchTableSize = prefetchTableSize;
+	}
+
+	public int getIssueWidth() {
+		return issueWidth;
+	}
+
+	public void setIssueWidth(int issueWidth) {
+		this.issueWidth = issueWidth;
+	}
+
+	public boolean isIdleCycleSkipping() {
+		return idleCycleSkipping;
+	}
+
+	public void setIdleCycleSkipping(boolean idleCycleSkipping) {
+		this.idleCycleSkipping = idleCycleSkipping;
+	}
+
+	public int getCPIInterval() {
+		return cpiInterval;
+	}
+
+	public void setCPIInterval(int cpiInterval) {
+		this.cpiInterval = cpiInterval;
+	}
+
+	public int getEventInterval() {
+		return eventInterval;
+	}
+
+	public void setEventInterval(int eventInterval) {
+		this.eventInterval = eventInterval;
+	}
+
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	public void setSnapshotInterval(int snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	public int getALUCount() {
+		return aluCount;
+	}
+
+	public void setALUCount(int aluCount) {
+		this.aluCount = aluCount;
+	}
+
+	public int getALULatency() {
+		return aluLatency;
+	}
+
+	public void setALULatency(int aluLatency) {
+		this.aluLatency = aluLatency;
+	}
+
+	public boolean isALUPipelined() {
+		return aluPipelined;
+	}
+
+	public void setALUPipelined(boolean aluPipelined) {
+		this.aluPipelined = aluPipelined;
+	}
+
+	public int getMULCount() {
+		return mulCount;
+	}
+
+	public void setMULCount(int mulCount) {
+		this.mulCount = mulCount;
+	}
+
+	public int getMULLatency() {
+		return mulLatency;
+	}
+
+	public void setMULLatency(int mulLatency) {
+		this.mulLatency = mulLatency;
+	}
+
+	public boolean isMULPipelined() {
+		return mulPipelined;
+	}
+
+	public void setMULPipelined(boolean mulPipelined) {
+		this.mulPipelined = mulPipelined;
+	}
+
+	public int getBranchCount() {
+		return branchCount;
+	}
+
+	public void setBranchCount(int branchCount) {
+		this.branchCount = branchCount;
+	}
+
+	public int getBranchLatency() {
+		return branchLatency;
+	}
+
+	public void setBranchLatency(int branchLatency) {
+		this.branchLatency = branchLatency;
+	}
+
+	public boolean isBranchPipelined() {
+		return branchPipelined;
+	}
+
+	public void setBranchPipelined(boolean branchPipelined) {
+		this.branchPipelined = branchPipelined;
+	}
+
+	public int getLSCount() {
+		return lsCount;
+	}
+
+	public void setLSCount(int lsCount) {
+		this.lsCount = lsCount;
+	}
+
+	public int getLSLatency() {
+		return lsLatency;
+	}
+
+	public void setLSLatency(int lsLatency) {
+		this.lsLatency = lsLatency;
+	}
+
+	public boolean isLSPipelined() {
+		return lsPipelined;
+	}
+
+	public void setLSPipelined(boolean lsPipelined) {
+		this.lsPipelined = lsPipelined;
+	}
+}
@@ -0,0 +1,155 @@
+package org.binghamton.comparch.systems;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Snapshots of a processor taken every interval of cycles, so that the
+ * simulation can go back to an earlier cycle: the processor restores the
+ * latest snapshot before that cycle and simulates forward to it, which gives
+ * the same state as the first time since the simulation is deterministic.
+ *
+ * A snapshot is a copy of the processor, made without its memory, and an
+ * image of its memory. The images share every page that was not written between them, so
+ * a snapshot only adds the pages written since the one before it. Only the
+ * latest snapshots are kept, which bounds the memory the history takes.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class ProcessorHistory {
+	private final int interval;
+	private final int retention;
+
+	/* Oldest snapshot first */
+	private final Deque<Snapshot> snapshots;
+
+	/**
+	 * Constructs an empty history
+	 *
+	 * @param interval
+	 *            the cycles between two snapshots
+	 * @param retention
+	 *            the most snapshots kept
+	 * @throws IllegalArgumentException
+	 *             if the interval or the retention is less than one
+	 */
+	public ProcessorHistory(int interval, int retention) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("History interval must be at least one cycle");
+		} else if (retention < 1) {
+			throw new IllegalArgumentException("History must keep at least one snapshot");
+		}
+
+		this.interval = interval;
+		this.retention = retention;
+		this.snapshots = new ArrayDeque<Snapshot>(retention + 1);
+	}
+
+	/**
+	 * Adds the latest snapshot, dropping the oldest one if there are more than
+	 * the retention
+	 *
+	 * @param snapshot
+	 *            the snapshot
+	 */
+	void add(Snapshot snapshot) {
+		this.snapshots.addLast(snapshot);
+		if (this.snapshots.size() > this.retention) {
+			this.snapshots.removeFirst();
+		}
+	}
+
+	/**
+	 * Returns the latest snapshot taken at or before the cycle and drops every
+	 * snapshot after it, as the simulation goes on from there
+	 *
+	 * @param cycle
+	 *            the cycle
+	 * @return the snapshot; null if every snapshot is later than the cycle
+	 */
+	Snapshot rewind(long cycle) {
+		while (!this.snapshots.isEmpty() && this.snapshots.peekLast().cycle > cycle) {
+			this.snapshots.removeLast();
+		}
+
+		return this.snapshots.peekLast();
+	}
+
+	/**
+	 * Drops every snapshot
+	 */
+	public void clear() {
+		this.snapshots.clear();
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	public int getRetention() {
+		return retention;
+	}
+
+	public int size() {
+		return snapshots.size();
+	}
+
+	/**
+	 * Returns the earliest cycle the simulation can go back to
+	 *
+	 * @return the cycle of the oldest snapshot; -1 if there is none
+	 */
+	public long getOldestCycle() {
+		return snapshots.isEmpty() ? -1 : snapshots.peekFirst().cycle;
+	}
+
+	/**
+	 * Returns the memory taken by the snapshots
+	 *
+	 * @return the bytes of every memory page held by the snapshots only
+	 */
+	public long getBytes() {
+		long bytes = 0;
+		Memory.Image previous = null;
+
+		for (Snapshot snapshot : snapshots) {
+			bytes += (long) snapshot.memory.getPagesNotIn(previous) * snapshot.memory.getPageBytes();
+			previous = snapshot.memory;
+		}
+
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+
+		str.append("Snapshot every ").append(interval).append(" cycles, keeping ").append(retention).append('\n');
+		Memory.Image previous = null;
+		for (Snapshot snapshot : snapshots) {
+			str.append("  Cycle ").append(snapshot.cycle).append(": ").append(snapshot.memory.getPagesNotIn(previous))
+					.append(" pages of memory\n");
+			previous = snapshot.memory;
+		}
+		str.append("Memory used: ").append(getBytes()).append(" bytes");
+
+		return str.toString();
+	}
+
+	/**
+	 * The state of the processor and its memory at the end of a cycle
+	 */
+	static final class Snapshot {
+		final long cycle;
+		final Processor state;
+		final Memory.Image memory;
+
+		Snapshot(long cycle, Processor state, Memory.Image memory) {
+			this.cycle = cycle;
+			this.state = state;
+			this.memory = memory;
+		}
+	}
+}
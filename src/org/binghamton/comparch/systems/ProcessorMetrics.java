@@ -0,0 +1,306 @@
+package org.binghamton.comparch.systems;
+
+import java.util.Locale;
+
+/**
+ * Collects detailed statistics of the processor every cycle: why the front
+ * end stalled, how full the IQ, ROB and URF were, how many instructions were
+ * issued and how busy each functional unit was. Everything is kept in
+ * primitive counters, so sampling a cycle does not allocate.
+ *
+ * A cycle is put down to at most one stall cause. When several hold at once,
+ * the one listed first in StallCause wins. The DRF stalls, NO_PHYSICAL_REGISTER
+ * included, add up to the dispatched stalled cycles of the processor.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class ProcessorMetrics {
+	private final FunctionalUnit[] units;
+	private final String[] unitNames;
+
+	private long cycles;
+	private final long[] stallCycles;
+	private final long[] unitBusyCycles;
+
+	private final Histogram iqOccupancy;
+	private final Histogram robOccupancy;
+	private final Histogram urfOccupancy;
+	private final Histogram issueWidth;
+
+	/* The last sampled cycle, repeated for skipped cycles */
+	private int lastIQ;
+	private int lastROB;
+	private int lastURF;
+	private int lastIssued;
+	private StallCause lastCause;
+	private final boolean[] lastUnitBusy;
+
+	/**
+	 * Constructs the metrics of a processor
+	 *
+	 * @param units
+	 *            every functional unit of the processor
+	 * @param iqCapacity
+	 *            the entries in the IQ
+	 * @param robCapacity
+	 *            the entries in the ROB
+	 * @param physicalRegisters
+	 *            the physical registers in the URF
+	 * @param width
+	 *            the most instructions issued in a cycle
+	 */
+	public ProcessorMetrics(FunctionalUnit[] units, int iqCapacity, int robCapacity, int physicalRegisters,
+			int width) {
+		this.units = units;
+		this.unitNames = new String[units.length];
+		this.unitBusyCycles = new long[units.length];
+		this.lastUnitBusy = new boolean[units.length];
+		this.stallCycles = new long[StallCause.values().length];
+
+		/* Number the units that share a name */
+		for (int i = 0; i < units.length; i += 1) {
+			int number = 0;
+			for (int j = 0; j < i; j += 1) {
+				if (units[j].getName().equals(units[i].getName())) {
+					number += 1;
+				}
+			}
+			this.unitNames[i] = units[i].getName() + number;
+		}
+
+		this.iqOccupancy = new Histogram("IQ Occupancy", iqCapacity);
+		this.robOccupancy = new Histogram("ROB Occupancy", robCapacity);
+		this.urfOccupancy = new Histogram("URF Occupancy", physicalRegisters);
+		this.issueWidth = new Histogram("Issue Width", width);
+	}
+
+	/**
+	 * Changes the amount of physical registers in the URF, keeping every
+	 * statistic
+	 *
+	 * @param physicalRegisters
+	 *            the physical registers in the URF
+	 */
+	public void setPhysicalRegisters(int physicalRegisters) {
+		this.urfOccupancy.setMax(physicalRegisters);
+	}
+
+	/**
+	 * Throws away every statistic
+	 *
+	 * @param physicalRegisters
+	 *            the physical registers in the URF, which may have changed
+	 */
+	public void reset(int physicalRegisters) {
+		this.cycles = 0;
+		for (int i = 0; i < stallCycles.length; i += 1) {
+			this.stallCycles[i] = 0;
+		}
+		for (int i = 0; i < unitBusyCycles.length; i += 1) {
+			this.unitBusyCycles[i] = 0;
+			this.lastUnitBusy[i] = false;
+		}
+
+		this.iqOccupancy.reset(iqOccupancy.getMax());
+		this.robOccupancy.reset(robOccupancy.getMax());
+		this.urfOccupancy.reset(physicalRegisters);
+		this.issueWidth.reset(issueWidth.getMax());
+
+		this.lastIQ = 0;
+		this.lastROB = 0;
+		this.lastURF = 0;
+		this.lastIssued = 0;
+		this.lastCause = null;
+	}
+
+	/**
+	 * Takes over every statistic of the metrics of a processor with the same
+	 * functional units
+	 *
+	 * @param other
+	 *            the metrics
+	 */
+	void copyFrom(ProcessorMetrics other) {
+		this.cycles = other.cycles;
+		System.arraycopy(other.stallCycles, 0, stallCycles, 0, stallCycles.length);
+		System.arraycopy(other.unitBusyCycles, 0, unitBusyCycles, 0, unitBusyCycles.length);
+
+		this.iqOccupancy.copyFrom(other.iqOccupancy);
+		this.robOccupancy.copyFrom(other.robOccupancy);
+		this.urfOccupancy.copyFrom(other.urfOccupancy);
+		this.issueWidth.copyFrom(other.issueWidth);
+
+		this.lastIQ = other.lastIQ;
+		this.lastROB = other.lastROB;
+		this.lastURF = other.lastURF;
+		this.lastIssued = other.lastIssued;
+		this.lastCause = other.lastCause;
+		System.arraycopy(other.lastUnitBusy, 0, lastUnitBusy, 0, lastUnitBusy.length);
+	}
+
+	/**
+	 * Records the state at the end of a cycle
+	 *
+	 * @param iq
+	 *            the entries in the IQ
+	 * @param rob
+	 *            the entries in the ROB
+	 * @param urf
+	 *            the allocated physical registers
+	 * @param issued
+	 *            the instructions issued in the cycle
+	 * @param cause
+	 *            why the front end stalled; null if it did not
+	 */
+	public void sample(int iq, int rob, int urf, int issued, StallCause cause) {
+		this.lastIQ = iq;
+		this.lastROB = rob;
+		this.lastURF = urf;
+		this.lastIssued = issued;
+		this.lastCause = cause;
+
+		for (int i = 0; i < units.length; i += 1) {
+			this.lastUnitBusy[i] = !units[i].isEmpty();
+		}
+
+		repeat(1);
+	}
+
+	/**
+	 * Records the last sampled cycle again, for cycles that were the same as it
+	 *
+	 * @param count
+	 *            the amount of cycles
+	 */
+	public void repeat(long count) {
+		this.cycles += count;
+
+		if (lastCause != null) {
+			this.stallCycles[lastCause.ordinal()] += count;
+		}
+		for (int i = 0; i < units.length; i += 1) {
+			if (lastUnitBusy[i]) {
+				this.unitBusyCycles[i] += count;
+			}
+		}
+
+		this.iqOccupancy.record(lastIQ, count);
+		this.robOccupancy.record(lastROB, count);
+		this.urfOccupancy.record(lastURF, count);
+		this.issueWidth.record(lastIssued, count);
+	}
+
+	public long getCycles() {
+		return cycles;
+	}
+
+	public long getStallCycles(StallCause cause) {
+		return stallCycles[cause.ordinal()];
+	}
+
+	public int getUnitCount() {
+		return units.length;
+	}
+
+	public String getUnitName(int unit) {
+		return unitNames[unit];
+	}
+
+	public long getUnitBusyCycles(int unit) {
+		return unitBusyCycles[unit];
+	}
+
+	/**
+	 * Returns the fraction of cycles the unit had an instruction in it
+	 *
+	 * @param unit
+	 *            the index of the unit
+	 * @return the utilization of the unit, between 0 and 1
+	 */
+	public double getUnitUtilization(int unit) {
+		return (cycles == 0) ? 0 : (double) unitBusyCycles[unit] / cycles;
+	}
+
+	public Histogram getIQOccupancy() {
+		return iqOccupancy;
+	}
+
+	public Histogram getROBOccupancy() {
+		return robOccupancy;
+	}
+
+	public Histogram getURFOccupancy() {
+		return urfOccupancy;
+	}
+
+	public Histogram getIssueWidth() {
+		return issueWidth;
+	}
+
+	/**
+	 * Returns every statistic as a JSON object
+	 *
+	 * @return the statistics in JSON
+	 */
+	public String toJSON() {
+		StringBuilder json = new StringBuilder();
+
+		json.append("{\n  \"cycles\": ").append(cycles).append(",\n  \"stalls\": {");
+		for (StallCause cause : StallCause.values()) {
+			json.append(cause.ordinal() == 0 ? "\n" : ",\n");
+			json.append("    \"").append(cause.name()).append("\": ").append(stallCycles[cause.ordinal()]);
+		}
+
+		json.append("\n  },\n  \"histograms\": {");
+		Histogram[] histograms = { iqOccupancy, robOccupancy, urfOccupancy, issueWidth };
+		for (int i = 0; i < histograms.length; i += 1) {
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append("    \"").append(histograms[i].getName()).append("\": [");
+			for (int value = 0; value <= histograms[i].getMax(); value += 1) {
+				json.append(value == 0 ? "" : ", ").append(histograms[i].getCount(value));
+			}
+			json.append("]");
+		}
+
+		json.append("\n  },\n  \"units\": [");
+		for (int i = 0; i < units.length; i += 1) {
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append(String.format(Locale.ROOT, "    {\"name\": \"%s\", \"busyCycles\": %d, \"utilization\": %.6f}",
+					unitNames[i], unitBusyCycles[i], getUnitUtilization(i)));
+		}
+		json.append("\n  ]\n}\n");
+
+		return json.toString();
+	}
+
+	/**
+	 * Returns every statistic as CSV, one value on each row
+	 *
+	 * @return the statistics in CSV
+	 */
+	public String toCSV() {
+		StringBuilder csv = new StringBuilder("metric,key,value\n");
+
+		csv.append("cycles,,").append(cycles).append('\n');
+		for (StallCause cause : StallCause.values()) {
+			csv.append("stall,").append(cause.name()).append(',').append(stallCycles[cause.ordinal()]).append('\n');
+		}
+
+		Histogram[] histograms = { iqOccupancy, robOccupancy, urfOccupancy, issueWidth };
+		for (Histogram histogram : histograms) {
+			for (int value = 0; value <= histogram.getMax(); value += 1) {
+				csv.append(histogram.getName()).append(',').append(value).append(',')
+						.append(histogram.getCount(value)).append('\n');
+			}
+		}
+
+		for (int i = 0; i < units.length; i += 1) {
+			csv.append("Unit Busy Cycles,").append(unitNames[i]).append(',').append(unitBusyCycles[i])
+					.append('\n');
+		}
+
+		return csv.toString();
+	}
+}
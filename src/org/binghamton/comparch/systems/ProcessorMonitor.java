@@ -0,0 +1,249 @@
+package org.binghamton.comparch.systems;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the statistics of a processor over JMX. The simulation thread
+ * copies the statistics into an immutable snapshot every few cycles and
+ * replaces the previous one with a single volatile write. Monitoring tools
+ * read the latest snapshot, so no lock is shared between them and the
+ * simulation.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class ProcessorMonitor implements ProcessorMonitorMXBean {
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+	private final ObjectName name;
+	private volatile Snapshot snapshot;
+
+	/**
+	 * Registers a monitor in the platform MBean server, named
+	 * org.binghamton.comparch:type=Processor,id=N
+	 *
+	 * @throws JMException
+	 *             if the monitor can not be registered
+	 */
+	public ProcessorMonitor() throws JMException {
+		this.name = new ObjectName("org.binghamton.comparch:type=Processor,id=" + NEXT_ID.getAndIncrement());
+		this.snapshot = new Snapshot();
+
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.name);
+	}
+
+	/**
+	 * Removes the monitor from the platform MBean server
+	 *
+	 * @throws JMException
+	 *             if the monitor can not be unregistered
+	 */
+	public void unregister() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		if (server.isRegistered(this.name)) {
+			server.unregisterMBean(this.name);
+		}
+	}
+
+	public ObjectName getName() {
+		return name;
+	}
+
+	/**
+	 * Copies the statistics of the processor into a new snapshot and
+	 * publishes it. Must be called by the thread simulating the processor.
+	 *
+	 * @param processor
+	 *            the processor
+	 */
+	public void publish(Processor processor) {
+		this.snapshot = new Snapshot(processor, this.snapshot);
+	}
+
+	@Override
+	public long getSnapshotTime() {
+		return snapshot.time;
+	}
+
+	@Override
+	public long getTotalCycles() {
+		return snapshot.totalCycles;
+	}
+
+	@Override
+	public long getInstructionsCommitted() {
+		return snapshot.instructionsCommitted;
+	}
+
+	@Override
+	public double getIPC() {
+		Snapshot current = this.snapshot;
+		return (current.totalCycles == 0) ? 0 : (double) current.instructionsCommitted / current.totalCycles;
+	}
+
+	@Override
+	public double getCyclesPerSecond() {
+		return snapshot.cyclesPerSecond;
+	}
+
+	@Override
+	public long getDispatchedStalledCycles() {
+		return snapshot.dispatchedStalledCycles;
+	}
+
+	@Override
+	public long getNoIssueCycles() {
+		return snapshot.noIssueCycles;
+	}
+
+	@Override
+	public long getLoadsCommitted() {
+		return snapshot.loadsCommitted;
+	}
+
+	@Override
+	public long getStoresCommitted() {
+		return snapshot.storesCommitted;
+	}
+
+	@Override
+	public long getMemoryOrderViolations() {
+		return snapshot.memoryOrderViolations;
+	}
+
+	@Override
+	public long getSkippedCycles() {
+		return snapshot.skippedCycles;
+	}
+
+	@Override
+	public Map<String, Long> getStallCycles() {
+		return snapshot.stallCycles;
+	}
+
+	@Override
+	public double getAverageIQOccupancy() {
+		return snapshot.averageIQOccupancy;
+	}
+
+	@Override
+	public double getAverageROBOccupancy() {
+		return snapshot.averageROBOccupancy;
+	}
+
+	@Override
+	public double getAverageURFOccupancy() {
+		return snapshot.averageURFOccupancy;
+	}
+
+	@Override
+	public double getAverageIssueWidth() {
+		return snapshot.averageIssueWidth;
+	}
+
+	@Override
+	public Map<String, Double> getUnitUtilization() {
+		return snapshot.unitUtilization;
+	}
+
+	/**
+	 * The statistics of a processor at one point of the simulation
+	 */
+	private static final class Snapshot {
+		private final long time;
+		private final long nanos;
+		private final long totalCycles;
+		private final long instructionsCommitted;
+		private final double cyclesPerSecond;
+		private final long dispatchedStalledCycles;
+		private final long noIssueCycles;
+		private final long loadsCommitted;
+		private final long storesCommitted;
+		private final long memoryOrderViolations;
+		private final long skippedCycles;
+		private final Map<String, Long> stallCycles;
+		private final double averageIQOccupancy;
+		private final double averageROBOccupancy;
+		private final double averageURFOccupancy;
+		private final double averageIssueWidth;
+		private final Map<String, Double> unitUtilization;
+
+		/**
+		 * Constructs the snapshot of a processor that has not run
+		 */
+		private Snapshot() {
+			this.time = System.currentTimeMillis();
+			this.nanos = System.nanoTime();
+			this.totalCycles = 0;
+			this.instructionsCommitted = 0;
+			this.cyclesPerSecond = 0;
+			this.dispatchedStalledCycles = 0;
+			this.noIssueCycles = 0;
+			this.loadsCommitted = 0;
+			this.storesCommitted = 0;
+			this.memoryOrderViolations = 0;
+			this.skippedCycles = 0;
+			this.stallCycles = Collections.emptyMap();
+			this.averageIQOccupancy = 0;
+			this.averageROBOccupancy = 0;
+			this.averageURFOccupancy = 0;
+			this.averageIssueWidth = 0;
+			this.unitUtilization = Collections.emptyMap();
+		}
+
+		/**
+		 * Copies the statistics of the processor
+		 *
+		 * @param processor
+		 *            the processor
+		 * @param previous
+		 *            the snapshot before this one, to measure the speed of
+		 *            the simulation
+		 */
+		private Snapshot(Processor processor, Snapshot previous) {
+			ProcessorMetrics metrics = processor.getMetrics();
+
+			this.time = System.currentTimeMillis();
+			this.nanos = System.nanoTime();
+			this.totalCycles = processor.getTotalCycles();
+			this.instructionsCommitted = processor.getInstructionsCommited();
+			this.dispatchedStalledCycles = processor.getDispatchedStalledCycles();
+			this.noIssueCycles = processor.getNoIssuesCycles();
+			this.loadsCommitted = processor.getLoadsCommitted();
+			this.storesCommitted = processor.getStoresCommitted();
+			this.memoryOrderViolations = processor.getMemoryOrderViolations();
+			this.skippedCycles = processor.getSkippedCycles();
+			this.averageIQOccupancy = metrics.getIQOccupancy().getMean();
+			this.averageROBOccupancy = metrics.getROBOccupancy().getMean();
+			this.averageURFOccupancy = metrics.getURFOccupancy().getMean();
+			this.averageIssueWidth = metrics.getIssueWidth().getMean();
+
+			/* A restarted simulation has no speed until the next snapshot */
+			long cycles = this.totalCycles - previous.totalCycles;
+			long elapsed = this.nanos - previous.nanos;
+			this.cyclesPerSecond = (cycles > 0 && elapsed > 0) ? (cycles * 1e9) / elapsed : 0;
+
+			Map<String, Long> stalls = new LinkedHashMap<String, Long>();
+			for (StallCause cause : StallCause.values()) {
+				stalls.put(cause.name(), metrics.getStallCycles(cause));
+			}
+			this.stallCycles = Collections.unmodifiableMap(stalls);
+
+			Map<String, Double> utilization = new LinkedHashMap<String, Double>();
+			for (int i = 0; i < metrics.getUnitCount(); i += 1) {
+				utilization.put(metrics.getUnitName(i), metrics.getUnitUtilization(i));
+			}
+			this.unitUtilization = Collections.unmodifiableMap(utilization);
+		}
+	}
+}
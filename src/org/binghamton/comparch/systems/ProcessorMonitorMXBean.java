@@ -0,0 +1,70 @@
+package org.binghamton.comparch.systems;
+
+import java.util.Map;
+
+/**
+ * Management interface of a running processor. Every attribute is read from
+ * the last snapshot the processor published, so reading it never waits on or
+ * slows down the simulation.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public interface ProcessorMonitorMXBean {
+	/**
+	 * Returns when the snapshot was published
+	 *
+	 * @return the time in milliseconds since the epoch
+	 */
+	long getSnapshotTime();
+
+	long getTotalCycles();
+
+	long getInstructionsCommitted();
+
+	double getIPC();
+
+	/**
+	 * Returns how fast the processor is simulated, measured between the last
+	 * two snapshots
+	 *
+	 * @return the simulated cycles for every second; 0 if only one snapshot
+	 *         was published
+	 */
+	double getCyclesPerSecond();
+
+	long getDispatchedStalledCycles();
+
+	long getNoIssueCycles();
+
+	long getLoadsCommitted();
+
+	long getStoresCommitted();
+
+	long getMemoryOrderViolations();
+
+	long getSkippedCycles();
+
+	/**
+	 * Returns the cycles stalled for each cause
+	 *
+	 * @return the cycles, keyed by the name of the StallCause
+	 */
+	Map<String, Long> getStallCycles();
+
+	double getAverageIQOccupancy();
+
+	double getAverageROBOccupancy();
+
+	double getAverageURFOccupancy();
+
+	double getAverageIssueWidth();
+
+	/**
+	 * Returns the fraction of cycles each functional unit was busy
+	 *
+	 * @return the utilization, keyed by the name of the unit
+	 */
+	Map<String, Double> getUnitUtilization();
+}
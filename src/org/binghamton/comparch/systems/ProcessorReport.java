@@ -0,0 +1,138 @@
+package org.binghamton.comparch.systems;
+
+import java.util.Locale;
+
+/**
+ * Formats the statistics of a finished run for other programs to read: the
+ * counters of the processor, every cache, the CPI stack and the detailed
+ * metrics, as JSON or as CSV.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public final class ProcessorReport {
+	private ProcessorReport() {
+	}
+
+	/**
+	 * Returns the statistics of a run as a JSON object
+	 *
+	 * @param p
+	 *            the processor that ran the program
+	 * @param program
+	 *            the file of the program
+	 * @param halted
+	 *            true if the program halted
+	 * @return the statistics in JSON
+	 */
+	public static String toJSON(Processor p, String program, boolean halted) {
+		StringBuilder json = new StringBuilder("{\n");
+
+		json.append("  \"program\": ").append(quote(program)).append(",\n");
+		json.append("  \"halted\": ").append(halted).append(",\n");
+		for (String[] counter : counters(p)) {
+			json.append("  \"").append(counter[0]).append("\": ").append(counter[1]).append(",\n");
+		}
+
+		json.append("  \"caches\": [");
+		for (Cache cache = p.getDataCache(); cache != null; cache = cache.getNext()) {
+			json.append(cache == p.getDataCache() ? "\n" : ",\n");
+			json.append(String.format(Locale.ROOT,
+					"    {\"name\": \"%s\", \"accesses\": %d, \"hits\": %d, \"hitRate\": %.6f, \"mpki\": %.6f}",
+					cache.getName(), cache.getAccesses(), cache.getHits(), cache.getHitRate(),
+					cache.getMPKI(p.getInstructionsCommited())));
+		}
+		json.append("\n  ],\n");
+
+		json.append("  \"cpiStack\": {");
+		for (CPIComponent component : CPIComponent.values()) {
+			json.append(component.ordinal() == 0 ? "\n" : ",\n");
+			json.append("    \"").append(component.name()).append("\": ")
+					.append(p.getCPIStack().getCycles(component));
+		}
+		json.append("\n  },\n");
+
+		json.append("  \"metrics\": ").append(p.getMetrics().toJSON().trim().replace("\n", "\n  "));
+		json.append("\n}\n");
+
+		return json.toString();
+	}
+
+	/**
+	 * Returns the statistics of a run as CSV, one value on each row
+	 *
+	 * @param p
+	 *            the processor that ran the program
+	 * @param program
+	 *            the file of the program
+	 * @param halted
+	 *            true if the program halted
+	 * @return the statistics in CSV
+	 */
+	public static String toCSV(Processor p, String program, boolean halted) {
+		StringBuilder csv = new StringBuilder("metric,key,value\n");
+
+		csv.append("halted,,").append(halted).append('\n');
+		for (String[] counter : counters(p)) {
+			csv.append(counter[0]).append(",,").append(counter[1]).append('\n');
+		}
+		for (Cache cache = p.getDataCache(); cache != null; cache = cache.getNext()) {
+			csv.append("cacheAccesses,").append(cache.getName()).append(',').append(cache.getAccesses()).append('\n');
+			csv.append("cacheHits,").append(cache.getName()).append(',').append(cache.getHits()).append('\n');
+		}
+		for (CPIComponent component : CPIComponent.values()) {
+			csv.append("cpiStack,").append(component.name()).append(',')
+					.append(p.getCPIStack().getCycles(component)).append('\n');
+		}
+
+		/* Leave out the header of the metrics */
+		String metrics = p.getMetrics().toCSV();
+		csv.append(metrics.substring(metrics.indexOf('\n') + 1));
+
+		return csv.toString();
+	}
+
+	/**
+	 * Returns a string as a JSON string literal
+	 *
+	 * @param value
+	 *            the string
+	 * @return the string in quotes, with quotes, backslashes and control
+	 *         characters escaped
+	 */
+	public static String quote(String value) {
+		StringBuilder json = new StringBuilder("\"");
+
+		for (int i = 0; i < value.length(); i += 1) {
+			char c = value.charAt(i);
+
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < ' ') {
+				json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+
+		return json.append('"').toString();
+	}
+
+	private static String[][] counters(Processor p) {
+		double ipc = (p.getTotalCycles() == 0) ? 0 : (double) p.getInstructionsCommited() / p.getTotalCycles();
+
+		return new String[][] { { "cycles", String.valueOf(p.getTotalCycles()) },
+				{ "instructions", String.valueOf(p.getInstructionsCommited()) },
+				{ "ipc", String.format(Locale.ROOT, "%.6f", ipc) },
+				{ "dispatchedStalledCycles", String.valueOf(p.getDispatchedStalledCycles()) },
+				{ "noIssueCycles", String.valueOf(p.getNoIssuesCycles()) },
+				{ "loadsCommitted", String.valueOf(p.getLoadsCommitted()) },
+				{ "storesCommitted", String.valueOf(p.getStoresCommitted()) },
+				{ "branchesCommitted", String.valueOf(p.getBranchesCommitted()) },
+				{ "takenBranches", String.valueOf(p.getTakenBranches()) },
+				{ "memoryOrderViolations", String.valueOf(p.getMemoryOrderViolations()) },
+				{ "mshrStalledCycles", String.valueOf(p.getMSHRStalledCycles()) },
+				{ "skippedCycles", String.valueOf(p.getSkippedCycles()) } };
+	}
+}
@@ -0,0 +1,186 @@
+package org.binghamton.comparch.systems;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counts what every static instruction of a program costs. The program is a
+ * dense array of instructions, so every count is kept in a primitive array
+ * indexed by the position of the instruction in the program.
+ *
+ * For every instruction the profiler counts how often it was dispatched,
+ * issued and committed, the cycles it spent waiting in the IQ, the cycles it
+ * spent at the head of the ROB and how often it flushed the pipeline, either
+ * as a taken branch or as a LOAD that was replayed.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class Profiler {
+	private Program program;
+
+	private long[] dispatched;
+	private long[] issued;
+	private long[] issueWait;
+	private long[] committed;
+	private long[] headCycles;
+	private long[] flushes;
+
+	/* Instruction at the head of the ROB in the last recorded cycle, -1 if none */
+	private int lastHead;
+
+	/**
+	 * Constructs a profiler for an empty program
+	 */
+	public Profiler() {
+		reset(new Program(new Instruction[0], new int[0], new int[0], new int[0]));
+	}
+
+	/**
+	 * Throws away every count and starts profiling a new program
+	 *
+	 * @param program
+	 *            the program
+	 */
+	public void reset(Program program) {
+		int size = program.size();
+
+		this.program = program;
+		this.dispatched = new long[size];
+		this.issued = new long[size];
+		this.issueWait = new long[size];
+		this.committed = new long[size];
+		this.headCycles = new long[size];
+		this.flushes = new long[size];
+		this.lastHead = -1;
+	}
+
+	/**
+	 * Takes over the program and every count of another profiler
+	 *
+	 * @param other
+	 *            the profiler
+	 */
+	void copyFrom(Profiler other) {
+		this.program = other.program;
+		this.dispatched = Arrays.copyOf(other.dispatched, other.dispatched.length);
+		this.issued = Arrays.copyOf(other.issued, other.issued.length);
+		this.issueWait = Arrays.copyOf(other.issueWait, other.issueWait.length);
+		this.committed = Arrays.copyOf(other.committed, other.committed.length);
+		this.headCycles = Arrays.copyOf(other.headCycles, other.headCycles.length);
+		this.flushes = Arrays.copyOf(other.flushes, other.flushes.length);
+		this.lastHead = other.lastHead;
+	}
+
+	public void recordDispatch(int index) {
+		this.dispatched[index] += 1;
+	}
+
+	/**
+	 * Records that the instruction was issued
+	 *
+	 * @param index
+	 *            the index of the instruction in the program
+	 * @param wait
+	 *            the cycles it waited in the IQ
+	 */
+	public void recordIssue(int index, long wait) {
+		this.issued[index] += 1;
+		this.issueWait[index] += wait;
+	}
+
+	public void recordCommit(int index) {
+		this.committed[index] += 1;
+	}
+
+	public void recordFlush(int index) {
+		this.flushes[index] += 1;
+	}
+
+	/**
+	 * Records the instruction at the head of the ROB for a cycle
+	 *
+	 * @param index
+	 *            the index of the instruction in the program; -1 if the ROB is
+	 *            empty
+	 */
+	public void recordHead(int index) {
+		this.lastHead = index;
+		repeatHead(1);
+	}
+
+	/**
+	 * Records the head of the last cycle again
+	 *
+	 * @param cycles
+	 *            the amount of cycles
+	 */
+	public void repeatHead(long cycles) {
+		if (lastHead >= 0) {
+			this.headCycles[lastHead] += cycles;
+		}
+	}
+
+	public int size() {
+		return program.size();
+	}
+
+	public long getDispatched(int index) {
+		return dispatched[index];
+	}
+
+	public long getIssued(int index) {
+		return issued[index];
+	}
+
+	public long getCommitted(int index) {
+		return committed[index];
+	}
+
+	public long getHeadCycles(int index) {
+		return headCycles[index];
+	}
+
+	public long getFlushes(int index) {
+		return flushes[index];
+	}
+
+	/**
+	 * Returns the average cycles the instruction waited in the IQ
+	 *
+	 * @param index
+	 *            the index of the instruction in the program
+	 * @return the average wait; 0 if it was never issued
+	 */
+	public double getAverageIssueWait(int index) {
+		return (issued[index] == 0) ? 0 : (double) issueWait[index] / issued[index];
+	}
+
+	/**
+	 * Returns the program annotated with the counts of every instruction
+	 *
+	 * @return the annotated disassembly
+	 */
+	@Override
+	public String toString() {
+		long totalHead = 0;
+		for (int i = 0; i < headCycles.length; i += 1) {
+			totalHead += headCycles[i];
+		}
+
+		StringBuilder str = new StringBuilder();
+		str.append(String.format(Locale.ROOT, "%-7s %-20s %10s %10s %10s %7s %8s %9s\n", "Address", "Instruction",
+				"Committed", "Dispatched", "Head", "Head%", "Flushes", "IQ Wait"));
+
+		for (int i = 0; i < program.size(); i += 1) {
+			double headShare = (totalHead == 0) ? 0 : (100.0 * headCycles[i]) / totalHead;
+
+			str.append(String.format(Locale.ROOT, "%-7d %-20s %10d %10d %10d %6.2f%% %8d %9.2f\n",
+					Processor.SIZE_OF_DATA_MEMORY + (i * 4), program.getInstruction(i).toString(), committed[i],
+					dispatched[i], headCycles[i], headShare, flushes[i], getAverageIssueWait(i)));
+		}
+
+		return str.toString();
+	}
+}
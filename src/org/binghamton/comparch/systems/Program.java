@@ -0,0 +1,231 @@
+package org.binghamton.comparch.systems;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A program ready to be loaded into program memory. Besides the instructions,
+ * the architectural registers every instruction uses are decoded up front so
+ * that nothing has to be decoded from the register names while simulating. A
+ * program can also carry an image of words that data memory starts with.
+ * The program can not be changed once it is built, so the same instance can be
+ * loaded into any amount of simulators.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class Program {
+	/* Register index of the special register X */
+	public static final int REGISTER_X = Processor.NUM_OF_ARC_REGISTERS;
+
+	/* Returned for an instruction that has no such register */
+	public static final int NO_REGISTER = -1;
+
+	/* Every instruction shares these register names instead of making its own */
+	private static final String[] REGISTER_NAMES = new String[Processor.NUM_OF_ARC_REGISTERS];
+	private static final String REGISTER_X_NAME = "X";
+
+	static {
+		for (int i = 0; i < REGISTER_NAMES.length; i += 1) {
+			REGISTER_NAMES[i] = "R" + i;
+		}
+	}
+
+	private final Instruction[] instructions;
+	private final int[] rdest;
+	private final int[] rsrc1;
+	private final int[] rsrc2;
+	private final int[] data;
+
+	/**
+	 * Builds a program by decoding the register names of the instructions
+	 *
+	 * @param instructions
+	 *            the instructions in program order
+	 * @throws IllegalArgumentException
+	 *             if a register name can not be decoded
+	 */
+	public Program(List<Instruction> instructions) {
+		int count = instructions.size();
+
+		this.instructions = instructions.toArray(new Instruction[count]);
+		this.rdest = new int[count];
+		this.rsrc1 = new int[count];
+		this.rsrc2 = new int[count];
+
+		for (int i = 0; i < count; i += 1) {
+			this.rdest[i] = decodeRegister(this.instructions[i].getRdest());
+			this.rsrc1[i] = decodeRegister(this.instructions[i].getRsrc1());
+			this.rsrc2[i] = decodeRegister(this.instructions[i].getRsrc2());
+		}
+		this.data = new int[0];
+	}
+
+	/**
+	 * Builds a program out of instructions whose registers have already been
+	 * decoded. The arrays are used as they are and must not be changed
+	 * afterwards.
+	 *
+	 * @param instructions
+	 *            the instructions in program order
+	 * @param rdest
+	 *            the destination register of every instruction
+	 * @param rsrc1
+	 *            the first source register of every instruction
+	 * @param rsrc2
+	 *            the second source register of every instruction
+	 * @throws IllegalArgumentException
+	 *             if the arrays do not have the same length
+	 */
+	public Program(Instruction[] instructions, int[] rdest, int[] rsrc1, int[] rsrc2) {
+		this(instructions, rdest, rsrc1, rsrc2, new int[0]);
+	}
+
+	/**
+	 * Builds a program out of decoded instructions and the words data memory
+	 * starts with. The arrays are used as they are and must not be changed
+	 * afterwards.
+	 *
+	 * @param instructions
+	 *            the instructions in program order
+	 * @param rdest
+	 *            the destination register of every instruction
+	 * @param rsrc1
+	 *            the first source register of every instruction
+	 * @param rsrc2
+	 *            the second source register of every instruction
+	 * @param data
+	 *            the words at the start of data memory, beginning at address 0
+	 * @throws IllegalArgumentException
+	 *             if the register arrays do not have the same length as the
+	 *             instructions, or the data does not fit in data memory
+	 */
+	public Program(Instruction[] instructions, int[] rdest, int[] rsrc1, int[] rsrc2, int[] data) {
+		if (rdest.length != instructions.length || rsrc1.length != instructions.length
+				|| rsrc2.length != instructions.length) {
+			throw new IllegalArgumentException("Every instruction needs its decoded registers");
+		} else if (data.length > Processor.SIZE_OF_DATA_MEMORY / 4) {
+			throw new IllegalArgumentException("Data image is larger than data memory");
+		}
+
+		this.instructions = instructions;
+		this.rdest = rdest;
+		this.rsrc1 = rsrc1;
+		this.rsrc2 = rsrc2;
+		this.data = data;
+	}
+
+	/**
+	 * Takes a string representation of a register and converts that into the
+	 * index of the architectural register.
+	 *
+	 * @param str
+	 *            the string representation of a register
+	 * @return the index of the register; NO_REGISTER if there is no register
+	 * @throws IllegalArgumentException
+	 *             if the string representation is invalid
+	 */
+	public static int decodeRegister(String str) {
+		if (str == null) {
+			return NO_REGISTER;
+		} else if (str.equals("X")) {
+			return REGISTER_X;
+		}
+
+		if (str.length() >= 2 && str.length() <= 3 && str.charAt(0) == 'R') {
+			int index = 0;
+
+			for (int i = 1; i < str.length(); i += 1) {
+				char c = str.charAt(i);
+
+				if (c < '0' || c > '9') {
+					throw new IllegalArgumentException("Register can not be decoded");
+				}
+				index = (index * 10) + (c - '0');
+			}
+
+			if (index < Processor.NUM_OF_ARC_REGISTERS) {
+				return index;
+			}
+		}
+
+		throw new IllegalArgumentException("Register can not be decoded");
+	}
+
+	/**
+	 * Returns the name of a decoded register, the opposite of decodeRegister
+	 *
+	 * @param register
+	 *            the index of the register
+	 * @return the name of the register; null for NO_REGISTER
+	 * @throws IllegalArgumentException
+	 *             if there is no such register
+	 */
+	public static String registerName(int register) {
+		if (register == NO_REGISTER) {
+			return null;
+		} else if (register == REGISTER_X) {
+			return REGISTER_X_NAME;
+		} else if (register < 0 || register >= REGISTER_NAMES.length) {
+			throw new IllegalArgumentException("Register does not exist");
+		}
+
+		return REGISTER_NAMES[register];
+	}
+
+	/**
+	 * Returns the amount of instructions in the program
+	 *
+	 * @return the amount of instructions in the program
+	 */
+	public int size() {
+		return instructions.length;
+	}
+
+	public Instruction getInstruction(int index) {
+		return instructions[index];
+	}
+
+	public int getRdest(int index) {
+		return rdest[index];
+	}
+
+	public int getRsrc1(int index) {
+		return rsrc1[index];
+	}
+
+	public int getRsrc2(int index) {
+		return rsrc2[index];
+	}
+
+	/**
+	 * Returns the amount of words in the data image
+	 *
+	 * @return the size of the data image in words
+	 */
+	public int getDataSize() {
+		return data.length;
+	}
+
+	/**
+	 * Returns a word of the data image
+	 *
+	 * @param index
+	 *            the index of the word; the word is at address index * 4
+	 * @return the initial value of the word
+	 */
+	public int getData(int index) {
+		return data[index];
+	}
+
+	/**
+	 * Returns the instructions of the program
+	 *
+	 * @return an unmodifiable list of the instructions in program order
+	 */
+	public List<Instruction> getInstructions() {
+		return Collections.unmodifiableList(Arrays.asList(instructions));
+	}
+}
@@ -1,45 +1,93 @@
 package org.binghamton.comparch.systems;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
+/**
+ * The reorder buffer, kept as a ring buffer of entries. Every slot of the ring
+ * is allocated once, together with the decoded instruction and the IQ entry
+ * that belong to it, and is handed out again whenever a new instruction is
+ * dispatched into it. An entry is only recycled after it has been retired or
+ * squashed, by then nothing in the pipeline refers to it anymore.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
 public class ROB {
-	private LinkedList<ROBEntry> list;
-	private int capacity;
+	private final ROBEntry[] entries;
+
+	/* Index of the oldest entry and the amount of entries in the ring */
+	private int head;
+	private int size;
 
 	public ROB(int capacity) {
-		this.list = new LinkedList<ROBEntry>();
-		this.capacity = capacity;
+		this.entries = new ROBEntry[capacity];
+		for (int i = 0; i < entries.length; i += 1) {
+			entries[i] = new ROBEntry();
+		}
+
+		this.head = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Appends a recycled entry to the end of the ROB. The entry, its decoded
+	 * instruction and its IQ entry are reset and have to be filled in by the
+	 * caller.
+	 *
+	 * @param instructionAddress
+	 *            the address of the dispatched instruction
+	 * @return the newly added entry
+	 * @throws RuntimeException
+	 *             if the ROB is full
+	 */
+	public ROBEntry add(int instructionAddress) {
+		if (isFull()) {
+			throw new RuntimeException("ROB is full, can not add new instruction");
+		}
+
+		ROBEntry entry = entries[(head + size) % entries.length];
+		entry.reset(instructionAddress);
+		size += 1;
+
+		return entry;
 	}
 
-	public void add(ROBEntry newEntry) {
-		list.addLast(newEntry);
+	public int getCapacity() {
+		return entries.length;
 	}
 
 	public boolean isFull() {
-		return list.size() >= capacity;
+		return size >= entries.length;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
 	}
 
 	public boolean canRetire() {
-		if (list.isEmpty()) {
+		if (isEmpty()) {
 			return false;
 		}
 
-		ROBEntry entry = list.getFirst();
+		return entries[head].getStatus();
+	}
 
-		if (entry != null) {
-			return entry.getStatus();
-		} else {
-			return false;
+	public boolean containsDestReg(List<InstructionType> types) {
+		for (int i = 0; i < size; i += 1) {
+			ROBEntry entry = get(i);
+
+			if (types.contains(entry.getInstruction().getOpCode()) && entry.getDestRegister() != null) {
+				return true;
+			}
 		}
-	}
 
+		return false;
+	}
 
 	public Register getLatestDestReg(List<InstructionType> types) {
-		for (Iterator<ROBEntry> itr = list.descendingIterator(); itr.hasNext();) {
-			ROBEntry entry = itr.next();
+		for (int i = size - 1; i >= 0; i -= 1) {
+			ROBEntry entry = get(i);
 			DecodedInstruction instruction = entry.getInstruction();
 
 			if (types.contains(instruction.getOpCode()) && entry.getDestRegister() != null) {
@@ -51,31 +99,106 @@ public class ROB {
 
 	}
 
-	public void removeAll(Collection<ROBEntry> entries) {
-		list.removeAll(entries);
+	public ROBEntry peek() {
+		return isEmpty() ? null : entries[head];
 	}
 
 	public ROBEntry retire() {
-		return list.removeFirst();
+		if (isEmpty()) {
+			throw new RuntimeException("Can not retire from an empty ROB");
+		}
+
+		ROBEntry entry = entries[head];
+		head = (head + 1) % entries.length;
+		size -= 1;
+
+		return entry;
 	}
-	
-	public List<ROBEntry> getEntries() {
-		return list;
+
+	/**
+	 * Returns the amount of entries in the ROB
+	 *
+	 * @return the amount of entries in the ROB
+	 */
+	public int size() {
+		return size;
 	}
-	
+
+	/**
+	 * Returns the entry at the index, the oldest entry is at index 0
+	 *
+	 * @param index
+	 *            the index of the entry
+	 * @return the entry at the index
+	 */
+	public ROBEntry get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("ROB index " + index + " is out of range");
+		}
+
+		return entries[(head + index) % entries.length];
+	}
+
 	public void clear() {
-		list.clear();
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Returns the entry in a slot of the ring, whether it is in use or not
+	 * 
+	 * @param slot
+	 *            the index of the slot
+	 * @return the entry of the slot
+	 */
+	ROBEntry getSlot(int slot) {
+		return entries[slot];
+	}
+
+	/**
+	 * Returns the slot of the ring an entry belongs to
+	 * 
+	 * @param entry
+	 *            an entry of this ROB
+	 * @return the index of its slot
+	 */
+	int getSlotIndex(ROBEntry entry) {
+		for (int i = 0; i < entries.length; i += 1) {
+			if (entries[i] == entry) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException("Entry is not in the ROB");
+	}
+
+	/**
+	 * Takes over every slot of a ROB of the same capacity, and which of them
+	 * are in use
+	 * 
+	 * @param other
+	 *            the ROB
+	 * @param map
+	 *            the registers that stand for those of the other ROB
+	 */
+	void copyFrom(ROB other, StateMap map) {
+		for (int i = 0; i < entries.length; i += 1) {
+			entries[i].copyFrom(other.entries[i], map);
+		}
+
+		head = other.head;
+		size = other.size;
 	}
 
 	@Override
 	public String toString() {
 		String str = "";
 
-		if (list.isEmpty()) {
+		if (isEmpty()) {
 			str += "Empty\n";
 		} else {
-			for (ROBEntry entry : list) {
-				str += entry.toString() + "\n";
+			for (int i = 0; i < size; i += 1) {
+				str += get(i).toString() + "\n";
 			}
 		}
 
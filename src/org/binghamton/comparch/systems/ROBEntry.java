@@ -1,27 +1,76 @@
 package org.binghamton.comparch.systems;
 
 public class ROBEntry {
-	private DecodedInstruction instruction;
+	private final DecodedInstruction instruction;
+	private final IQEntry iqEntry;
 	private int instructionAddress;
 	private int archRegister;
 	private Register destRegister;
 	private boolean status;
 	private boolean takenBranch;
 	private int takenAddress;
+	private int memoryAddress;
+	private boolean memoryAccessed;
+	private int storeValue;
+	private boolean memoryViolation;
 
-	public ROBEntry(DecodedInstruction instruction, int instructionAddress) {
-		this.instruction = instruction;
+	public ROBEntry() {
+		this.instruction = new DecodedInstruction(null, null, null, null, 0);
+		this.iqEntry = new IQEntry(this.instruction, 0);
+		this.iqEntry.setROBEntry(this);
+		reset(0);
+	}
+
+	/**
+	 * Gets the entry ready to hold a newly dispatched instruction
+	 * 
+	 * @param instructionAddress
+	 *            the address of the dispatched instruction
+	 */
+	public void reset(int instructionAddress) {
 		this.instructionAddress = instructionAddress;
+		this.archRegister = -1;
 		this.destRegister = null;
 		this.status = false;
 		this.takenBranch = false;
 		this.takenAddress = 0;
+		this.memoryAddress = 0;
+		this.memoryAccessed = false;
+		this.storeValue = 0;
+		this.memoryViolation = false;
+	}
+
+	/**
+	 * Takes over another ROB entry along with its instruction and IQ entry
+	 * 
+	 * @param other
+	 *            the ROB entry
+	 * @param map
+	 *            the registers that stand for those of the other entry
+	 */
+	void copyFrom(ROBEntry other, StateMap map) {
+		this.instruction.copyFrom(other.instruction, map);
+		this.iqEntry.copyFrom(other.iqEntry);
+		this.instructionAddress = other.instructionAddress;
+		this.archRegister = other.archRegister;
+		this.destRegister = map.map(other.destRegister);
+		this.status = other.status;
+		this.takenBranch = other.takenBranch;
+		this.takenAddress = other.takenAddress;
+		this.memoryAddress = other.memoryAddress;
+		this.memoryAccessed = other.memoryAccessed;
+		this.storeValue = other.storeValue;
+		this.memoryViolation = other.memoryViolation;
 	}
 
 	public DecodedInstruction getInstruction() {
 		return instruction;
 	}
 
+	public IQEntry getIQEntry() {
+		return iqEntry;
+	}
+
 	public int getInstructionAddress() {
 		return instructionAddress;
 	}
@@ -66,6 +115,35 @@ public class ROBEntry {
 		this.takenAddress = takenAddress;
 	}
 
+	public int getMemoryAddress() {
+		return memoryAddress;
+	}
+
+	public boolean isMemoryAccessed() {
+		return memoryAccessed;
+	}
+
+	public void setMemoryAccess(int memoryAddress) {
+		this.memoryAddress = memoryAddress;
+		this.memoryAccessed = true;
+	}
+
+	public int getStoreValue() {
+		return storeValue;
+	}
+
+	public void setStoreValue(int storeValue) {
+		this.storeValue = storeValue;
+	}
+
+	public boolean isMemoryViolation() {
+		return memoryViolation;
+	}
+
+	public void setMemoryViolation(boolean memoryViolation) {
+		this.memoryViolation = memoryViolation;
+	}
+
 	@Override
 	public String toString() {
 		return instruction.toString();
@@ -62,6 +62,17 @@ public class Register {
 		this.valid = newValid;
 	}
 
+	/**
+	 * Takes over the value and valid bit of another register
+	 * 
+	 * @param other
+	 *            the register
+	 */
+	void copyFrom(Register other) {
+		this.value = other.value;
+		this.valid = other.valid;
+	}
+
 	@Override
 	public boolean equals(Object other) {
 		if (other instanceof Register) {
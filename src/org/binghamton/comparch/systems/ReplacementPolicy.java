@@ -0,0 +1,16 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * The policy a cache uses to pick which line of a set is evicted on a miss.
+ * 
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public enum ReplacementPolicy {
+	/* True least recently used */
+	LRU,
+
+	/* Tree based pseudo least recently used */
+	PLRU;
+}
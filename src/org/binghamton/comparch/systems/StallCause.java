@@ -0,0 +1,25 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * The reasons the front end of the processor can stall in a cycle.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public enum StallCause {
+	/* A taken branch is waiting to commit */
+	TAKEN_BRANCH,
+
+	/* A branch is in the IQ while another one waits in DRF */
+	BRANCH_DISPATCH,
+
+	/* The IQ has no room for the instruction in DRF2 */
+	IQ_FULL,
+
+	/* The ROB has no room for the instruction in DRF2 */
+	ROB_FULL,
+
+	/* The instruction in DRF1 needs a physical register and none is free */
+	NO_PHYSICAL_REGISTER;
+}
@@ -0,0 +1,33 @@
+package org.binghamton.comparch.systems;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a run of cycles in which the front end stalled
+ * because the IQ was full or the URF had no free physical register.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+@Name("org.binghamton.comparch.StallEpisode")
+@Label("Stall Episode")
+@Description("Consecutive cycles the front end stalled on a full IQ or an exhausted URF")
+@Category({ "CPU Emulator", "Processor" })
+@Enabled(false)
+@StackTrace(false)
+class StallEpisodeEvent extends jdk.jfr.Event {
+	@Label("Cause")
+	String cause;
+
+	@Label("Start Cycle")
+	long startCycle;
+
+	@Label("Cycles")
+	long cycles;
+}
@@ -0,0 +1,65 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * Pairs the registers and IQ entries of one processor with those of another
+ * processor of the same shape, so that state copied from the first refers to
+ * the objects of the second. Physical registers are paired by their index in
+ * the URF, the register BZ and BNZ read when no arithmetic instruction is in
+ * flight with its counterpart, and IQ entries by the slot of the ROB that owns
+ * them.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+final class StateMap {
+	private final URF fromURF;
+	private final Register fromFlag;
+	private final ROB fromROB;
+	private final URF toURF;
+	private final Register toFlag;
+	private final ROB toROB;
+
+	StateMap(URF fromURF, Register fromFlag, ROB fromROB, URF toURF, Register toFlag, ROB toROB) {
+		this.fromURF = fromURF;
+		this.fromFlag = fromFlag;
+		this.fromROB = fromROB;
+		this.toURF = toURF;
+		this.toFlag = toFlag;
+		this.toROB = toROB;
+	}
+
+	/**
+	 * Returns the register that stands for a register of the other processor
+	 *
+	 * @param register
+	 *            the register of the other processor, may be null
+	 * @return the register; null if the register is null or no longer in the
+	 *         URF, which only happens for entries that have left the ROB
+	 */
+	Register map(Register register) {
+		if (register == null) {
+			return null;
+		} else if (register == fromFlag) {
+			return toFlag;
+		}
+
+		int index = fromURF.findPhysicalRegister(register);
+		return (index < 0 || index >= toURF.getPhysicalRegisterSize()) ? null : toURF.getPhysicalRegister(index);
+	}
+
+	/**
+	 * Returns the IQ entry that stands for an IQ entry of the other processor
+	 *
+	 * @param entry
+	 *            the IQ entry of the other processor, may be null
+	 * @return the IQ entry; null if the entry is null
+	 */
+	IQEntry map(IQEntry entry) {
+		if (entry == null) {
+			return null;
+		}
+
+		return toROB.getSlot(fromROB.getSlotIndex(entry.getROBEntry())).getIQEntry();
+	}
+}
@@ -0,0 +1,160 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * A store set memory dependence predictor. Every LOAD and STORE is mapped, by
+ * its instruction address, into the store set identifier table (SSIT). A LOAD
+ * that has been caught reading memory before an older STORE wrote it is placed
+ * into the same store set as that STORE. From then on the LOAD is predicted to
+ * depend on any older STORE of its set and will not be issued ahead of it.
+ * Instructions that have never been part of a violation have no store set and
+ * are free to be issued speculatively.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class StoreSetPredictor {
+	private static final int NO_STORE_SET = -1;
+
+	/* Store set identifier table, indexed by instruction address */
+	private final int[] ssit;
+
+	/* The next store set identifier that will be handed out */
+	private int nextStoreSet;
+
+	/* Predictor Statistics */
+	private int lookups;
+	private int predictedDependences;
+
+	/**
+	 * Constructs a store set predictor
+	 *
+	 * @param size
+	 *            the amount of entries in the store set identifier table
+	 */
+	public StoreSetPredictor(int size) {
+		this.ssit = new int[size];
+		clear();
+	}
+
+	/**
+	 * Removes every instruction from its store set and resets the statistics
+	 */
+	public void clear() {
+		for (int i = 0; i < ssit.length; i += 1) {
+			ssit[i] = NO_STORE_SET;
+		}
+
+		this.nextStoreSet = 0;
+		this.lookups = 0;
+		this.predictedDependences = 0;
+	}
+
+	/**
+	 * Takes over the store sets and statistics of a predictor of the same size
+	 * 
+	 * @param other
+	 *            the predictor
+	 */
+	void copyFrom(StoreSetPredictor other) {
+		System.arraycopy(other.ssit, 0, ssit, 0, ssit.length);
+		this.nextStoreSet = other.nextStoreSet;
+		this.lookups = other.lookups;
+		this.predictedDependences = other.predictedDependences;
+	}
+
+	private int index(int address) {
+		return (address / 4) % ssit.length;
+	}
+
+	/**
+	 * Returns if the LOAD is predicted to read a value written by the older
+	 * STORE.
+	 *
+	 * @param loadAddress
+	 *            the instruction address of the LOAD
+	 * @param storeAddress
+	 *            the instruction address of the older STORE
+	 * @return true if both instructions belong to the same store set; false
+	 *         otherwise
+	 */
+	public boolean predictsDependence(int loadAddress, int storeAddress) {
+		int loadSet = ssit[index(loadAddress)];
+
+		return loadSet != NO_STORE_SET && loadSet == ssit[index(storeAddress)];
+	}
+
+	/**
+	 * Counts a LOAD the predictor was consulted for. A LOAD that waits in the
+	 * IQ is asked about again every cycle, but only counted once.
+	 *
+	 * @param dependent
+	 *            true if a dependence on an older STORE was predicted
+	 */
+	public void recordLookup(boolean dependent) {
+		this.lookups += 1;
+		if (dependent) {
+			this.predictedDependences += 1;
+		}
+	}
+
+	/**
+	 * Trains the predictor after the LOAD was found to have executed before the
+	 * older STORE it depends on. Both instructions end up in the same store
+	 * set.
+	 *
+	 * @param storeAddress
+	 *            the instruction address of the STORE
+	 * @param loadAddress
+	 *            the instruction address of the LOAD
+	 */
+	public void recordViolation(int storeAddress, int loadAddress) {
+		int storeIndex = index(storeAddress);
+		int loadIndex = index(loadAddress);
+		int storeSet = ssit[storeIndex];
+		int loadSet = ssit[loadIndex];
+
+		if (storeSet == NO_STORE_SET && loadSet == NO_STORE_SET) {
+			/* Neither has a set, create a new one */
+			ssit[storeIndex] = nextStoreSet;
+			ssit[loadIndex] = nextStoreSet;
+			nextStoreSet += 1;
+		} else if (storeSet == NO_STORE_SET) {
+			ssit[storeIndex] = loadSet;
+		} else if (loadSet == NO_STORE_SET) {
+			ssit[loadIndex] = storeSet;
+		} else {
+			/* Merge the two sets, the smaller identifier wins */
+			int winner = Math.min(storeSet, loadSet);
+			ssit[storeIndex] = winner;
+			ssit[loadIndex] = winner;
+		}
+	}
+
+	/**
+	 * Returns the amount of store sets that have been created
+	 *
+	 * @return the amount of store sets that have been created
+	 */
+	public int getStoreSetCount() {
+		return this.nextStoreSet;
+	}
+
+	/**
+	 * Returns the amount of LOADs the predictor was consulted for
+	 *
+	 * @return the amount of LOADs the predictor was consulted for
+	 */
+	public int getLookups() {
+		return this.lookups;
+	}
+
+	/**
+	 * Returns the amount of LOADs the predictor predicted a dependence for
+	 *
+	 * @return the amount of LOADs the predictor predicted a dependence for
+	 */
+	public int getPredictedDependences() {
+		return this.predictedDependences;
+	}
+}
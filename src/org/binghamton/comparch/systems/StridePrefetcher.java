@@ -0,0 +1,99 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * A stride prefetcher with a reference prediction table indexed by the address
+ * of the LOAD or STORE instruction. Each entry remembers the last address the
+ * instruction accessed and the stride between its last two accesses. Once the
+ * same stride has been seen twice in a row, the next addresses along the
+ * stride are prefetched.
+ * 
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class StridePrefetcher implements Prefetcher {
+	private static final int NO_INSTRUCTION = -1;
+	private static final int MAX_CONFIDENCE = 3;
+	private static final int PREFETCH_CONFIDENCE = 1;
+
+	private final Cache cache;
+	private final int degree;
+
+	/* Reference prediction table */
+	private final int[] instructions;
+	private final int[] lastAddresses;
+	private final int[] strides;
+	private final int[] confidences;
+
+	/**
+	 * Constructs a stride prefetcher
+	 * 
+	 * @param cache
+	 *            the cache the lines are prefetched into
+	 * @param size
+	 *            the amount of entries in the reference prediction table
+	 * @param degree
+	 *            the amount of strides prefetched ahead of the access
+	 */
+	public StridePrefetcher(Cache cache, int size, int degree) {
+		this.cache = cache;
+		this.degree = degree;
+		this.instructions = new int[size];
+		this.lastAddresses = new int[size];
+		this.strides = new int[size];
+		this.confidences = new int[size];
+
+		clear();
+	}
+
+	@Override
+	public void train(int pc, int address, boolean miss, long now) {
+		int index = (pc / 4) % instructions.length;
+
+		/* Take over the entry if it belongs to another instruction */
+		if (instructions[index] != pc) {
+			instructions[index] = pc;
+			lastAddresses[index] = address;
+			strides[index] = 0;
+			confidences[index] = 0;
+			return;
+		}
+
+		int stride = address - lastAddresses[index];
+		if (stride == strides[index]) {
+			confidences[index] = Math.min(confidences[index] + 1, MAX_CONFIDENCE);
+		} else {
+			confidences[index] = Math.max(confidences[index] - 1, 0);
+			if (confidences[index] == 0) {
+				strides[index] = stride;
+			}
+		}
+		lastAddresses[index] = address;
+
+		if (confidences[index] >= PREFETCH_CONFIDENCE && strides[index] != 0) {
+			for (int i = 1; i <= degree; i += 1) {
+				cache.prefetch(address + i * strides[index], now);
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < instructions.length; i += 1) {
+			instructions[i] = NO_INSTRUCTION;
+			lastAddresses[i] = 0;
+			strides[i] = 0;
+			confidences[i] = 0;
+		}
+	}
+
+	@Override
+	public void copyFrom(Prefetcher other) {
+		StridePrefetcher stride = (StridePrefetcher) other;
+
+		System.arraycopy(stride.instructions, 0, instructions, 0, instructions.length);
+		System.arraycopy(stride.lastAddresses, 0, lastAddresses, 0, lastAddresses.length);
+		System.arraycopy(stride.strides, 0, strides, 0, strides.length);
+		System.arraycopy(stride.confidences, 0, confidences, 0, confidences.length);
+	}
+}
@@ -0,0 +1,41 @@
+package org.binghamton.comparch.systems;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for an interval of simulated cycles. The duration of
+ * the event is the host time the interval took, so it can be lined up with
+ * what the JVM was doing at the same time.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+@Name("org.binghamton.comparch.Throughput")
+@Label("Simulation Throughput")
+@Description("Simulated cycles and committed instructions of an interval of the simulation")
+@Category({ "CPU Emulator", "Processor" })
+@Enabled(false)
+@StackTrace(false)
+class ThroughputEvent extends jdk.jfr.Event {
+	@Label("Start Cycle")
+	long startCycle;
+
+	@Label("Cycles")
+	long cycles;
+
+	@Label("Instructions Committed")
+	long instructions;
+
+	@Label("IPC")
+	double ipc;
+
+	@Label("Cycles per Second")
+	@Description("Simulated cycles for every second of host time")
+	double cyclesPerSecond;
+}
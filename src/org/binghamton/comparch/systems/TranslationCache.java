@@ -0,0 +1,217 @@
+package org.binghamton.comparch.systems;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the basic blocks of a program and translates the ones that are executed
+ * often into JVM bytecode. A block is interpreted until it has run a certain
+ * amount of times, after that it is translated and runs as a hidden class that
+ * the JIT can compile like any other code.
+ *
+ * The translated code is kept within a budget, counted in bytes of class file.
+ * When a new block does not fit, the translated blocks that ran least recently
+ * are evicted. An evicted block goes back to being interpreted and is
+ * translated again once it becomes hot again.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class TranslationCache {
+	public static final int DEFAULT_CODE_BUDGET = 1 << 20;
+	public static final int DEFAULT_HOT_THRESHOLD = 16;
+	public static final int MAX_BLOCK_LENGTH = 256;
+
+	private final int codeBudget;
+	private final int hotThreshold;
+
+	/* The program the blocks are part of */
+	private Program program;
+
+	/* Block starting at each instruction (null until the instruction starts a block) */
+	private BasicBlock[] blocks;
+
+	/* Blocks that currently have translated code */
+	private final List<BasicBlock> translated;
+	private int codeSize;
+	private long clock;
+
+	/* Cache Statistics */
+	private int blocksTranslated;
+	private int blocksEvicted;
+	private long translatedExecutions;
+	private long interpretedExecutions;
+
+	/**
+	 * Constructs a translation cache
+	 *
+	 * @param codeBudget
+	 *            the most bytes of class file that may be translated at once
+	 * @param hotThreshold
+	 *            the amount of times a block has to run before it is translated
+	 * @throws IllegalArgumentException
+	 *             if the budget is negative or the threshold is less than one
+	 */
+	public TranslationCache(int codeBudget, int hotThreshold) {
+		if (codeBudget < 0) {
+			throw new IllegalArgumentException("Code budget can not be negative");
+		} else if (hotThreshold < 1) {
+			throw new IllegalArgumentException("Hot threshold must be at least one");
+		}
+
+		this.codeBudget = codeBudget;
+		this.hotThreshold = hotThreshold;
+		this.translated = new ArrayList<BasicBlock>();
+		load(new Program(new Instruction[0], new int[0], new int[0], new int[0]));
+	}
+
+	/**
+	 * Throws away every block and starts over with a new program
+	 *
+	 * @param program
+	 *            the program
+	 */
+	public void load(Program program) {
+		this.program = program;
+		this.blocks = new BasicBlock[program.size()];
+		this.translated.clear();
+		this.codeSize = 0;
+		this.clock = 0;
+
+		this.blocksTranslated = 0;
+		this.blocksEvicted = 0;
+		this.translatedExecutions = 0;
+		this.interpretedExecutions = 0;
+	}
+
+	/**
+	 * Returns the block that starts with the instruction, finding the block the
+	 * first time it is asked for
+	 *
+	 * @param index
+	 *            the index of the first instruction in the program
+	 * @return the block starting with the instruction
+	 */
+	public BasicBlock getBlock(int index) {
+		BasicBlock block = this.blocks[index];
+
+		if (block == null) {
+			int end = index;
+
+			while (end < program.size() && (end - index) < MAX_BLOCK_LENGTH) {
+				end += 1;
+
+				if (BlockCompiler.endsBlock(program.getInstruction(end - 1))) {
+					break;
+				}
+			}
+
+			block = new BasicBlock(index, end - index);
+			this.blocks[index] = block;
+		}
+
+		return block;
+	}
+
+	/**
+	 * Records that the block is about to run and returns its translated code.
+	 * The block is translated here once it becomes hot.
+	 *
+	 * @param block
+	 *            the block that is about to run
+	 * @return the translated code; null if the block has to be interpreted
+	 */
+	public CompiledBlock enter(BasicBlock block) {
+		this.clock += 1;
+		block.setLastUsed(this.clock);
+
+		if (block.getCode() == null && block.isTranslatable()) {
+			block.setExecutions(block.getExecutions() + 1);
+
+			if (block.getExecutions() >= hotThreshold) {
+				translate(block);
+			}
+		}
+
+		if (block.getCode() == null) {
+			this.interpretedExecutions += 1;
+		} else {
+			this.translatedExecutions += 1;
+		}
+
+		return block.getCode();
+	}
+
+	private void translate(BasicBlock block) {
+		byte[] classFile = BlockCompiler.translate(program, block);
+
+		/* A block that can never fit is interpreted for good */
+		if (classFile.length > codeBudget) {
+			block.setTranslatable(false);
+			return;
+		}
+
+		while (codeSize + classFile.length > codeBudget) {
+			evictLeastRecentlyUsed();
+		}
+
+		block.setCode(BlockCompiler.define(classFile), classFile.length);
+		this.translated.add(block);
+		this.codeSize += classFile.length;
+		this.blocksTranslated += 1;
+	}
+
+	private void evictLeastRecentlyUsed() {
+		int victim = 0;
+
+		for (int i = 1; i < translated.size(); i += 1) {
+			if (translated.get(i).getLastUsed() < translated.get(victim).getLastUsed()) {
+				victim = i;
+			}
+		}
+
+		BasicBlock block = translated.remove(victim);
+		this.codeSize -= block.getCodeSize();
+		block.setCode(null, 0);
+		block.setExecutions(0);
+		this.blocksEvicted += 1;
+	}
+
+	public int getCodeBudget() {
+		return codeBudget;
+	}
+
+	public int getHotThreshold() {
+		return hotThreshold;
+	}
+
+	/**
+	 * Returns the bytes of class file of the blocks that are translated now
+	 *
+	 * @return the size of the translated code
+	 */
+	public int getCodeSize() {
+		return codeSize;
+	}
+
+	public int getTranslatedBlockCount() {
+		return translated.size();
+	}
+
+	public int getBlocksTranslated() {
+		return blocksTranslated;
+	}
+
+	public int getBlocksEvicted() {
+		return blocksEvicted;
+	}
+
+	public long getTranslatedExecutions() {
+		return translatedExecutions;
+	}
+
+	public long getInterpretedExecutions() {
+		return interpretedExecutions;
+	}
+}
@@ -1,5 +1,7 @@
 package org.binghamton.comparch.systems;
 
+import java.util.Arrays;
+
 public class URF {
 	/* Mapping from architectural register to physical register */
 	private int renameArray[];
@@ -13,6 +15,9 @@ public class URF {
 	/* Weather a physical register is allocated or not */
 	private boolean allocationList[];
 
+	/* Amount of physical registers that are allocated */
+	private int allocatedCount;
+
 	public URF(int architecturalSize, int physicalSize) {
 		/* Allocate the physical registers */
 		physicalRegisters = new Register[physicalSize];
@@ -59,6 +64,7 @@ public class URF {
 		for (int i = 0; i < allocationList.length; i += 1) {
 			allocationList[i] = false;
 		}
+		allocatedCount = 0;
 	}
 
 	public void setPhysicalRegisterSize(int newSize) {
@@ -78,6 +84,32 @@ public class URF {
 		clear();
 	}
 
+	/**
+	 * Changes the amount of physical registers while the processor runs. The
+	 * registers that are kept keep their values and mappings, and the new
+	 * ones are free.
+	 * 
+	 * @param newSize
+	 *            the amount of physical registers
+	 * @throws IllegalArgumentException
+	 *             if a register that would be removed is allocated
+	 */
+	public void resizePhysicalRegisters(int newSize) {
+		for (int i = newSize; i < allocationList.length; i += 1) {
+			if (allocationList[i]) {
+				throw new IllegalArgumentException("Physical register P" + i + " is in use");
+			}
+		}
+
+		Register[] registers = Arrays.copyOf(physicalRegisters, newSize);
+		for (int i = physicalRegisters.length; i < newSize; i += 1) {
+			registers[i] = new Register("P" + String.valueOf(i));
+		}
+
+		physicalRegisters = registers;
+		allocationList = Arrays.copyOf(allocationList, newSize);
+	}
+
 	private int getFreePhysicalRegister() {
 		for (int i = 0; i < allocationList.length; i += 1) {
 			if (allocationList[i] == false) {
@@ -88,7 +120,7 @@ public class URF {
 		return -1;
 	}
 
-	private int findPhysicalRegister(Register phyRegister) {
+	int findPhysicalRegister(Register phyRegister) {
 		for (int i = 0; i < physicalRegisters.length; i += 1) {
 			if (physicalRegisters[i].equals(phyRegister)) {
 				return i;
@@ -144,6 +176,9 @@ public class URF {
 			throw new RuntimeException("Invalid physical register");
 		}
 
+		if (allocationList[instance]) {
+			allocatedCount -= 1;
+		}
 		allocationList[instance] = false;
 		physicalRegister.setValid(false);
 	}
@@ -155,6 +190,9 @@ public class URF {
 			throw new RuntimeException("Invalid physical register");
 		}
 
+		if (!allocationList[instance]) {
+			allocatedCount += 1;
+		}
 		allocationList[instance] = true;
 		renameArray[architecturalRegister] = instance;
 	}
@@ -168,6 +206,9 @@ public class URF {
 
 		/* Check to see if we deallocate old register */
 		if (retirementArray[architecturalRegister] != -1) {
+			if (allocationList[retirementArray[architecturalRegister]]) {
+				allocatedCount -= 1;
+			}
 			allocationList[retirementArray[architecturalRegister]] = false;
 			physicalRegisters[retirementArray[architecturalRegister]].setValid(false);
 		}
@@ -177,8 +218,69 @@ public class URF {
 		physicalRegister.setValid(true);
 	}
 
+	/**
+	 * Maps the architectural register to a free physical register holding the
+	 * value, as if an instruction writing it had committed
+	 * 
+	 * @param architecturalRegister
+	 *            the architectural register
+	 * @param value
+	 *            the value
+	 * @throws IllegalArgumentException
+	 *             if there is no free physical register
+	 */
+	public void setArchitecturalRegister(int architecturalRegister, int value) {
+		if (!hasPhysicalRegisterAvailable()) {
+			throw new IllegalArgumentException("No physical register is free for R" + architecturalRegister);
+		}
+
+		Register physicalRegister = allocatePhysicalRegister();
+		physicalRegister.setValue(value);
+		updateMapping(architecturalRegister, physicalRegister);
+		commitRegister(architecturalRegister, physicalRegister);
+	}
+
 	public void rollback() {
-		renameArray = retirementArray.clone();
+		System.arraycopy(retirementArray, 0, renameArray, 0, renameArray.length);
+	}
+
+	/**
+	 * Takes over the mappings, the allocated registers and the values of
+	 * another URF, along with its amount of physical registers
+	 * 
+	 * @param other
+	 *            the URF
+	 */
+	void copyFrom(URF other) {
+		if (physicalRegisters.length != other.physicalRegisters.length) {
+			Register[] registers = Arrays.copyOf(physicalRegisters, other.physicalRegisters.length);
+			for (int i = physicalRegisters.length; i < registers.length; i += 1) {
+				registers[i] = new Register("P" + String.valueOf(i));
+			}
+
+			physicalRegisters = registers;
+			allocationList = new boolean[registers.length];
+		}
+
+		for (int i = 0; i < physicalRegisters.length; i += 1) {
+			physicalRegisters[i].copyFrom(other.physicalRegisters[i]);
+		}
+		System.arraycopy(other.renameArray, 0, renameArray, 0, renameArray.length);
+		System.arraycopy(other.retirementArray, 0, retirementArray, 0, retirementArray.length);
+		System.arraycopy(other.allocationList, 0, allocationList, 0, allocationList.length);
+		allocatedCount = other.allocatedCount;
+	}
+
+	public int getPhysicalRegisterSize() {
+		return physicalRegisters.length;
+	}
+
+	public int getAllocatedCount() {
+		return allocatedCount;
+	}
+
+	public Register getPhysicalRegister(int index) {
+		return physicalRegisters[index];
 	}
 
 	public Register getRenamedRegister(int architecturalRegister) {
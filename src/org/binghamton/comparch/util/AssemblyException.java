@@ -0,0 +1,59 @@
+package org.binghamton.comparch.util;
+
+/**
+ * Thrown when a program file can not be assembled. The exception points to the
+ * line and column of the character the assembler did not expect.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class AssemblyException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private final String file;
+	private final int line;
+	private final int column;
+	private final String reason;
+
+	/**
+	 * Constructs an assembly exception
+	 *
+	 * @param file
+	 *            the file that was being assembled
+	 * @param line
+	 *            the line of the error, starting at one
+	 * @param column
+	 *            the column of the error, starting at one
+	 * @param reason
+	 *            what was wrong
+	 */
+	public AssemblyException(String file, int line, int column, String reason) {
+		super(String.format("%s:%d:%d: %s", file, line, column, reason));
+		this.file = file;
+		this.line = line;
+		this.column = column;
+		this.reason = reason;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * Returns what was wrong, without the file, line and column
+	 *
+	 * @return the reason of the error
+	 */
+	public String getReason() {
+		return reason;
+	}
+}
@@ -0,0 +1,54 @@
+package org.binghamton.comparch.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a file the emulator reads or writes: programs,
+ * object files and exported statistics. The duration of the event is the time
+ * the operation took.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+@Name("org.binghamton.comparch.FileIO")
+@Label("Emulator File I/O")
+@Description("A file read or written by the emulator")
+@Category({ "CPU Emulator", "I/O" })
+@Enabled(false)
+@StackTrace(false)
+public class FileIOEvent extends jdk.jfr.Event {
+	@Label("Operation")
+	private String operation;
+
+	@Label("Path")
+	private String path;
+
+	@Label("Bytes")
+	@DataAmount
+	private long bytes;
+
+	/**
+	 * Constructs the event and starts timing it
+	 *
+	 * @param operation
+	 *            what is done to the file
+	 * @param path
+	 *            the file
+	 */
+	public FileIOEvent(String operation, String path) {
+		this.operation = operation;
+		this.path = path;
+		begin();
+	}
+
+	public void setBytes(long bytes) {
+		this.bytes = bytes;
+	}
+}
@@ -1,134 +1,608 @@
 package org.binghamton.comparch.util;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.binghamton.comparch.systems.Instruction;
 import org.binghamton.comparch.systems.InstructionType;
+import org.binghamton.comparch.systems.Processor;
+import org.binghamton.comparch.systems.Program;
 
+/**
+ * Assembles a program file in a single pass. The file is memory mapped and
+ * read as bytes, since the assembly language only uses ASCII. The mnemonic
+ * decides which operands are read next, and the registers are decoded right
+ * away, so the result is a Program that can be loaded without any more
+ * decoding.
+ *
+ * Large files are split into chunks at line boundaries, a few for every thread
+ * of the parallelism, and the chunks are assembled in parallel on the common
+ * fork/join pool. With a parallelism of one, a file is assembled as one chunk
+ * on the calling thread unless it is too large to be mapped at once. The
+ * instructions of the chunks are put back together in file order, and an
+ * error is reported at the line it has in the whole file, so the result is the
+ * same as assembling the file in one go.
+ *
+ * Blank lines and spaces or tabs around the mnemonic and the operands are
+ * allowed. Anything else that does not fit is reported with the line and
+ * column it was found at.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
 public class InstructionParser {
-	/* Regex patterns */
-	private static final Pattern REG_TO_REG_PATTERN = Pattern
-			.compile("(?<opCode>ADD|SUB|MUL|AND|OR|EX-OR)\\s+(?<rdest>R\\d+),\\s+(?<rsrc1>R\\d+),\\s+(?<rsrc2>R\\d+)");
-	private static final Pattern MOVC_PATTERN = Pattern.compile("MOVC\\s+(?<rdest>R\\d+),\\s+#\\s*(?<literal>(\\+|-)?\\d+)");
-	private static final Pattern LOAD_PATTERN = Pattern.compile("LOAD\\s+(?<rdest>R\\d+),\\s+(?<rsrc1>R\\d+),\\s+#\\s*(?<literal>(\\+|-)?\\d+)");
-	private static final Pattern STORE_PATTERN = Pattern.compile("STORE\\s+(?<rsrc1>R\\d+),\\s+(?<rsrc2>R\\d+),\\s+#\\s*(?<literal>(\\+|-)?\\d+)");
-	private static final Pattern BR_PATTERN = Pattern.compile("(?<opCode>BZ|BNZ)\\s+#\\s*(?<literal>(\\+|-)?\\d+)");
-	private static final Pattern JUMP_PATTERN = Pattern.compile("JUMP\\s(?<rsrc1>(X|R\\d+)),\\s+#\\s*(?<literal>(\\+|-)?\\d+)");
-	private static final Pattern BAL_PATTERN = Pattern.compile("BAL\\s(?<rsrc1>R\\d+),\\s+#\\s*(?<literal>(\\+|-)?\\d+)");
-	private static final Pattern HALT_PATTERN = Pattern.compile("HALT");
+	/* Files smaller than this are assembled as one chunk on the calling thread */
+	private static final long MIN_CHUNK_SIZE = 1 << 20;
+
+	/* A mapped buffer can not be larger than this */
+	private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+	/* Chunks handed to every thread of the pool, so that threads that finish early can steal more work */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private static final int EOF = -1;
+
+	/* Mnemonics and the instruction each one stands for */
+	private static final String[] MNEMONICS = { "ADD", "SUB", "MUL", "AND", "OR", "EX-OR", "MOVC", "LOAD", "STORE",
+			"BZ", "BNZ", "JUMP", "BAL", "HALT" };
+	private static final InstructionType[] MNEMONIC_TYPES = { InstructionType.ADD, InstructionType.SUB,
+			InstructionType.MUL, InstructionType.AND, InstructionType.OR, InstructionType.XOR, InstructionType.MOVC,
+			InstructionType.LOAD, InstructionType.STORE, InstructionType.BZ, InstructionType.BNZ, InstructionType.JUMP,
+			InstructionType.BAL, InstructionType.HALT };
+	private static final int MAX_MNEMONIC_LENGTH = 5;
 
 	private String file;
+	private final int parallelism;
 
 	public InstructionParser(String file) {
-		this.file = file;
+		this(file, ForkJoinPool.getCommonPoolParallelism());
 	}
 
-	private InstructionType strToEnum(String opCode) {
-		switch (opCode) {
-		case "ADD":
-			return InstructionType.ADD;
-		case "SUB":
-			return InstructionType.SUB;
-		case "MUL":
-			return InstructionType.MUL;
-		case "AND":
-			return InstructionType.AND;
-		case "OR":
-			return InstructionType.OR;
-		case "EX-OR":
-			return InstructionType.XOR;
-		case "MOVC":
-			return InstructionType.MOVC;
-		case "LOAD":
-			return InstructionType.LOAD;
-		case "STORE":
-			return InstructionType.STORE;
-		case "BZ":
-			return InstructionType.BZ;
-		case "BNZ":
-			return InstructionType.BNZ;
-		case "JUMP":
-			return InstructionType.JUMP;
-		default:
-			throw new RuntimeException("Unkown opcode");
+	/**
+	 * Constructs a parser that splits large files for an amount of threads
+	 *
+	 * @param file
+	 *            the program file
+	 * @param parallelism
+	 *            the threads the chunks are sized for
+	 * @throws IllegalArgumentException
+	 *             if the parallelism is less than one
+	 */
+	public InstructionParser(String file, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least one thread");
 		}
+
+		this.file = file;
+		this.parallelism = parallelism;
 	}
 
+	/**
+	 * Assembles the file into a list of instructions. Errors reading the file
+	 * are printed and an empty list is returned.
+	 *
+	 * @return the instructions in program order
+	 * @throws AssemblyException
+	 *             if the file is not a valid program
+	 */
 	public List<Instruction> parserFile() {
-		ArrayList<Instruction> list = new ArrayList<Instruction>();
-
-		try (BufferedReader br = new BufferedReader(new FileReader(this.file))) {
-			for (String line; (line = br.readLine()) != null;) {
-				/* Try to match */
-				Matcher regToRegMatcher = REG_TO_REG_PATTERN.matcher(line);
-				Matcher movcMatcher = MOVC_PATTERN.matcher(line);
-				Matcher loadMatcher = LOAD_PATTERN.matcher(line);
-				Matcher storeMatcher = STORE_PATTERN.matcher(line);
-				Matcher brMatcher = BR_PATTERN.matcher(line);
-				Matcher jumpMatcher = JUMP_PATTERN.matcher(line);
-				Matcher balMatcher = BAL_PATTERN.matcher(line);
-				Matcher haltMatcher = HALT_PATTERN.matcher(line);
-
-				if (regToRegMatcher.matches()) {
-					/* Extract data from line */
-					String opCode = regToRegMatcher.group("opCode");
-					String rdest = regToRegMatcher.group("rdest");
-					String rsrc1 = regToRegMatcher.group("rsrc1");
-					String rsrc2 = regToRegMatcher.group("rsrc2");
-
-					/* Add new instruction to the list */
-					list.add(new Instruction(strToEnum(opCode), rdest, rsrc1, rsrc2, 0));
-				} else if (movcMatcher.matches()) {
-					String rdest = movcMatcher.group("rdest");
-					String literal = movcMatcher.group("literal");
-
-					list.add(new Instruction(InstructionType.MOVC, rdest, null, null, Integer.valueOf(literal)));
-				} else if (loadMatcher.matches()) {
-					String rdest = loadMatcher.group("rdest");
-					String rsrc1 = loadMatcher.group("rsrc1");
-					String literal = loadMatcher.group("literal");
-					
-					list.add(new Instruction(InstructionType.LOAD, rdest, rsrc1, null, Integer.valueOf(literal)));
-				} else if (storeMatcher.matches()) {
-					String rsrc1 = storeMatcher.group("rsrc1");
-					String rsrc2 = storeMatcher.group("rsrc2");
-					String literal = storeMatcher.group("literal");
-
-					list.add(new Instruction(InstructionType.STORE, null, rsrc1, rsrc2, Integer.valueOf(literal)));
-				} else if (brMatcher.matches()) {
-					String opCode = brMatcher.group("opCode");
-					String literal = brMatcher.group("literal");
-					
-					list.add(new Instruction(strToEnum(opCode), null, null, null, Integer.valueOf(literal)));
-				} else if (jumpMatcher.matches()) {
-					String rsrc1 = jumpMatcher.group("rsrc1");
-					String literal = jumpMatcher.group("literal");
-					
-					list.add(new Instruction(InstructionType.JUMP, null, rsrc1, null, Integer.valueOf(literal)));
-				} else if (balMatcher.matches()) {
-					String rsrc1 = balMatcher.group("rsrc1");
-					String literal = balMatcher.group("literal");
-					
-					list.add(new Instruction(InstructionType.BAL, "X", rsrc1, null, Integer.valueOf(literal)));
-				} else if (haltMatcher.matches()) {
-					list.add(new Instruction(InstructionType.HALT, null, null, null, 0));
-				} else {
-					throw new RuntimeException("Unreconized instruction");
-				}
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+		try {
+			return new ArrayList<Instruction>(parse().getInstructions());
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 
-		return list;
+		return new ArrayList<Instruction>();
+	}
+
+	/**
+	 * Assembles the file into a program
+	 *
+	 * @return the assembled program
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws AssemblyException
+	 *             if the file is not a valid program
+	 */
+	public Program parse() throws IOException {
+		FileIOEvent event = new FileIOEvent("Assemble source file", file);
+		Chunk[] chunks;
+
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			event.setBytes(channel.size());
+			long[] bounds = split(channel);
+			chunks = new Chunk[bounds.length - 1];
+
+			for (int i = 0; i < chunks.length; i += 1) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]);
+				chunks[i] = new Chunk(file, buffer);
+			}
+		}
+
+		if (chunks.length == 1) {
+			chunks[0].parse();
+		} else {
+			ForkJoinPool.commonPool().invoke(new ParseTask(chunks, 0, chunks.length));
+		}
+
+		Program program = join(chunks);
+		event.commit();
+
+		return program;
+	}
+
+	/**
+	 * Splits the file into chunks that start at the beginning of a line
+	 *
+	 * @param channel
+	 *            the file
+	 * @return the offset of every chunk, followed by the size of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	private long[] split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunkSize = MAX_CHUNK_SIZE;
+		if (parallelism > 1) {
+			chunkSize = Math.max(MIN_CHUNK_SIZE, size / ((long) parallelism * CHUNKS_PER_THREAD));
+			chunkSize = Math.min(chunkSize, MAX_CHUNK_SIZE);
+		}
+
+		List<Long> bounds = new ArrayList<Long>();
+		ByteBuffer window = ByteBuffer.allocate(4096);
+		long start = 0;
+
+		bounds.add(start);
+		while (size - start > chunkSize) {
+			long end = nextLine(channel, window, start + chunkSize);
+
+			if (end >= size) {
+				break;
+			} else if (end - start > MAX_CHUNK_SIZE) {
+				throw new IOException("Line starting near offset " + (start + chunkSize) + " is too long");
+			}
+
+			bounds.add(end);
+			start = end;
+		}
+		bounds.add(size);
+
+		long[] result = new long[bounds.size()];
+		for (int i = 0; i < result.length; i += 1) {
+			result[i] = bounds.get(i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Finds the offset right after the first new line at or after the position
+	 *
+	 * @return the offset of the next line; the size of the file if there is none
+	 */
+	private static long nextLine(FileChannel channel, ByteBuffer window, long position) throws IOException {
+		while (true) {
+			window.clear();
+			int read = channel.read(window, position);
+
+			if (read <= 0) {
+				return channel.size();
+			}
+
+			for (int i = 0; i < read; i += 1) {
+				if (window.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * Puts the instructions of the chunks back together in file order. If
+	 * chunks failed, the error of the first one is thrown with its line moved
+	 * down by the lines of the chunks before it.
+	 */
+	private Program join(Chunk[] chunks) {
+		int lines = 0;
+		int total = 0;
+
+		for (Chunk chunk : chunks) {
+			if (chunk.error != null) {
+				throw new AssemblyException(file, chunk.error.getLine() + lines, chunk.error.getColumn(),
+						chunk.error.getReason());
+			}
+
+			lines += chunk.lines;
+			total = Math.addExact(total, chunk.count);
+		}
+
+		if (chunks.length == 1) {
+			Chunk chunk = chunks[0];
+			return new Program(Arrays.copyOf(chunk.instructions, total), Arrays.copyOf(chunk.rdest, total),
+					Arrays.copyOf(chunk.rsrc1, total), Arrays.copyOf(chunk.rsrc2, total));
+		}
+
+		Instruction[] instructions = new Instruction[total];
+		int[] rdest = new int[total];
+		int[] rsrc1 = new int[total];
+		int[] rsrc2 = new int[total];
+		int offset = 0;
+
+		for (Chunk chunk : chunks) {
+			System.arraycopy(chunk.instructions, 0, instructions, offset, chunk.count);
+			System.arraycopy(chunk.rdest, 0, rdest, offset, chunk.count);
+			System.arraycopy(chunk.rsrc1, 0, rsrc1, offset, chunk.count);
+			System.arraycopy(chunk.rsrc2, 0, rsrc2, offset, chunk.count);
+			offset += chunk.count;
+		}
+
+		return new Program(instructions, rdest, rsrc1, rsrc2);
+	}
+
+	/**
+	 * Assembles a range of chunks, splitting the range in half until there is
+	 * one chunk left
+	 */
+	private static class ParseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Chunk[] chunks;
+		private final int from;
+		private final int to;
+
+		public ParseTask(Chunk[] chunks, int from, int to) {
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				chunks[from].parse();
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ParseTask(chunks, from, middle), new ParseTask(chunks, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * A part of the file that starts at the beginning of a line. Lines are
+	 * counted from the start of the chunk.
+	 */
+	private static class Chunk {
+		private final String file;
+
+		/* Input and the position of the next character */
+		private final ByteBuffer buffer;
+		private final int limit;
+		private int position;
+		private int line;
+		private int column;
+		private final char[] mnemonic;
+
+		/* The instructions assembled from the chunk */
+		private Instruction[] instructions;
+		private int[] rdest;
+		private int[] rsrc1;
+		private int[] rsrc2;
+		private int count;
+
+		/* Lines in the chunk, known once it is assembled */
+		private int lines;
+
+		/* The first error in the chunk, null if there was none */
+		private AssemblyException error;
+
+		public Chunk(String file, ByteBuffer buffer) {
+			/* A guess of one instruction for every 16 bytes of text */
+			int capacity = Math.max(16, buffer.limit() / 16);
+
+			this.file = file;
+			this.buffer = buffer;
+			this.limit = buffer.limit();
+			this.mnemonic = new char[MAX_MNEMONIC_LENGTH];
+			this.instructions = new Instruction[capacity];
+			this.rdest = new int[capacity];
+			this.rsrc1 = new int[capacity];
+			this.rsrc2 = new int[capacity];
+		}
+
+		public void parse() {
+			this.position = 0;
+			this.line = 1;
+			this.column = 1;
+
+			try {
+				while (true) {
+					skipSpaces();
+
+					int c = peek();
+					if (c == EOF) {
+						break;
+					} else if (c != '\n') {
+						parseInstruction();
+						skipSpaces();
+
+						c = peek();
+						if (c != '\n' && c != EOF) {
+							throw error("expected the end of the line after the instruction");
+						}
+					}
+
+					if (c == '\n') {
+						next();
+						this.line += 1;
+						this.column = 1;
+					}
+				}
+
+				this.lines = this.line - 1;
+			} catch (AssemblyException e) {
+				this.error = e;
+			}
+		}
+
+		private void parseInstruction() {
+			InstructionType type = readMnemonic();
+			int dest = Program.NO_REGISTER;
+			int src1 = Program.NO_REGISTER;
+			int src2 = Program.NO_REGISTER;
+			int literal = 0;
+
+			switch (type) {
+			case ADD:
+			case SUB:
+			case MUL:
+			case AND:
+			case OR:
+			case XOR:
+				requireSpace();
+				dest = readRegister(false);
+				readComma();
+				src1 = readRegister(false);
+				readComma();
+				src2 = readRegister(false);
+				break;
+			case MOVC:
+				requireSpace();
+				dest = readRegister(false);
+				readComma();
+				literal = readLiteral();
+				break;
+			case LOAD:
+				requireSpace();
+				dest = readRegister(false);
+				readComma();
+				src1 = readRegister(false);
+				readComma();
+				literal = readLiteral();
+				break;
+			case STORE:
+				requireSpace();
+				src1 = readRegister(false);
+				readComma();
+				src2 = readRegister(false);
+				readComma();
+				literal = readLiteral();
+				break;
+			case BZ:
+			case BNZ:
+				requireSpace();
+				literal = readLiteral();
+				break;
+			case JUMP:
+				requireSpace();
+				src1 = readRegister(true);
+				readComma();
+				literal = readLiteral();
+				break;
+			case BAL:
+				requireSpace();
+				dest = Program.REGISTER_X;
+				src1 = readRegister(false);
+				readComma();
+				literal = readLiteral();
+				break;
+			case HALT:
+				break;
+			default:
+				throw error("unknown instruction");
+			}
+
+			add(new Instruction(type, Program.registerName(dest), Program.registerName(src1),
+					Program.registerName(src2), literal), dest, src1, src2);
+		}
+
+		private InstructionType readMnemonic() {
+			int start = this.column;
+			int length = 0;
+
+			for (int c = peek(); (c >= 'A' && c <= 'Z') || c == '-'; c = peek()) {
+				if (length == MAX_MNEMONIC_LENGTH) {
+					throw new AssemblyException(file, line, start, "unknown instruction");
+				}
+
+				mnemonic[length] = (char) next();
+				length += 1;
+			}
+
+			for (int i = 0; i < MNEMONICS.length; i += 1) {
+				if (matches(MNEMONICS[i], length)) {
+					return MNEMONIC_TYPES[i];
+				}
+			}
+
+			if (length == 0) {
+				throw error("expected an instruction");
+			}
+			throw new AssemblyException(file, line, start, "unknown instruction " + new String(mnemonic, 0, length));
+		}
+
+		private boolean matches(String name, int length) {
+			if (name.length() != length) {
+				return false;
+			}
+
+			for (int i = 0; i < length; i += 1) {
+				if (name.charAt(i) != mnemonic[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		private int readRegister(boolean allowX) {
+			int start = this.column;
+			int c = peek();
+
+			if (c == 'X' && allowX) {
+				next();
+				return Program.REGISTER_X;
+			} else if (c != 'R') {
+				throw error(allowX ? "expected a register or X" : "expected a register");
+			}
+			next();
+
+			if (!isDigit(peek())) {
+				throw error("expected a register number");
+			}
+
+			int index = 0;
+			while (isDigit(peek())) {
+				index = Math.min((index * 10) + (next() - '0'), Processor.NUM_OF_ARC_REGISTERS);
+			}
+
+			if (index >= Processor.NUM_OF_ARC_REGISTERS) {
+				throw new AssemblyException(file, line, start, "there are only " + Processor.NUM_OF_ARC_REGISTERS
+						+ " registers, R0 to R" + (Processor.NUM_OF_ARC_REGISTERS - 1));
+			}
+
+			return index;
+		}
+
+		private int readLiteral() {
+			if (peek() != '#') {
+				throw error("expected a literal starting with #");
+			}
+			next();
+			skipSpaces();
+
+			int start = this.column;
+			boolean negative = false;
+			if (peek() == '+' || peek() == '-') {
+				negative = (next() == '-');
+			}
+
+			if (!isDigit(peek())) {
+				throw error("expected a number");
+			}
+
+			long value = 0;
+			while (isDigit(peek())) {
+				value = (value * 10) + (next() - '0');
+
+				if (value > (long) Integer.MAX_VALUE + 1) {
+					throw new AssemblyException(file, line, start, "literal does not fit in 32 bits");
+				}
+			}
+
+			value = negative ? -value : value;
+			if (value > Integer.MAX_VALUE) {
+				throw new AssemblyException(file, line, start, "literal does not fit in 32 bits");
+			}
+
+			return (int) value;
+		}
+
+		private void readComma() {
+			skipSpaces();
+			if (peek() != ',') {
+				throw error("expected ','");
+			}
+			next();
+			skipSpaces();
+		}
+
+		private void requireSpace() {
+			if (!isSpace(peek())) {
+				throw error("expected a space after the instruction name");
+			}
+			skipSpaces();
+		}
+
+		private void skipSpaces() {
+			while (isSpace(peek())) {
+				next();
+			}
+		}
+
+		private void add(Instruction instruction, int dest, int src1, int src2) {
+			if (count == instructions.length) {
+				int capacity = count * 2;
+
+				instructions = Arrays.copyOf(instructions, capacity);
+				rdest = Arrays.copyOf(rdest, capacity);
+				rsrc1 = Arrays.copyOf(rsrc1, capacity);
+				rsrc2 = Arrays.copyOf(rsrc2, capacity);
+			}
+
+			instructions[count] = instruction;
+			rdest[count] = dest;
+			rsrc1[count] = src1;
+			rsrc2[count] = src2;
+			count += 1;
+		}
+
+		private AssemblyException error(String message) {
+			int c = peek();
+
+			if (c == EOF || c == '\n') {
+				message += ", found the end of the line";
+			} else if (c >= ' ' && c < 0x7f) {
+				message += ", found '" + (char) c + "'";
+			}
+
+			return new AssemblyException(file, line, column, message);
+		}
+
+		private int peek() {
+			if (position == limit) {
+				return EOF;
+			}
+
+			return buffer.get(position) & 0xff;
+		}
+
+		private int next() {
+			int c = peek();
+
+			if (c != EOF) {
+				position += 1;
+				column += 1;
+			}
+
+			return c;
+		}
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
 	}
 }
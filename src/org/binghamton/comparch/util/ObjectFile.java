@@ -0,0 +1,270 @@
+package org.binghamton.comparch.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.binghamton.comparch.systems.Instruction;
+import org.binghamton.comparch.systems.InstructionType;
+import org.binghamton.comparch.systems.Processor;
+import org.binghamton.comparch.systems.Program;
+
+/**
+ * Reads and writes assembled programs in a binary object file, so that a
+ * program only has to be assembled once. Reading an object file maps it into
+ * memory and copies the fields straight into a Program, without any parsing.
+ *
+ * An object file is big endian and made of three parts:
+ *
+ * <pre>
+ * header       magic "APXO", version, header size, instruction count,
+ *              data word count, instruction offset, data offset (4 bytes each)
+ * instructions 8 bytes each: opcode, rdest, rsrc1, rsrc2, literal (4 bytes)
+ * data         4 bytes for every word of the data image
+ * </pre>
+ *
+ * Registers are stored as their index, with 0xFF for an unused register.
+ * Reading checks that every instruction uses the registers its type needs, so
+ * a corrupt file is rejected instead of failing in the simulation. The
+ * opcodes are numbered by the OPCODES table rather than the order of
+ * InstructionType, so that adding an instruction does not break older files.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class ObjectFile {
+	public static final int MAGIC = 0x4150584F;
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 28;
+	private static final int INSTRUCTION_SIZE = 8;
+	private static final int NO_REGISTER = 0xFF;
+
+	/* Opcode of every instruction type in an object file; only add to the end */
+	private static final InstructionType[] OPCODES = { InstructionType.ADD, InstructionType.SUB,
+			InstructionType.MOVC, InstructionType.MUL, InstructionType.AND, InstructionType.OR, InstructionType.XOR,
+			InstructionType.LOAD, InstructionType.STORE, InstructionType.BZ, InstructionType.BNZ, InstructionType.JUMP,
+			InstructionType.BAL, InstructionType.HALT };
+
+	private ObjectFile() {
+	}
+
+	/**
+	 * Checks if the file starts like an object file
+	 *
+	 * @param file
+	 *            the file to check
+	 * @return true if the file is an object file, false otherwise
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static boolean isObjectFile(String file) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+
+			while (magic.hasRemaining()) {
+				if (channel.read(magic) < 0) {
+					return false;
+				}
+			}
+
+			return magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Writes the program to an object file, replacing the file if it exists
+	 *
+	 * @param program
+	 *            the program to write
+	 * @param file
+	 *            the object file
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public static void write(Program program, String file) throws IOException {
+		FileIOEvent event = new FileIOEvent("Write object file", file);
+		int instructionOffset = HEADER_SIZE;
+		int dataOffset = instructionOffset + (program.size() * INSTRUCTION_SIZE);
+		ByteBuffer buffer = ByteBuffer.allocate(dataOffset + (program.getDataSize() * 4));
+
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(HEADER_SIZE);
+		buffer.putInt(program.size());
+		buffer.putInt(program.getDataSize());
+		buffer.putInt(instructionOffset);
+		buffer.putInt(dataOffset);
+
+		for (int i = 0; i < program.size(); i += 1) {
+			Instruction instruction = program.getInstruction(i);
+
+			buffer.put((byte) opcode(instruction.getOpCode()));
+			buffer.put(encodeRegister(program.getRdest(i)));
+			buffer.put(encodeRegister(program.getRsrc1(i)));
+			buffer.put(encodeRegister(program.getRsrc2(i)));
+			buffer.putInt(instruction.getLiteral());
+		}
+
+		for (int i = 0; i < program.getDataSize(); i += 1) {
+			buffer.putInt(program.getData(i));
+		}
+		buffer.flip();
+
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+
+		event.setBytes(buffer.limit());
+		event.commit();
+	}
+
+	/**
+	 * Reads the program in an object file
+	 *
+	 * @param file
+	 *            the object file
+	 * @return the program in the file
+	 * @throws IOException
+	 *             if the file can not be read or is not a valid object file
+	 */
+	public static Program read(String file) throws IOException {
+		FileIOEvent event = new FileIOEvent("Read object file", file);
+		Path path = Paths.get(file);
+		ByteBuffer buffer;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is not an object file");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not an object file");
+		} else if (buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " is object file version " + buffer.getInt(4) + ", only version "
+					+ VERSION + " is supported");
+		}
+
+		int count = buffer.getInt(12);
+		int dataCount = buffer.getInt(16);
+		int instructionOffset = buffer.getInt(20);
+		int dataOffset = buffer.getInt(24);
+
+		if (buffer.getInt(8) < HEADER_SIZE || count < 0 || dataCount < 0
+				|| dataCount > Processor.SIZE_OF_DATA_MEMORY / 4
+				|| !fits(buffer, instructionOffset, (long) count * INSTRUCTION_SIZE)
+				|| !fits(buffer, dataOffset, (long) dataCount * 4)) {
+			throw new IOException(file + " has a corrupt header");
+		}
+
+		Instruction[] instructions = new Instruction[count];
+		int[] rdest = new int[count];
+		int[] rsrc1 = new int[count];
+		int[] rsrc2 = new int[count];
+		int[] data = new int[dataCount];
+
+		for (int i = 0; i < count; i += 1) {
+			int position = instructionOffset + (i * INSTRUCTION_SIZE);
+			int opcode = buffer.get(position) & 0xFF;
+
+			if (opcode >= OPCODES.length) {
+				throw new IOException(file + " has an unknown opcode " + opcode + " in instruction " + i);
+			}
+
+			rdest[i] = decodeRegister(buffer.get(position + 1));
+			rsrc1[i] = decodeRegister(buffer.get(position + 2));
+			rsrc2[i] = decodeRegister(buffer.get(position + 3));
+			if (rdest[i] > Program.REGISTER_X || rsrc1[i] > Program.REGISTER_X || rsrc2[i] > Program.REGISTER_X) {
+				throw new IOException(file + " has an unknown register in instruction " + i);
+			} else if (!hasOperands(OPCODES[opcode], rdest[i], rsrc1[i], rsrc2[i])) {
+				throw new IOException(file + " has the wrong registers for " + OPCODES[opcode].getOpCode()
+						+ " in instruction " + i);
+			}
+
+			instructions[i] = new Instruction(OPCODES[opcode], Program.registerName(rdest[i]),
+					Program.registerName(rsrc1[i]), Program.registerName(rsrc2[i]), buffer.getInt(position + 4));
+		}
+
+		for (int i = 0; i < dataCount; i += 1) {
+			data[i] = buffer.getInt(dataOffset + (i * 4));
+		}
+
+		event.setBytes(buffer.limit());
+		event.commit();
+
+		return new Program(instructions, rdest, rsrc1, rsrc2, data);
+	}
+
+	/**
+	 * Reads a program from an object file or assembles it from a source file,
+	 * depending on what the file is
+	 *
+	 * @param file
+	 *            an object file or an assembly source file
+	 * @return the program
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws AssemblyException
+	 *             if the file is source that can not be assembled
+	 */
+	public static Program load(String file) throws IOException {
+		if (isObjectFile(file)) {
+			return read(file);
+		}
+
+		return new InstructionParser(file).parse();
+	}
+
+	/**
+	 * Checks that an instruction has the registers the assembler gives its
+	 * type: as many destinations and sources as InstructionType counts, except
+	 * for BZ and BNZ, which test the flags and have none. X is only the
+	 * destination of BAL and may be the source of JUMP.
+	 */
+	private static boolean hasOperands(InstructionType type, int rdest, int rsrc1, int rsrc2) {
+		boolean flags = (type == InstructionType.BZ || type == InstructionType.BNZ);
+		int destinations = flags ? 0 : type.getDestinationCount();
+		int sources = flags ? 0 : type.getSourceCount();
+
+		if ((rdest == Program.REGISTER_X) != (type == InstructionType.BAL)
+				|| (rsrc1 == Program.REGISTER_X && type != InstructionType.JUMP) || rsrc2 == Program.REGISTER_X) {
+			return false;
+		}
+
+		return (rdest != Program.NO_REGISTER) == (destinations > 0)
+				&& (rsrc1 != Program.NO_REGISTER) == (sources > 0)
+				&& (rsrc2 != Program.NO_REGISTER) == (sources > 1);
+	}
+
+	private static boolean fits(ByteBuffer buffer, int offset, long length) {
+		return offset >= HEADER_SIZE && offset + length <= buffer.limit();
+	}
+
+	private static int opcode(InstructionType type) {
+		for (int i = 0; i < OPCODES.length; i += 1) {
+			if (OPCODES[i] == type) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException("Instruction type has no opcode");
+	}
+
+	private static byte encodeRegister(int register) {
+		return (byte) (register == Program.NO_REGISTER ? NO_REGISTER : register);
+	}
+
+	private static int decodeRegister(byte register) {
+		int value = register & 0xFF;
+		return value == NO_REGISTER ? Program.NO_REGISTER : value;
+	}
+}
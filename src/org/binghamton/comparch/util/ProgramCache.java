@@ -0,0 +1,272 @@
+package org.binghamton.comparch.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.binghamton.comparch.systems.Program;
+
+/**
+ * Keeps programs that have already been loaded, keyed by the SHA-256 hash of
+ * the file they came from. Loading a file whose content was loaded before
+ * returns the same Program without assembling it again, even if the file has
+ * another name. Programs can not be changed, so one instance is shared by
+ * every simulator and thread that loads the file.
+ *
+ * The cache holds at most a budget of words, counting one word for every
+ * instruction and every word of the data image. When a new program does not
+ * fit, the programs that were used least recently are evicted. A file that is
+ * being loaded by one thread is waited for by the others instead of being
+ * loaded twice.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class ProgramCache {
+	public static final long DEFAULT_BUDGET = 1 << 24;
+
+	private static final int HASH_CHUNK_SIZE = 1 << 24;
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+
+	private final long budget;
+
+	/* Cached programs by content hash, least recently used first */
+	private final LinkedHashMap<String, Program> programs;
+	private long size;
+
+	/* Files that are being loaded right now, by content hash */
+	private final Map<String, CompletableFuture<Program>> loading;
+
+	/* Cache Statistics */
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Constructs a program cache with the default budget
+	 */
+	public ProgramCache() {
+		this(DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Constructs a program cache
+	 *
+	 * @param budget
+	 *            the most instructions and data words held at once
+	 * @throws IllegalArgumentException
+	 *             if the budget is negative
+	 */
+	public ProgramCache(long budget) {
+		if (budget < 0) {
+			throw new IllegalArgumentException("Budget can not be negative");
+		}
+
+		this.budget = budget;
+		this.programs = new LinkedHashMap<String, Program>(16, 0.75f, true);
+		this.loading = new HashMap<String, CompletableFuture<Program>>();
+	}
+
+	/**
+	 * Returns the program in the file, loading it only if no file with the
+	 * same content has been loaded before. The file can be an object file or
+	 * assembly source. The file is hashed again once it is loaded, and loaded
+	 * again if it changed in between, so that a program is never cached under
+	 * the hash of other content.
+	 *
+	 * @param file
+	 *            the file to load
+	 * @return the program in the file
+	 * @throws IOException
+	 *             if the file can not be read, or keeps changing while it is
+	 *             being loaded
+	 * @throws AssemblyException
+	 *             if the file is source that can not be assembled
+	 */
+	public Program load(String file) throws IOException {
+		for (int attempt = 1;; attempt += 1) {
+			try {
+				return load(file, hash(file));
+			} catch (ChangedException e) {
+				if (attempt == MAX_LOAD_ATTEMPTS) {
+					throw new IOException(e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	private Program load(String file, String key) throws IOException {
+		CompletableFuture<Program> future;
+		boolean loader = false;
+
+		synchronized (this) {
+			Program program = programs.get(key);
+			if (program != null) {
+				this.hits += 1;
+				return program;
+			}
+
+			future = loading.get(key);
+			if (future == null) {
+				future = new CompletableFuture<Program>();
+				loading.put(key, future);
+				loader = true;
+				this.misses += 1;
+			} else {
+				this.hits += 1;
+			}
+		}
+
+		if (loader) {
+			try {
+				Program program = ObjectFile.load(file);
+				if (!hash(file).equals(key)) {
+					throw new ChangedException(file + " changed while it was being loaded");
+				}
+				add(key, program);
+				future.complete(program);
+				return program;
+			} catch (IOException | RuntimeException e) {
+				synchronized (this) {
+					loading.remove(key);
+				}
+				future.completeExceptionally(e);
+				throw e;
+			}
+		}
+
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof ChangedException) {
+				throw new ChangedException(e.getCause().getMessage());
+			} else if (e.getCause() instanceof IOException) {
+				throw new IOException(e.getCause().getMessage(), e.getCause());
+			} else if (e.getCause() instanceof AssemblyException) {
+				AssemblyException cause = (AssemblyException) e.getCause();
+				throw new AssemblyException(cause.getFile(), cause.getLine(), cause.getColumn(), cause.getReason());
+			}
+			throw e;
+		}
+	}
+
+	private synchronized void add(String key, Program program) {
+		long weight = weight(program);
+		loading.remove(key);
+
+		/* A program that can never fit is not kept */
+		if (weight > budget) {
+			return;
+		}
+
+		Iterator<Program> iterator = programs.values().iterator();
+		while (size + weight > budget) {
+			this.size -= weight(iterator.next());
+			iterator.remove();
+			this.evictions += 1;
+		}
+
+		programs.put(key, program);
+		this.size += weight;
+	}
+
+	private static long weight(Program program) {
+		return (long) program.size() + program.getDataSize();
+	}
+
+	/**
+	 * Hashes the content of the file with SHA-256
+	 *
+	 * @param file
+	 *            the file to hash
+	 * @return the hash as a hex string
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static String hash(String file) throws IOException {
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+
+			for (long position = 0; position < fileSize; position += HASH_CHUNK_SIZE) {
+				long length = Math.min(HASH_CHUNK_SIZE, fileSize - position);
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				digest.update(buffer);
+			}
+		}
+
+		StringBuilder builder = new StringBuilder();
+		for (byte b : digest.digest()) {
+			builder.append(String.format("%02x", b));
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Removes every program from the cache
+	 */
+	public synchronized void clear() {
+		programs.clear();
+		this.size = 0;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Returns the instructions and data words of the programs held now
+	 *
+	 * @return the size of the cached programs
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized int getProgramCount() {
+		return programs.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Thrown when a file does not have the content it was hashed with by the
+	 * time it is loaded, so that it is hashed and loaded again
+	 */
+	private static final class ChangedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		ChangedException(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package org.binghamton.comparch.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.binghamton.comparch.systems.Checkpoint;
+import org.binghamton.comparch.systems.FunctionalSimulator;
+import org.binghamton.comparch.systems.Processor;
+import org.binghamton.comparch.systems.ProcessorConfig;
+import org.binghamton.comparch.systems.Program;
+
+/**
+ * Estimates the IPC of a program without simulating all of it in detail. The
+ * functional simulator runs the program and takes a checkpoint of its
+ * architectural state every period of instructions. From every checkpoint a
+ * processor of its own simulates a warm-up of instructions, to fill the
+ * pipeline, caches and predictor, then the instructions that are measured.
+ *
+ * The samples are simulated on a pool of threads while the functional
+ * simulator goes on to the next checkpoint, and only a few checkpoints wait
+ * for a thread at any time. The CPI of the program is estimated as the mean
+ * CPI of the samples, with a 95% confidence interval from their variance.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class SampledSimulation {
+	/* Normal quantile of a two-sided 95% confidence interval */
+	private static final double Z_95 = 1.96;
+
+	/* The relative error the sample size is suggested for */
+	private static final double TARGET_ERROR = 0.03;
+
+	private static final int CYCLES_PER_STEP = 1 << 16;
+
+	private final Program program;
+	private final ProcessorConfig config;
+	private final long period;
+	private final long warmup;
+	private final long measure;
+	private final int threads;
+	private int urfSize;
+
+	/* Results of the last run */
+	private long instructions;
+	private boolean halted;
+	private int samples;
+	private int unfinished;
+	private double cpiSum;
+	private double cpiSquares;
+	private long time;
+
+	/**
+	 * Constructs a sampled simulation
+	 *
+	 * @param program
+	 *            the program
+	 * @param config
+	 *            the configuration of the processor every sample is simulated
+	 *            on
+	 * @param period
+	 *            the instructions from one sample to the next
+	 * @param warmup
+	 *            the instructions simulated before every measurement
+	 * @param measure
+	 *            the instructions measured in every sample
+	 * @param threads
+	 *            the amount of samples simulated at the same time
+	 * @throws IllegalArgumentException
+	 *             if a sample does not fit in the period, nothing is measured
+	 *             or there is not at least one thread
+	 */
+	public SampledSimulation(Program program, ProcessorConfig config, long period, long warmup, long measure,
+			int threads) {
+		if (measure < 1) {
+			throw new IllegalArgumentException("Every sample must measure at least one instruction");
+		} else if (warmup < 0) {
+			throw new IllegalArgumentException("Warm-up must not be negative");
+		} else if (period < warmup + measure) {
+			throw new IllegalArgumentException("The warm-up and measurement of a sample must fit in its period");
+		} else if (threads < 1) {
+			throw new IllegalArgumentException("Sampling needs at least one thread");
+		}
+
+		this.program = program;
+		this.config = config;
+		this.period = period;
+		this.warmup = warmup;
+		this.measure = measure;
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets the amount of physical registers of the processors
+	 *
+	 * @param urfSize
+	 *            the amount of physical registers; 0 for the default
+	 */
+	public void setURFSize(int urfSize) {
+		this.urfSize = urfSize;
+	}
+
+	/**
+	 * Runs the program functionally and simulates a sample every period of
+	 * instructions
+	 *
+	 * @param maxInstructions
+	 *            the most instructions run if the program does not halt
+	 * @param maxCycles
+	 *            the most cycles a sample may take
+	 * @throws IllegalArgumentException
+	 *             if the processor can not start from a checkpoint with its
+	 *             configuration
+	 */
+	public void run(long maxInstructions, long maxCycles) {
+		FunctionalSimulator functional = new FunctionalSimulator();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, threads());
+		Semaphore waiting = new Semaphore(threads * 2);
+		List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+		long start = System.nanoTime();
+
+		functional.initialize(program);
+		try {
+			while (!functional.isHalted() && functional.getInstructionsExecuted() < maxInstructions) {
+				Checkpoint checkpoint = functional.checkpoint();
+
+				/* Don't run ahead of the threads by more than a few checkpoints */
+				waiting.acquire();
+				results.add(pool.submit(() -> {
+					try {
+						return simulate(checkpoint, maxCycles);
+					} finally {
+						waiting.release();
+					}
+				}));
+
+				long before = functional.getInstructionsExecuted();
+				functional.run(Math.min(period, maxInstructions - before));
+				if (functional.getInstructionsExecuted() == before) {
+					/* The program counter left the program */
+					break;
+				}
+			}
+
+			this.instructions = functional.getInstructionsExecuted();
+			this.halted = functional.isHalted();
+			this.samples = 0;
+			this.unfinished = 0;
+			this.cpiSum = 0;
+			this.cpiSquares = 0;
+			for (Future<double[]> result : results) {
+				double[] sample = result.get();
+				if (sample == null) {
+					this.unfinished += 1;
+				} else {
+					double cpi = sample[1] / sample[0];
+					this.samples += 1;
+					this.cpiSum += cpi;
+					this.cpiSquares += cpi * cpi;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+			this.time = System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Simulates the warm-up and measurement of one sample
+	 *
+	 * @return the instructions and cycles measured; null if the program
+	 *         halted or the sample took too many cycles before it was done
+	 */
+	private double[] simulate(Checkpoint checkpoint, long maxCycles) {
+		Processor processor = new Processor(config);
+		if (urfSize > 0) {
+			processor.setURFSize(urfSize);
+		}
+		processor.initialize(program, checkpoint);
+
+		if (!runUntil(processor, warmup, maxCycles)) {
+			return null;
+		}
+		long cycles = processor.getTotalCycles();
+		long committed = processor.getInstructionsCommited();
+		if (!runUntil(processor, warmup + measure, maxCycles)) {
+			return null;
+		}
+
+		return new double[] { processor.getInstructionsCommited() - committed,
+				processor.getTotalCycles() - cycles };
+	}
+
+	/**
+	 * Simulates until the processor has committed the instructions
+	 *
+	 * @return true if it did; false if it halted or ran out of cycles first
+	 */
+	private static boolean runUntil(Processor processor, long instructions, long maxCycles) {
+		if (processor.getInstructionsCommited() >= instructions) {
+			return true;
+		}
+
+		processor.getBreakpoints().setInstructionLimit(instructions);
+		while (processor.getTotalCycles() < maxCycles) {
+			boolean halt = processor.cycle((int) Math.min(CYCLES_PER_STEP, maxCycles - processor.getTotalCycles()));
+
+			if (processor.getBreakReason() != null) {
+				return true;
+			} else if (halt) {
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	public long getInstructions() {
+		return instructions;
+	}
+
+	public boolean isHalted() {
+		return halted;
+	}
+
+	public int getSamples() {
+		return samples;
+	}
+
+	public double getCPI() {
+		return (samples == 0) ? 0 : cpiSum / samples;
+	}
+
+	/**
+	 * Returns half the width of the 95% confidence interval of the CPI
+	 *
+	 * @return the half width; 0 if there are fewer than two samples
+	 */
+	public double getCPIError() {
+		if (samples < 2) {
+			return 0;
+		}
+
+		double mean = getCPI();
+		double variance = Math.max(0, (cpiSquares - samples * mean * mean) / (samples - 1));
+		return Z_95 * Math.sqrt(variance / samples);
+	}
+
+	public double getIPC() {
+		return (samples == 0) ? 0 : 1 / getCPI();
+	}
+
+	/**
+	 * Returns the samples needed for the confidence interval to be within 3%
+	 * of the CPI, given the variance of the samples taken
+	 *
+	 * @return the amount of samples
+	 */
+	public long getSuggestedSamples() {
+		double relative = (samples == 0) ? 0 : getCPIError() / getCPI();
+		return (long) Math.ceil(samples * Math.pow(relative / TARGET_ERROR, 2));
+	}
+
+	@Override
+	public String toString() {
+		String str = "";
+		double cpi = getCPI();
+		double error = getCPIError();
+
+		str += String.format(Locale.ROOT, "Instructions: %d%s\n", instructions, halted ? " (Halted)" : "");
+		str += String.format(Locale.ROOT, "Samples: %d of %d instructions every %d, after %d of warm-up\n", samples,
+				measure, period, warmup);
+		if (unfinished > 0) {
+			str += String.format(Locale.ROOT, "Unfinished Samples: %d\n", unfinished);
+		}
+		if (samples == 0) {
+			str += "No sample finished, the program is too short for the period\n";
+		} else {
+			str += String.format(Locale.ROOT, "CPI: %.4f +- %.4f (95%% confidence)\n", cpi, error);
+			str += String.format(Locale.ROOT, "IPC: %.4f (95%% confidence %.4f to %s)\n", getIPC(),
+					1 / (cpi + error), (cpi > error) ? String.format(Locale.ROOT, "%.4f", 1 / (cpi - error)) : "-");
+			str += String.format(Locale.ROOT, "Estimated Cycles: %.0f\n", instructions * cpi);
+			str += String.format(Locale.ROOT, "Samples For 3%% Error: %d\n", getSuggestedSamples());
+		}
+		str += String.format(Locale.ROOT, "Threads: %d\n", threads);
+		str += String.format(Locale.ROOT, "Time: %.3f s", time / 1e9);
+
+		return str;
+	}
+
+	private static ThreadFactory threads() {
+		AtomicInteger count = new AtomicInteger();
+
+		return runnable -> {
+			Thread thread = new Thread(runnable, "sample-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,211 @@
+package org.binghamton.comparch.util;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import org.binghamton.comparch.systems.Processor;
+import org.binghamton.comparch.systems.ProcessorConfig;
+import org.binghamton.comparch.systems.ProcessorReport;
+import org.binghamton.comparch.systems.Program;
+
+/**
+ * One program run by the simulation server on a processor of its own. The
+ * run goes in steps of cycles and checks between them whether it was
+ * cancelled, so cancelling a running job takes effect within one step.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class SimulationJob implements Runnable {
+	private static final int CYCLES_PER_STEP = 1 << 16;
+
+	public enum Status {
+		/* Waiting for a free worker */
+		QUEUED,
+
+		/* Being simulated */
+		RUNNING,
+
+		/* The program executed HALT */
+		HALTED,
+
+		/* The program ran for the cycle limit without executing HALT */
+		CYCLE_LIMIT,
+
+		/* Cancelled before it finished */
+		CANCELLED,
+
+		/* The program could not be loaded or simulated */
+		FAILED;
+	}
+
+	private final long id;
+	private final String program;
+	private final ProcessorConfig config;
+	private final long maxCycles;
+	private final boolean csv;
+	private final ProgramCache programs;
+
+	private Status status;
+	private String error;
+	private volatile boolean cancelled;
+	private volatile long cycles;
+	private volatile long instructions;
+
+	/* The report of the run; null if it did not finish */
+	private final CompletableFuture<String> result;
+
+	/**
+	 * Constructs a queued job
+	 *
+	 * @param id
+	 *            the id of the job
+	 * @param program
+	 *            the file of the program, source or object
+	 * @param config
+	 *            the configuration of the processor
+	 * @param maxCycles
+	 *            the most cycles to simulate
+	 * @param csv
+	 *            true if the report is CSV; false if it is JSON
+	 * @param programs
+	 *            the cache the program is loaded through
+	 */
+	public SimulationJob(long id, String program, ProcessorConfig config, long maxCycles, boolean csv,
+			ProgramCache programs) {
+		this.id = id;
+		this.program = program;
+		this.config = config;
+		this.maxCycles = maxCycles;
+		this.csv = csv;
+		this.programs = programs;
+		this.status = Status.QUEUED;
+		this.result = new CompletableFuture<String>();
+	}
+
+	@Override
+	public void run() {
+		if (!begin()) {
+			return;
+		}
+
+		try {
+			Program loaded = programs.load(program);
+			Processor processor = new Processor(config);
+			processor.initialize(loaded);
+
+			boolean halted = false;
+			while (!halted && !cancelled && processor.getTotalCycles() < maxCycles) {
+				halted = processor.cycle((int) Math.min(CYCLES_PER_STEP, maxCycles - processor.getTotalCycles()));
+				this.cycles = processor.getTotalCycles();
+				this.instructions = processor.getInstructionsCommited();
+			}
+
+			if (cancelled) {
+				finish(Status.CANCELLED, null, null);
+			} else {
+				String report = csv ? ProcessorReport.toCSV(processor, program, halted)
+						: ProcessorReport.toJSON(processor, program, halted);
+				finish(halted ? Status.HALTED : Status.CYCLE_LIMIT, report, null);
+			}
+		} catch (IOException e) {
+			finish(Status.FAILED, null, e.toString());
+		} catch (RuntimeException e) {
+			/* Assembly errors, and anything that goes wrong in the simulation */
+			finish(Status.FAILED, null, e.getMessage() == null ? e.toString() : e.getMessage());
+		}
+	}
+
+	/**
+	 * Cancels the job. A queued job is finished right away, a running job
+	 * stops at the end of its current step.
+	 */
+	public synchronized void cancel() {
+		this.cancelled = true;
+
+		if (status == Status.QUEUED) {
+			finish(Status.CANCELLED, null, null);
+		}
+	}
+
+	private synchronized boolean begin() {
+		if (status != Status.QUEUED) {
+			return false;
+		}
+
+		this.status = Status.RUNNING;
+		return true;
+	}
+
+	private synchronized void finish(Status status, String report, String error) {
+		this.status = status;
+		this.error = error;
+		this.result.complete(report);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getProgram() {
+		return program;
+	}
+
+	public synchronized Status getStatus() {
+		return status;
+	}
+
+	public synchronized String getError() {
+		return error;
+	}
+
+	public long getCycles() {
+		return cycles;
+	}
+
+	public long getInstructions() {
+		return instructions;
+	}
+
+	public boolean isCSV() {
+		return csv;
+	}
+
+	/**
+	 * Returns the report of the job once it is finished
+	 *
+	 * @return a future of the report; it completes with null if the job was
+	 *         cancelled or failed
+	 */
+	public CompletableFuture<String> getResult() {
+		return result;
+	}
+
+	/**
+	 * Returns the state of the job as a JSON object
+	 *
+	 * @return the state in JSON
+	 */
+	public String toJSON() {
+		Status current;
+		String message;
+
+		synchronized (this) {
+			current = this.status;
+			message = this.error;
+		}
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\"id\": ").append(id);
+		json.append(", \"program\": ").append(ProcessorReport.quote(program));
+		json.append(", \"status\": \"").append(current.name()).append('"');
+		json.append(", \"cycles\": ").append(cycles);
+		json.append(", \"instructions\": ").append(instructions);
+		if (message != null) {
+			json.append(", \"error\": ").append(ProcessorReport.quote(message));
+		}
+
+		return json.append('}').toString();
+	}
+}
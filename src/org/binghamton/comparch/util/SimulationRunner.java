@@ -0,0 +1,258 @@
+package org.binghamton.comparch.util;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.binghamton.comparch.systems.Processor;
+
+/**
+ * Simulates a processor on a thread of its own, so the prompt stays usable
+ * while a long run goes on. A run is split into steps of cycles that are
+ * queued on that thread one after the other, and every other task that needs
+ * the processor is queued on it as well. Such a task runs between two steps,
+ * so it always sees the processor at a cycle boundary and never while a cycle
+ * is half done.
+ *
+ * While a run goes on, its progress is reported about once a second. A run
+ * that is stopped ends at the end of the step it is in, and a run that hits a
+ * breakpoint ends at the end of that cycle.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class SimulationRunner {
+	private static final int CYCLES_PER_STEP = 1 << 12;
+	private static final long PROGRESS_INTERVAL = 1000000000L;
+
+	private final Processor processor;
+	private final Consumer<String> output;
+	private final ExecutorService thread;
+
+	/* The current run; done completes when it ends */
+	private CompletableFuture<Void> done;
+	private volatile boolean stopRequested;
+	private long requested;
+	private long startCycles;
+
+	/* Counters at the last progress report */
+	private long reportTime;
+	private long reportCycles;
+	private long reportInstructions;
+
+	/**
+	 * Constructs a runner for the processor. The processor must only be used
+	 * through the runner from now on.
+	 *
+	 * @param processor
+	 *            the processor
+	 * @param output
+	 *            receives the progress reports and the message of every run
+	 *            that ends
+	 */
+	public SimulationRunner(Processor processor, Consumer<String> output) {
+		this.processor = processor;
+		this.output = output;
+		this.thread = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "simulation");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.done = CompletableFuture.completedFuture(null);
+	}
+
+	/**
+	 * Starts simulating in the background
+	 *
+	 * @param cycles
+	 *            the amount of cycles to simulate
+	 * @return true if the run started; false if another run is going on
+	 */
+	public synchronized boolean start(long cycles) {
+		if (!done.isDone()) {
+			return false;
+		}
+
+		this.done = new CompletableFuture<Void>();
+		this.stopRequested = false;
+		this.requested = cycles;
+		output.accept("Simulating " + cycles + " cycles in the background");
+		thread.execute(this::begin);
+		return true;
+	}
+
+	/**
+	 * Stops the current run at the end of its step and waits until it has
+	 * ended
+	 *
+	 * @return true if a run was stopped; false if none was going on
+	 */
+	public boolean stop() {
+		CompletableFuture<Void> run;
+
+		synchronized (this) {
+			run = this.done;
+			if (run.isDone()) {
+				return false;
+			}
+			this.stopRequested = true;
+		}
+
+		run.join();
+		return true;
+	}
+
+	/**
+	 * Waits until the current run has ended, if there is one
+	 */
+	public void await() {
+		CompletableFuture<Void> run;
+
+		synchronized (this) {
+			run = this.done;
+		}
+
+		run.join();
+	}
+
+	public synchronized boolean isRunning() {
+		return !done.isDone();
+	}
+
+	/**
+	 * Runs a task on the simulation thread between two cycles and waits for
+	 * it to finish
+	 *
+	 * @param task
+	 *            the task, which may use the processor
+	 */
+	public void execute(Runnable task) {
+		Future<?> result = thread.submit(task);
+
+		try {
+			result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the progress of the current run
+	 *
+	 * @return the cycles simulated of those requested, the instructions
+	 *         committed and the IPC so far
+	 */
+	public String getProgress() {
+		if (!isRunning()) {
+			return "No simulation is running";
+		}
+
+		StringBuilder progress = new StringBuilder();
+		execute(() -> {
+			long cycles = processor.getTotalCycles() - startCycles;
+			progress.append(String.format(Locale.ROOT, "Simulated %d of %d cycles, %d instructions committed, IPC %.4f",
+					cycles, requested, processor.getInstructionsCommited(),
+					ratio(processor.getInstructionsCommited(), processor.getTotalCycles())));
+		});
+
+		return progress.toString();
+	}
+
+	/**
+	 * Stops the simulation thread once the tasks queued on it are done
+	 */
+	public void shutdown() {
+		thread.shutdown();
+	}
+
+	private void begin() {
+		this.startCycles = processor.getTotalCycles();
+		this.reportTime = System.nanoTime();
+		this.reportCycles = this.startCycles;
+		this.reportInstructions = processor.getInstructionsCommited();
+		step();
+	}
+
+	/**
+	 * Simulates one step, then queues the next one behind the tasks that came
+	 * in while it ran
+	 */
+	private void step() {
+		long cycles = processor.getTotalCycles() - startCycles;
+
+		if (stopRequested) {
+			end("Simulation stopped after " + cycles + " cycles");
+			return;
+		}
+
+		boolean halt;
+		try {
+			halt = processor.cycle((int) Math.min(CYCLES_PER_STEP, requested - cycles));
+		} catch (RuntimeException e) {
+			end("Simulation failed: " + e);
+			return;
+		} catch (Error e) {
+			/* The run is over either way, but the thread has to see the error */
+			end("Simulation failed: " + e);
+			throw e;
+		}
+
+		if (halt) {
+			end("HALT instruction encountered. Simulation halted");
+		} else if (processor.getBreakReason() != null) {
+			end("Stopped at cycle " + processor.getTotalCycles() + ": " + processor.getBreakReason());
+		} else if (processor.getTotalCycles() - startCycles >= requested) {
+			end("Simulation ran for " + requested + " cycles");
+		} else {
+			long now = System.nanoTime();
+			if (now - reportTime >= PROGRESS_INTERVAL) {
+				report(now);
+			}
+			thread.execute(this::step);
+		}
+	}
+
+	/**
+	 * Reports the cycles simulated every second and the IPC since the last
+	 * report
+	 */
+	private void report(long now) {
+		long cycles = processor.getTotalCycles();
+		long instructions = processor.getInstructionsCommited();
+
+		output.accept(String.format(Locale.ROOT,
+				"Progress: %d of %d cycles, %.0f cycles/s, %d instructions committed, IPC %.4f",
+				cycles - startCycles, requested, (cycles - reportCycles) * 1e9 / (now - reportTime), instructions,
+				ratio(instructions - reportInstructions, cycles - reportCycles)));
+
+		this.reportTime = now;
+		this.reportCycles = cycles;
+		this.reportInstructions = instructions;
+	}
+
+	private void end(String message) {
+		try {
+			output.accept(message);
+		} finally {
+			synchronized (this) {
+				done.complete(null);
+			}
+		}
+	}
+
+	private static double ratio(long numerator, long denominator) {
+		return (denominator == 0) ? 0 : (double) numerator / denominator;
+	}
+}
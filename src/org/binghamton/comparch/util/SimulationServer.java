@@ -0,0 +1,334 @@
+package org.binghamton.comparch.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.binghamton.comparch.systems.ProcessorConfig;
+import org.binghamton.comparch.systems.ProcessorReport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs simulations for local clients over HTTP, so that they pay for starting
+ * the JVM and assembling a program once instead of for every run. The server
+ * only listens on the loopback address.
+ *
+ * Every job gets a processor of its own and runs on a fixed pool of worker
+ * threads, one for every CPU by default. Connections are handled on a
+ * separate pool that grows as needed, so a client waiting for a result does
+ * not hold up a worker. Programs are loaded through one ProgramCache shared
+ * by every job.
+ *
+ * POST /jobs?program=FILE[&amp;maxCycles=N][&amp;format=json|csv] queues a job;
+ * the body may hold the processor configuration as properties.
+ * GET /jobs lists the jobs, GET /jobs/ID shows one, GET /jobs/ID/result waits
+ * for the job to finish, streams its report and forgets the job, and DELETE
+ * /jobs/ID cancels a job and forgets it. GET /cache shows the statistics of
+ * the program cache. Finished jobs whose result is never fetched are kept
+ * up to MAX_FINISHED_JOBS, after which the oldest ones are forgotten.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class SimulationServer {
+	public static final long DEFAULT_MAX_CYCLES = 100000000;
+	public static final int MAX_FINISHED_JOBS = 1000;
+
+	private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+
+	private final HttpServer server;
+	private final ExecutorService connections;
+	private final ExecutorService workers;
+	private final ProgramCache programs;
+	private final Map<Long, SimulationJob> jobs;
+
+	/* Ids of the finished jobs that are still kept, oldest first */
+	private final Deque<Long> finished;
+	private final AtomicLong nextId;
+	private final CountDownLatch stopped;
+
+	/**
+	 * Binds the server to a port of the loopback address
+	 *
+	 * @param port
+	 *            the port; 0 picks a free one
+	 * @param workerCount
+	 *            the most jobs simulated at the same time
+	 * @throws IOException
+	 *             if the port can not be bound
+	 * @throws IllegalArgumentException
+	 *             if there is not at least one worker
+	 */
+	public SimulationServer(int port, int workerCount) throws IOException {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("The server needs at least one worker");
+		}
+
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.connections = Executors.newCachedThreadPool(threads("simulation-connection-"));
+		this.workers = Executors.newFixedThreadPool(workerCount, threads("simulation-worker-"));
+		this.programs = new ProgramCache();
+		this.jobs = new ConcurrentSkipListMap<Long, SimulationJob>();
+		this.finished = new ArrayDeque<Long>();
+		this.nextId = new AtomicLong(1);
+		this.stopped = new CountDownLatch(1);
+
+		this.server.setExecutor(this.connections);
+		this.server.createContext("/jobs", this::handleJobs);
+		this.server.createContext("/cache", this::handleCache);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting connections and cancels every job
+	 */
+	public void stop() {
+		server.stop(0);
+		for (SimulationJob job : jobs.values()) {
+			job.cancel();
+		}
+		workers.shutdownNow();
+		connections.shutdownNow();
+		stopped.countDown();
+	}
+
+	/**
+	 * Waits until the server is stopped
+	 *
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public void awaitStop() throws InterruptedException {
+		stopped.await();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public ProgramCache getProgramCache() {
+		return programs;
+	}
+
+	private void handleJobs(HttpExchange exchange) throws IOException {
+		try {
+			String[] path = exchange.getRequestURI().getPath().split("/");
+			String method = exchange.getRequestMethod();
+
+			/* path is "", "jobs", then the id and "result" if they are given */
+			if (path.length == 2 && "POST".equals(method)) {
+				submit(exchange);
+			} else if (path.length == 2 && "GET".equals(method)) {
+				StringBuilder json = new StringBuilder("[");
+				for (SimulationJob job : jobs.values()) {
+					json.append(json.length() == 1 ? "\n  " : ",\n  ").append(job.toJSON());
+				}
+				send(exchange, 200, json.append("\n]\n").toString());
+			} else if (path.length == 3 || path.length == 4) {
+				SimulationJob job = jobs.get(parseId(path[2]));
+
+				if (job == null) {
+					send(exchange, 404, error("No job " + path[2]));
+				} else if (path.length == 3 && "GET".equals(method)) {
+					send(exchange, 200, job.toJSON() + "\n");
+				} else if (path.length == 3 && "DELETE".equals(method)) {
+					job.cancel();
+					forget(job);
+					send(exchange, 200, job.toJSON() + "\n");
+				} else if (path.length == 4 && "result".equals(path[3]) && "GET".equals(method)) {
+					result(exchange, job);
+				} else {
+					send(exchange, 405, error("Unsupported request"));
+				}
+			} else {
+				send(exchange, 404, error("Unknown resource"));
+			}
+		} catch (IllegalArgumentException e) {
+			send(exchange, 400, error(e.getMessage()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void handleCache(HttpExchange exchange) throws IOException {
+		try {
+			send(exchange, 200, String.format("{\"programs\": %d, \"words\": %d, \"hits\": %d, \"misses\": %d, "
+					+ "\"evictions\": %d}\n", programs.getProgramCount(), programs.getSize(), programs.getHits(),
+					programs.getMisses(), programs.getEvictions()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void submit(HttpExchange exchange) throws IOException {
+		Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+		String program = query.get("program");
+		String format = query.getOrDefault("format", "json");
+		long maxCycles = DEFAULT_MAX_CYCLES;
+
+		if (program == null) {
+			throw new IllegalArgumentException("No program given");
+		} else if (!"json".equals(format) && !"csv".equals(format)) {
+			throw new IllegalArgumentException("Format must be json or csv, not " + format);
+		}
+		if (query.containsKey("maxCycles")) {
+			try {
+				maxCycles = Long.parseLong(query.get("maxCycles"));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("maxCycles must be a number");
+			}
+			if (maxCycles < 1) {
+				throw new IllegalArgumentException("maxCycles must be at least one cycle");
+			}
+		}
+
+		/* The body is the configuration, checked before the job is queued */
+		Properties properties = new Properties();
+		try (InputStream body = exchange.getRequestBody()) {
+			properties.load(new StringReader(new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+		}
+		ProcessorConfig config = new ProcessorConfig();
+		config.setProperties(properties);
+
+		SimulationJob job = new SimulationJob(nextId.getAndIncrement(), program, config, maxCycles,
+				"csv".equals(format), programs);
+		jobs.put(job.getId(), job);
+		job.getResult().whenComplete((report, e) -> finished(job));
+		workers.execute(job);
+
+		exchange.getResponseHeaders().set("Location", "/jobs/" + job.getId());
+		send(exchange, 201, job.toJSON() + "\n");
+	}
+
+	/**
+	 * Keeps a job that finished, forgetting the oldest finished jobs once
+	 * there are more than MAX_FINISHED_JOBS
+	 */
+	private void finished(SimulationJob job) {
+		synchronized (finished) {
+			if (!jobs.containsKey(job.getId())) {
+				/* Cancelled and forgotten while it was running */
+				return;
+			}
+
+			finished.addLast(job.getId());
+			while (finished.size() > MAX_FINISHED_JOBS) {
+				jobs.remove(finished.removeFirst());
+			}
+		}
+	}
+
+	private void forget(SimulationJob job) {
+		synchronized (finished) {
+			jobs.remove(job.getId());
+			finished.remove(job.getId());
+		}
+	}
+
+	/**
+	 * Waits for the job to finish, streams its report in chunks and forgets
+	 * the job
+	 */
+	private void result(HttpExchange exchange, SimulationJob job) throws IOException {
+		String report;
+
+		try {
+			report = job.getResult().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			send(exchange, 503, error("The server is stopping"));
+			return;
+		} catch (ExecutionException e) {
+			report = null;
+		}
+
+		/* The job is finished, and the client has what it waited for */
+		forget(job);
+
+		if (report == null) {
+			send(exchange, 409, job.toJSON() + "\n");
+			return;
+		}
+
+		byte[] bytes = report.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", job.isCSV() ? "text/csv" : "application/json");
+		exchange.sendResponseHeaders(200, 0);
+		try (OutputStream out = exchange.getResponseBody()) {
+			for (int offset = 0; offset < bytes.length; offset += STREAM_CHUNK_SIZE) {
+				out.write(bytes, offset, Math.min(STREAM_CHUNK_SIZE, bytes.length - offset));
+			}
+		}
+	}
+
+	private static void send(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static String error(String message) {
+		return "{\"error\": " + ProcessorReport.quote(message) + "}\n";
+	}
+
+	private static long parseId(String id) {
+		try {
+			return Long.parseLong(id);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Job ids are numbers, not " + id);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String query) {
+		Map<String, String> parameters = new HashMap<String, String>();
+
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				int equals = parameter.indexOf('=');
+				if (equals > 0) {
+					parameters.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+							URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+				}
+			}
+		}
+
+		return parameters;
+	}
+
+	private static ThreadFactory threads(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,90 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the driver in batch mode in its own JVM and checks the exit code, and
+ * what it writes, when the program halts, reaches the cycle limit, fails in
+ * the simulation or can not be read, and when the arguments or the
+ * configuration are wrong.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class DriverTest {
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path badJump = Files.createTempFile("driver", ".txt");
+		Path badLoad = Files.createTempFile("driver", ".txt");
+		Path badConfig = Files.createTempFile("driver", ".properties");
+		try {
+			Files.write(badJump, Arrays.asList("MOVC R1, #3", "JUMP R1, #0", "HALT"));
+			Files.write(badLoad, Arrays.asList("MOVC R1, #0", "LOAD R2, R1, #4096", "HALT"));
+			Files.write(badConfig, Arrays.asList("issueWidth=0"));
+
+			run("a program that halts", 0, "\"halted\"", "programs/test1.txt");
+			run("a program that reaches the cycle limit", 1, "\"halted\"", "--max-cycles", "1000",
+					"programs/loop.txt");
+			run("an unknown option", 2, "Usage", "--frobnicate", "programs/test1.txt");
+			run("an unknown format", 2, "Usage", "--format", "xml", "programs/test1.txt");
+			run("no program", 2, "Usage", "--max-cycles", "10");
+			run("a program that can not be read", 3, "", "programs/missing.txt");
+			run("an invalid configuration", 3, "Invalid configuration", "--config", badConfig.toString(),
+					"programs/test1.txt");
+			run("a jump to an address that is not an instruction", 4, "simulation failed at cycle",
+					badJump.toString());
+			run("a LOAD outside of data memory", 4, "simulation failed at cycle", badLoad.toString());
+		} finally {
+			Files.delete(badJump);
+			Files.delete(badLoad);
+			Files.delete(badConfig);
+		}
+
+		if (failures > 0) {
+			System.out.println("DriverTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("DriverTest: passed");
+	}
+
+	private static void run(String name, int exitCode, String output, String... args)
+			throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("Driver");
+		command.addAll(Arrays.asList(args));
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = process.getInputStream()) {
+			byte[] buffer = new byte[4096];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+		int actual = process.waitFor();
+		String written = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+
+		check(name + " exits with " + exitCode + " (not " + actual + ")", actual == exitCode);
+		check(name + " writes \"" + output + "\" (not \"" + written.trim() + "\")", written.contains(output));
+		check(name + " does not throw out of main", !written.contains("\tat "));
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package org.binghamton.comparch.systems;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import org.binghamton.comparch.util.InstructionParser;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Runs programs/loop.txt, which loops without end over arithmetic, LOADs,
+ * STOREs and a branch, and checks with the ThreadMXBean that a clock cycle
+ * allocates nothing once the pipeline has warmed up, with the default
+ * intervals of the CPI stack, the metrics snapshot and the throughput event,
+ * and with a CPI interval of one cycle, which fills the ring of CPI intervals
+ * and goes on over it.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class AllocationTest {
+	private static final String PROGRAM = "programs/loop.txt";
+	private static final int WARM_UP_CYCLES = 20000;
+	private static final int MEASURED_CYCLES = 20000;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("AllocationTest: skipped, the JVM does not count allocated memory");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		Program program = new InstructionParser(PROGRAM).parse();
+
+		run("caches off", threads, program, new ProcessorConfig());
+
+		ProcessorConfig config = new ProcessorConfig();
+		config.setCachesEnabled(true);
+		config.setPrefetcherType(PrefetcherType.STRIDE);
+		run("caches on", threads, program, config);
+
+		config = new ProcessorConfig();
+		config.setIssueWidth(2);
+		config.setLSCount(2);
+		run("two LOAD/STORE units", threads, program, config);
+
+		config = new ProcessorConfig();
+		config.setCPIInterval(1);
+		CPIStack stack = run("CPI interval of one cycle", threads, program, config);
+		check("the CPI stack counts every interval", stack.getIntervalCount() == WARM_UP_CYCLES + MEASURED_CYCLES);
+		check("the CPI stack keeps the latest intervals",
+				stack.getFirstInterval() == stack.getIntervalCount() - CPIStack.MAX_INTERVALS);
+
+		if (failures > 0) {
+			System.out.println("AllocationTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("AllocationTest: passed");
+	}
+
+	private static CPIStack run(String name, ThreadMXBean threads, Program program, ProcessorConfig config) {
+		Processor processor = new Processor(config);
+		processor.initialize(program);
+		processor.cycle(WARM_UP_CYCLES);
+
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < MEASURED_CYCLES; i += 1) {
+			processor.clockCyle();
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+		check(name + " allocates nothing per cycle (" + allocated + " bytes in " + MEASURED_CYCLES + " cycles)",
+				allocated == 0);
+		check(name + " commits instructions", processor.getInstructionsCommited() > 0);
+		return processor.getCPIStack();
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
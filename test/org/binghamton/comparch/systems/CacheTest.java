@@ -0,0 +1,62 @@
+package org.binghamton.comparch.systems;
+
+/**
+ * Accesses a direct-mapped, non-blocking L1 in front of an L2 and checks
+ * the statistics of both when an access is merged into the MSHR of a line
+ * that is being filled. A merged access counts as one miss of the L1 and
+ * does not reach the L2, also when the line was evicted by another miss
+ * before it arrived.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class CacheTest {
+	private static final int MEMORY_LATENCY = 30;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		/* A line still on its way */
+		Cache l2 = newL2();
+		Cache l1 = newL1(l2);
+		long fill = l1.access(0, false, 0);
+		check("the merged access completes with the fill", l1.access(4, false, 1) == fill);
+		check("a merged access is one miss", l1.getMisses() == 2);
+		check("a merged access is merged", l1.getMSHRMerges() == 1);
+		check("a merged access does not reach the L2", l2.getAccesses() == 1);
+
+		/* A line evicted by a miss to the same set before it arrived */
+		l2 = newL2();
+		l1 = newL1(l2);
+		fill = l1.access(0, false, 0);
+		l1.access(64, false, 1);
+		check("the merged access to an evicted line completes with the fill", l1.access(0, false, 2) == fill);
+		check("the L1 counts three accesses", l1.getAccesses() == 3);
+		check("a merged access to an evicted line is one miss (not " + (l1.getMisses() - 2) + ")",
+				l1.getMisses() == 3);
+		check("a merged access to an evicted line does not reach the L2 (" + l2.getAccesses() + " accesses)",
+				l2.getAccesses() == 2);
+
+		if (failures > 0) {
+			System.out.println("CacheTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("CacheTest: passed");
+	}
+
+	private static Cache newL1(Cache next) {
+		return new Cache("L1D", 64, 1, 16, ReplacementPolicy.LRU, true, true, 1, next, MEMORY_LATENCY, 2);
+	}
+
+	private static Cache newL2() {
+		return new Cache("L2", 1024, 4, 32, ReplacementPolicy.LRU, true, true, 6, null, MEMORY_LATENCY, 4);
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
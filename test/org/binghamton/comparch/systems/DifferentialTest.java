@@ -0,0 +1,165 @@
+package org.binghamton.comparch.systems;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.binghamton.comparch.util.InstructionParser;
+
+/**
+ * Runs random looping programs of arithmetic, LOADs, STOREs and branches on
+ * the functional simulator and on the processor, with the caches off and on
+ * and with a URF small enough to run out of physical registers, and compares
+ * data memory once both have halted. Every program stores R0 to R9 to memory
+ * before its HALT, so the registers are compared as well.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class DifferentialTest {
+	private static final long SEED = 520;
+	private static final int PROGRAMS = 150;
+	private static final long MAX_INSTRUCTIONS = 1000000;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		List<Program> programs = generate(new Random(SEED), PROGRAMS);
+
+		run("caches off", programs, new ProcessorConfig(), 0);
+
+		ProcessorConfig config = new ProcessorConfig();
+		config.setCachesEnabled(true);
+		run("caches on", programs, config, 0);
+		run("caches on, 18 physical registers", programs, config, 18);
+
+		config = new ProcessorConfig();
+		config.setCachesEnabled(true);
+		config.setPrefetcherType(PrefetcherType.STRIDE);
+		config.setLSCount(2);
+		config.setIssueWidth(2);
+		run("caches on, two LOAD/STORE units", programs, config, 0);
+
+		config = new ProcessorConfig();
+		config.setCachesEnabled(true);
+		config.setL1DMSHRs(0);
+		config.setWriteBack(false);
+		run("caches on, blocking write-through L1", programs, config, 24);
+
+		if (failures > 0) {
+			System.out.println("DifferentialTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("DifferentialTest: passed");
+	}
+
+	private static void run(String name, List<Program> programs, ProcessorConfig config, int urfSize) {
+		for (int i = 0; i < programs.size(); i += 1) {
+			Program program = programs.get(i);
+			FunctionalSimulator reference = new FunctionalSimulator();
+			reference.initialize(program);
+			if (!reference.run(MAX_INSTRUCTIONS)) {
+				continue;
+			}
+
+			String test = name + ", program " + i;
+			try {
+				Processor processor = new Processor(config);
+				if (urfSize > 0) {
+					processor.setURFSize(urfSize);
+				}
+				processor.initialize(program);
+
+				if (!processor.cycle((int) reference.getInstructionsExecuted() * 300 + 20000)) {
+					check(test + " halts", false);
+					continue;
+				}
+				for (int address = 0; address < Processor.SIZE_OF_DATA_MEMORY; address += 4) {
+					int expected = reference.getMemory().getValue(address);
+					int actual = processor.getMemory().getValue(address);
+					if (actual != expected) {
+						check(test + " writes " + expected + " to " + address + " (not " + actual + ")", false);
+						break;
+					}
+				}
+			} catch (RuntimeException e) {
+				check(test + " runs without " + e, false);
+			}
+		}
+	}
+
+	/**
+	 * Generates programs that loop a few times over a random body and store
+	 * R0 to R9 at address 3000 at the end. LOADs and STOREs use R14, which
+	 * stays 0, so every address is a literal and in data memory.
+	 */
+	private static List<Program> generate(Random random, int count) throws IOException {
+		List<Program> programs = new ArrayList<Program>();
+		Path file = Files.createTempFile("differential", ".txt");
+		try {
+			for (int n = 0; n < count; n += 1) {
+				Files.write(file, generate(random));
+				programs.add(new InstructionParser(file.toString()).parse());
+			}
+		} finally {
+			Files.delete(file);
+		}
+		return programs;
+	}
+
+	private static List<String> generate(Random random) {
+		List<String> lines = new ArrayList<String>();
+		lines.add("MOVC R14, #0");
+		lines.add("MOVC R12, #1");
+		for (int r = 0; r < 10; r += 1) {
+			lines.add("MOVC R" + r + ", #" + random.nextInt(50));
+		}
+		lines.add("MOVC R13, #" + (2 + random.nextInt(6)));
+
+		int loop = lines.size();
+		int length = 3 + random.nextInt(12);
+		int slots = 1 + random.nextInt(24);
+		for (int i = 0; i < length; i += 1) {
+			int kind = random.nextInt(10);
+			String rdest = "R" + random.nextInt(10);
+			String rsrc1 = "R" + random.nextInt(10);
+			String rsrc2 = "R" + random.nextInt(10);
+			String address = "#" + (4 * random.nextInt(slots) * (random.nextBoolean() ? 1 : 17) % 2000);
+			if (kind < 3) {
+				String[] opCodes = { "ADD", "SUB", "AND", "OR" };
+				lines.add(opCodes[random.nextInt(opCodes.length)] + " " + rdest + ", " + rsrc1 + ", " + rsrc2);
+			} else if (kind < 4) {
+				lines.add("MUL " + rdest + ", " + rsrc1 + ", " + rsrc2);
+			} else if (kind < 6) {
+				lines.add("LOAD " + rdest + ", R14, " + address);
+			} else if (kind < 8) {
+				lines.add("STORE " + rsrc1 + ", R14, " + address);
+			} else if (kind < 9) {
+				lines.add("MOVC " + rdest + ", #" + random.nextInt(100));
+			} else {
+				lines.add("SUB R10, " + rsrc1 + ", " + rsrc2);
+				lines.add("BZ #8");
+				lines.add("ADD " + rdest + ", " + rsrc1 + ", R12");
+			}
+		}
+		lines.add("SUB R13, R13, R12");
+		lines.add("BNZ #" + ((loop - lines.size()) * 4));
+
+		for (int r = 0; r < 10; r += 1) {
+			lines.add("STORE R" + r + ", R14, #" + (3000 + 4 * r));
+		}
+		lines.add("HALT");
+		return lines;
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package org.binghamton.comparch.systems;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.binghamton.comparch.util.InstructionParser;
+
+/**
+ * Forks a processor halfway through every program in the programs directory
+ * and checks that forking leaves the statistics of the processor it was forked
+ * from unchanged, that an unchanged fork commits the same instructions with
+ * the same results as that processor, cycle by cycle, and that changing and
+ * simulating a fork, its memory included, does not change that processor
+ * either.
+ * Resizing the URF of a fork is checked to reject removing a register that is
+ * in use and to leave the fork as it was.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class ForkTest {
+	private static final String PROGRAMS = "programs";
+	private static final int FORK_CYCLE = 300;
+	private static final int CYCLES = 600;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		List<Path> programs = new ArrayList<Path>();
+		for (Path file : Files.newDirectoryStream(Paths.get(PROGRAMS), "*.txt")) {
+			programs.add(file);
+		}
+		programs.sort(null);
+
+		for (Path file : programs) {
+			Program program = new InstructionParser(file.toString()).parse();
+
+			run(file + ", default", program, new ProcessorConfig());
+
+			ProcessorConfig config = new ProcessorConfig();
+			config.setCachesEnabled(true);
+			config.setPrefetcherType(PrefetcherType.STRIDE);
+			config.setIssueWidth(2);
+			run(file + ", caches on", program, config);
+		}
+
+		resize(new InstructionParser("programs/loop.txt").parse());
+
+		if (failures > 0) {
+			System.out.println("ForkTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("ForkTest: passed");
+	}
+
+	private static void run(String name, Program program, ProcessorConfig config) {
+		Processor parent = build(program, config);
+		parent.cycle(FORK_CYCLE);
+
+		String statistics = statistics(parent);
+		Processor fork = parent.fork();
+		check(name + " forking leaves the statistics unchanged", statistics(parent).equals(statistics));
+		check(name + " the fork starts with the same statistics", statistics(fork).equals(statistics));
+
+		/* A fork that is not changed */
+		if (!commitsTheSame(name, parent, fork, CYCLES)) {
+			return;
+		}
+
+		/* A changed fork, against a processor that was never forked */
+		parent = build(program, config);
+		parent.cycle(FORK_CYCLE);
+		statistics = statistics(parent);
+		fork = parent.fork();
+		if (config.isCachesEnabled()) {
+			fork.setMemoryLatency(5);
+		}
+		fork.resizeURF(fork.getURF().getPhysicalRegisterSize() + 8);
+		fork.setMemoryDependencePrediction(false);
+		fork.getMemory().setValue(0, fork.getMemory().getValue(0) + 1);
+		fork.cycle(CYCLES);
+		check(name + " simulating a changed fork leaves the statistics unchanged",
+				statistics(parent).equals(statistics));
+
+		Processor reference = build(program, config);
+		reference.cycle(FORK_CYCLE);
+		commitsTheSame(name + " forked from", reference, parent, CYCLES);
+	}
+
+	/**
+	 * Forks a processor with registers in use and checks that the URF of the
+	 * fork can not be shrunk to one register, and that the fork goes on as if
+	 * it had not been tried
+	 */
+	private static void resize(Program program) {
+		Processor parent = build(program, new ProcessorConfig());
+		parent.cycle(FORK_CYCLE);
+		Processor fork = parent.fork();
+		int size = fork.getURF().getPhysicalRegisterSize();
+
+		check("registers are in use", fork.getURF().getAllocatedCount() > 1);
+		try {
+			fork.resizeURF(1);
+			check("removing registers that are in use is rejected", false);
+		} catch (IllegalArgumentException e) {
+			check("a rejected resize leaves the URF (" + fork.getURF().getPhysicalRegisterSize() + " registers)",
+					fork.getURF().getPhysicalRegisterSize() == size);
+		}
+		commitsTheSame("after a rejected resize", parent, fork, CYCLES);
+	}
+
+	/**
+	 * Simulates both processors one cycle at a time and checks that they
+	 * commit the same amount of instructions, to the same registers and
+	 * memory, every cycle
+	 *
+	 * @return true if they are the same for every cycle
+	 */
+	private static boolean commitsTheSame(String name, Processor expected, Processor actual, int cycles) {
+		for (int i = 0; i < cycles; i += 1) {
+			boolean halted = expected.cycle(1);
+			boolean forkHalted = actual.cycle(1);
+
+			boolean same = halted == forkHalted
+					&& expected.getInstructionsCommited() == actual.getInstructionsCommited()
+					&& committed(expected).equals(committed(actual));
+			if (!same) {
+				check(name + " commits the same at cycle " + expected.getTotalCycles() + " ("
+						+ expected.getInstructionsCommited() + " and " + actual.getInstructionsCommited()
+						+ " instructions)", false);
+				return false;
+			} else if (halted) {
+				break;
+			}
+		}
+
+		return true;
+	}
+
+	private static Processor build(Program program, ProcessorConfig config) {
+		Processor processor = new Processor(config);
+		processor.initialize(program);
+		return processor;
+	}
+
+	/**
+	 * Returns what the committed instructions changed: the architectural
+	 * registers, with the values of the physical registers, and memory
+	 */
+	private static String committed(Processor processor) {
+		return processor.getURF().stringRRAT() + processor.getURF().stringRegisters()
+				+ processor.getMemory().stringMemory();
+	}
+
+	private static String statistics(Processor processor) {
+		StringBuilder state = new StringBuilder();
+		state.append(processor.getTotalCycles()).append(' ');
+		state.append(processor.getInstructionsCommited()).append(' ');
+		state.append(processor.getDispatchedStalledCycles()).append(' ');
+		state.append(processor.getNoIssuesCycles()).append(' ');
+		state.append(processor.getMSHRStalledCycles()).append(' ');
+		state.append(processor.getLoadsCommitted()).append(' ');
+		state.append(processor.getStoresCommitted()).append(' ');
+		state.append(processor.getTakenBranches()).append(' ');
+		state.append(processor.getSpeculativeLoadsIssued()).append(' ');
+		state.append(processor.getLoadsHeldByPredictor()).append(' ');
+		state.append(processor.getMemoryOrderViolations()).append('\n');
+		for (Cache cache = processor.getDataCache(); cache != null; cache = cache.getNext()) {
+			state.append(cache.getAccesses()).append(' ').append(cache.getMisses()).append(' ');
+			state.append(cache.getWritebacks()).append(' ').append(cache.getMSHRMerges()).append('\n');
+		}
+		state.append(processor.getMetrics().toCSV());
+		state.append(processor.getCPIStack());
+		state.append(processor.getProfiler());
+		return state.toString();
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.binghamton.comparch.systems;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.binghamton.comparch.util.InstructionParser;
+
+/**
+ * Simulates every program in the programs directory one cycle at a time, for
+ * at most 200 cycles, and compares a trace of the processor with the one kept
+ * in test/golden. Every cycle adds a line with the cycles, the committed
+ * instructions, the dispatched stalled cycles and the cycles without issue,
+ * followed by the IQ, the ROB and the memory written so far. Each program is
+ * traced with the default configuration and with the caches on and two of
+ * every unit.
+ *
+ * A change that is meant to change the timing of the processor updates the
+ * traces by running this class with the argument "update".
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class GoldenTraceTest {
+	private static final String PROGRAMS = "programs";
+	private static final String GOLDEN = "test/golden";
+	private static final int MAX_CYCLES = 200;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		boolean update = args.length > 0 && args[0].equals("update");
+
+		List<Path> programs = new ArrayList<Path>();
+		for (Path file : Files.newDirectoryStream(Paths.get(PROGRAMS), "*.txt")) {
+			programs.add(file);
+		}
+		programs.sort(null);
+
+		for (Path file : programs) {
+			Program program = new InstructionParser(file.toString()).parse();
+
+			List<String> trace = new ArrayList<String>();
+			trace.add("== default");
+			trace(trace, program, new ProcessorConfig());
+
+			ProcessorConfig config = new ProcessorConfig();
+			config.setCachesEnabled(true);
+			config.setIssueWidth(2);
+			config.setALUCount(2);
+			config.setLSCount(2);
+			trace.add("== caches on, two of every unit");
+			trace(trace, program, config);
+
+			Path golden = Paths.get(GOLDEN, file.getFileName().toString());
+			if (update) {
+				Files.createDirectories(golden.getParent());
+				Files.write(golden, trace, StandardCharsets.UTF_8);
+			} else if (!Files.exists(golden)) {
+				check(golden + " exists", false);
+			} else {
+				compare(golden, Files.readAllLines(golden, StandardCharsets.UTF_8), trace);
+			}
+		}
+
+		if (failures > 0) {
+			System.out.println("GoldenTraceTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println(update ? "GoldenTraceTest: updated" : "GoldenTraceTest: passed");
+	}
+
+	private static void trace(List<String> trace, Program program, ProcessorConfig config) {
+		Processor processor = new Processor(config);
+		processor.initialize(program);
+
+		boolean halted = false;
+		for (int i = 0; i < MAX_CYCLES && !halted; i += 1) {
+			try {
+				halted = processor.cycle(1);
+			} catch (RuntimeException e) {
+				trace.add("EXCEPTION " + e);
+				return;
+			}
+			trace.add(processor.getTotalCycles() + " " + processor.getInstructionsCommited() + " "
+					+ processor.getDispatchedStalledCycles() + " " + processor.getNoIssuesCycles() + " | "
+					+ flatten(processor.getIQ().toString()) + " | " + flatten(processor.getROB().toString())
+					+ " | " + flatten(processor.getMemory().stringMemory()));
+		}
+	}
+
+	private static String flatten(String string) {
+		return string.replace("\n", ";");
+	}
+
+	private static void compare(Path golden, List<String> expected, List<String> actual) {
+		int lines = Math.min(expected.size(), actual.size());
+		for (int i = 0; i < lines; i += 1) {
+			if (!expected.get(i).equals(actual.get(i))) {
+				check(golden + " line " + (i + 1) + ": expected \"" + expected.get(i) + "\" but was \""
+						+ actual.get(i) + "\"", false);
+				return;
+			}
+		}
+		check(golden + " has " + expected.size() + " lines (not " + actual.size() + ")",
+				expected.size() == actual.size());
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package org.binghamton.comparch.systems;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.binghamton.comparch.util.InstructionParser;
+
+/**
+ * Simulates every program in the programs directory with idle cycle skipping
+ * on and off and checks that both processors are in the same state, counters,
+ * metrics and CPI stack included, at the end of every call to cycle. The
+ * configurations have long memory latencies, so there are many idle cycles
+ * to skip.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class IdleSkipTest {
+	private static final String PROGRAMS = "programs";
+	private static final int MAX_CYCLES = 3000;
+	private static final int[] CALL_CYCLES = { 7, 100 };
+
+	private static int failures = 0;
+	private static long skippedCycles = 0;
+
+	public static void main(String[] args) throws IOException {
+		List<Path> programs = new ArrayList<Path>();
+		for (Path file : Files.newDirectoryStream(Paths.get(PROGRAMS), "*.txt")) {
+			programs.add(file);
+		}
+		programs.sort(null);
+
+		for (Path file : programs) {
+			Program program = new InstructionParser(file.toString()).parse();
+
+			ProcessorConfig config = new ProcessorConfig();
+			config.setMemoryLatency(100);
+			run(file + ", caches off", program, config);
+
+			config = new ProcessorConfig();
+			config.setCachesEnabled(true);
+			config.setMemoryLatency(100);
+			run(file + ", caches on", program, config);
+
+			config = new ProcessorConfig();
+			config.setCachesEnabled(true);
+			config.setL2Enabled(false);
+			config.setL1DMSHRs(1);
+			config.setMemoryLatency(60);
+			config.setPrefetcherType(PrefetcherType.NEXT_LINE);
+			config.setIssueWidth(2);
+			config.setLSCount(2);
+			run(file + ", one MSHR and two LOAD/STORE units", program, config);
+		}
+		check("cycles are skipped", skippedCycles > 0);
+
+		if (failures > 0) {
+			System.out.println("IdleSkipTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("IdleSkipTest: passed");
+	}
+
+	private static void run(String name, Program program, ProcessorConfig config) {
+		for (int cycles : CALL_CYCLES) {
+			config.setIdleCycleSkipping(true);
+			Processor skipping = new Processor(config);
+			skipping.initialize(program);
+
+			config.setIdleCycleSkipping(false);
+			Processor simulating = new Processor(config);
+			simulating.initialize(program);
+
+			String test = name + ", " + cycles + " cycles a call";
+			for (int total = 0; total < MAX_CYCLES; total += cycles) {
+				boolean halted = skipping.cycle(cycles);
+				check(test + " halts in the same cycle", halted == simulating.cycle(cycles));
+
+				String expected = state(simulating);
+				String actual = state(skipping);
+				if (!actual.equals(expected)) {
+					check(test + " is the same after cycle " + simulating.getTotalCycles(), false);
+					break;
+				}
+				if (halted) {
+					break;
+				}
+			}
+			skippedCycles += skipping.getSkippedCycles();
+		}
+	}
+
+	private static String state(Processor processor) {
+		StringBuilder state = new StringBuilder(processor.toString());
+		state.append(processor.getTotalCycles()).append(' ');
+		state.append(processor.getInstructionsCommited()).append(' ');
+		state.append(processor.getDispatchedStalledCycles()).append(' ');
+		state.append(processor.getNoIssuesCycles()).append(' ');
+		state.append(processor.getMSHRStalledCycles()).append(' ');
+		state.append(processor.getLoadsHeldByPredictor()).append(' ');
+		state.append(processor.getMemoryOrderViolations()).append('\n');
+		state.append(processor.getMetrics().toCSV());
+		state.append(processor.getCPIStack());
+		return state.toString();
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package org.binghamton.comparch.systems;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.binghamton.comparch.util.InstructionParser;
+
+/**
+ * Runs programs/replay.txt, in which a LOAD is issued ahead of an older STORE
+ * to the same address that waits on a cache miss. The LOAD reads the old
+ * value, a younger STORE writes what it read back to the same address and to
+ * another one, and the LOAD is replayed once the older STORE has written its
+ * value. Both addresses have to end up with the value of the older STORE.
+ *
+ * Also runs a loop in which a LOAD reads what the STORE before it writes,
+ * after a chain of MULs. The first LOAD is replayed and trains the store set
+ * predictor, which holds every later LOAD back. Each of those is counted once,
+ * however many cycles it waits in the IQ.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class MemoryOrderTest {
+	private static final String PROGRAM = "programs/replay.txt";
+	private static final List<String> HELD = Arrays.asList("MOVC R14, #0", "MOVC R12, #1", "MOVC R13, #20",
+			"MOVC R5, #0", "MOVC R3, #0", "MUL R1, R5, R5", "MUL R1, R1, R12", "MUL R1, R1, R12", "ADD R5, R5, R12",
+			"STORE R1, R14, #0", "LOAD R2, R14, #0", "ADD R3, R3, R2", "SUB R13, R13, R12", "BNZ #-32", "HALT");
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		Program program = new InstructionParser(PROGRAM).parse();
+
+		ProcessorConfig config = new ProcessorConfig();
+		config.setCachesEnabled(true);
+		run("one LOAD/STORE unit", program, config);
+
+		config = new ProcessorConfig();
+		config.setCachesEnabled(true);
+		config.setLSCount(2);
+		config.setIssueWidth(2);
+		run("two LOAD/STORE units", program, config);
+
+		Path file = Files.createTempFile("held", ".txt");
+		try {
+			Files.write(file, HELD);
+			program = new InstructionParser(file.toString()).parse();
+		} finally {
+			Files.delete(file);
+		}
+		runHeld("caches off", program, new ProcessorConfig());
+
+		config = new ProcessorConfig();
+		config.setCachesEnabled(true);
+		runHeld("caches on", program, config);
+
+		if (failures > 0) {
+			System.out.println("MemoryOrderTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("MemoryOrderTest: passed");
+	}
+
+	private static void run(String name, Program program, ProcessorConfig config) {
+		Processor processor = new Processor(config);
+		processor.initialize(program);
+
+		check(name + " halts", processor.cycle(10000));
+		check(name + " replays the LOAD", processor.getMemoryOrderViolations() == 1);
+		check(name + " writes 41 to 0", processor.getMemory().getValue(0) == 41);
+		check(name + " writes 41 to 412", processor.getMemory().getValue(412) == 41);
+	}
+
+	private static void runHeld(String name, Program program, ProcessorConfig config) {
+		Processor processor = new Processor(config);
+		processor.initialize(program);
+		StoreSetPredictor predictor = processor.getStoreSetPredictor();
+
+		check(name + " halts", processor.cycle(10000));
+		check(name + " commits 20 LOADs", processor.getLoadsCommitted() == 20);
+		check(name + " replays the first LOAD", processor.getMemoryOrderViolations() == 1);
+		check(name + " holds 19 LOADs (not " + processor.getLoadsHeldByPredictor() + ")",
+				processor.getLoadsHeldByPredictor() == 19);
+		check(name + " looks up 20 LOADs (not " + predictor.getLookups() + ")", predictor.getLookups() == 20);
+		check(name + " predicts 19 dependences (not " + predictor.getPredictedDependences() + ")",
+				predictor.getPredictedDependences() == 19);
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package org.binghamton.comparch.systems;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.binghamton.comparch.util.InstructionParser;
+
+/**
+ * Simulates every program in the programs directory, and a loop of strided
+ * LOADs and STOREs that trains the prefetcher, once, keeping the state
+ * of the processor at the end of every cycle, and checks that going back to
+ * random earlier cycles gives the same state, counters, metrics, CPI stack,
+ * profile, caches and memory included, and so does simulating on from there.
+ * A fork is checked the same way, along with the processor it was forked
+ * from. The configurations have outstanding misses, a prefetcher and a
+ * smaller URF, so that every part of the state is in the snapshots.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class RewindTest {
+	private static final String PROGRAMS = "programs";
+	private static final long SEED = 48;
+	private static final int MAX_CYCLES = 1500;
+	private static final int HISTORY_INTERVAL = 40;
+	private static final int HISTORY_RETENTION = 1000;
+	private static final int REWINDS = 8;
+	private static final List<String> STRIDED = Arrays.asList("MOVC R1, #0", "MOVC R2, #16", "MOVC R3, #60",
+			"MOVC R4, #1", "LOAD R5, R1, #0", "ADD R5, R5, R4", "STORE R5, R1, #2000", "ADD R1, R1, R2",
+			"SUB R3, R3, R4", "BNZ #-20", "HALT");
+
+	private static int failures = 0;
+	private static int rewinds = 0;
+
+	public static void main(String[] args) throws IOException {
+		List<Path> programs = new ArrayList<Path>();
+		for (Path file : Files.newDirectoryStream(Paths.get(PROGRAMS), "*.txt")) {
+			programs.add(file);
+		}
+		programs.sort(null);
+
+		List<Program> parsed = new ArrayList<Program>();
+		List<String> names = new ArrayList<String>();
+		for (Path file : programs) {
+			parsed.add(new InstructionParser(file.toString()).parse());
+			names.add(file.toString());
+		}
+		Path file = Files.createTempFile("rewind", ".txt");
+		try {
+			Files.write(file, STRIDED);
+			parsed.add(new InstructionParser(file.toString()).parse());
+			names.add("strided loop");
+		} finally {
+			Files.delete(file);
+		}
+
+		Random random = new Random(SEED);
+		for (int i = 0; i < parsed.size(); i += 1) {
+			Program program = parsed.get(i);
+			String name = names.get(i);
+
+			run(name + ", default", program, new ProcessorConfig(), 0, random);
+
+			ProcessorConfig config = new ProcessorConfig();
+			config.setCachesEnabled(true);
+			config.setMemoryLatency(60);
+			config.setPrefetcherType(PrefetcherType.STRIDE);
+			config.setIssueWidth(2);
+			config.setLSCount(2);
+			run(name + ", caches on, two LOAD/STORE units", program, config, 0, random);
+
+			config = new ProcessorConfig();
+			config.setCachesEnabled(true);
+			config.setL1DMSHRs(1);
+			config.setPrefetcherType(PrefetcherType.NEXT_LINE);
+			run(name + ", one MSHR, 18 physical registers", program, config, 18, random);
+		}
+		check("cycles are gone back to", rewinds > 0);
+
+		if (failures > 0) {
+			System.out.println("RewindTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("RewindTest: passed");
+	}
+
+	private static void run(String name, Program program, ProcessorConfig config, int urfSize, Random random) {
+		try {
+			/* The state at the end of every cycle, the first time */
+			Processor reference = build(program, config, urfSize);
+			List<String> states = new ArrayList<String>();
+			states.add(state(reference));
+			boolean halted = false;
+			while (!halted && reference.getTotalCycles() < MAX_CYCLES) {
+				halted = reference.cycle(1);
+				states.add(state(reference));
+			}
+
+			Processor processor = build(program, config, urfSize);
+			processor.startHistory(HISTORY_INTERVAL, HISTORY_RETENTION);
+			processor.cycle(MAX_CYCLES);
+			compare(name + " without going back", states, processor);
+
+			for (int i = 0; i < REWINDS; i += 1) {
+				int cycle = random.nextInt(processor.getTotalCycles() + 1);
+				processor.rewind(cycle);
+				if (!compare(name + " after going back to cycle " + cycle, states, processor)) {
+					return;
+				}
+				rewinds += 1;
+
+				/* Not past the end of the first run, a halted processor goes on */
+				int cycles = Math.min(1 + random.nextInt(2 * HISTORY_INTERVAL), states.size() - 1 - cycle);
+				processor.cycle(cycles);
+				if (!compare(name + " after going back to cycle " + cycle + " and on", states, processor)) {
+					return;
+				}
+			}
+
+			Processor parent = build(program, config, urfSize);
+			parent.cycle(states.size() / 2);
+			Processor fork = parent.fork();
+			compare(name + " forked", states, fork);
+			while (fork.getTotalCycles() < states.size() - 1) {
+				int cycles = Math.min(1 + random.nextInt(HISTORY_INTERVAL), states.size() - 1 - parent.getTotalCycles());
+				fork.cycle(cycles);
+				parent.cycle(cycles);
+				if (!compare(name + " fork", states, fork) || !compare(name + " forked from", states, parent)) {
+					return;
+				}
+			}
+		} catch (RuntimeException e) {
+			check(name + " runs without " + e, false);
+		}
+	}
+
+	private static Processor build(Program program, ProcessorConfig config, int urfSize) {
+		Processor processor = new Processor(config);
+		if (urfSize > 0) {
+			processor.setURFSize(urfSize);
+		}
+		processor.initialize(program);
+		return processor;
+	}
+
+	private static boolean compare(String name, List<String> states, Processor processor) {
+		int cycle = processor.getTotalCycles();
+		boolean same = cycle < states.size() && state(processor).equals(states.get(cycle));
+		check(name + " is the same at cycle " + cycle, same);
+		return same;
+	}
+
+	private static String state(Processor processor) {
+		StringBuilder state = new StringBuilder(processor.toString());
+		state.append(processor.getURF().stringRAT()).append(processor.getURF().stringRRAT());
+		state.append(processor.getURF().stringRegisters());
+		state.append(processor.getTotalCycles()).append(' ');
+		state.append(processor.getInstructionsCommited()).append(' ');
+		state.append(processor.getDispatchedStalledCycles()).append(' ');
+		state.append(processor.getNoIssuesCycles()).append(' ');
+		state.append(processor.getMSHRStalledCycles()).append(' ');
+		state.append(processor.getLoadsCommitted()).append(' ');
+		state.append(processor.getStoresCommitted()).append(' ');
+		state.append(processor.getTakenBranches()).append(' ');
+		state.append(processor.getSpeculativeLoadsIssued()).append(' ');
+		state.append(processor.getLoadsHeldByPredictor()).append(' ');
+		state.append(processor.getMemoryOrderViolations()).append(' ');
+		state.append(processor.getStoreSetPredictor().getLookups()).append(' ');
+		state.append(processor.getStoreSetPredictor().getPredictedDependences()).append('\n');
+		for (Cache cache = processor.getDataCache(); cache != null; cache = cache.getNext()) {
+			state.append(cache.getAccesses()).append(' ').append(cache.getMisses()).append(' ');
+			state.append(cache.getWritebacks()).append(' ').append(cache.getMSHRMerges()).append(' ');
+			state.append(cache.getPrefetchesIssued()).append(' ').append(cache.getPrefetchHits()).append('\n');
+		}
+		state.append(processor.getMetrics().toCSV());
+		state.append(processor.getCPIStack());
+		state.append(processor.getProfiler());
+		return state.toString();
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package org.binghamton.comparch.systems;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.binghamton.comparch.util.InstructionParser;
+
+/**
+ * Runs the programs in the programs directory and random looping programs
+ * that call a subroutine on the functional simulator with and without
+ * translation, a random amount of instructions at a time, and checks that
+ * the registers, the flag, the program counter and data memory are the same
+ * after every run. The translating simulators translate blocks after one or
+ * two executions, and one of them has a code budget small enough to evict
+ * blocks.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class TranslationTest {
+	private static final String PROGRAMS = "programs";
+	private static final long SEED = 33;
+	private static final int RANDOM_PROGRAMS = 150;
+	private static final long MAX_INSTRUCTIONS = 200000;
+
+	private static int failures = 0;
+	private static long translatedExecutions = 0;
+	private static int blocksEvicted = 0;
+
+	public static void main(String[] args) throws IOException {
+		List<Program> programs = new ArrayList<Program>();
+		List<String> names = new ArrayList<String>();
+
+		List<Path> files = new ArrayList<Path>();
+		for (Path file : Files.newDirectoryStream(Paths.get(PROGRAMS), "*.txt")) {
+			files.add(file);
+		}
+		files.sort(null);
+		for (Path file : files) {
+			programs.add(new InstructionParser(file.toString()).parse());
+			names.add(file.toString());
+		}
+
+		Random random = new Random(SEED);
+		Path file = Files.createTempFile("translation", ".txt");
+		try {
+			for (int n = 0; n < RANDOM_PROGRAMS; n += 1) {
+				Files.write(file, generate(random));
+				programs.add(new InstructionParser(file.toString()).parse());
+				names.add("random program " + n);
+			}
+		} finally {
+			Files.delete(file);
+		}
+
+		for (int i = 0; i < programs.size(); i += 1) {
+			run(names.get(i) + ", hot after one run", programs.get(i), TranslationCache.DEFAULT_CODE_BUDGET, 1,
+					random);
+			run(names.get(i) + ", hot after two runs", programs.get(i), TranslationCache.DEFAULT_CODE_BUDGET, 2,
+					random);
+			run(names.get(i) + ", 2 KB of code", programs.get(i), 2048, 1, random);
+		}
+		check("blocks are translated", translatedExecutions > 0);
+		check("blocks are evicted", blocksEvicted > 0);
+
+		if (failures > 0) {
+			System.out.println("TranslationTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("TranslationTest: passed");
+	}
+
+	private static void run(String name, Program program, int codeBudget, int hotThreshold, Random random) {
+		FunctionalSimulator interpreting = new FunctionalSimulator();
+		interpreting.setTranslationEnabled(false);
+		interpreting.initialize(program);
+
+		FunctionalSimulator translating = new FunctionalSimulator(codeBudget, hotThreshold);
+		translating.initialize(program);
+
+		try {
+			while (!interpreting.isHalted() && interpreting.getInstructionsExecuted() < MAX_INSTRUCTIONS) {
+				long instructions = 1 + random.nextInt(random.nextBoolean() ? 5 : 500);
+				long executed = interpreting.getInstructionsExecuted();
+				boolean halted = translating.run(instructions);
+				check(name + " halts at the same instruction", halted == interpreting.run(instructions));
+
+				if (!same(interpreting, translating)) {
+					check(name + " is the same after " + interpreting.getInstructionsExecuted() + " instructions",
+							false);
+					break;
+				}
+				if (!halted && interpreting.getInstructionsExecuted() - executed < instructions) {
+					/* The program counter left the program */
+					break;
+				}
+			}
+		} catch (RuntimeException e) {
+			check(name + " runs without " + e, false);
+		}
+
+		translatedExecutions += translating.getTranslationCache().getTranslatedExecutions();
+		blocksEvicted += translating.getTranslationCache().getBlocksEvicted();
+	}
+
+	private static boolean same(FunctionalSimulator expected, FunctionalSimulator actual) {
+		if (expected.getPc() != actual.getPc() || expected.isHalted() != actual.isHalted()
+				|| expected.getInstructionsExecuted() != actual.getInstructionsExecuted()) {
+			return false;
+		}
+		for (int register = 0; register < FunctionalSimulator.NUM_OF_REGISTERS; register += 1) {
+			if (expected.getRegister(register) != actual.getRegister(register)) {
+				return false;
+			}
+		}
+		for (int address = 0; address < Processor.SIZE_OF_DATA_MEMORY; address += 4) {
+			if (expected.getMemory().getValue(address) != actual.getMemory().getValue(address)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Generates a program that loops over a random body, which may call a
+	 * subroutine with BAL that returns with JUMP X. R11 holds the address of
+	 * the subroutine, R12 holds 1, R13 counts the iterations down and R14 stays
+	 * 0, so that every LOAD and STORE address is a literal in data memory.
+	 */
+	private static List<String> generate(Random random) {
+		List<String> body = new ArrayList<String>();
+		int length = 3 + random.nextInt(20);
+		for (int i = 0; i < length; i += 1) {
+			body.addAll(generateInstruction(random, true));
+		}
+
+		List<String> subroutine = new ArrayList<String>();
+		length = 1 + random.nextInt(6);
+		for (int i = 0; i < length; i += 1) {
+			subroutine.addAll(generateInstruction(random, false));
+		}
+		subroutine.add("JUMP X, #0");
+
+		List<String> lines = new ArrayList<String>();
+		lines.add("MOVC R14, #0");
+		lines.add("MOVC R12, #1");
+		for (int r = 0; r < 10; r += 1) {
+			lines.add("MOVC R" + r + ", #" + random.nextInt(50));
+		}
+		lines.add("MOVC R13, #" + (2 + random.nextInt(40)));
+		lines.add("MOVC R11, #0");
+
+		int loop = lines.size();
+		lines.addAll(body);
+		lines.add("SUB R13, R13, R12");
+		lines.add("BNZ #" + ((loop - lines.size()) * 4));
+		lines.add("HALT");
+
+		int address = Processor.SIZE_OF_DATA_MEMORY + lines.size() * 4;
+		lines.set(loop - 1, "MOVC R11, #" + address);
+		lines.addAll(subroutine);
+		return lines;
+	}
+
+	private static List<String> generateInstruction(Random random, boolean calls) {
+		List<String> lines = new ArrayList<String>();
+		int kind = random.nextInt(calls ? 11 : 10);
+		String rdest = "R" + random.nextInt(10);
+		String rsrc1 = "R" + random.nextInt(10);
+		String rsrc2 = "R" + random.nextInt(10);
+		String address = "#" + (4 * random.nextInt(Processor.SIZE_OF_DATA_MEMORY / 4));
+		if (kind < 4) {
+			String[] opCodes = { "ADD", "SUB", "MUL", "AND", "OR" };
+			lines.add(opCodes[random.nextInt(opCodes.length)] + " " + rdest + ", " + rsrc1 + ", " + rsrc2);
+		} else if (kind < 6) {
+			lines.add("LOAD " + rdest + ", R14, " + address);
+		} else if (kind < 8) {
+			lines.add("STORE " + rsrc1 + ", R14, " + address);
+		} else if (kind < 9) {
+			lines.add("MOVC " + rdest + ", #" + (random.nextInt(200) - 100));
+		} else if (kind < 10) {
+			lines.add("SUB R10, " + rsrc1 + ", " + rsrc2);
+			lines.add((random.nextBoolean() ? "BZ" : "BNZ") + " #8");
+			lines.add("ADD " + rdest + ", " + rsrc1 + ", R12");
+		} else {
+			lines.add("BAL R11, #0");
+		}
+		return lines;
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package org.binghamton.comparch.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.binghamton.comparch.systems.Program;
+
+/**
+ * Assembles a generated program of a few MiB, which a parallelism above one
+ * splits into chunks, once as one chunk and once in chunks, and checks that
+ * both give the same program, with new lines and with carriage returns and
+ * new lines. Errors in a later chunk, at its first line and further in, are
+ * checked to be reported at the same line and column of the whole file both
+ * ways.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class InstructionParserTest {
+	private static final long SEED = 35;
+	private static final int LINES = 200000;
+	private static final int PARALLELISM = 8;
+
+	/* The smallest chunk a parallelism above one splits a file into */
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	private static final String BAD_LINE = "ADD R1, R2, R99";
+	private static final int BAD_COLUMN = 13;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		List<String> lines = generate(new Random(SEED));
+		int instructions = 0;
+		for (String line : lines) {
+			instructions += line.trim().isEmpty() ? 0 : 1;
+		}
+
+		Path file = Files.createTempFile("parser", ".txt");
+		try {
+			write(file, lines, "\n");
+			check("the program is split into chunks", Files.size(file) > 2L * CHUNK_SIZE);
+			Program single = new InstructionParser(file.toString(), 1).parse();
+			Program chunked = new InstructionParser(file.toString(), PARALLELISM).parse();
+			check("every instruction is assembled (" + single.size() + " of " + instructions + ")",
+					single.size() == instructions);
+			compare("in chunks", single, chunked);
+
+			write(file, lines, "\r\n");
+			compare("with carriage returns", single, new InstructionParser(file.toString(), 1).parse());
+			compare("with carriage returns in chunks", single,
+					new InstructionParser(file.toString(), PARALLELISM).parse());
+
+			/* The first line after the first new line at or past the end of the first chunk */
+			int offset = 0;
+			int first = 0;
+			while (offset + lines.get(first).length() < CHUNK_SIZE) {
+				offset += lines.get(first).length() + 1;
+				first += 1;
+			}
+			first += 1;
+			error("at the first line of the second chunk", file, lines, first);
+			error("in the last chunk", file, lines, (LINES * 7) / 8);
+		} finally {
+			Files.delete(file);
+		}
+
+		if (failures > 0) {
+			System.out.println("InstructionParserTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("InstructionParserTest: passed");
+	}
+
+	/**
+	 * Generates a program of every instruction, with spaces and tabs around
+	 * the operands and blank lines between them
+	 */
+	private static List<String> generate(Random random) {
+		String[] arithmetic = { "ADD", "SUB", "MUL", "AND", "OR", "EX-OR" };
+		List<String> lines = new ArrayList<String>();
+
+		for (int i = 0; i < LINES; i += 1) {
+			String indent = random.nextBoolean() ? "" : (random.nextBoolean() ? "\t" : "  ");
+			String comma = random.nextBoolean() ? ", " : " ,\t";
+			String literal = "#" + (random.nextBoolean() ? "" : " -") + random.nextInt(4096);
+
+			switch (random.nextInt(10)) {
+			case 0:
+				lines.add("");
+				break;
+			case 1:
+				lines.add(indent + "MOVC " + register(random) + comma + literal);
+				break;
+			case 2:
+				lines.add(indent + "LOAD " + register(random) + comma + register(random) + comma + literal);
+				break;
+			case 3:
+				lines.add(indent + "STORE " + register(random) + comma + register(random) + comma + literal);
+				break;
+			case 4:
+				lines.add(indent + (random.nextBoolean() ? "BZ " : "BNZ ") + literal);
+				break;
+			case 5:
+				lines.add(indent + (random.nextBoolean() ? "JUMP " : "BAL ") + register(random) + comma + literal);
+				break;
+			case 6:
+				lines.add(indent + "HALT");
+				break;
+			default:
+				lines.add(indent + arithmetic[random.nextInt(arithmetic.length)] + " " + register(random) + comma
+						+ register(random) + comma + register(random));
+				break;
+			}
+		}
+
+		return lines;
+	}
+
+	private static String register(Random random) {
+		return "R" + random.nextInt(16);
+	}
+
+	/**
+	 * Puts an error at a line of the program and checks where both ways
+	 * report it
+	 *
+	 * @param index
+	 *            the index of the line, the first one is 0
+	 */
+	private static void error(String name, Path file, List<String> lines, int index) throws IOException {
+		List<String> bad = new ArrayList<String>(lines);
+		bad.set(index, BAD_LINE);
+		write(file, bad, "\n");
+
+		for (int parallelism : new int[] { 1, PARALLELISM }) {
+			try {
+				new InstructionParser(file.toString(), parallelism).parse();
+				check("an error " + name + " is found with a parallelism of " + parallelism, false);
+			} catch (AssemblyException e) {
+				check("an error " + name + " is at line " + (index + 1) + ", column " + BAD_COLUMN
+						+ " with a parallelism of " + parallelism + " (not " + e.getLine() + ":" + e.getColumn() + ")",
+						e.getLine() == index + 1 && e.getColumn() == BAD_COLUMN);
+			}
+		}
+	}
+
+	private static void compare(String name, Program expected, Program actual) {
+		boolean same = expected.size() == actual.size();
+		for (int i = 0; same && i < expected.size(); i += 1) {
+			same = expected.getInstruction(i).toString().equals(actual.getInstruction(i).toString())
+					&& expected.getRdest(i) == actual.getRdest(i) && expected.getRsrc1(i) == actual.getRsrc1(i)
+					&& expected.getRsrc2(i) == actual.getRsrc2(i);
+			if (!same) {
+				check(name + " instruction " + i + " is " + expected.getInstruction(i) + " (not "
+						+ actual.getInstruction(i) + ")", false);
+				return;
+			}
+		}
+		check(name + " the program has " + expected.size() + " instructions (not " + actual.size() + ")", same);
+	}
+
+	private static void write(Path file, List<String> lines, String newLine) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (String line : lines) {
+			text.append(line).append(newLine);
+		}
+		Files.write(file, text.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package org.binghamton.comparch.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.binghamton.comparch.systems.Instruction;
+import org.binghamton.comparch.systems.Program;
+
+/**
+ * Writes every program in the programs directory, and one with a data image,
+ * to an object file and checks that reading it back gives the same program.
+ * Object files that were cut short or have a wrong magic, opcode or register
+ * are checked to be rejected with an IOException, so are instructions that
+ * lack a register their type needs or have one it does not.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class ObjectFileTest {
+	private static final String PROGRAMS = "programs";
+
+	/* Offsets in an object file */
+	private static final int HEADER_SIZE = 28;
+	private static final int INSTRUCTION_SIZE = 8;
+	private static final int RDEST = 1;
+	private static final int RSRC1 = 2;
+	private static final int RSRC2 = 3;
+
+	/* One instruction of every kind of operands, in this order */
+	private static final List<String> SOURCE = Arrays.asList("ADD R1, R2, R3", "MOVC R4, #7", "LOAD R5, R4, #8",
+			"STORE R5, R4, #12", "BZ #8", "JUMP X, #0", "BAL R6, #4", "HALT");
+	private static final int ADD = 0;
+	private static final int MOVC = 1;
+	private static final int STORE = 3;
+	private static final int BZ = 4;
+	private static final int JUMP = 5;
+	private static final int BAL = 6;
+	private static final int HALT = 7;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		Path object = Files.createTempFile("object", ".apxo");
+		Path source = Files.createTempFile("object", ".txt");
+		try {
+			List<Path> programs = new ArrayList<Path>();
+			for (Path file : Files.newDirectoryStream(Paths.get(PROGRAMS), "*.txt")) {
+				programs.add(file);
+			}
+			programs.sort(null);
+			for (Path file : programs) {
+				roundTrip(file.toString(), new InstructionParser(file.toString()).parse(), object);
+			}
+
+			Files.write(source, SOURCE);
+			Program program = new InstructionParser(source.toString()).parse();
+			roundTrip("every kind of operands", program, object);
+			roundTrip("a data image", withData(program, new int[] { 1, -2, 3, Integer.MIN_VALUE }), object);
+
+			ObjectFile.write(program, object.toString());
+			byte[] valid = Files.readAllBytes(object);
+			corrupt("a wrong magic", valid, object, 0, 'X');
+			corrupt("an unknown version", valid, object, 7, 2);
+			corrupt("an unknown opcode", valid, object, instruction(HALT), 0xEE);
+			corrupt("an unknown register", valid, object, instruction(ADD) + RSRC1, 0x20);
+			corrupt("ADD without its second source", valid, object, instruction(ADD) + RSRC2, 0xFF);
+			corrupt("ADD with X as its destination", valid, object, instruction(ADD) + RDEST, 16);
+			corrupt("MOVC with a source", valid, object, instruction(MOVC) + RSRC1, 2);
+			corrupt("STORE with a destination", valid, object, instruction(STORE) + RDEST, 2);
+			corrupt("BZ with a source", valid, object, instruction(BZ) + RSRC1, 2);
+			corrupt("JUMP without its source", valid, object, instruction(JUMP) + RSRC1, 0xFF);
+			corrupt("BAL with a register as its destination", valid, object, instruction(BAL) + RDEST, 1);
+			corrupt("HALT with a destination", valid, object, instruction(HALT) + RDEST, 1);
+
+			Files.write(object, Arrays.copyOf(valid, instruction(HALT)));
+			rejected("a file cut short", object);
+			Files.write(object, Arrays.copyOf(valid, HEADER_SIZE - 1));
+			rejected("a file shorter than the header", object);
+		} finally {
+			Files.delete(object);
+			Files.delete(source);
+		}
+
+		if (failures > 0) {
+			System.out.println("ObjectFileTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("ObjectFileTest: passed");
+	}
+
+	private static void roundTrip(String name, Program program, Path object) throws IOException {
+		ObjectFile.write(program, object.toString());
+		check(name + " is an object file once written", ObjectFile.isObjectFile(object.toString()));
+
+		Program read = ObjectFile.read(object.toString());
+		boolean same = program.size() == read.size() && program.getDataSize() == read.getDataSize();
+		for (int i = 0; same && i < program.size(); i += 1) {
+			same = program.getInstruction(i).toString().equals(read.getInstruction(i).toString())
+					&& program.getInstruction(i).getLiteral() == read.getInstruction(i).getLiteral()
+					&& program.getRdest(i) == read.getRdest(i) && program.getRsrc1(i) == read.getRsrc1(i)
+					&& program.getRsrc2(i) == read.getRsrc2(i);
+		}
+		for (int i = 0; same && i < program.getDataSize(); i += 1) {
+			same = program.getData(i) == read.getData(i);
+		}
+		check(name + " reads back the same", same);
+	}
+
+	private static Program withData(Program program, int[] data) {
+		int count = program.size();
+		int[] rdest = new int[count];
+		int[] rsrc1 = new int[count];
+		int[] rsrc2 = new int[count];
+		for (int i = 0; i < count; i += 1) {
+			rdest[i] = program.getRdest(i);
+			rsrc1[i] = program.getRsrc1(i);
+			rsrc2[i] = program.getRsrc2(i);
+		}
+
+		return new Program(program.getInstructions().toArray(new Instruction[count]), rdest, rsrc1, rsrc2, data);
+	}
+
+	private static int instruction(int index) {
+		return HEADER_SIZE + (index * INSTRUCTION_SIZE);
+	}
+
+	private static void corrupt(String name, byte[] valid, Path object, int offset, int value) throws IOException {
+		byte[] bytes = valid.clone();
+		bytes[offset] = (byte) value;
+		Files.write(object, bytes);
+		rejected(name, object);
+	}
+
+	private static void rejected(String name, Path object) {
+		try {
+			ObjectFile.read(object.toString());
+			check(name + " is rejected", false);
+		} catch (IOException e) {
+			/* Rejected */
+		} catch (RuntimeException e) {
+			check(name + " is rejected with an IOException, not " + e, false);
+		}
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+}
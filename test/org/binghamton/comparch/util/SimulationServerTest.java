@@ -0,0 +1,114 @@
+package org.binghamton.comparch.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a simulation server on a free port and talks to it over HTTP: a job
+ * of programs/test1.txt is queued and its result fetched, after which the job
+ * is forgotten, and a job of programs/loop.txt, which does not halt, is
+ * cancelled while it runs, which frees the only worker for the next job.
+ *
+ * @author Stefan Bossbaly
+ * @author Gerald Brennan
+ *
+ */
+public class SimulationServerTest {
+	private static final int TIMEOUT_SECONDS = 60;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		SimulationServer server = new SimulationServer(0, 1);
+		server.start();
+		try {
+			String base = "http://127.0.0.1:" + server.getPort();
+			check("the server is bound to a port", server.getPort() > 0);
+
+			/* A program that halts */
+			Response queued = request("POST", base + "/jobs?program=programs/test1.txt");
+			check("a job is queued (" + queued.code + ")", queued.code == 201);
+			String job = base + queued.location;
+			Response result = request("GET", job + "/result");
+			check("the result of a job is fetched (" + result.code + ")", result.code == 200);
+			check("the program halted", result.body.contains("\"halted\": true"));
+			check("a fetched job is forgotten", request("GET", job).code == 404);
+			check("no job is left", request("GET", base + "/jobs").body.trim().equals("[\n]"));
+
+			/* A program that does not halt, cancelled while it runs */
+			queued = request("POST", base + "/jobs?program=programs/loop.txt");
+			check("a job that does not halt is queued (" + queued.code + ")", queued.code == 201);
+			String running = base + queued.location;
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+			while (!request("GET", running).body.contains("\"RUNNING\"") && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			check("the job runs", request("GET", running).body.contains("\"RUNNING\""));
+
+			/* Queued behind it on the only worker */
+			String next = base + request("POST", base + "/jobs?program=programs/test1.txt").location;
+			Response cancelled = request("DELETE", running);
+			check("a running job is cancelled (" + cancelled.code + ")", cancelled.code == 200);
+			check("a cancelled job is forgotten", request("GET", running).code == 404);
+			result = request("GET", next + "/result");
+			check("the job after a cancelled one runs (" + result.code + ")", result.code == 200);
+
+			Response missing = request("POST", base + "/jobs");
+			check("a job without a program is rejected (" + missing.code + ")", missing.code == 400);
+		} finally {
+			server.stop();
+		}
+
+		if (failures > 0) {
+			System.out.println("SimulationServerTest: " + failures + " failed");
+			System.exit(1);
+		}
+		System.out.println("SimulationServerTest: passed");
+	}
+
+	private static Response request(String method, String url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod(method);
+		connection.setReadTimeout(TIMEOUT_SECONDS * 1000);
+		if ("POST".equals(method)) {
+			/* An empty body, the default configuration */
+			connection.setDoOutput(true);
+			connection.getOutputStream().close();
+		}
+
+		Response response = new Response();
+		response.code = connection.getResponseCode();
+		response.location = connection.getHeaderField("Location");
+		InputStream stream = (response.code < 400) ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if (stream != null) {
+			try (InputStream in = stream) {
+				byte[] buffer = new byte[4096];
+				for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+					bytes.write(buffer, 0, read);
+				}
+			}
+		}
+		response.body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		connection.disconnect();
+		return response;
+	}
+
+	private static void check(String name, boolean passed) {
+		if (!passed) {
+			System.out.println("FAILED: " + name);
+			failures += 1;
+		}
+	}
+
+	private static class Response {
+		int code;
+		String location;
+		String body;
+	}
+}